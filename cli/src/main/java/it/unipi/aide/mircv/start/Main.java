@@ -2,6 +2,7 @@ package it.unipi.aide.mircv.start;
 import it.unipi.dii.aide.mircv.common.config.Flags;
 import queryProcessing.QueryProcesser;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Scanner;
 
@@ -18,24 +19,25 @@ public class Main {
     /**
      * Executes the startup of the application and exposed the user interface
      *
-     * @param args the scoring algorithm to be used, if none DAAT will be used as default
+     * @param args the scoring algorithm to be used, if none DAAT will be used as default, and -resident to hold
+     *             the index in memory
      */
     public static void main(String[] args) {
 
         System.out.println("****** SEARCH ENGINE ******");
         System.out.println("Starting...");
         //check if setup of data structures was successful
-        boolean setupSuccess = QueryProcesser.setupProcesser();
+        boolean setupSuccess = QueryProcesser.setupProcesser(Arrays.asList(args).contains("-resident"));
 
         if (!setupSuccess) {
             System.out.println("Error in setup of this service. Shutting down...");
             return;
         }
 
-        if(args.length > 0){
-            if(args[0].equals("-maxscore")) {
+        for(String arg : args){
+            if(arg.equals("-maxscore")) {
                 Flags.setMaxScore(true);
-            }else{
+            }else if(!arg.equals("-resident")){
                 System.out.println("Flag not recognized");
             }
         }
@@ -61,6 +63,30 @@ public class Main {
                 continue;
             }
 
+            //check if a document is added, in the format :add <pid> <text>, which a query cannot be confused with
+            if(query.startsWith(":add ")){
+                String[] documentInfo = query.substring(5).trim().split(" ", 2);
+                if(documentInfo.length != 2){
+                    System.out.println("The document you entered is in invalid format.");
+                    continue;
+                }
+                if(QueryProcesser.addDocument(documentInfo[0], documentInfo[1]))
+                    System.out.println("Document " + documentInfo[0] + " added, it is already searchable.");
+                else
+                    System.out.println("The document couldn't be added.");
+                continue;
+            }
+
+            //check if a document is deleted, in the format :delete <pid>, which a query cannot be confused with
+            if(query.startsWith(":delete ")){
+                String pid = query.substring(8).trim();
+                if(QueryProcesser.deleteDocument(pid))
+                    System.out.println("Document " + pid + " deleted.");
+                else
+                    System.out.println("The document couldn't be deleted: it doesn't exist or it is already deleted.");
+                continue;
+            }
+
             //get query text and mode.
             // queryInfo[0] -> query text or break or help , queryInfo[1] -> query mode
             String[] queryInfo = query.split("-");
@@ -69,6 +95,9 @@ public class Main {
 
                 //check if break input is inputted
                 if(queryInfo[0].equals("break")){
+                    //write on disk the added documents still in memory
+                    if(!QueryProcesser.flushDocuments())
+                        System.out.println("Couldn't write the added documents on disk.");
                     System.out.println("Bye.. Hope you have found everything you were looking for :)");
                     break;
                 }
@@ -79,6 +108,10 @@ public class Main {
                             Please insert a query specifying your preferred mode:
                                         -c for conjunctive mode or -d for disjunctive mode. Here's an example:s
                                         This is a query example -c s
+                                        To add a document to the index type ":add" followed by its pid and text:
+                                        :add 1234 This is a new document
+                                        To delete a document from the index type ":delete" followed by its pid:
+                                        :delete 1234
                                         Insert -h for help or -b to terminate the service""");
                     continue;
                 }
@@ -1,17 +1,13 @@
 package it.unipi.dii.aide.mircv.common.beans;
 
-import it.unipi.dii.aide.mircv.common.compression.UnaryCompressor;
 import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
 
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 /**
  * Descriptor of a block of postings in a posting list, used to implement the skipping
@@ -95,109 +91,121 @@ public class BlockDescriptor {
         this.maxDocid = maxDocid;
     }
 
+    public int getNumPostings() {
+        return numPostings;
+    }
+
     public void setNumPostings(int numPostings) {
         this.numPostings = numPostings;
     }
 
     /**
-     * method that saves on file the block descriptor
+     * method that appends the block descriptor to the block descriptor file written sequentially
      *
-     * @param fChan the file channel of the block descriptor file
+     * @param writer the writer of the block descriptor file
      * @return true if the storing was successful
      */
-    public boolean saveDescriptorOnDisk(FileChannel fChan) {
+    public boolean saveDescriptorOnDisk(BufferedChannelWriter writer) {
         try {
-            MappedByteBuffer buffer = fChan.map(FileChannel.MapMode.READ_WRITE, memoryOffset, BLOCK_DESCRIPTOR_ENTRY_BYTES);
+            ByteBuffer buffer = writer.reserve(BLOCK_DESCRIPTOR_ENTRY_BYTES);
 
-            if (buffer != null) {
-                buffer.putLong(docidOffset);
-                buffer.putInt(docidSize);
-                buffer.putLong(freqOffset);
-                buffer.putInt(freqSize);
-                buffer.putInt(maxDocid);
-                buffer.putInt(numPostings);
+            buffer.putLong(docidOffset);
+            buffer.putInt(docidSize);
+            buffer.putLong(freqOffset);
+            buffer.putInt(freqSize);
+            buffer.putInt(maxDocid);
+            buffer.putInt(numPostings);
 
-                memoryOffset += BLOCK_DESCRIPTOR_ENTRY_BYTES;
+            memoryOffset += BLOCK_DESCRIPTOR_ENTRY_BYTES;
 
-                return true;
-            }
-            return false;
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
+    }
 
+    /**
+     * reads the block from the inverted index of the main index, decoding its docids: the frequencies are decoded at
+     * the first access
+     * @return the postings of the block, null if they cannot be read
+     */
+    BlockPostings readBlock(){
+        return readBlock(null, docidOffset, docidSize, null, freqOffset, freqSize, numPostings);
     }
 
     /**
-     * method to get block's postings from file using compressed mode or not
-     * @return arraylist containing block's postings
-     */
-    public ArrayList<Posting> getBlockPostings(){
-        try(
-            FileChannel docsFChan = (FileChannel) Files.newByteChannel(Paths.get(INVERTED_INDEX_DOCS),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.CREATE
-            );
-            FileChannel freqsFChan = (FileChannel) Files.newByteChannel(Paths.get(INVERTED_INDEX_FREQS),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.CREATE);
-        ){
-            // instantiation of MappedByteBuffer for integer list of docids
-            MappedByteBuffer docBuffer = docsFChan.map(
-                    FileChannel.MapMode.READ_ONLY,
-                    docidOffset,
-                    docidSize
-            );
-            MappedByteBuffer freqBuffer = freqsFChan.map(
-                    FileChannel.MapMode.READ_ONLY,
-                    freqOffset,
-                    freqSize
-            );
-
-            if(docBuffer ==null || freqBuffer == null){
-                return null;
-            }
-
-            ArrayList<Posting> block = new ArrayList<>();
-
-            if(Flags.isCompressionEnabled()){
-                // initialization of arrays of bytes for docids and freqs (compressed)
-                byte[] compressedDocids = new byte[docidSize];
-                byte[] compressedFreqs = new byte[freqSize];
-
-                // read bytes from file
-                docBuffer.get(compressedDocids, 0, docidSize);
-                freqBuffer.get(compressedFreqs, 0, freqSize);
-
-                // perform decompression of docids and frequencies
-                int[] decompressedDocids = VariableByteCompressor.integerArrayDecompression(compressedDocids, numPostings);
-                int[] decompressedFreqs = UnaryCompressor.integerArrayDecompression(compressedFreqs, numPostings);
-
-                // populate the array list of postings with the decompressed information about block postings
-                for(int i=0; i<numPostings; i++){
-                    Posting posting = new Posting(decompressedDocids[i], decompressedFreqs[i]);
-                    block.add(posting);
-                }
-            }
-            else {
-                // not compressed posting list
-                for(int i = 0; i < numPostings; i++){
-                    // create a new posting reading docid and frequency from the buffers
-                    Posting posting = new Posting(docBuffer.getInt(), freqBuffer.getInt());
-                    block.add(posting);
-                }
-
-            }
-
-            return block;
+     * reads a block from the inverted index using compressed mode or not, decoding only its docids. The docid and the
+     * frequency files are mapped as a whole the first time one of their blocks is read, so the block is a region of
+     * the mappings. With the interleaved layout the frequencies follow the docids in the same mapping. The frequencies
+     * are decoded only when they are requested, but their region is located here, so that the read of the block fails
+     * if they cannot be read
+     * @param docidsPath path to the docid file storing the block, null if the block is in the main index
+     * @param docidOffset starting byte of the block in the docid file
+     * @param docidSize byte size of the block in the docid file
+     * @param freqsPath path to the frequency file storing the block, null if the block is in the main index
+     * @param freqOffset starting byte of the block in the frequency file
+     * @param freqSize byte size of the block in the frequency file
+     * @param numPostings number of postings in the block
+     * @return the postings of the block, null if they cannot be read
+     */
+    static BlockPostings readBlock(String docidsPath, long docidOffset, int docidSize, String freqsPath, long freqOffset, int freqSize, int numPostings){
+        MappedFile docsFile = MappedFile.get(docidsPath == null ? INVERTED_INDEX_DOCS : docidsPath);
+        if(docsFile == null)
+            return null;
 
-        } catch (IOException e) {
-            e.printStackTrace();
+        // with the interleaved layout the frequencies are a region of the same mapping
+        MappedFile freqsFile = Flags.isInterleavedLayoutEnabled() ? docsFile : MappedFile.get(freqsPath == null ? INVERTED_INDEX_FREQS : freqsPath);
+        if(freqsFile == null)
             return null;
+
+        ByteBuffer docBuffer = docsFile.slice(docidOffset, docidSize);
+        ByteBuffer freqBuffer = freqsFile.slice(freqOffset, freqSize);
+        if(docBuffer == null || freqBuffer == null){
+            return null;
+        }
+
+        int[] docids;
+        if(Flags.isCompressionEnabled()){
+            // read the compressed docids and decompress them
+            byte[] compressedDocids = new byte[docidSize];
+            docBuffer.get(compressedDocids, 0, docidSize);
+            docids = VariableByteCompressor.integerArrayDecompression(compressedDocids, numPostings);
+        }
+        else {
+            // not compressed posting list
+            docids = new int[numPostings];
+            for(int i = 0; i < numPostings; i++)
+                docids[i] = docBuffer.getInt();
+        }
+
+        return new BlockPostings(docids, Flags.isCompressionEnabled(), freqBuffer);
+    }
+
+    /**
+     * loads in memory the pages of a block of the inverted index, so that they are resident when the block is read.
+     * The files are not mapped here: a block is prefetched only if its files are still mapped by the query processing.
+     * With the interleaved layout the docids and the frequencies of the block are a single region of the docid file
+     * @param docidsPath path to the docid file storing the block, null if the block is in the main index
+     * @param docidOffset starting byte of the block in the docid file
+     * @param docidSize byte size of the block in the docid file
+     * @param freqsPath path to the frequency file storing the block, null if the block is in the main index
+     * @param freqOffset starting byte of the block in the frequency file
+     * @param freqSize byte size of the block in the frequency file
+     */
+    static void prefetchBlock(String docidsPath, long docidOffset, int docidSize, String freqsPath, long freqOffset, int freqSize){
+        MappedFile docsFile = MappedFile.getIfMapped(docidsPath == null ? INVERTED_INDEX_DOCS : docidsPath);
+        if(docsFile == null)
+            return;
+
+        if(Flags.isInterleavedLayoutEnabled()){
+            docsFile.load(docidOffset, (long) docidSize + freqSize);
+            return;
         }
+        docsFile.load(docidOffset, docidSize);
+        MappedFile freqsFile = MappedFile.getIfMapped(freqsPath == null ? INVERTED_INDEX_FREQS : freqsPath);
+        if(freqsFile != null)
+            freqsFile.load(freqOffset, freqSize);
     }
 
     @Override
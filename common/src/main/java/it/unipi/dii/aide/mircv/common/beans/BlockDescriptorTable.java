@@ -0,0 +1,185 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Block descriptors of an index held in memory, in a column of primitive values for each field of the descriptors.
+ * The file of the block descriptors is read once, then the descriptors of a posting list are accessed by their index,
+ * given by the block offset stored in the vocabulary entry of the term, without creating an object for each block
+ */
+public class BlockDescriptorTable {
+
+    /**
+     * tables loaded in memory, with the path of the block descriptors file as key
+     */
+    private static final ConcurrentHashMap<String, BlockDescriptorTable> loadedTables = new ConcurrentHashMap<>();
+
+    /**
+     * starting byte of each block in the docid file of the inverted index
+     */
+    private final long[] docidOffsets;
+
+    /**
+     * byte size of each block in the docid file of the inverted index
+     */
+    private final int[] docidSizes;
+
+    /**
+     * starting byte of each block in the frequency file of the inverted index
+     */
+    private final long[] freqOffsets;
+
+    /**
+     * byte size of each block in the frequency file of the inverted index
+     */
+    private final int[] freqSizes;
+
+    /**
+     * max docid of each block
+     */
+    private final int[] maxDocids;
+
+    /**
+     * number of postings of each block
+     */
+    private final int[] numPostings;
+
+    /**
+     * reads all the block descriptors of a file
+     *
+     * @param path path of the block descriptors file
+     * @throws IOException if the file cannot be read
+     */
+    private BlockDescriptorTable(String path) throws IOException {
+        long numBlocks = Files.size(Paths.get(path)) / BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES;
+        if (numBlocks > Integer.MAX_VALUE)
+            throw new IOException(path + " has more than " + Integer.MAX_VALUE + " block descriptors");
+
+        int size = (int) numBlocks;
+        docidOffsets = new long[size];
+        docidSizes = new int[size];
+        freqOffsets = new long[size];
+        freqSizes = new int[size];
+        maxDocids = new int[size];
+        numPostings = new int[size];
+
+        try (BufferedChannelReader reader = new BufferedChannelReader(path)) {
+            for (int i = 0; i < size; i++) {
+                ByteBuffer buffer = reader.require(BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES);
+                docidOffsets[i] = buffer.getLong();
+                docidSizes[i] = buffer.getInt();
+                freqOffsets[i] = buffer.getLong();
+                freqSizes[i] = buffer.getInt();
+                maxDocids[i] = buffer.getInt();
+                numPostings[i] = buffer.getInt();
+            }
+        }
+    }
+
+    /**
+     * returns the block descriptors of an index, reading them the first time they are used
+     *
+     * @param path path of the block descriptors file
+     * @return the block descriptors, null if the file cannot be read
+     */
+    public static BlockDescriptorTable get(String path) {
+        BlockDescriptorTable table = loadedTables.get(path);
+        if (table != null)
+            return table;
+
+        try {
+            table = new BlockDescriptorTable(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        loadedTables.put(path, table);
+        return table;
+    }
+
+    /**
+     * discards the block descriptors loaded from a file, which must be read again at the next access
+     *
+     * @param path path of the block descriptors file
+     */
+    public static void invalidate(String path) {
+        if (path != null)
+            loadedTables.remove(path);
+    }
+
+    /**
+     * discards all the block descriptors loaded
+     */
+    public static void clear() {
+        loadedTables.clear();
+    }
+
+    /**
+     * @param blockOffset offset of a block descriptor in the block descriptors file
+     * @return the index of the block descriptor in the table
+     */
+    public static int getIndex(long blockOffset) {
+        return (int) (blockOffset / BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES);
+    }
+
+    /**
+     * @return the number of block descriptors
+     */
+    public int getNumBlocks() {
+        return maxDocids.length;
+    }
+
+    /**
+     * @return the number of bytes taken by the block descriptors
+     */
+    public long getMemorySize() {
+        return (long) getNumBlocks() * BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES;
+    }
+
+    /**
+     * @param index index of the block
+     * @return the max docid of the block
+     */
+    public int getMaxDocid(int index) {
+        return maxDocids[index];
+    }
+
+    /**
+     * @param index index of the block
+     * @return the number of postings of the block
+     */
+    public int getNumPostings(int index) {
+        return numPostings[index];
+    }
+
+    /**
+     * reads a block from the inverted index, decoding its docids: the frequencies are decoded at the first access
+     *
+     * @param index      index of the block
+     * @param docidsPath path to the docid file storing the block, null if the block is in the main index
+     * @param freqsPath  path to the frequency file storing the block, null if the block is in the main index
+     * @return the postings of the block, null if they cannot be read
+     */
+    BlockPostings readBlock(int index, String docidsPath, String freqsPath) {
+        return BlockDescriptor.readBlock(docidsPath, docidOffsets[index], docidSizes[index],
+                freqsPath, freqOffsets[index], freqSizes[index], numPostings[index]);
+    }
+
+    /**
+     * loads in memory the pages of a block of the inverted index, before it is read
+     *
+     * @param index      index of the block
+     * @param docidsPath path to the docid file storing the block, null if the block is in the main index
+     * @param freqsPath  path to the frequency file storing the block, null if the block is in the main index
+     */
+    void prefetchBlock(int index, String docidsPath, String freqsPath) {
+        BlockDescriptor.prefetchBlock(docidsPath, docidOffsets[index], docidSizes[index],
+                freqsPath, freqOffsets[index], freqSizes[index]);
+    }
+}
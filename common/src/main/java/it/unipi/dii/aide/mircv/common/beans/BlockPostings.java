@@ -0,0 +1,172 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.compression.UnaryCompressor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Postings of a block read by the query processing: the docids are decoded when the block is read, while the
+ * frequencies are decoded only when the frequency of one of the postings is requested, so the blocks whose postings
+ * are skipped or never scored don't pay for their frequencies. The region storing the frequencies is located when the
+ * block is read, so a block whose frequencies cannot be read isn't read at all
+ */
+class BlockPostings {
+
+    /**
+     * docids of the block
+     */
+    private final int[] docids;
+
+    /**
+     * frequencies of the block, null until they are decoded
+     */
+    private int[] frequencies;
+
+    /**
+     * true if the frequencies are compressed
+     */
+    private final boolean compressed;
+
+    /**
+     * region of the inverted index storing the encoded frequencies, null once they are decoded
+     */
+    private ByteBuffer freqBuffer;
+
+    /**
+     * creates a block whose frequencies are already decoded
+     *
+     * @param docids      docids of the block
+     * @param frequencies frequencies of the block
+     */
+    BlockPostings(int[] docids, int[] frequencies) {
+        this(docids, false, null);
+        this.frequencies = frequencies;
+    }
+
+    /**
+     * creates a block whose frequencies are decoded at the first access
+     *
+     * @param docids     docids of the block
+     * @param compressed true if the frequencies are compressed
+     * @param freqBuffer region of the inverted index storing the encoded frequencies
+     */
+    BlockPostings(int[] docids, boolean compressed, ByteBuffer freqBuffer) {
+        this.docids = docids;
+        this.compressed = compressed;
+        this.freqBuffer = freqBuffer;
+    }
+
+    /**
+     * creates a block holding a list of postings
+     *
+     * @param postings the postings of the block
+     */
+    BlockPostings(ArrayList<Posting> postings) {
+        this(new int[postings.size()], new int[postings.size()]);
+        for (int i = 0; i < postings.size(); i++) {
+            docids[i] = postings.get(i).getDocid();
+            frequencies[i] = postings.get(i).getFrequency();
+        }
+    }
+
+    /**
+     * @return the number of postings of the block
+     */
+    int size() {
+        return docids.length;
+    }
+
+    /**
+     * @param index position of the posting in the block
+     * @return the docid of the posting
+     */
+    int getDocid(int index) {
+        return docids[index];
+    }
+
+    /**
+     * returns the frequency of a posting, decoding the frequencies of the block at the first access
+     *
+     * @param index position of the posting in the block
+     * @return the frequency of the posting
+     */
+    int getFrequency(int index) {
+        if (frequencies == null)
+            decodeFrequencies();
+        return frequencies[index];
+    }
+
+    /**
+     * @return true if the frequencies of the block have been decoded
+     */
+    boolean areFrequenciesDecoded() {
+        return frequencies != null;
+    }
+
+    /**
+     * @param index position of the posting in the block
+     * @return the posting, whose frequency is decoded when it is requested
+     */
+    Posting getPosting(int index) {
+        return new LazyPosting(docids[index], index);
+    }
+
+    /**
+     * decodes the frequencies of the block
+     */
+    private void decodeFrequencies() {
+        int[] decoded;
+        if (compressed) {
+            byte[] compressedFreqs = new byte[freqBuffer.capacity()];
+            freqBuffer.get(0, compressedFreqs);
+            decoded = UnaryCompressor.integerArrayDecompression(compressedFreqs, docids.length);
+        } else {
+            decoded = new int[docids.length];
+            for (int i = 0; i < docids.length; i++)
+                decoded[i] = freqBuffer.getInt(i * 4);
+        }
+        frequencies = decoded;
+        freqBuffer = null;
+    }
+
+    /**
+     * posting of the block, reading its frequency from the block when it is requested for the first time
+     */
+    private class LazyPosting extends Posting {
+
+        /**
+         * position of the posting in the block
+         */
+        private final int index;
+
+        /**
+         * true once the frequency is read from the block or set
+         */
+        private boolean frequencyRead = false;
+
+        /**
+         * @param docid the docid of the posting
+         * @param index position of the posting in the block
+         */
+        LazyPosting(int docid, int index) {
+            super(docid, 0);
+            this.index = index;
+        }
+
+        @Override
+        public int getFrequency() {
+            if (!frequencyRead) {
+                super.setFrequency(BlockPostings.this.getFrequency(index));
+                frequencyRead = true;
+            }
+            return super.getFrequency();
+        }
+
+        @Override
+        public void setFrequency(int frequency) {
+            super.setFrequency(frequency);
+            frequencyRead = true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetcher of the blocks of the posting lists: the pages of the blocks that the query processing is going to read
+ * are loaded in memory by a helper thread, so the cursor of a posting list finds them resident instead of waiting for
+ * the disk. The requests are only hints: when the queue is full the oldest one is dropped, and the helper thread is
+ * stopped when no block is requested for a while. A request is dropped as well if a mapping of the inverted index is
+ * discarded after it was made, since its block may belong to a file rewritten or removed by a merge or a compaction
+ */
+public class BlockPrefetcher {
+
+    /**
+     * max number of requests waiting for the helper thread
+     */
+    private static final int QUEUE_SIZE = 64;
+
+    /**
+     * seconds after which the idle helper thread is stopped
+     */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * true if the blocks are prefetched
+     */
+    private static boolean enabled = ConfigurationParameters.isBlockPrefetchingEnabled();
+
+    /**
+     * number of blocks requested to the helper thread
+     */
+    private static final AtomicLong requests = new AtomicLong();
+
+    /**
+     * executor of the single helper thread loading the blocks
+     */
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE),
+            task -> {
+                Thread thread = new Thread(task, "block-prefetcher");
+                // the prefetching must not keep the application alive
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    /**
+     * @return true if the blocks are prefetched, which is never needed when the index is resident in memory
+     */
+    static boolean isEnabled() {
+        return enabled && !MappedFile.isResidentMode();
+    }
+
+    /**
+     * requests the loading of a block in memory, without waiting for it
+     *
+     * @param source the vocabulary entry storing the block
+     * @param block  position of the block in the posting list of the entry
+     */
+    static void prefetch(VocabularyEntry source, int block) {
+        requests.incrementAndGet();
+        long generation = MappedFile.getGeneration();
+        executor.execute(() -> {
+            if (generation == MappedFile.getGeneration())
+                source.prefetchBlock(block);
+        });
+    }
+
+    /**
+     * needed for testing purposes
+     *
+     * @param prefetching true to prefetch the blocks
+     */
+    public static void setEnabled(boolean prefetching) {
+        enabled = prefetching;
+    }
+
+    /**
+     * needed for testing purposes
+     *
+     * @return the number of blocks requested to the helper thread
+     */
+    public static long getRequests() {
+        return requests.get();
+    }
+}
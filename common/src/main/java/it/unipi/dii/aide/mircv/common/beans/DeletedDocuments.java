@@ -0,0 +1,176 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility class that stores the documents deleted from the index in a bitset, where the bit of position docid is set
+ * if the document is deleted. The bitset file is memory mapped, so a deletion is saved on disk as soon as it is made,
+ * and the posting lists skip the postings of the deleted documents until the index is compacted
+ */
+public class DeletedDocuments {
+
+    /**
+     * minimum number of bytes of the bitset file
+     */
+    private static final int MIN_BITSET_BYTES = 4096;
+
+    /**
+     * path to the bitset file
+     */
+    private static String DELETED_DOCUMENTS_PATH = ConfigurationParameters.getDeletedDocumentsPath();
+
+    /**
+     * memory mapped bitset, null if no document has been deleted
+     */
+    private static volatile MappedByteBuffer bitset = null;
+
+    /**
+     * number of deleted documents
+     */
+    private static volatile long numDeleted = 0;
+
+    static {
+        readFile();
+    }
+
+    /**
+     * maps the bitset file and counts the deleted documents
+     * @return true if the read is successful
+     */
+    private static boolean readFile() {
+        bitset = null;
+        numDeleted = 0;
+
+        if (DELETED_DOCUMENTS_PATH == null || !new File(DELETED_DOCUMENTS_PATH).exists())
+            return false;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(DELETED_DOCUMENTS_PATH), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+
+            long deleted = 0;
+            for (int i = 0; i < buffer.capacity(); i++)
+                deleted += Integer.bitCount(buffer.get(i) & 0xFF);
+
+            bitset = buffer;
+            numDeleted = deleted;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * maps the bitset file with at least the given size, extending the file if needed
+     * @param numBytes the number of bytes the bitset must contain
+     * @return true if the file is mapped
+     */
+    private static boolean ensureCapacity(int numBytes) {
+        if (bitset != null && bitset.capacity() >= numBytes)
+            return true;
+
+        int capacity = Math.max(MIN_BITSET_BYTES, numBytes);
+        if (bitset != null)
+            capacity = Math.max(capacity, bitset.capacity() * 2);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(DELETED_DOCUMENTS_PATH), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            // mapping a region larger than the file extends it with zeros
+            bitset = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * checks if a document is deleted; it is called for each posting read, so it is a single bit lookup
+     * @param docid the docid of the document
+     * @return true if the document is deleted
+     */
+    public static boolean isDeleted(int docid) {
+        if (numDeleted == 0)
+            return false;
+
+        MappedByteBuffer deleted = bitset;
+        int index = docid >>> 3;
+        return deleted != null && index < deleted.capacity() && (deleted.get(index) & (1 << (docid & 7))) != 0;
+    }
+
+    /**
+     * marks a document as deleted and saves the bitset on disk
+     * @param docid the docid of the document
+     * @return true if the document is deleted, false if it was already deleted or an error occurred
+     */
+    public static synchronized boolean delete(int docid) {
+        if (DELETED_DOCUMENTS_PATH == null || docid <= 0 || isDeleted(docid))
+            return false;
+
+        if (!ensureCapacity((docid >>> 3) + 1))
+            return false;
+
+        int index = docid >>> 3;
+        bitset.put(index, (byte) (bitset.get(index) | (1 << (docid & 7))));
+        bitset.force();
+        numDeleted++;
+        return true;
+    }
+
+    /**
+     * @return the number of deleted documents
+     */
+    public static long getNumDeleted() {
+        return numDeleted;
+    }
+
+    /**
+     * @return the fraction of the documents of the collection which are deleted
+     */
+    public static double getDeletedRatio() {
+        if (CollectionSize.getCollectionSize() == 0)
+            return 0;
+        return numDeleted / (double) CollectionSize.getCollectionSize();
+    }
+
+    /**
+     * counts the deleted documents in a range of docids
+     * @param firstDocid the first docid of the range
+     * @param lastDocid the last docid of the range
+     * @return the number of deleted documents in the range
+     */
+    public static long countDeleted(int firstDocid, int lastDocid) {
+        long deleted = 0;
+        for (int docid = firstDocid; docid <= lastDocid && numDeleted > 0; docid++)
+            if (isDeleted(docid))
+                deleted++;
+        return deleted;
+    }
+
+    /**
+     * removes all the deletions, used when the index is built from scratch or the postings of the deleted
+     * documents have been removed from the index
+     */
+    public static synchronized void clear() {
+        numDeleted = 0;
+        bitset = null;
+        if (DELETED_DOCUMENTS_PATH != null)
+            FileUtils.removeFile(DELETED_DOCUMENTS_PATH);
+    }
+
+    /** needed for testing purposes
+     * @param deletedDocumentsPath: path to be set, the bitset in it is read
+     */
+    public static synchronized void setDeletedDocumentsPath(String deletedDocumentsPath) {
+        DELETED_DOCUMENTS_PATH = deletedDocumentsPath;
+        readFile();
+    }
+}
@@ -1,6 +1,9 @@
 package it.unipi.dii.aide.mircv.common.beans;
 
 import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 
 /**
@@ -13,6 +16,12 @@ public class DocumentIndex extends LinkedHashMap<Integer, DocumentIndexEntry> {
      */
     private static DocumentIndex instance = null;
 
+    /**
+     * docids of the documents with the pid as key, built at the first lookup by pid and then kept aligned with the
+     * entries, null if it was not built yet
+     */
+    private HashMap<String, Integer> docids = null;
+
     /**
      * default constructor
      */
@@ -48,28 +57,71 @@ public class DocumentIndex extends LinkedHashMap<Integer, DocumentIndexEntry> {
      */
     public int getLength(int docid){return this.get(docid).getDocLen();}
 
+    /**
+     * Lookup method on the document index by pid: the map from the pids to the docids is built at the first call,
+     * since it is needed only to delete documents
+     * @param pid the pid of the document
+     * @return the docid of the document, -1 if there is no document with such pid
+     */
+    public int getDocid(String pid){
+        if(docids == null){
+            docids = new HashMap<>(Math.max(16, (int) (this.size() / 0.75f) + 1));
+            for(DocumentIndexEntry entry: this.values())
+                docids.putIfAbsent(entry.getPid(), entry.getDocid());
+        }
+        return docids.getOrDefault(pid, -1);
+    }
+
+    @Override
+    public DocumentIndexEntry put(Integer docid, DocumentIndexEntry entry){
+        DocumentIndexEntry previous = super.put(docid, entry);
+        if(docids != null){
+            if(previous != null)
+                docids.remove(previous.getPid(), docid);
+            docids.putIfAbsent(entry.getPid(), docid);
+        }
+        return previous;
+    }
+
+    @Override
+    public DocumentIndexEntry remove(Object docid){
+        DocumentIndexEntry removed = super.remove(docid);
+        if(docids != null && removed != null)
+            docids.remove(removed.getPid(), docid);
+        return removed;
+    }
+
+    @Override
+    public void clear(){
+        super.clear();
+        docids = null;
+    }
+
     /**
      * Loads the document index from disk
      * @return true if the fetch is successful
      */
     public boolean loadFromDisk(){
-        // retrieve the number of documents
-        long numDocuments = CollectionSize.getCollectionSize();
+        // retrieve the number of documents of the main index
+        long numDocuments = SegmentRegistry.getMainIndexSize(CollectionSize.getCollectionSize());
 
-        // retrieve the size of a single entry
-        final int ENTRY_SIZE = DocumentIndexEntry.getEntrySize();
-
-        // for each document to be fetched
-        for(int i = 0; i < numDocuments; i++){
-
-            // load the document from disk and put it into the map
-            DocumentIndexEntry newEntry = new DocumentIndexEntry();
-            if(newEntry.readFromDisk((long) i * ENTRY_SIZE)){
+        // the entries of the main index are read sequentially, their docids start from 1
+        try (DocumentIndexReader reader = new DocumentIndexReader(DocumentIndexEntry.getDocindexPath(), 1)) {
+            for(long i = 0; i < numDocuments; i++){
+                DocumentIndexEntry newEntry = reader.next();
+                if(newEntry == null)
+                    return false;
                 this.put(newEntry.getDocid(), newEntry);
             }
-            else{
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        // load the documents of the segments appended to the main index
+        for(Segment segment: SegmentRegistry.getSegments()){
+            if(!segment.loadDocumentIndex(this))
                 return false;
-            }
         }
         return true;
     }
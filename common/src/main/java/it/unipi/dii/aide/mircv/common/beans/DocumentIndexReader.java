@@ -0,0 +1,89 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential reader of a document index file written by the DocumentIndexWriter: the docid of each entry is given by
+ * its position, starting from the first docid of the index, and the pids which aren't numeric are read from the heap
+ * of the pids, whose references are increasing in the order of the entries
+ */
+public class DocumentIndexReader implements AutoCloseable {
+
+    /**
+     * size of the buffer of the heap of the pids, enough for the longest pid
+     */
+    private static final int PIDS_BUFFER_SIZE = 2 * BufferedChannelReader.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * reader of the document index file
+     */
+    private final BufferedChannelReader reader;
+
+    /**
+     * reader of the heap of the pids
+     */
+    private final BufferedChannelReader pidsReader;
+
+    /**
+     * docid of the next entry
+     */
+    private int nextDocid;
+
+    /**
+     * opens a document index
+     *
+     * @param path       the path of the document index file
+     * @param firstDocid the docid of the first entry
+     * @throws IOException if the files cannot be opened
+     */
+    public DocumentIndexReader(String path, int firstDocid) throws IOException {
+        this.reader = new BufferedChannelReader(path);
+        try {
+            this.pidsReader = new BufferedChannelReader(DocumentIndexWriter.getPidsPath(path), PIDS_BUFFER_SIZE);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        this.nextDocid = firstDocid;
+    }
+
+    /**
+     * reads the next entry of the document index
+     *
+     * @return the entry, null if the end of the file is reached
+     * @throws IOException if an error occurs while reading
+     */
+    public DocumentIndexEntry next() throws IOException {
+        if (!reader.hasRemaining())
+            return null;
+
+        ByteBuffer buffer = reader.require(DocumentIndexEntry.ENTRY_SIZE);
+        int docLen = buffer.getInt();
+        int pidReference = buffer.getInt();
+
+        String pid;
+        if (pidReference >= 0)
+            pid = Integer.toString(pidReference);
+        else {
+            pidsReader.seek(-(long) pidReference - 1);
+            int length = Short.toUnsignedInt(pidsReader.require(2).getShort());
+            byte[] encodedPid = new byte[length];
+            pidsReader.require(length).get(encodedPid);
+            pid = new String(encodedPid, StandardCharsets.UTF_8);
+        }
+        return new DocumentIndexEntry(pid, nextDocid++, docLen);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            pidsReader.close();
+        }
+    }
+}
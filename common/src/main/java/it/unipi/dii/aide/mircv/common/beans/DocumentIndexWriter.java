@@ -0,0 +1,267 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writer of the document index file used during the indexing: the entries are appended through a single buffered
+ * channel kept open for the whole run.
+ * Each entry stores the document length and the pid of the document, its docid being given by the position of the
+ * entry. The pids made of decimal digits are stored as numbers, the other ones in the heap of the pids, a separate
+ * file where each pid is stored as its length in bytes and its UTF-8 encoding: the entry stores the offset of the pid
+ * in the heap, as a negative number
+ */
+public class DocumentIndexWriter implements AutoCloseable {
+
+    /**
+     * suffix of the path of the heap of the pids
+     */
+    private static final String PIDS_SUFFIX = "_pids";
+
+    /**
+     * max length in bytes of a pid stored in the heap
+     */
+    private static final int MAX_PID_BYTES = 0xFFFF;
+
+    /**
+     * writer of the document index file
+     */
+    private final BufferedChannelWriter writer;
+
+    /**
+     * writer of the heap of the pids
+     */
+    private final BufferedChannelWriter pidsWriter;
+
+    /**
+     * number of entries written
+     */
+    private long numEntries = 0;
+
+    /**
+     * opens the document index file at the given path, discarding its previous content
+     * @param path the path of the document index file
+     * @throws IOException if the file cannot be opened
+     */
+    public DocumentIndexWriter(String path) throws IOException {
+        this.writer = new BufferedChannelWriter(path);
+        this.pidsWriter = new BufferedChannelWriter(getPidsPath(path));
+    }
+
+    /**
+     * @param writer     writer of the document index file
+     * @param pidsWriter writer of the heap of the pids
+     * @param numEntries number of entries already in the file
+     */
+    private DocumentIndexWriter(BufferedChannelWriter writer, BufferedChannelWriter pidsWriter, long numEntries) {
+        this.writer = writer;
+        this.pidsWriter = pidsWriter;
+        this.numEntries = numEntries;
+    }
+
+    /**
+     * opens the document index file keeping only its first entries, used to continue an interrupted indexing.
+     * The heap of the pids is truncated after the last pid referenced by the kept entries
+     * @param path the path of the document index file
+     * @param numEntries the number of entries to be kept
+     * @return the writer appending entries after the kept ones
+     * @throws IOException if the file cannot be opened or it has less entries
+     */
+    public static DocumentIndexWriter resume(String path, long numEntries) throws IOException {
+        long pidsSize = getPidsSize(path, numEntries);
+        BufferedChannelWriter writer = BufferedChannelWriter.resume(path, numEntries * DocumentIndexEntry.ENTRY_SIZE);
+        try {
+            return new DocumentIndexWriter(writer, BufferedChannelWriter.resume(getPidsPath(path), pidsSize), numEntries);
+        } catch (IOException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * opens the document index file at the path used by the document index entries keeping only its first entries
+     * @param numEntries the number of entries to be kept
+     * @return the writer appending entries after the kept ones
+     * @throws IOException if the file cannot be opened or it has less entries
+     */
+    public static DocumentIndexWriter resume(long numEntries) throws IOException {
+        return resume(DocumentIndexEntry.getDocindexPath(), numEntries);
+    }
+
+    /**
+     * opens the document index file at the path used by the document index entries
+     * @throws IOException if the file cannot be opened
+     */
+    public DocumentIndexWriter() throws IOException {
+        this(DocumentIndexEntry.getDocindexPath());
+    }
+
+    /**
+     * appends an entry to the document index
+     * @param entry the entry to be written
+     * @return the offset of the entry
+     * @throws IOException if an error occurs while writing
+     */
+    public long write(DocumentIndexEntry entry) throws IOException {
+        long offset = writer.position();
+        String pid = entry.getPid();
+        int numericPid = parseNumericPid(pid);
+
+        int pidReference = numericPid;
+        if (numericPid == -1) {
+            byte[] encodedPid = pid.getBytes(StandardCharsets.UTF_8);
+            if (encodedPid.length > MAX_PID_BYTES)
+                throw new IOException("the pid of the document " + entry.getDocid() + " is longer than " + MAX_PID_BYTES + " bytes");
+            if (pidsWriter.position() > Integer.MAX_VALUE)
+                throw new IOException("the heap of the pids is larger than " + Integer.MAX_VALUE + " bytes");
+
+            pidReference = -(int) pidsWriter.position() - 1;
+            ByteBuffer buffer = pidsWriter.reserve(2 + encodedPid.length);
+            buffer.putShort((short) encodedPid.length);
+            buffer.put(encodedPid);
+        }
+
+        ByteBuffer buffer = writer.reserve(DocumentIndexEntry.ENTRY_SIZE);
+        buffer.putInt(entry.getDocLen());
+        buffer.putInt(pidReference);
+        numEntries++;
+        return offset;
+    }
+
+    /**
+     * parses a pid made only of decimal digits, without leading zeros, which fits in an int
+     * @param pid the pid
+     * @return the value of the pid, -1 if it must be stored in the heap of the pids
+     */
+    private static int parseNumericPid(String pid) {
+        int length = pid.length();
+        if (length == 0 || length > 10 || (length > 1 && pid.charAt(0) == '0'))
+            return -1;
+
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = pid.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    /**
+     * computes the size of the heap of the pids referenced by the first entries of a document index, looking for the
+     * last entry whose pid is in the heap
+     * @param path the path of the document index file
+     * @param numEntries the number of entries
+     * @return the number of bytes of the heap storing the pids of the entries
+     * @throws IOException if the files are shorter than expected
+     */
+    private static long getPidsSize(String path, long numEntries) throws IOException {
+        // the files may not exist yet if no entry was written
+        if (numEntries == 0)
+            return 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() < numEntries * DocumentIndexEntry.ENTRY_SIZE)
+                throw new EOFException(path + " has less than " + numEntries + " entries");
+
+            // the entries are read backwards, in chunks
+            ByteBuffer chunk = ByteBuffer.allocate(4096 * DocumentIndexEntry.ENTRY_SIZE);
+            for (long end = numEntries; end > 0; ) {
+                long start = Math.max(0, end - 4096);
+                chunk.clear().limit((int) (end - start) * DocumentIndexEntry.ENTRY_SIZE);
+                while (chunk.hasRemaining())
+                    channel.read(chunk, start * DocumentIndexEntry.ENTRY_SIZE + chunk.position());
+
+                for (long i = end - 1; i >= start; i--) {
+                    int pidReference = chunk.getInt((int) (i - start) * DocumentIndexEntry.ENTRY_SIZE + 4);
+                    if (pidReference < 0) {
+                        long pidOffset = -(long) pidReference - 1;
+                        try (FileChannel pids = FileChannel.open(Paths.get(getPidsPath(path)), StandardOpenOption.READ)) {
+                            ByteBuffer length = ByteBuffer.allocate(2);
+                            while (length.hasRemaining()) {
+                                if (pids.read(length, pidOffset + length.position()) == -1)
+                                    throw new EOFException("unexpected end of file while reading " + getPidsPath(path));
+                            }
+                            return pidOffset + 2 + Short.toUnsignedInt(length.getShort(0));
+                        }
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of entries written
+     */
+    public long getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * writes to the file the buffered entries
+     * @throws IOException if an error occurs while writing
+     */
+    public void flush() throws IOException {
+        writer.flush();
+        pidsWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            pidsWriter.close();
+        }
+    }
+
+    /**
+     * @param path the path of the document index file
+     * @return the path of the heap of the pids
+     */
+    public static String getPidsPath(String path) {
+        return path + PIDS_SUFFIX;
+    }
+
+    /**
+     * @param path the path of the document index file
+     * @return the total size in bytes of the files of the document index
+     * @throws IOException if one of the files cannot be read
+     */
+    public static long size(String path) throws IOException {
+        return Files.size(Paths.get(path)) + Files.size(Paths.get(getPidsPath(path)));
+    }
+
+    /**
+     * removes the files of a document index
+     * @param path the path of the document index file
+     */
+    public static void remove(String path) {
+        FileUtils.removeFile(path);
+        FileUtils.removeFile(getPidsPath(path));
+    }
+
+    /**
+     * copies the files of a document index
+     * @param source the path of the document index to be copied
+     * @param target the path of the copy
+     * @throws IOException if one of the files cannot be copied
+     */
+    public static void copy(String source, String target) throws IOException {
+        Files.copy(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(Paths.get(getPidsPath(source)), Paths.get(getPidsPath(target)), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,49 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import java.util.Arrays;
+
+/**
+ * Descriptor of a block of postings of an in-memory segment: the postings are read from the arrays of the segment
+ * instead of the inverted index on disk
+ */
+class InMemoryBlockDescriptor extends BlockDescriptor {
+
+    /**
+     * docids of the posting list containing the block
+     */
+    private final int[] docids;
+
+    /**
+     * frequencies of the posting list containing the block
+     */
+    private final int[] frequencies;
+
+    /**
+     * position of the first posting of the block in the arrays
+     */
+    private final int start;
+
+    /**
+     * @param docids      docids of the posting list, the ones of the block must not change anymore
+     * @param frequencies frequencies of the posting list, the ones of the block must not change anymore
+     * @param start       position of the first posting of the block in the arrays
+     * @param numPostings number of postings of the block
+     */
+    InMemoryBlockDescriptor(int[] docids, int[] frequencies, int start, int numPostings) {
+        this.docids = docids;
+        this.frequencies = frequencies;
+        this.start = start;
+        setNumPostings(numPostings);
+        setMaxDocid(docids[start + numPostings - 1]);
+    }
+
+    /**
+     * reads the block from the arrays of the in-memory segment, whose frequencies need no decoding
+     * @return the postings of the block
+     */
+    @Override
+    BlockPostings readBlock() {
+        return new BlockPostings(Arrays.copyOfRange(docids, start, start + getNumPostings()),
+                Arrays.copyOfRange(frequencies, start, start + getNumPostings()));
+    }
+}
@@ -0,0 +1,23 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+/**
+ * Segment of the index kept in memory, whose documents follow the ones of the segments on disk: its posting lists
+ * are read through the same block descriptors of the ones on disk, so the query processing visits them as the last
+ * blocks of the posting lists of the index
+ */
+public interface InMemorySegment {
+
+    /**
+     * retrieves the vocabulary entry of a term in the in-memory segment, whose block descriptors refer to the
+     * postings of the term at the time of the call
+     *
+     * @param term the term to look for
+     * @return the vocabulary entry of the term in the segment, null if the term is not in the segment
+     */
+    VocabularyEntry getEntry(String term);
+
+    /**
+     * @return a number which changes whenever the content of the segment changes
+     */
+    long getVersion();
+}
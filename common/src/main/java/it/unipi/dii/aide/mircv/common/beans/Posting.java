@@ -51,8 +51,8 @@ public class Posting {
     @Override
     public String toString() {
         return "Posting{" +
-                "docid=" + docid +
-                ", frequency=" + frequency +
+                "docid=" + getDocid() +
+                ", frequency=" + getFrequency() +
                 '}';
     }
 }
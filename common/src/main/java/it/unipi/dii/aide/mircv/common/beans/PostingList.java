@@ -5,7 +5,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 /**
  * A posting list, with its access methods leveraging skipping
@@ -23,24 +22,49 @@ public class PostingList{
     private final ArrayList<Posting> postings = new ArrayList<>();
 
     /**
-     * the list of the blocks n which the posting list is divided
+     * the vocabulary entries storing the blocks in which the posting list is divided, in increasing docid order
      */
-    private ArrayList<BlockDescriptor> blocks = null;
+    private ArrayList<VocabularyEntry> blockSources = null;
 
     /**
-     * iterator for the postings
+     * the block of postings being read, whose frequencies are decoded only if one of its postings is scored
      */
-    private Iterator<Posting> postingIterator = null;
+    private BlockPostings block = null;
 
     /**
-     * iterator for the blocks
+     * position in the current block of the next posting to be read
      */
-    private Iterator<BlockDescriptor> blocksIterator = null;
+    private int blockPosition = 0;
 
     /**
-     * the current block
+     * position in the block sources of the entry storing the current block
      */
-    private BlockDescriptor currentBlock = null;
+    private int currentSource = 0;
+
+    /**
+     * position of the current block in the posting list of its entry, -1 if no block was read
+     */
+    private int currentBlock = -1;
+
+    /**
+     * max docid of the current block
+     */
+    private int currentMaxDocid = 0;
+
+    /**
+     * position in the block sources of the entry storing the last block requested to the prefetcher
+     */
+    private int prefetchedSource = -1;
+
+    /**
+     * position of the last block requested to the prefetcher in the posting list of its entry
+     */
+    private int prefetchedBlock = -1;
+
+    /**
+     * docid requested by the last call of nextGEQ, -1 if it wasn't called yet
+     */
+    private int lastTarget = -1;
 
     /**
      * the current posting
@@ -123,48 +147,139 @@ public class PostingList{
      * method that opens and initializes the posting list for the query processing
      */
     public void openList(){
+        openList(Vocabulary.getInstance().get(term));
+    }
 
-        // load the block descriptors
-        blocks = Vocabulary.getInstance().get(term).readBlocks();
+    /**
+     * opens and initializes the posting list for the query processing
+     * @param entry the vocabulary entry of the term of the list
+     */
+    void openList(VocabularyEntry entry){
 
-        // return false if the blocks are not loaded
-        if(blocks == null){
+        // find the entries storing the blocks, whose descriptors are held in memory
+        ArrayList<VocabularyEntry> sources = new ArrayList<>();
+        if(!entry.collectBlockSources(sources)){
             return;
         }
 
-        // initialize block iterator
-        blocksIterator = blocks.iterator();
+        // initialize the position of the blocks
+        blockSources = sources;
+        currentSource = 0;
+        currentBlock = -1;
+        prefetchedSource = -1;
+        prefetchedBlock = -1;
+        lastTarget = -1;
 
-        //initialize postings iterator
-        postingIterator = postings.iterator();
+        // the postings held by the list are read before the blocks
+        block = new BlockPostings(postings);
+        blockPosition = 0;
 
 
     }
 
     /**
-     * returns the next posting in the list
-     * @return the next posting in the list
+     * moves to the next block of the posting list, passing to the next entry storing the blocks when the blocks of
+     * the current one are over
+     * @return false if there are no more blocks
      */
-    public Posting next(){
-        // no postings in memory: load new block
-        if(!postingIterator.hasNext()) {
+    private boolean nextBlock(){
+        currentBlock++;
+        while(currentBlock >= blockSources.get(currentSource).countBlocks()){
+            if(currentSource == blockSources.size() - 1){
+                // stay on the last block, so the end of the list is detected again at the next call
+                currentBlock--;
+                return false;
+            }
+            currentSource++;
+            currentBlock = 0;
+        }
+        currentMaxDocid = blockSources.get(currentSource).getBlockMaxDocid(currentBlock);
+        return true;
+    }
 
-            // no new blocks: end of list
-            if (!blocksIterator.hasNext()) {
-                currentPosting = null;
-                return null;
+    /**
+     * requests to the prefetcher the block holding the docid predicted for the next call of nextGEQ, found through the
+     * max docids of the blocks. The block following the current one isn't requested, since it is already read ahead
+     * by the operating system with the current one, unless it is the first block of the next entry, which is stored
+     * in another file
+     * @param predictedDocid the docid predicted for the next call of nextGEQ
+     */
+    private void prefetchTargetBlock(int predictedDocid){
+        int source = currentSource;
+        int targetBlock = currentBlock + 1;
+        boolean skipping = false;
+        for(;;) {
+            if(targetBlock >= blockSources.get(source).countBlocks()){
+                // the predicted docid is beyond the end of the list
+                if(source == blockSources.size() - 1)
+                    return;
+                source++;
+                targetBlock = 0;
+                skipping = true;
+            } else if(blockSources.get(source).getBlockMaxDocid(targetBlock) >= predictedDocid) {
+                break;
+            } else {
+                targetBlock++;
+                skipping = true;
             }
+        }
 
-            // load the new block and update the postings iterator
-            currentBlock = blocksIterator.next();
-            //remove previous postings
-            postings.clear();
-            postings.addAll(currentBlock.getBlockPostings());
-            postingIterator = postings.iterator();
+        if(!skipping || (source == prefetchedSource && targetBlock == prefetchedBlock))
+            return;
+        prefetchedSource = source;
+        prefetchedBlock = targetBlock;
+        BlockPrefetcher.prefetch(blockSources.get(source), targetBlock);
+    }
+
+    /**
+     * needed for testing purposes
+     * @return the position in the block sources of the entry storing the last block requested to the prefetcher
+     */
+    int getPrefetchedSource(){
+        return prefetchedSource;
+    }
+
+    /**
+     * needed for testing purposes
+     * @return the position of the last block requested to the prefetcher in the posting list of its entry
+     */
+    int getPrefetchedBlock(){
+        return prefetchedBlock;
+    }
+
+    /**
+     * returns the next posting in the list, skipping the postings of the deleted documents
+     * @return the next posting in the list, null if the list is over or one of its blocks cannot be read
+     */
+    public Posting next(){
+        // a block that cannot be read ends the list
+        if(block == null)
+            return null;
+        for(;;) {
+            // no postings left in the block: load new block
+            if(blockPosition == block.size()) {
+
+                // no new blocks: end of list
+                if (!nextBlock()) {
+                    currentPosting = null;
+                    return null;
+                }
+
+                // load the docids of the new block
+                block = blockSources.get(currentSource).readBlock(currentBlock);
+                blockPosition = 0;
+                if(block == null) {
+                    currentPosting = null;
+                    return null;
+                }
+            }
+            // return the next posting to process, unless its document is deleted
+            int docid = block.getDocid(blockPosition++);
+            if(!DeletedDocuments.isDeleted(docid)) {
+                currentPosting = block.getPosting(blockPosition - 1);
+                return currentPosting;
+            }
         }
-        // return the next posting to process
-        currentPosting = postingIterator.next();
-        return currentPosting;
     }
 
 
@@ -177,39 +292,60 @@ public class PostingList{
     }
 
     /**
-     * returns the first posting with docid greater or equal than the specified docid.
+     * returns the first posting with docid greater or equal than the specified docid, skipping the postings
+     * of the deleted documents.
      * If there's no greater or equal docid in the list returns null
      * @param docid the docid to reach in the list
      * @return the first posting with docid greater or equal than the specified docid, null if this posting doesn't exist
+     * or one of the blocks of the list cannot be read
      */
     public Posting nextGEQ(int docid){
+        // a block that cannot be read ends the list
+        if(block == null)
+            return null;
         // flag to check if the block has changed
         boolean blockChanged = false;
         // move to the block with max docid >= docid
-        // current block is null only if it's the first read
-        while(currentBlock == null || currentBlock.getMaxDocid() < docid){
+        // current block is -1 only if it's the first read
+        while(currentBlock == -1 || currentMaxDocid < docid){
             // end of list, return null
-            if(!blocksIterator.hasNext()){
+            if(!nextBlock()){
                 currentPosting = null;
                 return null;
             }
 
-            currentBlock = blocksIterator.next();
             blockChanged = true;
         }
-        // block changed, load postings and update iterator
+        // block changed, load the docids of the new block and prefetch the block of the next target, assuming that
+        // it will be as far from this target as this target is from the previous one
         if(blockChanged){
-            //remove previous postings
-            postings.clear();
-            postings.addAll(currentBlock.getBlockPostings());
-            postingIterator = postings.iterator();
+            block = blockSources.get(currentSource).readBlock(currentBlock);
+            blockPosition = 0;
+            if(block == null){
+                currentPosting = null;
+                return null;
+            }
+            if(BlockPrefetcher.isEnabled() && lastTarget != -1 && docid > lastTarget)
+                prefetchTargetBlock(docid + (docid - lastTarget));
         }
-        // move to the first GE posting and return it
-        while (postingIterator.hasNext()) {
-            currentPosting = postingIterator.next();
-            if (currentPosting.getDocid() >= docid)
-                return currentPosting;
+        lastTarget = docid;
+        // flag to check if a GE posting of a deleted document was skipped
+        boolean deletedSkipped = false;
+        // move to the first GE posting and return it, without decoding the frequencies of the skipped ones
+        while (blockPosition < block.size()) {
+            int blockDocid = block.getDocid(blockPosition++);
+            if (blockDocid >= docid) {
+                if (!DeletedDocuments.isDeleted(blockDocid)) {
+                    currentPosting = block.getPosting(blockPosition - 1);
+                    return currentPosting;
+                }
+                deletedSkipped = true;
+            }
         }
+        // the GE postings of the block are all deleted: the first live posting is in the next blocks
+        if (deletedSkipped)
+            return next();
+
         currentPosting = null;
         return null;
     }
@@ -221,9 +357,10 @@ public class PostingList{
 
         // clear the list of postings
         postings.clear();
+        block = null;
 
-        // clear the list of blocks
-        blocks.clear();
+        // release the entries storing the blocks
+        blockSources = null;
 
         // remove the term from the vocabulary
         Vocabulary.getInstance().remove(term);
@@ -0,0 +1,188 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+/**
+ * Immutable segment appended to the main index: it has its own vocabulary, inverted index, block descriptors and
+ * document index, stored in a directory of the segments folder. The docids of a segment continue from the ones of
+ * the previous segment, so the posting lists of a term can be read segment after segment in increasing docid order
+ */
+public class Segment {
+
+    /**
+     * name of the segment, which is also the name of its directory
+     */
+    private final String name;
+
+    /**
+     * directory storing the files of the segment
+     */
+    private final String directory;
+
+    /**
+     * first docid of the segment
+     */
+    private final int firstDocid;
+
+    /**
+     * number of documents in the segment
+     */
+    private long numDocs = 0;
+
+    /**
+     * sum of the lengths of the documents in the segment
+     */
+    private long totalDocLen = 0;
+
+    /**
+     * number of entries of the vocabulary of the segment
+     */
+    private long vocabularySize = 0;
+
+    /**
+     * @param name       name of the segment
+     * @param directory  directory storing the files of the segment
+     * @param firstDocid first docid of the segment
+     */
+    public Segment(String name, String directory, int firstDocid) {
+        this.name = name;
+        this.directory = directory;
+        this.firstDocid = firstDocid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public int getFirstDocid() {
+        return firstDocid;
+    }
+
+    /**
+     * @return the last docid of the segment
+     */
+    public int getLastDocid() {
+        return (int) (firstDocid + numDocs - 1);
+    }
+
+    public long getNumDocs() {
+        return numDocs;
+    }
+
+    public void setNumDocs(long numDocs) {
+        this.numDocs = numDocs;
+    }
+
+    public long getTotalDocLen() {
+        return totalDocLen;
+    }
+
+    public void setTotalDocLen(long totalDocLen) {
+        this.totalDocLen = totalDocLen;
+    }
+
+    public long getVocabularySize() {
+        return vocabularySize;
+    }
+
+    public void setVocabularySize(long vocabularySize) {
+        this.vocabularySize = vocabularySize;
+    }
+
+    public String getVocabularyPath() {
+        return directory + "/vocabulary";
+    }
+
+    public String getInvertedIndexDocsPath() {
+        return directory + "/invertedIndexDocs";
+    }
+
+    public String getInvertedIndexFreqsPath() {
+        return directory + "/invertedIndexFreqs";
+    }
+
+    public String getBlockDescriptorsPath() {
+        return directory + "/blockDescriptors";
+    }
+
+    public String getDocumentIndexPath() {
+        return directory + "/documentIndex";
+    }
+
+    /**
+     * retrieves the vocabulary entry of a term from the vocabulary of the segment
+     *
+     * @param term the term to look for
+     * @return the vocabulary entry of the term in the segment, null if the term is not in the segment
+     */
+    public VocabularyEntry findEntry(String term) {
+        VocabularyEntry entry = Vocabulary.findEntry(term, getVocabularyPath(), vocabularySize);
+        if (entry != null)
+            entry.setSegment(this);
+        return entry;
+    }
+
+    /**
+     * loads the document index of the segment, reading it sequentially
+     *
+     * @param documentIndex the map where the entries are put, with the docid as key
+     * @return true if the fetch is successful
+     */
+    public boolean loadDocumentIndex(Map<Integer, DocumentIndexEntry> documentIndex) {
+        try (DocumentIndexReader reader = new DocumentIndexReader(getDocumentIndexPath(), firstDocid)) {
+            for (long i = 0; i < numDocs; i++) {
+                DocumentIndexEntry entry = reader.next();
+                if (entry == null)
+                    return false;
+                documentIndex.put(entry.getDocid(), entry);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * writes the description of the segment in the registry of the segments
+     *
+     * @param oos the stream of the registry
+     * @throws IOException if an error occurs while writing
+     */
+    void writeTo(ObjectOutputStream oos) throws IOException {
+        oos.writeUTF(name);
+        oos.writeInt(firstDocid);
+        oos.writeLong(numDocs);
+        oos.writeLong(totalDocLen);
+        oos.writeLong(vocabularySize);
+    }
+
+    /**
+     * reads the description of a segment from the registry of the segments
+     *
+     * @param ois         the stream of the registry
+     * @param segmentsDir the directory of the segments
+     * @return the segment
+     * @throws IOException if an error occurs while reading
+     */
+    static Segment readFrom(ObjectInputStream ois, String segmentsDir) throws IOException {
+        String name = ois.readUTF();
+        Segment segment = new Segment(name, segmentsDir + "/" + name, ois.readInt());
+        segment.numDocs = ois.readLong();
+        segment.totalDocLen = ois.readLong();
+        segment.vocabularySize = ois.readLong();
+        return segment;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [docids " + firstDocid + "-" + getLastDocid() + ", " + vocabularySize + " terms]";
+    }
+}
@@ -0,0 +1,285 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Utility class that stores the list of the segments appended to the main index, in increasing docid order.
+ * The list is saved in a registry file which is replaced atomically, so that a segment becomes visible to the
+ * query processing only when all its files are written and a merged segment replaces the segments it contains
+ * in a single step
+ */
+public class SegmentRegistry {
+
+    /**
+     * directory storing the segments and the registry
+     */
+    private static String SEGMENTS_DIR = ConfigurationParameters.getSegmentsDir();
+
+    /**
+     * segments appended to the main index, in increasing docid order
+     */
+    private static final ArrayList<Segment> segments = new ArrayList<>();
+
+    /**
+     * number used in the name of the next segment
+     */
+    private static int nextSegmentNumber = 0;
+
+    /**
+     * held for reading by the queries while they read the segments, and for writing while merged segments are
+     * replaced, so that the files of a merged segment are never deleted under a running query
+     */
+    private static final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    /**
+     * number of replacements of segments, used to invalidate the cached vocabulary entries
+     */
+    private static volatile long generation = 0;
+
+    static {
+        readFile();
+    }
+
+    /**
+     * @return the path of the registry file
+     */
+    private static String getRegistryPath() {
+        return SEGMENTS_DIR + "/segments";
+    }
+
+    /**
+     * reads the registry file
+     * @return true if the read is successful
+     */
+    private static boolean readFile() {
+        segments.clear();
+        nextSegmentNumber = 0;
+
+        if (SEGMENTS_DIR == null)
+            return false;
+        File file = new File(getRegistryPath());
+
+        if (!file.exists())
+            return false;
+
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            nextSegmentNumber = ois.readInt();
+            int numSegments = ois.readInt();
+            for (int i = 0; i < numSegments; i++)
+                segments.add(Segment.readFrom(ois, SEGMENTS_DIR));
+            return true;
+        } catch (Exception e) {
+            segments.clear();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * writes the registry to a temporary file which then replaces the registry file
+     * @return true if successful
+     */
+    private static boolean writeFile() {
+        File temp = new File(getRegistryPath() + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(temp))) {
+            oos.writeInt(nextSegmentNumber);
+            oos.writeInt(segments.size());
+            for (Segment segment : segments)
+                segment.writeTo(oos);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        try {
+            Files.move(temp.toPath(), Paths.get(getRegistryPath()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return the segments appended to the main index, in increasing docid order
+     */
+    public static synchronized List<Segment> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * @return true if at least a segment has been appended to the main index
+     */
+    public static synchronized boolean hasSegments() {
+        return !segments.isEmpty();
+    }
+
+    /**
+     * @param collectionSize the number of documents of the whole collection
+     * @return the number of documents of the main index, the ones preceding the first segment
+     */
+    public static synchronized long getMainIndexSize(long collectionSize) {
+        if (segments.isEmpty())
+            return collectionSize;
+        return segments.get(0).getFirstDocid() - 1;
+    }
+
+    /**
+     * creates the directory of a new segment, not yet visible to the query processing
+     *
+     * @param firstDocid first docid of the segment
+     * @return the new segment
+     */
+    public static synchronized Segment newSegment(int firstDocid) {
+        String name = "segment_" + nextSegmentNumber++;
+        Segment segment = new Segment(name, SEGMENTS_DIR + "/" + name, firstDocid);
+
+        // remove what is left of a segment with the same name not added to the registry
+        FileUtils.deleteDirectory(segment.getDirectory());
+        FileUtils.createDirectory(segment.getDirectory());
+        return segment;
+    }
+
+    /**
+     * appends a completely written segment to the registry
+     *
+     * @param segment the segment, whose docids must follow the ones of the last segment
+     * @return true if the registry is saved
+     */
+    public static synchronized boolean addSegment(Segment segment) {
+        segments.add(segment);
+        if (writeFile())
+            return true;
+        segments.remove(segment);
+        return false;
+    }
+
+    /**
+     * replaces a run of consecutive segments with the segment obtained by merging them, then deletes their files.
+     * The replacement waits for the running queries to end
+     *
+     * @param merged the merged segments, in increasing docid order
+     * @param result the segment containing the documents of the merged ones
+     * @return true if the registry is saved
+     */
+    public static boolean replaceSegments(List<Segment> merged, Segment result) {
+        // the lock is taken before the monitor, which the queries holding the read lock can ask for
+        segmentsLock.writeLock().lock();
+        try {
+            if (!swapSegments(merged, result))
+                return false;
+            generation++;
+
+            for (Segment segment : merged) {
+                FileUtils.deleteDirectory(segment.getDirectory());
+                invalidateLoadedIndex(segment);
+            }
+            return true;
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * replaces a run of consecutive segments with a segment in the registry
+     *
+     * @param merged the replaced segments, in increasing docid order
+     * @param result the segment replacing them
+     * @return true if the registry is saved
+     */
+    private static synchronized boolean swapSegments(List<Segment> merged, Segment result) {
+        int first = segments.indexOf(merged.get(0));
+        if (first == -1 || !segments.subList(first, Math.min(segments.size(), first + merged.size())).equals(merged))
+            return false;
+
+        ArrayList<Segment> previous = new ArrayList<>(segments);
+        segments.subList(first, first + merged.size()).clear();
+        segments.add(first, result);
+        if (!writeFile()) {
+            segments.clear();
+            segments.addAll(previous);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * keeps the segments of the registry, and their files, unchanged until unlockSegments is called; a query takes
+     * the lock while it reads the segments
+     */
+    public static void lockSegments() {
+        segmentsLock.readLock().lock();
+    }
+
+    /**
+     * releases the lock taken by lockSegments
+     */
+    public static void unlockSegments() {
+        segmentsLock.readLock().unlock();
+    }
+
+    /**
+     * @return the number of replacements of segments, which changes every time segments are merged
+     */
+    public static long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * deletes a segment not added to the registry, after a failed indexing or merge
+     *
+     * @param segment the segment to be deleted
+     */
+    public static void discard(Segment segment) {
+        FileUtils.deleteDirectory(segment.getDirectory());
+        invalidateLoadedIndex(segment);
+    }
+
+    /**
+     * discards the block descriptors loaded and the mappings of the inverted index of a deleted segment
+     *
+     * @param segment the deleted segment
+     */
+    private static void invalidateLoadedIndex(Segment segment) {
+        BlockDescriptorTable.invalidate(segment.getBlockDescriptorsPath());
+        VocabularyFile.invalidate(segment.getVocabularyPath());
+        MappedFile.invalidate(segment.getInvertedIndexDocsPath());
+        MappedFile.invalidate(segment.getInvertedIndexFreqsPath());
+    }
+
+    /**
+     * removes all the segments and the registry, used when the index is built from scratch
+     */
+    public static synchronized void clear() {
+        if (SEGMENTS_DIR == null)
+            return;
+
+        File[] directories = new File(SEGMENTS_DIR).listFiles(File::isDirectory);
+        if (directories != null)
+            for (File directory : directories)
+                FileUtils.deleteDirectory(directory.getPath());
+        FileUtils.deleteDirectory(SEGMENTS_DIR);
+
+        segments.clear();
+        nextSegmentNumber = 0;
+    }
+
+    /** needed for testing purposes
+     * @param segmentsDir: directory to be set, the registry in it is read
+     */
+    public static synchronized void setSegmentsDir(String segmentsDir) {
+        SEGMENTS_DIR = segmentsDir;
+        readFile();
+    }
+}
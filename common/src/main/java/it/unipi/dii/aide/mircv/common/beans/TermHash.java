@@ -0,0 +1,343 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Perfect hash of the terms of a vocabulary, built with the hash and displace algorithm (CHD): the terms are
+ * distributed in buckets of about LAMBDA terms, then each bucket, from the largest one, gets the first displacement
+ * which puts all its terms in free slots. The slots are slightly more than the terms (LOAD_FACTOR), so the last
+ * buckets still find free slots after a few displacements also in large vocabularies. Each slot stores the ordinal of
+ * its term in the vocabulary, or EMPTY_SLOT, and a fingerprint of the term, used to reject the terms which are not in
+ * the vocabulary.
+ * The file stores the seed of the hash function, the number of terms, of buckets and of slots, the displacement of
+ * each bucket and then the slots; it is memory mapped by the query processing, or read in memory in resident mode
+ */
+public class TermHash {
+
+    /**
+     * average number of terms in a bucket
+     */
+    private static final int LAMBDA = 4;
+
+    /**
+     * ratio between the number of terms and the number of slots
+     */
+    private static final double LOAD_FACTOR = 0.99;
+
+    /**
+     * ordinal stored in the slots without a term
+     */
+    private static final int EMPTY_SLOT = -1;
+
+    /**
+     * max displacement tried for a bucket before trying another seed
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    /**
+     * number of seeds tried before giving up the building of the hash
+     */
+    private static final int MAX_SEEDS = 16;
+
+    /**
+     * size of the header: the seed, the number of terms, the number of buckets and the number of slots
+     */
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * size of a slot: the ordinal of the term and its fingerprint
+     */
+    private static final int SLOT_SIZE = 8;
+
+    /**
+     * the memory mapped file, or its copy in off-heap memory in resident mode
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * seed of the hash function
+     */
+    private final long seed;
+
+    /**
+     * number of terms
+     */
+    private final int numTerms;
+
+    /**
+     * number of buckets
+     */
+    private final int numBuckets;
+
+    /**
+     * number of slots
+     */
+    private final int numSlots;
+
+    /**
+     * maps the file of the hash, or reads it in off-heap memory in resident mode
+     *
+     * @param path path of the file of the hash
+     * @throws IOException if the file cannot be mapped or read
+     */
+    private TermHash(String path) throws IOException {
+        if (MappedFile.isResidentMode()) {
+            MappedFile file = MappedFile.get(path);
+            buffer = file == null || file.size() > Integer.MAX_VALUE ? null : file.slice(0, (int) file.size());
+            if (buffer == null)
+                throw new IOException("the hash of the terms " + path + " cannot be read");
+        } else {
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        seed = buffer.getLong(0);
+        numTerms = buffer.getInt(8);
+        numBuckets = buffer.getInt(12);
+        numSlots = buffer.getInt(16);
+    }
+
+    /**
+     * opens the hash of the terms of a vocabulary
+     *
+     * @param vocabularyPath path of the vocabulary
+     * @return the hash, null if it wasn't built for the vocabulary or its size doesn't match its header
+     * @throws IOException if the file of the hash cannot be mapped
+     */
+    static TermHash open(String vocabularyPath) throws IOException {
+        String path = VocabularyFile.getHashPath(vocabularyPath);
+        if (!new File(path).exists())
+            return null;
+        TermHash termHash = new TermHash(path);
+        if (termHash.buffer.capacity() != HEADER_SIZE + 4L * termHash.numBuckets + (long) SLOT_SIZE * termHash.numSlots) {
+            System.out.println("The hash of the terms " + path + " is corrupted, the block index of the vocabulary is used");
+            return null;
+        }
+        return termHash;
+    }
+
+    /**
+     * @param term the term to look for
+     * @return the ordinal of the term in the vocabulary, -1 if the term is not in the vocabulary
+     */
+    public long getOrdinal(String term) {
+        if (numTerms == 0)
+            return -1;
+
+        long hash = hash(term, seed);
+        int displacement = buffer.getInt(HEADER_SIZE + 4 * bucket(hash, numBuckets));
+        int position = HEADER_SIZE + 4 * numBuckets + SLOT_SIZE * slot(hash, displacement, numSlots);
+
+        int ordinal = buffer.getInt(position);
+        if (ordinal == EMPTY_SLOT || buffer.getInt(position + 4) != fingerprint(hash))
+            return -1;
+        return ordinal;
+    }
+
+    /**
+     * builds the hash of the terms of a vocabulary, which must be completely written
+     *
+     * @param vocabularyPath path of the vocabulary
+     * @return true if the hash is built
+     */
+    public static boolean build(String vocabularyPath) {
+        String path = VocabularyFile.getHashPath(vocabularyPath);
+        FileUtils.removeFile(path);
+
+        ArrayList<String> terms = new ArrayList<>();
+        try (VocabularyReader reader = new VocabularyReader(vocabularyPath)) {
+            for (String term = reader.nextTerm(); term != null; term = reader.nextTerm())
+                terms.add(term);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        int numTerms = terms.size();
+        int numBuckets = Math.max(1, (numTerms + LAMBDA - 1) / LAMBDA);
+        int numSlots = numSlots(numTerms);
+        long[] hashes = new long[numTerms];
+        int[] displacements = new int[numBuckets];
+        int[] ordinals = new int[numSlots];
+
+        for (long seed = 0; seed < MAX_SEEDS; seed++) {
+            for (int i = 0; i < numTerms; i++)
+                hashes[i] = hash(terms.get(i), seed);
+
+            if (!assignSlots(hashes, numBuckets, displacements, ordinals))
+                continue;
+
+            try (BufferedChannelWriter writer = new BufferedChannelWriter(path)) {
+                writer.putLong(seed);
+                writer.putInt(numTerms);
+                writer.putInt(numBuckets);
+                writer.putInt(numSlots);
+                for (int displacement : displacements)
+                    writer.putInt(displacement);
+                for (int ordinal : ordinals) {
+                    writer.putInt(ordinal);
+                    writer.putInt(ordinal == EMPTY_SLOT ? 0 : fingerprint(hashes[ordinal]));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                FileUtils.removeFile(path);
+                return false;
+            }
+
+            // the vocabulary may have been loaded without the hash
+            VocabularyFile.invalidate(vocabularyPath);
+            return true;
+        }
+
+        System.out.println("Couldn't build the hash of the terms of " + vocabularyPath);
+        return false;
+    }
+
+    /**
+     * @param numTerms the number of terms of the hash
+     * @return the number of slots of the hash
+     */
+    static int numSlots(int numTerms) {
+        return Math.max(1, (int) Math.ceil(numTerms / LOAD_FACTOR));
+    }
+
+    /**
+     * finds the displacement of each bucket, processing the buckets from the largest one
+     *
+     * @param hashes        the hashes of the terms, in vocabulary order
+     * @param numBuckets    the number of buckets
+     * @param displacements array filled with the displacement of each bucket
+     * @param ordinals      array filled with the ordinal of the term of each slot, EMPTY_SLOT for the free slots
+     * @return false if a bucket can't be placed, so another seed must be tried
+     */
+    static boolean assignSlots(long[] hashes, int numBuckets, int[] displacements, int[] ordinals) {
+        int numTerms = hashes.length;
+        int numSlots = ordinals.length;
+        Arrays.fill(ordinals, EMPTY_SLOT);
+
+        // terms of each bucket, stored contiguously
+        int[] bucketStart = new int[numBuckets + 1];
+        for (long hash : hashes)
+            bucketStart[bucket(hash, numBuckets) + 1]++;
+        int maxBucketSize = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] bucketTerms = new int[numTerms];
+        int[] filled = new int[numBuckets];
+        for (int i = 0; i < numTerms; i++) {
+            int b = bucket(hashes[i], numBuckets);
+            bucketTerms[bucketStart[b] + filled[b]++] = i;
+        }
+
+        // buckets sorted by decreasing size
+        int[] sizeStart = new int[maxBucketSize + 2];
+        for (int b = 0; b < numBuckets; b++)
+            sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b]) + 1]++;
+        for (int s = 0; s <= maxBucketSize; s++)
+            sizeStart[s + 1] += sizeStart[s];
+        int[] sortedBuckets = new int[numBuckets];
+        for (int b = 0; b < numBuckets; b++)
+            sortedBuckets[sizeStart[maxBucketSize - (bucketStart[b + 1] - bucketStart[b])]++] = b;
+
+        boolean[] taken = new boolean[numSlots];
+        int[] slots = new int[maxBucketSize];
+        for (int b : sortedBuckets) {
+            int size = bucketStart[b + 1] - bucketStart[b];
+            if (size == 0) {
+                displacements[b] = 0;
+                continue;
+            }
+
+            int displacement = 0;
+            while (!placeBucket(hashes, bucketTerms, bucketStart[b], size, displacement, taken, slots)) {
+                if (++displacement == MAX_DISPLACEMENT)
+                    return false;
+            }
+
+            displacements[b] = displacement;
+            for (int i = 0; i < size; i++)
+                ordinals[slots[i]] = bucketTerms[bucketStart[b] + i];
+        }
+        return true;
+    }
+
+    /**
+     * tries to put the terms of a bucket in free slots with a displacement, taking the slots if it succeeds
+     *
+     * @return true if all the terms of the bucket are put in distinct free slots
+     */
+    private static boolean placeBucket(long[] hashes, int[] bucketTerms, int start, int size, int displacement, boolean[] taken, int[] slots) {
+        for (int i = 0; i < size; i++) {
+            int slot = slot(hashes[bucketTerms[start + i]], displacement, taken.length);
+            if (taken[slot]) {
+                // release the slots taken by the previous terms of the bucket
+                for (int j = 0; j < i; j++)
+                    taken[slots[j]] = false;
+                return false;
+            }
+            taken[slot] = true;
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * 64 bits hash of a term: FNV-1a on its chars, followed by the finalizer of MurmurHash3
+     *
+     * @param term the term
+     * @param seed seed of the hash function
+     * @return the hash of the term
+     */
+    static long hash(String term, long seed) {
+        long hash = 0xcbf29ce484222325L ^ (seed * 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < term.length(); i++)
+            hash = (hash ^ term.charAt(i)) * 0x100000001b3L;
+        return mix(hash);
+    }
+
+    /**
+     * finalizer of MurmurHash3, spreading the bits of the value
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * @return the bucket of a term, given by the highest 32 bits of its hash
+     */
+    private static int bucket(long hash, int numBuckets) {
+        return (int) ((hash >>> 32) % numBuckets);
+    }
+
+    /**
+     * @return the slot of a term in the bucket with the given displacement
+     */
+    private static int slot(long hash, int displacement, int numSlots) {
+        return (int) Long.remainderUnsigned(mix(hash + displacement * 0x9E3779B97F4A7C15L), numSlots);
+    }
+
+    /**
+     * @return the fingerprint of a term, given by the lowest 32 bits of its hash
+     */
+    private static int fingerprint(long hash) {
+        return (int) hash;
+    }
+}
@@ -2,6 +2,7 @@ package it.unipi.dii.aide.mircv.common.beans;
 
 import it.unipi.dii.aide.mircv.common.config.CollectionSize;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
 import org.junit.platform.commons.util.LruCache;
 import java.util.LinkedHashMap;
 
@@ -16,6 +17,26 @@ public class Vocabulary extends LinkedHashMap<String, VocabularyEntry> {
      */
     private final static LruCache<String, VocabularyEntry> entries= new LruCache<>(1000);
 
+    /**
+     * segment of the index kept in memory, null if there is none
+     */
+    private static InMemorySegment inMemorySegment = null;
+
+    /**
+     * cache of the entries of the terms stored both on disk and in the in-memory segment
+     */
+    private final static LruCache<String, VocabularyEntry> inMemoryEntries = new LruCache<>(1000);
+
+    /**
+     * version of the in-memory segment the cached entries refer to
+     */
+    private static long inMemoryVersion = -1;
+
+    /**
+     * generation of the segments the cached entries refer to
+     */
+    private static long segmentsGeneration = SegmentRegistry.getGeneration();
+
     /**
      * path to file storing the vocabulary
      */
@@ -49,16 +70,31 @@ public class Vocabulary extends LinkedHashMap<String, VocabularyEntry> {
      */
     public VocabularyEntry getEntry(String term){
 
+        VocabularyEntry entry;
+
+        //the cached entries refer to the segments replaced by a merge
+        long generation = SegmentRegistry.getGeneration();
+        if(generation != segmentsGeneration){
+            entries.clear();
+            inMemoryEntries.clear();
+            segmentsGeneration = generation;
+        }
+
         //if term is cached, return its vocabulary entry
         if(entries.containsKey(term))
-            return entries.get(term);
-
-        //get entry from disk
-        VocabularyEntry entry = findEntry(term);
+            entry = entries.get(term);
+        else {
+            //get entry from disk, gathering it from all the segments if documents were appended to the index
+            entry = SegmentRegistry.hasSegments() ? findSegmentedEntry(term) : findEntry(term);
+
+            //cache the entry
+            if(entry != null)
+                entries.put(term,entry);
+        }
 
-        //cache the entry
-        if(entry != null)
-            entries.put(term,entry);
+        //add the postings of the documents not yet written on disk
+        if(inMemorySegment != null)
+            return findInMemoryEntry(term, entry);
 
         return entry;
 
@@ -69,30 +105,18 @@ public class Vocabulary extends LinkedHashMap<String, VocabularyEntry> {
      * */
     public boolean readFromDisk(){
 
-        long position = 0;
-
-        //read whole vocabulary from
-        while(position >= 0){
-            VocabularyEntry entry = new VocabularyEntry();
-            //read entry and update position
-            position = entry.readFromDisk(position,VOCABULARY_PATH);
-
-            if(position == 0)
-                return  true;
-
-            if(entry.getTerm()==null){
-                return true;
+        //read whole vocabulary sequentially
+        try(VocabularyReader reader = new VocabularyReader(VOCABULARY_PATH)){
+            for(VocabularyEntry entry = reader.next(); entry != null; entry = reader.next()){
+                //populate vocabulary
+                this.put(entry.getTerm(),entry);
+                entries.put(entry.getTerm(),entry);
             }
-
-            //populate vocabulary
-            this.put(entry.getTerm(),entry);
-            entries.put(entry.getTerm(),entry);
-
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
         }
-
-        //if position == -1 an error occurred during reading
-        return position != -1;
-
     }
 
     /**
@@ -101,41 +125,96 @@ public class Vocabulary extends LinkedHashMap<String, VocabularyEntry> {
      * @return the vocabulary entry of given term, null if term is not in vocabulary
      **/
     public VocabularyEntry findEntry(String term){
+        return findEntry(term, VOCABULARY_PATH, CollectionSize.getVocabularySize());
+    }
 
+    /**
+     * retrieves the vocabulary entry of a given term from a vocabulary file, searching the block which may contain
+     * the term through the block index of the file
+     * @param term: term of which we want vocabulary entry
+     * @param path: path of the vocabulary file
+     * @param vocabularySize: number of entries of the vocabulary file
+     * @return the vocabulary entry of given term, null if term is not in vocabulary
+     **/
+    static VocabularyEntry findEntry(String term, String path, long vocabularySize){
+        if(vocabularySize == 0)
+            return null;
 
-        VocabularyEntry entry = new VocabularyEntry(); //entry to be returned
-
-        long start = 0; //index of first element of vocabulary portion on which search is performed
-        long end = CollectionSize.getVocabularySize() -1; //index of last element of vocabulary portion on which search is performed
-        long mid; //index of element of the vocabulary to be read
-        String key; //term read from vocabulary
-        long entrySize = VocabularyEntry.ENTRY_SIZE; //size of a vocabulary entry
+        VocabularyFile vocabularyFile = VocabularyFile.get(path);
+        if(vocabularyFile == null)
+            return null;
 
+        return vocabularyFile.findEntry(term);
+    }
 
-        //performing binary search to get vocabulary entry
-        while (start <= end) {
+    /**
+     * builds the vocabulary entry of a term from its entries in the main index and in the appended segments:
+     * the statistics and the term upper bounds are computed on the whole collection
+     * @param term: term of which we want vocabulary entry
+     * @return the vocabulary entry of given term, null if term is in no segment
+     */
+    private VocabularyEntry findSegmentedEntry(String term){
+        VocabularyEntry entry = new VocabularyEntry(term);
 
-            // find new entry to read
-            mid = start + (end - start) / 2;
+        VocabularyEntry mainEntry = findEntry(term);
+        if(mainEntry != null)
+            entry.addSegmentEntry(mainEntry);
 
-            //get entry from disk
-            entry.readFromDisk(mid * entrySize, VOCABULARY_PATH);
-            key = entry.getTerm();
+        for(Segment segment: SegmentRegistry.getSegments()){
+            VocabularyEntry segmentEntry = segment.findEntry(term);
+            if(segmentEntry != null)
+                entry.addSegmentEntry(segmentEntry);
+        }
 
-            //check if the search was successful
-            if (key.equals(term)) {
-                return entry;
-            }
+        if(entry.getDf() == 0)
+            return null;
 
-            //update search portion parameters
-            if (term.compareTo(key) > 0) {
-                start = mid + 1;
-                continue;
-            }
+        entry.computeIDF();
+        entry.computeUpperBounds();
+        return entry;
+    }
 
-            end = mid - 1;
+    /**
+     * builds the vocabulary entry of a term from its entry on disk and the one in the in-memory segment, whose
+     * postings follow the ones on disk; the entries are cached until the in-memory segment changes
+     * @param term: term of which we want vocabulary entry
+     * @param diskEntry: the vocabulary entry of the term on disk, null if the term is not on disk
+     * @return the vocabulary entry of given term, null if term is neither on disk nor in memory
+     */
+    private VocabularyEntry findInMemoryEntry(String term, VocabularyEntry diskEntry){
+        // the version is read first, so a cached entry is never older than the version it is cached for
+        long version = inMemorySegment.getVersion();
+        if(version != inMemoryVersion){
+            inMemoryEntries.clear();
+            inMemoryVersion = version;
         }
-        return null;
+
+        if(inMemoryEntries.containsKey(term))
+            return inMemoryEntries.get(term);
+
+        VocabularyEntry memoryEntry = inMemorySegment.getEntry(term);
+        if(memoryEntry == null)
+            return diskEntry;
+
+        VocabularyEntry entry = new VocabularyEntry(term);
+        if(diskEntry != null)
+            entry.addSegmentEntry(diskEntry);
+        entry.addSegmentEntry(memoryEntry);
+        entry.computeIDF();
+        entry.computeUpperBounds();
+
+        inMemoryEntries.put(term, entry);
+        return entry;
+    }
+
+    /**
+     * sets the segment kept in memory, whose postings are added to the ones on disk
+     * @param segment: the in-memory segment, null to search only the index on disk
+     */
+    public static void setInMemorySegment(InMemorySegment segment) {
+        inMemorySegment = segment;
+        inMemoryEntries.clear();
+        inMemoryVersion = -1;
     }
 
     /** needed for testing purposes
@@ -148,6 +227,10 @@ public class Vocabulary extends LinkedHashMap<String, VocabularyEntry> {
     public static void clearCache() {
 
         entries.clear();
+        inMemoryEntries.clear();
+        VocabularyFile.invalidate(VOCABULARY_PATH);
+        BlockDescriptorTable.clear();
+        MappedFile.clear();
     }
 
     /**
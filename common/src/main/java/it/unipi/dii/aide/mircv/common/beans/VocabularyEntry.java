@@ -8,14 +8,9 @@ import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.CharBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
 
@@ -131,14 +126,51 @@ public class VocabularyEntry {
     private long blockOffset = 0;
 
     /**
-     * size of the term; if a term is greater than this size it'll be truncated
+     * size of the statistics of the term stored in the vocabulary: 7 ints, 3 doubles and 3 longs, total 76 bytes
      */
-    public static final int TERM_SIZE = 64;
+    public static final int STATS_SIZE = 76;
 
     /**
-     * we have to store the term size plus 7 ints, 3 double and 3 longs, total 136 bytes
+     * max number of postings stored in the statistics of the term instead of the inverted index: they take the
+     * place of the offsets and the sizes of the posting list, and the number of blocks is set to 0 to mark them
      */
-    public static final long ENTRY_SIZE = TERM_SIZE + 76;
+    public static final int MAX_INLINED_POSTINGS = 3;
+
+    /**
+     * docids of the postings stored in the vocabulary entry, null if the posting list is in the inverted index
+     */
+    private int[] inlinedDocids = null;
+
+    /**
+     * frequencies of the postings stored in the vocabulary entry, null if the posting list is in the inverted index
+     */
+    private int[] inlinedFrequencies = null;
+
+    /**
+     * segment storing the posting list of the term, null if it is stored in the main index
+     */
+    private Segment segment = null;
+
+    /**
+     * entries of the term in the main index and in the segments, in increasing docid order;
+     * set only for the entries built from the ones of several segments
+     */
+    private ArrayList<VocabularyEntry> segmentEntries = null;
+
+    /**
+     * block descriptors of the postings of the term in an in-memory segment, null if the term is stored on disk
+     */
+    private ArrayList<BlockDescriptor> inMemoryBlocks = null;
+
+    /**
+     * block descriptors of the index storing the posting list of the term, set when the posting list is opened
+     */
+    private BlockDescriptorTable blockTable = null;
+
+    /**
+     * index of the first block of the posting list in the block descriptors of its index
+     */
+    private int firstBlock = 0;
 
     /**
      * Constructor for the vocabulary entry
@@ -178,6 +210,99 @@ public class VocabularyEntry {
         }
     }
 
+    /**
+     * updates the statistics of the vocabulary with the ones of the term in an intermediate vocabulary:
+     * sums the df, updates the max tf and the BM25 parameters
+     *
+     * @param partialEntry the vocabulary entry of the term in the intermediate vocabulary
+     */
+    public void updateStatistics(VocabularyEntry partialEntry) {
+
+        // update the raw document frequency
+        this.df += partialEntry.df;
+
+        // update the max term frequency
+        if (partialEntry.maxTf > this.maxTf)
+            this.maxTf = partialEntry.maxTf;
+
+        // update the parameters of the BM25 term upper bound
+        updateBM25Statistics(partialEntry.BM25Tf, partialEntry.BM25Dl);
+    }
+
+    /**
+     * adds the entry of the term in a segment of the index, updating the statistics;
+     * the entries must be added in increasing docid order of the segments
+     *
+     * @param segmentEntry the vocabulary entry of the term in the segment
+     */
+    public void addSegmentEntry(VocabularyEntry segmentEntry) {
+        if (segmentEntries == null)
+            segmentEntries = new ArrayList<>();
+
+        segmentEntries.add(segmentEntry);
+        updateStatistics(segmentEntry);
+    }
+
+    /**
+     * sets the postings of the term in an in-memory segment, divided in blocks as the posting lists on disk
+     *
+     * @param docids      the docids of the postings, in increasing order
+     * @param frequencies the frequencies of the postings
+     * @param numPostings the number of postings, the first ones of the arrays
+     */
+    public void setInMemoryPostings(int[] docids, int[] frequencies, int numPostings) {
+        int blocks = numPostings >= 1024 ? (int) Math.ceil(Math.sqrt(numPostings)) : 1;
+        int blockSize = (int) Math.ceil(numPostings / (double) blocks);
+
+        inMemoryBlocks = new ArrayList<>();
+        for (int start = 0; start < numPostings; start += blockSize)
+            inMemoryBlocks.add(new InMemoryBlockDescriptor(docids, frequencies, start, Math.min(blockSize, numPostings - start)));
+        numBlocks = inMemoryBlocks.size();
+    }
+
+    /**
+     * stores the postings of the term in the vocabulary entry, so the posting list is read without accessing the
+     * block descriptors and the inverted index
+     *
+     * @param docids      the docids of the postings, in increasing order
+     * @param frequencies the frequencies of the postings
+     */
+    public void setInlinedPostings(int[] docids, int[] frequencies) {
+        inlinedDocids = docids;
+        inlinedFrequencies = frequencies;
+        docidOffset = 0;
+        frequencyOffset = 0;
+        docidSize = 0;
+        frequencySize = 0;
+        numBlocks = 0;
+        blockOffset = 0;
+        inMemoryBlocks = new ArrayList<>();
+        inMemoryBlocks.add(new InMemoryBlockDescriptor(docids, frequencies, 0, docids.length));
+    }
+
+    /**
+     * @return true if the postings of the term are stored in the vocabulary entry
+     */
+    public boolean isInlined() {
+        return inlinedDocids != null;
+    }
+
+    public int[] getInlinedDocids() {
+        return inlinedDocids;
+    }
+
+    public int[] getInlinedFrequencies() {
+        return inlinedFrequencies;
+    }
+
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public void setSegment(Segment segment) {
+        this.segment = segment;
+    }
+
     /**
      * Compute the idf using the values computed during the merging of the indexes
      */
@@ -206,122 +331,95 @@ public class VocabularyEntry {
     }
 
     /**
-     * @param fChan    : fileChannel of the vocabulary file
-     * @param position : position to start writing from
-     * @return offset representing the position of the last written byte
+     * appends the vocabulary entry to a vocabulary file written sequentially
+     *
+     * @param writer : writer of the vocabulary file
+     * @return offset representing the number of bytes written in the vocabulary file
      */
-    public long writeEntryToDisk(long position, FileChannel fChan) {
-        // instantiation of MappedByteBuffer
+    public long writeEntryToDisk(VocabularyWriter writer) {
         try {
-            MappedByteBuffer buffer = fChan.map(FileChannel.MapMode.READ_WRITE, position, ENTRY_SIZE);
-
-            // Buffer not created
-            if (buffer == null)
-                return -1;
-
-            //allocate char buffer to write term
-            CharBuffer charBuffer = CharBuffer.allocate(TERM_SIZE);
-
-            //populate char buffer char by char
-            for (int i = 0; i < term.length(); i++)
-                charBuffer.put(i, term.charAt(i));
-
-            // Write the term into file
-            buffer.put(StandardCharsets.UTF_8.encode(charBuffer));
-
-            // write statistics
-            buffer.putInt(df);
-            buffer.putDouble(idf);
-
-            // write term upper bound information
-            buffer.putInt(maxTf);
-            buffer.putInt(BM25Dl);
-            buffer.putInt(BM25Tf);
-            buffer.putDouble(maxTFIDF);
-            buffer.putDouble(maxBM25);
+            writer.write(this);
+            return writer.position();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
 
+    /**
+     * Write the statistics of the vocabulary entry in a buffer with at least STATS_SIZE bytes available
+     *
+     * @param buffer : buffer where the statistics are written, starting from its position
+     */
+    public void writeStatsToBuffer(ByteBuffer buffer) {
+        // write statistics
+        buffer.putInt(df);
+        buffer.putDouble(idf);
+
+        // write term upper bound information
+        buffer.putInt(maxTf);
+        buffer.putInt(BM25Dl);
+        buffer.putInt(BM25Tf);
+        buffer.putDouble(maxTFIDF);
+        buffer.putDouble(maxBM25);
+
+        if (inlinedDocids != null) {
+            // write the postings in place of the memory information
+            for (int i = 0; i < MAX_INLINED_POSTINGS; i++) {
+                buffer.putInt(i < inlinedDocids.length ? inlinedDocids[i] : 0);
+                buffer.putInt(i < inlinedDocids.length ? inlinedFrequencies[i] : 0);
+            }
+        } else {
             // write memory information
             buffer.putLong(docidOffset);
             buffer.putLong(frequencyOffset);
             buffer.putInt(docidSize);
             buffer.putInt(frequencySize);
-
-            // write block information
-            buffer.putInt(numBlocks);
-            buffer.putLong(blockOffset);
-
-            // return position for which we have to start writing on file
-            return position + ENTRY_SIZE;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return -1;
         }
+
+        // write block information
+        buffer.putInt(numBlocks);
+        buffer.putLong(blockOffset);
     }
 
     /**
-     * Read the document index entry from disk
+     * Read the statistics of the vocabulary entry from a buffer holding at least STATS_SIZE bytes;
+     * the position of the buffer is moved at the end of the statistics
      *
-     * @param memoryOffset the memory offset from which we start reading
-     * @param PATH         path of the file on disk
-     * @return the position of the last byte read
+     * @param buffer the buffer positioned at the beginning of the statistics
      */
-    public long readFromDisk(long memoryOffset, String PATH) {
-        // try to open a file channel to the file of the inverted index
-        try (FileChannel fChan = (FileChannel) Files.newByteChannel(
-                Paths.get(PATH),
-                StandardOpenOption.WRITE,
-                StandardOpenOption.READ,
-                StandardOpenOption.CREATE)) {
-
-            // instantiation of MappedByteBuffer for the PID read
-            MappedByteBuffer buffer = fChan.map(FileChannel.MapMode.READ_ONLY, memoryOffset, ENTRY_SIZE);
-
-            // Buffer not created
-            if (buffer == null)
-                return -1;
-
-            // Read from file into the charBuffer, then pass to the string
-            CharBuffer charBuffer = StandardCharsets.UTF_8.decode(buffer);
-
-            String[] encodedTerm = charBuffer.toString().split("\0");
-            if (encodedTerm.length == 0) // TODO: no more entries to read
-                return 0;
-
-            this.term = encodedTerm[0];
-
-            // Instantiate the buffer for reading other information
-            buffer = fChan.map(FileChannel.MapMode.READ_WRITE, memoryOffset + TERM_SIZE, ENTRY_SIZE - TERM_SIZE);
-
-            // Buffer not created
-            if (buffer == null)
-                return -1;
-
-            // read statistics
-            df = buffer.getInt();
-            idf = buffer.getDouble();
-
-            // read term upper bound information
-            maxTf = buffer.getInt();
-            BM25Dl = buffer.getInt();
-            BM25Tf = buffer.getInt();
-            maxTFIDF = buffer.getDouble();
-            maxBM25 = buffer.getDouble();
-
-            // read memory information
-            docidOffset = buffer.getLong();
-            frequencyOffset = buffer.getLong();
-            docidSize = buffer.getInt();
-            frequencySize = buffer.getInt();
-
-            // write block information
-            numBlocks = buffer.getInt();
-            blockOffset = buffer.getLong();
-
-            return memoryOffset + ENTRY_SIZE;
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            return -1;
+    public void readStatsFromBuffer(ByteBuffer buffer) {
+        // read statistics
+        df = buffer.getInt();
+        idf = buffer.getDouble();
+
+        // read term upper bound information
+        maxTf = buffer.getInt();
+        BM25Dl = buffer.getInt();
+        BM25Tf = buffer.getInt();
+        maxTFIDF = buffer.getDouble();
+        maxBM25 = buffer.getDouble();
+
+        // read memory information
+        int memoryPosition = buffer.position();
+        docidOffset = buffer.getLong();
+        frequencyOffset = buffer.getLong();
+        docidSize = buffer.getInt();
+        frequencySize = buffer.getInt();
+
+        // read block information
+        numBlocks = buffer.getInt();
+        blockOffset = buffer.getLong();
+
+        // no blocks: the memory information holds the postings of the term
+        if (numBlocks == 0 && df > 0) {
+            int[] docids = new int[df];
+            int[] frequencies = new int[df];
+            for (int i = 0; i < df; i++) {
+                docids[i] = buffer.getInt(memoryPosition + 8 * i);
+                frequencies[i] = buffer.getInt(memoryPosition + 8 * i + 4);
+            }
+            setInlinedPostings(docids, frequencies);
         }
     }
 
@@ -396,6 +494,10 @@ public class VocabularyEntry {
         this.idf = idf;
     }
 
+    public int getMaxTf() {
+        return maxTf;
+    }
+
     public void setMaxTf(int maxTf) {
         this.maxTf = maxTf;
     }
@@ -447,40 +549,71 @@ public class VocabularyEntry {
     }
 
     /**
-     * method to read from memory the block descriptors for the term
-     * @return the arrayList of the block descriptors
+     * collects the entries storing the blocks of the posting list of the term, in increasing docid order: the entries
+     * of the segments if the term is stored in several segments, otherwise this entry. The block descriptors of the
+     * entries stored on disk are looked up in the resident block descriptors of their index
+     * @param sources the list where the entries are added
+     * @return false if the block descriptors of an index cannot be loaded
      */
-    public ArrayList<BlockDescriptor> readBlocks(){
-        try(
-                FileChannel fileChannel = (FileChannel) Files.newByteChannel(
-                        Paths.get(BLOCK_DESCRIPTORS_PATH),
-                        StandardOpenOption.READ,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.CREATE
-                )
-        ){
-            ArrayList<BlockDescriptor> blocks = new ArrayList<>();
+    boolean collectBlockSources(ArrayList<VocabularyEntry> sources){
+        if(segmentEntries != null){
+            for(VocabularyEntry segmentEntry: segmentEntries)
+                if(!segmentEntry.collectBlockSources(sources))
+                    return false;
+            return true;
+        }
 
-            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, blockOffset, (long) numBlocks * BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES);
+        if(inMemoryBlocks == null){
+            blockTable = BlockDescriptorTable.get(segment == null ? BLOCK_DESCRIPTORS_PATH : segment.getBlockDescriptorsPath());
+            if(blockTable == null)
+                return false;
+            firstBlock = BlockDescriptorTable.getIndex(blockOffset);
+        }
+        sources.add(this);
+        return true;
+    }
 
-            if(buffer == null)
-                return null;
-            for(int i = 0; i < numBlocks; i++){
-                BlockDescriptor block = new BlockDescriptor();
-                block.setDocidOffset(buffer.getLong());
-                block.setDocidSize(buffer.getInt());
-                block.setFreqOffset(buffer.getLong());
-                block.setFreqSize(buffer.getInt());
-                block.setMaxDocid(buffer.getInt());
-                block.setNumPostings(buffer.getInt());
-                blocks.add(block);
+    /**
+     * @return the number of blocks of the posting list of an entry collected by collectBlockSources
+     */
+    int countBlocks(){
+        return inMemoryBlocks != null ? inMemoryBlocks.size() : numBlocks;
+    }
 
-            }
-            return blocks;
-        }catch(Exception e){
-            e.printStackTrace();
-            return null;
-        }
+    /**
+     * @param block position of the block in the posting list
+     * @return the max docid of the block
+     */
+    int getBlockMaxDocid(int block){
+        if(inMemoryBlocks != null)
+            return inMemoryBlocks.get(block).getMaxDocid();
+        return blockTable.getMaxDocid(firstBlock + block);
+    }
+
+    /**
+     * @param block position of the block in the posting list
+     * @return the postings of the block, whose frequencies are decoded at the first access
+     */
+    BlockPostings readBlock(int block){
+        if(inMemoryBlocks != null)
+            return inMemoryBlocks.get(block).readBlock();
+        // the postings of a segment are read from its own inverted index
+        if(segment != null)
+            return blockTable.readBlock(firstBlock + block, segment.getInvertedIndexDocsPath(), segment.getInvertedIndexFreqsPath());
+        return blockTable.readBlock(firstBlock + block, null, null);
+    }
+
+    /**
+     * loads in memory the pages of a block stored in the inverted index, the blocks held in memory are skipped
+     * @param block position of the block in the posting list
+     */
+    void prefetchBlock(int block){
+        if(inMemoryBlocks != null)
+            return;
+        if(segment != null)
+            blockTable.prefetchBlock(firstBlock + block, segment.getInvertedIndexDocsPath(), segment.getInvertedIndexFreqsPath());
+        else
+            blockTable.prefetchBlock(firstBlock + block, null, null);
     }
 
     @Override
@@ -498,7 +631,8 @@ public class VocabularyEntry {
                 ", docidSize=" + docidSize +
                 ", frequencySize=" + frequencySize +
                 ", numBlocks=" + numBlocks +
-                ", blockOffset=" + blockOffset;
+                ", blockOffset=" + blockOffset +
+                (inlinedDocids == null ? "" : ", inlinedDocids=" + Arrays.toString(inlinedDocids) + ", inlinedFrequencies=" + Arrays.toString(inlinedFrequencies));
     }
 
     static double truncate(double value) {
@@ -515,7 +649,7 @@ public class VocabularyEntry {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         VocabularyEntry that = (VocabularyEntry) o;
-        return df == that.df && Double.compare(truncate(that.idf), truncate(idf)) == 0 && maxTf == that.maxTf && BM25Dl == that.BM25Dl && BM25Tf == that.BM25Tf && Double.compare(truncate(that.maxTFIDF), truncate(maxTFIDF)) == 0 && Double.compare(truncate(that.maxBM25), truncate(maxBM25)) == 0 && docidOffset == that.docidOffset && frequencyOffset == that.frequencyOffset && docidSize == that.docidSize && frequencySize == that.frequencySize && numBlocks == that.numBlocks && blockOffset == that.blockOffset && Objects.equals(term, that.term);
+        return df == that.df && Double.compare(truncate(that.idf), truncate(idf)) == 0 && maxTf == that.maxTf && BM25Dl == that.BM25Dl && BM25Tf == that.BM25Tf && Double.compare(truncate(that.maxTFIDF), truncate(maxTFIDF)) == 0 && Double.compare(truncate(that.maxBM25), truncate(maxBM25)) == 0 && docidOffset == that.docidOffset && frequencyOffset == that.frequencyOffset && docidSize == that.docidSize && frequencySize == that.frequencySize && numBlocks == that.numBlocks && blockOffset == that.blockOffset && Objects.equals(term, that.term) && Arrays.equals(inlinedDocids, that.inlinedDocids) && Arrays.equals(inlinedFrequencies, that.inlinedFrequencies);
     }
 
     /**
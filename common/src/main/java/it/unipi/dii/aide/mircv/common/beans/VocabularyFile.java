@@ -0,0 +1,360 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vocabulary file written by the VocabularyWriter, made of three files: the front coded terms at the path of the
+ * vocabulary, the column of the statistics of the terms and the block index. The block index is held in memory,
+ * so the lookup of a term reads only the block which may contain it and then the statistics of the term.
+ * When the perfect hash of the terms was built for the vocabulary, it is memory mapped and the ordinal of a
+ * term is found in constant time, without reading the terms
+ */
+public class VocabularyFile {
+
+    /**
+     * suffix of the path of the statistics of the terms
+     */
+    private static final String STATS_SUFFIX = "_stats";
+
+    /**
+     * suffix of the path of the block index
+     */
+    private static final String INDEX_SUFFIX = "_index";
+
+    /**
+     * suffix of the path of the perfect hash of the terms
+     */
+    private static final String HASH_SUFFIX = "_hash";
+
+    /**
+     * block indexes loaded in memory, with the path of the vocabulary as key
+     */
+    private static final ConcurrentHashMap<String, VocabularyFile> loadedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * path of the vocabulary
+     */
+    private final String path;
+
+    /**
+     * number of terms in a block
+     */
+    private final int blockSize;
+
+    /**
+     * number of terms of the vocabulary
+     */
+    private final long numTerms;
+
+    /**
+     * first term of each block
+     */
+    private final String[] firstTerms;
+
+    /**
+     * offset in the terms file of each block, followed by the size of the terms file
+     */
+    private final long[] blockOffsets;
+
+    /**
+     * perfect hash of the terms, null if it wasn't built
+     */
+    private final TermHash termHash;
+
+    /**
+     * loads the block index of a vocabulary and maps the hash of its terms, if present
+     *
+     * @param path path of the vocabulary
+     * @throws IOException if an error occurs while reading the block index
+     */
+    private VocabularyFile(String path) throws IOException {
+        this.path = path;
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(getIndexPath(path))))) {
+            blockSize = index.readInt();
+            numTerms = index.readLong();
+            firstTerms = new String[index.readInt()];
+            blockOffsets = new long[firstTerms.length + 1];
+            for (int i = 0; i < firstTerms.length; i++) {
+                blockOffsets[i] = index.readLong();
+                firstTerms[i] = index.readUTF();
+            }
+        }
+        blockOffsets[firstTerms.length] = Files.size(Paths.get(path));
+        termHash = TermHash.open(path);
+    }
+
+    /**
+     * returns the vocabulary at the given path, loading its block index the first time it is used
+     *
+     * @param path path of the vocabulary
+     * @return the vocabulary, null if its block index cannot be read
+     */
+    public static VocabularyFile get(String path) {
+        VocabularyFile file = loadedFiles.get(path);
+        if (file != null)
+            return file;
+
+        try {
+            file = new VocabularyFile(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        loadedFiles.put(path, file);
+        return file;
+    }
+
+    /**
+     * discards the block index loaded for a vocabulary, which must be loaded again at the next lookup
+     *
+     * @param path path of the vocabulary
+     */
+    public static void invalidate(String path) {
+        if (path == null)
+            return;
+        loadedFiles.remove(path);
+        MappedFile.invalidate(path);
+        MappedFile.invalidate(getStatsPath(path));
+        MappedFile.invalidate(getHashPath(path));
+    }
+
+    /**
+     * retrieves the vocabulary entry of a term, finding its ordinal with the hash of the terms if present,
+     * otherwise with the block index
+     *
+     * @param term the term to look for
+     * @return the vocabulary entry of the term, null if the term is not in the vocabulary
+     */
+    public VocabularyEntry findEntry(String term) {
+        return readEntry(term, findOrdinal(term));
+    }
+
+    /**
+     * @param term the term to look for
+     * @return the ordinal of the term in the vocabulary, -1 if the term is not in the vocabulary
+     */
+    public long findOrdinal(String term) {
+        if (termHash != null)
+            return termHash.getOrdinal(term);
+        return findOrdinalInBlocks(term);
+    }
+
+    /**
+     * finds the ordinal of a term with the block index: the index is searched for the last block whose first term
+     * is not greater than the term, then the terms of the block are decoded until the term is found
+     *
+     * @param term the term to look for
+     * @return the ordinal of the term in the vocabulary, -1 if the term is not in the vocabulary
+     */
+    public long findOrdinalInBlocks(String term) {
+        // binary search of the block
+        int block = -1;
+        int start = 0;
+        int end = firstTerms.length - 1;
+        while (start <= end) {
+            int mid = start + (end - start) / 2;
+            if (firstTerms[mid].compareTo(term) <= 0) {
+                block = mid;
+                start = mid + 1;
+            } else
+                end = mid - 1;
+        }
+        if (block == -1)
+            return -1;
+
+        try {
+            ByteBuffer buffer = read(path, blockOffsets[block], (int) (blockOffsets[block + 1] - blockOffsets[block]));
+
+            // scan of the block, whose terms are in increasing order
+            byte[] lastTerm = new byte[0];
+            for (int i = 0; buffer.hasRemaining(); i++) {
+                int prefix = readLength(buffer);
+                byte[] encodedTerm = new byte[prefix + readLength(buffer)];
+                System.arraycopy(lastTerm, 0, encodedTerm, 0, prefix);
+                buffer.get(encodedTerm, prefix, encodedTerm.length - prefix);
+                lastTerm = encodedTerm;
+
+                int comparison = new String(encodedTerm, StandardCharsets.UTF_8).compareTo(term);
+                if (comparison > 0)
+                    return -1;
+                if (comparison == 0)
+                    return (long) block * blockSize + i;
+            }
+            return -1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * reads the statistics of a term from the column of the statistics
+     *
+     * @param term    the term
+     * @param ordinal the ordinal of the term in the vocabulary, -1 if the term is not in the vocabulary
+     * @return the vocabulary entry of the term, null if the term is not in the vocabulary
+     */
+    public VocabularyEntry readEntry(String term, long ordinal) {
+        if (ordinal == -1)
+            return null;
+
+        try {
+            VocabularyEntry entry = new VocabularyEntry(term);
+            entry.readStatsFromBuffer(read(getStatsPath(path), ordinal * VocabularyEntry.STATS_SIZE, VocabularyEntry.STATS_SIZE));
+            return entry;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * reads a region of a file, served from the copy of the file in off-heap memory in resident mode
+     *
+     * @param path     path of the file
+     * @param position position of the region in the file
+     * @param size     size of the region
+     * @return the buffer holding the region
+     * @throws IOException if an error occurs while reading or the file is shorter than expected
+     */
+    private static ByteBuffer read(String path, long position, int size) throws IOException {
+        if (MappedFile.isResidentMode()) {
+            MappedFile file = MappedFile.get(path);
+            ByteBuffer buffer = file == null ? null : file.slice(position, size);
+            if (buffer == null)
+                throw new EOFException("unexpected end of file while reading " + path);
+            return buffer;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) == -1)
+                    throw new EOFException("unexpected end of file while reading " + path);
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * reads a length written with 7 bits per byte, the highest bit telling if other bytes follow
+     *
+     * @param buffer the buffer positioned at the length
+     * @return the length
+     */
+    private static int readLength(ByteBuffer buffer) {
+        int length = 0;
+        int shift = 0;
+        byte elem;
+        do {
+            elem = buffer.get();
+            length |= (elem & 127) << shift;
+            shift += 7;
+        } while ((elem & 128) != 0);
+        return length;
+    }
+
+    /**
+     * @return the number of terms of the vocabulary
+     */
+    public long getNumTerms() {
+        return numTerms;
+    }
+
+    /**
+     * @return the number of blocks of the vocabulary
+     */
+    public int getNumBlocks() {
+        return firstTerms.length;
+    }
+
+    /**
+     * @return true if the hash of the terms was built for the vocabulary
+     */
+    public boolean hasTermHash() {
+        return termHash != null;
+    }
+
+    /**
+     * @param path path of the vocabulary
+     * @return the path of the statistics of the terms
+     */
+    public static String getStatsPath(String path) {
+        return path + STATS_SUFFIX;
+    }
+
+    /**
+     * @param path path of the vocabulary
+     * @return the path of the block index
+     */
+    public static String getIndexPath(String path) {
+        return path + INDEX_SUFFIX;
+    }
+
+    /**
+     * @param path path of the vocabulary
+     * @return the path of the perfect hash of the terms
+     */
+    public static String getHashPath(String path) {
+        return path + HASH_SUFFIX;
+    }
+
+    /**
+     * @param path path of the vocabulary
+     * @return the total size in bytes of the files of the vocabulary
+     * @throws IOException if one of the files cannot be read
+     */
+    public static long size(String path) throws IOException {
+        long size = Files.size(Paths.get(path)) + Files.size(Paths.get(getStatsPath(path))) + Files.size(Paths.get(getIndexPath(path)));
+        if (Files.exists(Paths.get(getHashPath(path))))
+            size += Files.size(Paths.get(getHashPath(path)));
+        return size;
+    }
+
+    /**
+     * removes the files of a vocabulary
+     *
+     * @param path path of the vocabulary
+     */
+    public static void remove(String path) {
+        FileUtils.removeFile(path);
+        FileUtils.removeFile(getStatsPath(path));
+        FileUtils.removeFile(getIndexPath(path));
+        FileUtils.removeFile(getHashPath(path));
+        invalidate(path);
+    }
+
+    /**
+     * moves the files of a vocabulary, replacing the ones of the target vocabulary
+     *
+     * @param source path of the vocabulary to be moved
+     * @param target path of the vocabulary to be replaced
+     * @throws IOException if one of the files cannot be moved
+     */
+    public static void move(String source, String target) throws IOException {
+        Files.move(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(Paths.get(getStatsPath(source)), Paths.get(getStatsPath(target)), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(Paths.get(getIndexPath(source)), Paths.get(getIndexPath(target)), StandardCopyOption.REPLACE_EXISTING);
+        if (Files.exists(Paths.get(getHashPath(source))))
+            Files.move(Paths.get(getHashPath(source)), Paths.get(getHashPath(target)), StandardCopyOption.REPLACE_EXISTING);
+        else
+            FileUtils.removeFile(getHashPath(target));
+        invalidate(source);
+        invalidate(target);
+    }
+}
@@ -0,0 +1,116 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential reader of a vocabulary file written by the VocabularyWriter: the front coded terms and their
+ * statistics are scanned in increasing term order through buffered readers, without the block index
+ */
+public class VocabularyReader implements AutoCloseable {
+
+    /**
+     * reader of the front coded terms
+     */
+    private final BufferedChannelReader termsReader;
+
+    /**
+     * reader of the statistics of the terms
+     */
+    private final BufferedChannelReader statsReader;
+
+    /**
+     * encoded bytes of the last term read, whose prefix is shared with the next one
+     */
+    private byte[] lastTerm = new byte[0];
+
+    /**
+     * opens the files of a vocabulary
+     *
+     * @param path path of the vocabulary
+     * @throws IOException if the files cannot be opened
+     */
+    public VocabularyReader(String path) throws IOException {
+        this.termsReader = new BufferedChannelReader(path);
+        try {
+            this.statsReader = new BufferedChannelReader(VocabularyFile.getStatsPath(path));
+        } catch (IOException e) {
+            termsReader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads the next entry of the vocabulary
+     *
+     * @return the vocabulary entry, null if there are no more entries to be read
+     * @throws IOException if an error occurs while reading
+     */
+    public VocabularyEntry next() throws IOException {
+        String term = nextTerm();
+        if (term == null)
+            return null;
+
+        VocabularyEntry entry = new VocabularyEntry(term);
+        entry.readStatsFromBuffer(statsReader.require(VocabularyEntry.STATS_SIZE));
+        return entry;
+    }
+
+    /**
+     * reads the next term of the vocabulary, without its statistics
+     *
+     * @return the term, null if there are no more terms to be read
+     * @throws IOException if an error occurs while reading
+     */
+    String nextTerm() throws IOException {
+        if (!termsReader.hasRemaining())
+            return null;
+
+        int prefix = readLength(termsReader);
+        int suffix = readLength(termsReader);
+
+        byte[] term = new byte[prefix + suffix];
+        System.arraycopy(lastTerm, 0, term, 0, prefix);
+        termsReader.require(suffix).get(term, prefix, suffix);
+
+        lastTerm = term;
+        return new String(term, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads a length written with 7 bits per byte, the highest bit telling if other bytes follow
+     *
+     * @param reader the reader of the file
+     * @return the length
+     * @throws IOException if the end of file is reached
+     */
+    private static int readLength(BufferedChannelReader reader) throws IOException {
+        int length = 0;
+        int shift = 0;
+        byte elem;
+        do {
+            elem = reader.get();
+            length |= (elem & 127) << shift;
+            shift += 7;
+        } while ((elem & 128) != 0);
+        return length;
+    }
+
+    /**
+     * @return the position in the terms file of the next term to be read
+     */
+    long getTermsPosition() {
+        return termsReader.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            termsReader.close();
+        } finally {
+            statsReader.close();
+        }
+    }
+}
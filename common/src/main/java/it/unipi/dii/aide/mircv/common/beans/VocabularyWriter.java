@@ -0,0 +1,250 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Sequential writer of a vocabulary file, whose entries must be added in increasing term order.
+ * The terms are front coded in blocks of a fixed number of terms: the first term of a block is stored entirely,
+ * each of the following ones as the length of the prefix shared with the previous term and the remaining suffix.
+ * The statistics of the terms are stored in a separate column of fixed width entries, in the same order of the
+ * terms, and the first term and the offset of each block are stored in the block index, written when the writer
+ * is closed
+ */
+public class VocabularyWriter implements AutoCloseable {
+
+    /**
+     * number of terms in a block of the vocabulary
+     */
+    private static int BLOCK_SIZE = ConfigurationParameters.getVocabularyBlockSize();
+
+    /**
+     * max number of bytes of the lengths written before the suffix of a term
+     */
+    private static final int MAX_LENGTHS_BYTES = 10;
+
+    /**
+     * path of the vocabulary
+     */
+    private final String path;
+
+    /**
+     * number of terms in a block of this vocabulary
+     */
+    private final int blockSize;
+
+    /**
+     * writer of the front coded terms
+     */
+    private final BufferedChannelWriter termsWriter;
+
+    /**
+     * writer of the statistics of the terms
+     */
+    private final BufferedChannelWriter statsWriter;
+
+    /**
+     * first term of each block
+     */
+    private final ArrayList<String> firstTerms = new ArrayList<>();
+
+    /**
+     * offset in the terms file of each block
+     */
+    private final ArrayList<Long> blockOffsets = new ArrayList<>();
+
+    /**
+     * number of terms written
+     */
+    private long numTerms = 0;
+
+    /**
+     * encoded bytes of the last term written, used to front code the next one
+     */
+    private byte[] lastTerm = new byte[0];
+
+    /**
+     * creates the files of the vocabulary, discarding their previous content
+     *
+     * @param path path of the vocabulary
+     * @throws IOException if the files cannot be opened
+     */
+    public VocabularyWriter(String path) throws IOException {
+        this(path, new BufferedChannelWriter(path), new BufferedChannelWriter(VocabularyFile.getStatsPath(path)));
+    }
+
+    /**
+     * @param path        path of the vocabulary
+     * @param termsWriter writer of the terms, positioned after the terms already written
+     * @param statsWriter writer of the statistics, positioned after the statistics already written
+     */
+    private VocabularyWriter(String path, BufferedChannelWriter termsWriter, BufferedChannelWriter statsWriter) {
+        this.path = path;
+        this.blockSize = BLOCK_SIZE;
+        this.termsWriter = termsWriter;
+        this.statsWriter = statsWriter;
+
+        // the hash of the terms of a previous vocabulary is no longer valid
+        FileUtils.removeFile(VocabularyFile.getHashPath(path));
+    }
+
+    /**
+     * opens the files of a vocabulary to continue writing it after its first terms, discarding the bytes following
+     * them: used to continue writing a vocabulary from the last checkpoint of an interrupted run.
+     * The block index of the kept terms is rebuilt reading them again
+     *
+     * @param path       path of the vocabulary
+     * @param numTerms   number of terms to be kept
+     * @param termsBytes number of bytes of the terms file storing them
+     * @return the writer positioned after the kept terms
+     * @throws IOException if the files cannot be opened or they are shorter than expected
+     */
+    public static VocabularyWriter resume(String path, long numTerms, long termsBytes) throws IOException {
+        VocabularyWriter writer = new VocabularyWriter(path,
+                BufferedChannelWriter.resume(path, termsBytes),
+                BufferedChannelWriter.resume(VocabularyFile.getStatsPath(path), numTerms * VocabularyEntry.STATS_SIZE));
+
+        try (VocabularyReader reader = new VocabularyReader(path)) {
+            for (long i = 0; i < numTerms; i++) {
+                long offset = reader.getTermsPosition();
+                String term = reader.nextTerm();
+                if (term == null)
+                    throw new IOException(path + " has " + i + " terms, expected " + numTerms);
+
+                if (i % writer.blockSize == 0) {
+                    writer.firstTerms.add(term);
+                    writer.blockOffsets.add(offset);
+                }
+                writer.lastTerm = term.getBytes(StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            writer.termsWriter.close();
+            writer.statsWriter.close();
+            throw e;
+        }
+        writer.numTerms = numTerms;
+        return writer;
+    }
+
+    /**
+     * appends the entry of a term, which must follow the last term written
+     *
+     * @param entry the vocabulary entry
+     * @throws IOException if an error occurs while writing
+     */
+    public void write(VocabularyEntry entry) throws IOException {
+        byte[] term = entry.getTerm().getBytes(StandardCharsets.UTF_8);
+
+        // the first term of a block is stored entirely
+        int prefix = 0;
+        if (numTerms % blockSize == 0) {
+            firstTerms.add(entry.getTerm());
+            blockOffsets.add(termsWriter.position());
+        } else {
+            int maxPrefix = Math.min(term.length, lastTerm.length);
+            while (prefix < maxPrefix && term[prefix] == lastTerm[prefix])
+                prefix++;
+        }
+
+        ByteBuffer buffer = termsWriter.reserve(MAX_LENGTHS_BYTES + term.length - prefix);
+        putLength(buffer, prefix);
+        putLength(buffer, term.length - prefix);
+        buffer.put(term, prefix, term.length - prefix);
+
+        entry.writeStatsToBuffer(statsWriter.reserve(VocabularyEntry.STATS_SIZE));
+
+        lastTerm = term;
+        numTerms++;
+    }
+
+    /**
+     * writes a length with 7 bits per byte, the highest bit telling if other bytes follow
+     *
+     * @param buffer the buffer where the length is written
+     * @param length the length
+     */
+    private static void putLength(ByteBuffer buffer, int length) {
+        while (length >= 128) {
+            buffer.put((byte) ((length & 127) | 128));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+    }
+
+    /**
+     * @return the number of terms written
+     */
+    public long getNumTerms() {
+        return numTerms;
+    }
+
+    /**
+     * @return the number of bytes of the terms file, needed to resume writing after them
+     */
+    public long getTermsPosition() {
+        return termsWriter.position();
+    }
+
+    /**
+     * @return the number of bytes written in the terms and statistics files
+     */
+    public long position() {
+        return termsWriter.position() + statsWriter.position();
+    }
+
+    /**
+     * writes to the files the buffered terms and statistics
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    public void flush() throws IOException {
+        termsWriter.flush();
+        statsWriter.flush();
+    }
+
+    /**
+     * writes the block index: the number of terms in a block, the number of terms, the number of blocks and then
+     * the offset and the first term of each block
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    private void writeBlockIndex() throws IOException {
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(VocabularyFile.getIndexPath(path))))) {
+            index.writeInt(blockSize);
+            index.writeLong(numTerms);
+            index.writeInt(firstTerms.size());
+            for (int i = 0; i < firstTerms.size(); i++) {
+                index.writeLong(blockOffsets.get(i));
+                index.writeUTF(firstTerms.get(i));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            termsWriter.close();
+            statsWriter.close();
+            writeBlockIndex();
+        } finally {
+            // the block index loaded before the vocabulary was rewritten is no longer valid
+            VocabularyFile.invalidate(path);
+        }
+    }
+
+    /** needed for testing purposes
+     * @param blockSize: number of terms in a block of the vocabularies written
+     */
+    public static void setBlockSize(int blockSize) {
+        BLOCK_SIZE = blockSize;
+    }
+}
@@ -1,5 +1,6 @@
 package it.unipi.dii.aide.mircv.common.compression;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import static java.lang.Math.log;
@@ -40,6 +41,35 @@ public class VariableByteCompressor {
         return output;
     }
 
+    /**
+     * maximum number of bytes of a compressed integer
+     */
+    public static final int MAX_COMPRESSED_BYTES = 5;
+
+    /**
+     * Method for compressing a single integer directly in a buffer, without allocating the byte array.
+     * The format is the same of integerCompression, except for 0 that is written as a single termination byte
+     * so that it can be decompressed
+     * @param toBeCompressed the non negative integer to be compressed
+     * @param buffer the buffer where the compressed bytes are put, with at least MAX_COMPRESSED_BYTES bytes available
+     * @return the number of bytes written
+     */
+    public static int integerCompression(int toBeCompressed, ByteBuffer buffer){
+
+        // compute the number of bytes needed, 7 bits per byte
+        int numBytes = 1;
+        while((toBeCompressed >>> (7 * numBytes)) != 0 && numBytes < MAX_COMPRESSED_BYTES)
+            numBytes++;
+
+        // write the groups of 7 bits starting from the most significant one
+        for(int position = numBytes - 1; position > 0; position--)
+            buffer.put((byte) ((toBeCompressed >>> (7 * position)) & 127));
+
+        // the least significant byte has the most significant bit set to 1
+        buffer.put((byte) ((toBeCompressed & 127) | 128));
+        return numBytes;
+    }
+
     /**
      * Method to compress an array of integers into an array of bytes using Unary compression algorithm
      * @param toBeCompressed: array of integers to be compressed
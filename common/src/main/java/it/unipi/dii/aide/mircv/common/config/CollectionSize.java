@@ -137,7 +137,7 @@ public class CollectionSize{
 
     }
 
-    /** needed for testing purposes
+    /** needed for testing purposes and to count the documents added in memory, without saving the value on disk
      * @param size: path to be set
      */
     public static void setCollectionSize(int size) { CollectionSize.collectionSize = size;}
@@ -23,6 +23,21 @@ public class ConfigurationParameters {
     private static String collectionStatisticsPath;
     private static String blockDescriptorsPath;
     private static String flagsFilePath;
+    private static long spimiMemoryBudget = 0;
+    private static String segmentsDir;
+    private static int segmentMergeFactor = 4;
+    private static long realTimeBufferSize = 16 * 1024 * 1024;
+    private static String deletedDocumentsPath;
+    private static double compactionThreshold = 0.2;
+    private static String checkpointPath;
+    private static int mergeCheckpointInterval = 100000;
+    private static int stemmingCacheSize = 100000;
+    private static int vocabularyBlockSize = 32;
+    private static boolean termHashEnabled = false;
+    private static boolean inlinePostingsEnabled = false;
+    private static boolean blockPrefetchingEnabled = false;
+    private static String tokenizedCollectionPath;
+    private static String tokenizedTermsPath;
 
     static {
         try{
@@ -57,6 +72,43 @@ public class ConfigurationParameters {
                 collectionStatisticsPath = doc.getElementsByTagName("collectionStatisticsPath").item(0).getTextContent();
                 blockDescriptorsPath = doc.getElementsByTagName("blockDescriptorsPath").item(0).getTextContent();
                 flagsFilePath = doc.getElementsByTagName("flagsFilePath").item(0).getTextContent();
+
+                // optional parameters, the default is used if they are missing
+                if(doc.getElementsByTagName("spimiMemoryBudgetMB").getLength() > 0)
+                    spimiMemoryBudget = Long.parseLong(doc.getElementsByTagName("spimiMemoryBudgetMB").item(0).getTextContent().trim()) * 1024 * 1024;
+                segmentsDir = "data/segments";
+                if(doc.getElementsByTagName("segmentsDir").getLength() > 0)
+                    segmentsDir = doc.getElementsByTagName("segmentsDir").item(0).getTextContent().trim();
+                if(doc.getElementsByTagName("segmentMergeFactor").getLength() > 0)
+                    segmentMergeFactor = Integer.parseInt(doc.getElementsByTagName("segmentMergeFactor").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("realTimeBufferMB").getLength() > 0)
+                    realTimeBufferSize = Long.parseLong(doc.getElementsByTagName("realTimeBufferMB").item(0).getTextContent().trim()) * 1024 * 1024;
+                deletedDocumentsPath = "data/deletedDocuments";
+                if(doc.getElementsByTagName("deletedDocumentsPath").getLength() > 0)
+                    deletedDocumentsPath = doc.getElementsByTagName("deletedDocumentsPath").item(0).getTextContent().trim();
+                if(doc.getElementsByTagName("compactionThreshold").getLength() > 0)
+                    compactionThreshold = Double.parseDouble(doc.getElementsByTagName("compactionThreshold").item(0).getTextContent().trim());
+                checkpointPath = "data/checkpoint";
+                if(doc.getElementsByTagName("checkpointPath").getLength() > 0)
+                    checkpointPath = doc.getElementsByTagName("checkpointPath").item(0).getTextContent().trim();
+                if(doc.getElementsByTagName("mergeCheckpointInterval").getLength() > 0)
+                    mergeCheckpointInterval = Integer.parseInt(doc.getElementsByTagName("mergeCheckpointInterval").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("stemmingCacheSize").getLength() > 0)
+                    stemmingCacheSize = Integer.parseInt(doc.getElementsByTagName("stemmingCacheSize").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("vocabularyBlockSize").getLength() > 0)
+                    vocabularyBlockSize = Integer.parseInt(doc.getElementsByTagName("vocabularyBlockSize").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("termHashEnabled").getLength() > 0)
+                    termHashEnabled = Boolean.parseBoolean(doc.getElementsByTagName("termHashEnabled").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("inlinePostingsEnabled").getLength() > 0)
+                    inlinePostingsEnabled = Boolean.parseBoolean(doc.getElementsByTagName("inlinePostingsEnabled").item(0).getTextContent().trim());
+                if(doc.getElementsByTagName("blockPrefetchingEnabled").getLength() > 0)
+                    blockPrefetchingEnabled = Boolean.parseBoolean(doc.getElementsByTagName("blockPrefetchingEnabled").item(0).getTextContent().trim());
+                tokenizedCollectionPath = "data/tokenized_collection";
+                if(doc.getElementsByTagName("tokenizedCollectionPath").getLength() > 0)
+                    tokenizedCollectionPath = doc.getElementsByTagName("tokenizedCollectionPath").item(0).getTextContent().trim();
+                tokenizedTermsPath = "data/tokenized_terms";
+                if(doc.getElementsByTagName("tokenizedTermsPath").getLength() > 0)
+                    tokenizedTermsPath = doc.getElementsByTagName("tokenizedTermsPath").item(0).getTextContent().trim();
             }
 
         } catch(Exception e) {
@@ -99,4 +151,85 @@ public class ConfigurationParameters {
     public static String getBlockDescriptorsPath() {return blockDescriptorsPath;}
 
     public static String getFlagsFilePath() {return flagsFilePath;}
+
+    /**
+     * @return the number of bytes the in-memory partial index of SPIMI can occupy before being flushed;
+     * if it is not configured a third of the maximum heap size is used
+     */
+    public static long getSpimiMemoryBudget() {
+        if(spimiMemoryBudget > 0)
+            return spimiMemoryBudget;
+        return Runtime.getRuntime().maxMemory() / 3;
+    }
+
+    /**
+     * @return the directory storing the segments appended to the index, null if not configured
+     */
+    public static String getSegmentsDir() {return segmentsDir;}
+
+    /**
+     * @return the number of segments of similar size that are merged together by the segment merge policy
+     */
+    public static int getSegmentMergeFactor() {return Math.max(2, segmentMergeFactor);}
+
+    /**
+     * @return the number of bytes the in-memory segment of the documents added while serving queries can occupy
+     * before being written on disk as a new segment
+     */
+    public static long getRealTimeBufferSize() {return realTimeBufferSize;}
+
+    /**
+     * @return the path to the bitset of the deleted documents, null if not configured
+     */
+    public static String getDeletedDocumentsPath() {return deletedDocumentsPath;}
+
+    /**
+     * @return the fraction of deleted documents above which the index is compacted
+     */
+    public static double getCompactionThreshold() {return compactionThreshold;}
+
+    /**
+     * @return the path to the checkpoint of the indexing, null if not configured
+     */
+    public static String getCheckpointPath() {return checkpointPath;}
+
+    /**
+     * @return the number of terms merged between two checkpoints of the merge
+     */
+    public static int getMergeCheckpointInterval() {return mergeCheckpointInterval;}
+
+    /**
+     * @return the maximum number of stems memoized by the stemming service
+     */
+    public static int getStemmingCacheSize() {return stemmingCacheSize;}
+
+    /**
+     * @return the number of front coded terms in a block of the vocabulary
+     */
+    public static int getVocabularyBlockSize() {return vocabularyBlockSize;}
+
+    /**
+     * @return true if the perfect hash of the terms is built with each merged vocabulary
+     */
+    public static boolean isTermHashEnabled() {return termHashEnabled;}
+
+    /**
+     * @return true if the merger stores the shortest posting lists in the vocabulary instead of the inverted index
+     */
+    public static boolean isInlinePostingsEnabled() {return inlinePostingsEnabled;}
+
+    /**
+     * @return true if the blocks of the posting lists are loaded in memory by a helper thread before they are read
+     */
+    public static boolean isBlockPrefetchingEnabled() {return blockPrefetchingEnabled;}
+
+    /**
+     * @return the path to the token stream of the tokenized collection, null if not configured
+     */
+    public static String getTokenizedCollectionPath() {return tokenizedCollectionPath;}
+
+    /**
+     * @return the path to the term table of the tokenized collection, null if not configured
+     */
+    public static String getTokenizedTermsPath() {return tokenizedTermsPath;}
 }
@@ -27,6 +27,10 @@ public class Flags {
      * flag for enabling the max score algorithm to score queries
      */
     private static boolean maxScore;
+    /**
+     * flag telling whether each block of the inverted index stores its frequencies after its docids, in the docids file
+     */
+    private static boolean interleavedLayout;
 
     /**
      * reads the flags from file and initialize the relative booleans
@@ -44,6 +48,8 @@ public class Flags {
             compression = flagsDataStream.readBoolean();
             stemStopRemoval = flagsDataStream.readBoolean();
             maxScore = flagsDataStream.readBoolean();
+            // the files written before the interleaved layout was introduced store only three flags
+            interleavedLayout = flagsDataStream.available() > 0 && flagsDataStream.readBoolean();
 
             return true;
 
@@ -60,9 +66,10 @@ public class Flags {
      * @param compressionFlag     to set compression
      * @param stemStopRemovalFlag to set setemming and stopword removal
      * @param maxScoreFlag        to set max score algorithm
+     * @param interleavedLayoutFlag to set the interleaved layout of the blocks
      * @return true if successful
      */
-    public static boolean saveFlags(boolean compressionFlag, boolean stemStopRemovalFlag, boolean maxScoreFlag) {
+    public static boolean saveFlags(boolean compressionFlag, boolean stemStopRemovalFlag, boolean maxScoreFlag, boolean interleavedLayoutFlag) {
 
         try (
                 FileOutputStream flagsOutStream = new FileOutputStream(FLAGS_FILE_PATH);
@@ -72,11 +79,13 @@ public class Flags {
             compression = compressionFlag;
             stemStopRemoval = stemStopRemovalFlag;
             maxScore = maxScoreFlag;
+            interleavedLayout = interleavedLayoutFlag;
 
             //write flags to disk
             flagsDataStream.writeBoolean(compression);
             flagsDataStream.writeBoolean(stemStopRemoval);
             flagsDataStream.writeBoolean(maxScore);
+            flagsDataStream.writeBoolean(interleavedLayout);
             return true;
 
         }catch (Exception e) {
@@ -96,6 +105,10 @@ public class Flags {
 
     public static boolean isMaxScoreEnabled() {return maxScore;}
 
+    public static boolean isInterleavedLayoutEnabled() {
+        return interleavedLayout;
+    }
+
 
     public static void setCompression(boolean compression) {
         Flags.compression = compression;
@@ -109,4 +122,8 @@ public class Flags {
         Flags.maxScore = maxScore;
     }
 
+    public static void setInterleavedLayout(boolean interleavedLayout) {
+        Flags.interleavedLayout = interleavedLayout;
+    }
+
 }
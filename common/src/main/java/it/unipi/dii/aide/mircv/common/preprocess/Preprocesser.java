@@ -1,6 +1,5 @@
 package it.unipi.dii.aide.mircv.common.preprocess;
 
-import ca.rmen.porterstemmer.PorterStemmer;
 import it.unipi.dii.aide.mircv.common.beans.TextDocument;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
@@ -11,6 +10,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Locale;
 
 /**
@@ -55,25 +55,26 @@ public class Preprocesser {
 
 
     /**
-     * list of stopwords
+     * set of stopwords
      */
-    private static final ArrayList<String> stopwords = new ArrayList<>();
+    private static final HashSet<String> stopwords = new HashSet<>();
 
     /**
-     * object performing stemming
+     * maximum length a term should have
      */
-    private static final PorterStemmer stemmer = new PorterStemmer();
+    private static final int THRESHOLD = 64;
 
     /**
-     * maximum length a term should have
+     * single pass normalizers of the documents, one for each thread since they reuse their buffers
      */
-    private static final int THRESHOLD = 64;
+    private static final ThreadLocal<TextNormalizer> normalizers = ThreadLocal.withInitial(() -> new TextNormalizer(THRESHOLD));
 
     /**
-     * reads stopwords from a file and loads them in main memory
+     * reads stopwords from a file and loads them in main memory, replacing the ones already loaded
      */
     public static void readStopwords(){
 
+        stopwords.clear();
         try (BufferedReader br = Files.newBufferedReader(Paths.get(PATH_TO_STOPWORDS), StandardCharsets.UTF_8)) {
             for (String line; (line = br.readLine()) != null; ) {
                 // if the line is empty we process the next line
@@ -166,6 +167,14 @@ public class Preprocesser {
         return usefulTokens.toArray(new String[0]);
     }
 
+    /**
+     * @param token: the token
+     * @return true if the token is a stopword
+     */
+    public static boolean isStopword(String token) {
+        return stopwords.contains(token);
+    }
+
     /**
      * @param tokens: tokens to stem
      *
@@ -173,9 +182,9 @@ public class Preprocesser {
      */
     public static String[] getStems(String[] tokens) {
 
-        //replace each word with its stem
+        //replace each word with its stem, memoized by the stemming service
         for (int i = 0; i < tokens.length; i++)
-            tokens[i] = stemmer.stemWord(tokens[i]);
+            tokens[i] = StemmingService.stem(tokens[i]);
 
         return tokens;
 
@@ -183,24 +192,28 @@ public class Preprocesser {
 
     /**
      * Perform the preprocessing of a TextDocument, transforming it in a document formed by
-     * its PID and the list of its tokens
+     * its PID and the list of its tokens.
+     * The text cleaning, the tokenization and the stopwords removal are done in a single pass by the
+     * TextNormalizer, producing the same tokens of cleanText, tokenize and removeStopwords
      * @param doc the TextDocument to preprocess
      * @return the processed document
      */
     public static ProcessedDocument processDocument(TextDocument doc) {
+        return processDocument(doc, Flags.isStemStopRemovalEnabled());
+    }
 
-        String text = doc.getText();
-
-        // text cleaning
-        text = cleanText(text);
-
-        // tokenize
-        String[] tokens = tokenize(text);
+    /**
+     * Perform the preprocessing of a TextDocument, regardless of the flags of the application
+     * @param doc the TextDocument to preprocess
+     * @param stemStopRemoval true to remove the stopwords and to stem the tokens
+     * @return the processed document
+     */
+    public static ProcessedDocument processDocument(TextDocument doc, boolean stemStopRemoval) {
 
-        if(Flags.isStemStopRemovalEnabled()) {
-            // remove stopwords
-            tokens = removeStopwords(tokens);
+        // text cleaning, tokenization and, if enabled, stopwords removal
+        String[] tokens = normalizers.get().normalize(doc.getText(), stemStopRemoval ? stopwords : null);
 
+        if(stemStopRemoval) {
             // perform stemming
             getStems(tokens);
         }
@@ -0,0 +1,113 @@
+package it.unipi.dii.aide.mircv.common.preprocess;
+
+import ca.rmen.porterstemmer.PorterStemmer;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Utility class performing the thread-safe stemming of the tokens: each thread has its own stemmer, and the stems are
+ * memoized in a cache shared by all the threads. Since the frequency of the terms is Zipfian, the cache admits new
+ * terms until it is full and then keeps them, so the most frequent terms, met first, are stemmed only once without
+ * the cost of an eviction policy
+ */
+public class StemmingService {
+
+    /**
+     * stemmer of each thread
+     */
+    private static final ThreadLocal<PorterStemmer> stemmers = ThreadLocal.withInitial(PorterStemmer::new);
+
+    /**
+     * cache of the stems, from the token to its stem
+     */
+    private static final ConcurrentHashMap<String, String> stems = new ConcurrentHashMap<>();
+
+    /**
+     * maximum number of stems in the cache
+     */
+    private static int CACHE_SIZE = ConfigurationParameters.getStemmingCacheSize();
+
+    /**
+     * number of tokens whose stem was found in the cache
+     */
+    private static final LongAdder hits = new LongAdder();
+
+    /**
+     * number of tokens stemmed by the stemmer
+     */
+    private static final LongAdder misses = new LongAdder();
+
+    /**
+     * @param token the token to stem
+     * @return the stem of the token
+     */
+    public static String stem(String token) {
+        String stem = stems.get(token);
+        if (stem != null) {
+            hits.increment();
+            return stem;
+        }
+
+        misses.increment();
+        stem = stemmers.get().stemWord(token);
+        if (stems.size() < CACHE_SIZE)
+            stems.putIfAbsent(token, stem);
+        return stem;
+    }
+
+    /**
+     * @return the number of tokens whose stem was found in the cache
+     */
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of tokens stemmed by the stemmer
+     */
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of the tokens whose stem was found in the cache
+     */
+    public static double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of stems in the cache
+     */
+    public static int getCachedStems() {
+        return stems.size();
+    }
+
+    /**
+     * @return a summary of the statistics of the cache
+     */
+    public static String getStatistics() {
+        return "stemming cache: " + getCachedStems() + " stems, " + getHits() + " hits, " + getMisses() + " misses, hit rate "
+                + String.format("%.2f", getHitRate() * 100) + "%";
+    }
+
+    /**
+     * empties the cache and resets its statistics
+     */
+    public static void clearCache() {
+        stems.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    /** needed for testing purposes
+     * @param cacheSize: maximum number of stems in the cache
+     */
+    public static void setCacheSize(int cacheSize) {
+        CACHE_SIZE = cacheSize;
+    }
+}
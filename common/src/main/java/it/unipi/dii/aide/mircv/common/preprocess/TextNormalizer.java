@@ -0,0 +1,330 @@
+package it.unipi.dii.aide.mircv.common.preprocess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * single pass scanner producing the same tokens of Preprocesser.cleanText followed by Preprocesser.tokenize (and
+ * Preprocesser.removeStopwords), without regexes and intermediate strings: the urls and the html tags are skipped,
+ * the letters are collected in words where 3+ repeating letters are collapsed in 2, and each word is split in camel
+ * case tokens, cut at the threshold and lowercased.
+ * The url and html matches are computed on the original text as the regexes do: a url contains neither '<' nor '>',
+ * so removing it before the html tags doesn't change the tags matched.
+ * The buffers are reused between the documents, so an instance must not be shared between threads
+ */
+final class TextNormalizer {
+
+    /**
+     * maximum number of characters of a url before the dot of its top level domain
+     */
+    private static final int MAX_URL_PREFIX = 256;
+
+    /**
+     * minimum length of the top level domain of a url
+     */
+    private static final int MIN_DOMAIN = 2;
+
+    /**
+     * maximum length of the top level domain of a url
+     */
+    private static final int MAX_DOMAIN = 6;
+
+    /**
+     * maximum length a term should have
+     */
+    private final int threshold;
+
+    /**
+     * characters of the text being normalized
+     */
+    private char[] text = new char[1024];
+
+    /**
+     * number of characters of the text
+     */
+    private int length;
+
+    /**
+     * letters of the current word, with the repeating letters already collapsed
+     */
+    private char[] word = new char[64];
+
+    /**
+     * number of letters of the current word
+     */
+    private int wordLength;
+
+    /**
+     * buffer holding the lowercased token
+     */
+    private final char[] token;
+
+    /**
+     * tokens of the text
+     */
+    private final ArrayList<String> tokens = new ArrayList<>();
+
+    /**
+     * number of tokens found, including the stopwords
+     */
+    private int numTokens;
+
+    /**
+     * stopwords to be removed, null if they are kept
+     */
+    private Set<String> stopwords;
+
+    /**
+     * start and end of the next url match, Integer.MAX_VALUE if there are no more urls
+     */
+    private int urlStart;
+    private int urlEnd;
+
+    /**
+     * start and end of the next html tag match, Integer.MAX_VALUE if there are no more tags
+     */
+    private int htmlStart;
+    private int htmlEnd;
+
+    /**
+     * @param threshold maximum length a term should have
+     */
+    TextNormalizer(int threshold) {
+        this.threshold = threshold;
+        this.token = new char[threshold];
+    }
+
+    /**
+     * normalizes a text in its tokens
+     *
+     * @param input     text to normalize
+     * @param stopwords stopwords to be removed, null if they are kept
+     * @return the tokens of the text, an empty token if the text has no letters
+     */
+    String[] normalize(String input, Set<String> stopwords) {
+        length = input.length();
+        if (text.length < length)
+            text = new char[Math.max(length, text.length * 2)];
+        input.getChars(0, length, text, 0);
+
+        this.stopwords = stopwords;
+        tokens.clear();
+        numTokens = 0;
+        wordLength = 0;
+        urlStart = urlEnd = 0;
+        htmlStart = htmlEnd = 0;
+
+        int i = 0;
+        while (i < length) {
+            if (urlEnd <= i)
+                findUrl(i);
+            if (htmlEnd <= i)
+                findHtml(i);
+
+            // urls and html tags are replaced by a whitespace
+            if (i >= urlStart) {
+                endWord();
+                i = urlEnd;
+                continue;
+            }
+            if (i >= htmlStart) {
+                endWord();
+                i = htmlEnd;
+                continue;
+            }
+
+            char c = text[i++];
+            if (isLetter(c)) {
+                // collapse 3+ repeating letters in just 2
+                if (wordLength >= 2 && word[wordLength - 1] == c && word[wordLength - 2] == c)
+                    continue;
+                if (wordLength == word.length)
+                    word = Arrays.copyOf(word, word.length * 2);
+                word[wordLength++] = c;
+            } else
+                endWord();
+        }
+        endWord();
+
+        // a text without letters is made of the empty token
+        if (numTokens == 0 && (stopwords == null || !stopwords.contains("")))
+            tokens.add("");
+
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * splits the current word in camel case tokens
+     */
+    private void endWord() {
+        if (wordLength == 0)
+            return;
+
+        int start = 0;
+        for (int i = 1; i <= wordLength; i++) {
+            if (i == wordLength || (isLowerCase(word[i - 1]) && isUpperCase(word[i]))) {
+                addToken(start, Math.min(i, start + threshold));
+                start = i;
+            }
+        }
+        wordLength = 0;
+    }
+
+    /**
+     * adds the lowercased token made of a part of the current word, if it is not a stopword
+     *
+     * @param start position in the word of the first letter of the token
+     * @param end   position in the word after the last letter of the token
+     */
+    private void addToken(int start, int end) {
+        for (int i = start; i < end; i++)
+            token[i - start] = isUpperCase(word[i]) ? (char) (word[i] + ('a' - 'A')) : word[i];
+
+        String term = new String(token, 0, end - start);
+        numTokens++;
+        if (stopwords == null || !stopwords.contains(term))
+            tokens.add(term);
+    }
+
+    /**
+     * finds the first url starting from a position, i.e. the leftmost match of the url regex of the Preprocesser: up
+     * to 256 url characters, a dot, a top level domain of 2-6 lowercase letters ending at a word boundary, and the
+     * path
+     *
+     * @param from position from which the url is searched
+     */
+    private void findUrl(int from) {
+        int start = from;
+        while (start < length) {
+            if (!isUrlChar(text[start])) {
+                start++;
+                continue;
+            }
+
+            int runEnd = start;
+            while (runEnd < length && isUrlChar(text[runEnd]))
+                runEnd++;
+
+            for (; start <= runEnd - 2; start++) {
+                int end = matchUrl(start, runEnd);
+                if (end != -1) {
+                    urlStart = start;
+                    urlEnd = end;
+                    return;
+                }
+                // the following starts of the run try a subset of the same dots
+                if (runEnd - start <= MAX_URL_PREFIX)
+                    break;
+            }
+            start = runEnd;
+        }
+        urlStart = urlEnd = Integer.MAX_VALUE;
+    }
+
+    /**
+     * matches a url starting from a position, trying the dots from the farthest as the greedy regex does
+     *
+     * @param start  position of the first character of the url
+     * @param runEnd position after the url characters following the start
+     * @return the end of the url, -1 if no url starts at the position
+     */
+    private int matchUrl(int start, int runEnd) {
+        for (int dot = start + Math.min(MAX_URL_PREFIX, runEnd - start); dot >= start + 2; dot--) {
+            if (dot < length && text[dot] == '.') {
+                int end = matchDomain(dot);
+                if (end != -1)
+                    return end;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * matches the top level domain following a dot and the path of the url
+     *
+     * @param dot position of the dot
+     * @return the end of the url, -1 if the dot is not followed by a top level domain
+     */
+    private int matchDomain(int dot) {
+        int i = dot + 1;
+        while (i < length && i - dot <= MAX_DOMAIN + 1 && isLowerCase(text[i]))
+            i++;
+        int domainLength = i - dot - 1;
+        if (domainLength < MIN_DOMAIN || domainLength > MAX_DOMAIN)
+            return -1;
+        // word boundary after the domain
+        if (i < length && isWordChar(Character.codePointAt(text, i, length)))
+            return -1;
+
+        while (i < length && isUrlPathChar(text[i]))
+            i++;
+        return i;
+    }
+
+    /**
+     * finds the first html tag starting from a position, i.e. a '<' followed by at least a character and a '>'
+     *
+     * @param from position from which the tag is searched
+     */
+    private void findHtml(int from) {
+        for (int i = from; i < length - 1; i++) {
+            if (text[i] != '<' || text[i + 1] == '>')
+                continue;
+
+            for (int j = i + 2; j < length; j++) {
+                if (text[j] == '>') {
+                    htmlStart = i;
+                    htmlEnd = j + 1;
+                    return;
+                }
+            }
+            // without a closing '>' no other tag can be matched
+            break;
+        }
+        htmlStart = htmlEnd = Integer.MAX_VALUE;
+    }
+
+    private static boolean isLowerCase(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isUpperCase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLetter(char c) {
+        return isLowerCase(c) || isUpperCase(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @param c the character
+     * @return true if the character can precede the dot of the top level domain of a url
+     */
+    private static boolean isUrlChar(char c) {
+        return isLetter(c) || isDigit(c) || "()?:/.@%_+~#=".indexOf(c) != -1;
+    }
+
+    /**
+     * @param c the character
+     * @return true if the character can be part of the path of a url
+     */
+    private static boolean isUrlPathChar(char c) {
+        return isLetter(c) || isDigit(c) || "-@:%_+.~#?&/=".indexOf(c) != -1;
+    }
+
+    /**
+     * word character for the word boundary of the regexes; a non spacing mark is a word character since it follows
+     * a letter of the domain
+     *
+     * @param codePoint the character
+     * @return true if the character is part of a word
+     */
+    private static boolean isWordChar(int codePoint) {
+        return codePoint == '_' || Character.isLetterOrDigit(codePoint) || Character.getType(codePoint) == Character.NON_SPACING_MARK;
+    }
+}
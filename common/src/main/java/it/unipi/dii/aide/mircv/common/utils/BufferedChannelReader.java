@@ -0,0 +1,151 @@
+package it.unipi.dii.aide.mircv.common.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * sequential reader of a file: the bytes are served from a large in-memory buffer which is
+ * refilled with a single channel read when exhausted, instead of mapping the file region by region
+ */
+public class BufferedChannelReader implements AutoCloseable {
+
+    /**
+     * default size of the read buffer in bytes
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * channel of the file to be read
+     */
+    private final FileChannel channel;
+
+    /**
+     * buffer holding the bytes read from the file and not consumed yet
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * position in the file of the first byte stored in the buffer
+     */
+    private long bufferStart = 0;
+
+    /**
+     * size of the file
+     */
+    private final long fileSize;
+
+    /**
+     * opens the file for sequential reads
+     *
+     * @param path       path of the file to be read
+     * @param bufferSize size of the read buffer in bytes
+     * @throws IOException if the file cannot be opened
+     */
+    public BufferedChannelReader(String path, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        // the buffer starts empty
+        this.buffer.limit(0);
+    }
+
+    /**
+     * opens the file for sequential reads using the default buffer size
+     *
+     * @param path path of the file to be read
+     * @throws IOException if the file cannot be opened
+     */
+    public BufferedChannelReader(String path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @return the position in the file of the next byte to be read
+     */
+    public long position() {
+        return bufferStart + buffer.position();
+    }
+
+    /**
+     * @return true if there are bytes left to be read in the file
+     */
+    public boolean hasRemaining() {
+        return position() < fileSize;
+    }
+
+    /**
+     * moves the reader to the given position of the file; if the position is already in the buffer no read is performed
+     *
+     * @param position the position in the file of the next byte to be read
+     */
+    public void seek(long position) {
+        if (position >= bufferStart && position <= bufferStart + buffer.limit()) {
+            buffer.position((int) (position - bufferStart));
+            return;
+        }
+        // discard the content of the buffer, the next read will start from the new position
+        bufferStart = position;
+        buffer.clear();
+        buffer.limit(0);
+    }
+
+    /**
+     * makes sure that at least numBytes bytes are available in the buffer, refilling it from the file if needed
+     *
+     * @param numBytes the number of bytes needed
+     * @return the internal buffer, positioned on the next byte to be read
+     * @throws IOException if the end of file is reached before numBytes bytes are available
+     */
+    public ByteBuffer require(int numBytes) throws IOException {
+        if (buffer.remaining() >= numBytes)
+            return buffer;
+
+        if (numBytes > buffer.capacity())
+            throw new IllegalArgumentException("cannot read " + numBytes + " bytes with a buffer of " + buffer.capacity() + " bytes");
+
+        // move the bytes not consumed yet to the beginning of the buffer and fill the remaining space
+        bufferStart += buffer.position();
+        buffer.compact();
+        while (buffer.position() < numBytes) {
+            if (channel.read(buffer, bufferStart + buffer.position()) == -1) {
+                buffer.flip();
+                throw new EOFException("unexpected end of file while reading " + numBytes + " bytes");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return the next byte of the file
+     * @throws IOException if the end of file is reached
+     */
+    public byte get() throws IOException {
+        return require(1).get();
+    }
+
+    /**
+     * @return the next int of the file
+     * @throws IOException if the end of file is reached
+     */
+    public int getInt() throws IOException {
+        return require(4).getInt();
+    }
+
+    /**
+     * @return the next long of the file
+     * @throws IOException if the end of file is reached
+     */
+    public long getLong() throws IOException {
+        return require(8).getLong();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,182 @@
+package it.unipi.dii.aide.mircv.common.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * sequential append writer of a file: the bytes are collected in a large in-memory buffer which is
+ * written with a single channel write when full, instead of mapping a small file region for each record
+ */
+public class BufferedChannelWriter implements AutoCloseable {
+
+    /**
+     * default size of the write buffer in bytes
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * channel of the file to be written
+     */
+    private final FileChannel channel;
+
+    /**
+     * buffer holding the bytes not yet written to the file
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * number of bytes already written to the file
+     */
+    private long flushedBytes = 0;
+
+    /**
+     * opens the file for sequential writes, discarding its previous content
+     *
+     * @param path       path of the file to be written
+     * @param bufferSize size of the write buffer in bytes
+     * @throws IOException if the file cannot be opened
+     */
+    public BufferedChannelWriter(String path, int bufferSize) throws IOException {
+        this(FileChannel.open(Paths.get(path),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING), bufferSize, 0);
+    }
+
+    /**
+     * @param channel      channel of the file, positioned where the next byte must be written
+     * @param bufferSize   size of the write buffer in bytes
+     * @param flushedBytes number of bytes already in the file
+     */
+    private BufferedChannelWriter(FileChannel channel, int bufferSize, long flushedBytes) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushedBytes = flushedBytes;
+    }
+
+    /**
+     * opens the file for sequential writes starting from the given position, discarding the bytes following it:
+     * used to continue writing a file from the last checkpoint of an interrupted run
+     *
+     * @param path     path of the file to be written
+     * @param position number of bytes of the file to be kept
+     * @return the writer positioned at the end of the kept bytes
+     * @throws IOException if the file cannot be opened or it is shorter than position
+     */
+    public static BufferedChannelWriter resume(String path, long position) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            if (channel.size() < position)
+                throw new IOException(path + " has " + channel.size() + " bytes, expected at least " + position);
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BufferedChannelWriter(channel, DEFAULT_BUFFER_SIZE, position);
+    }
+
+    /**
+     * opens the file for sequential writes using the default buffer size
+     *
+     * @param path path of the file to be written
+     * @throws IOException if the file cannot be opened
+     */
+    public BufferedChannelWriter(String path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @return the position in the file of the next byte to be written, equal to the number of bytes written so far
+     */
+    public long position() {
+        return flushedBytes + buffer.position();
+    }
+
+    /**
+     * makes sure that at least numBytes bytes can be put in the buffer, writing its content to the file if needed
+     *
+     * @param numBytes the number of bytes that will be put
+     * @return the internal buffer, positioned where the next byte must be put
+     * @throws IOException if an error occurs while writing the buffer
+     */
+    public ByteBuffer reserve(int numBytes) throws IOException {
+        if (buffer.remaining() >= numBytes)
+            return buffer;
+
+        if (numBytes > buffer.capacity())
+            throw new IllegalArgumentException("cannot write " + numBytes + " bytes with a buffer of " + buffer.capacity() + " bytes");
+
+        flush();
+        return buffer;
+    }
+
+    /**
+     * appends an array of bytes to the file; arrays larger than the free space in the buffer are written directly
+     *
+     * @param bytes the bytes to be written
+     * @throws IOException if an error occurs while writing
+     */
+    public void put(byte[] bytes) throws IOException {
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+            return;
+        }
+
+        flush();
+        if (bytes.length <= buffer.capacity()) {
+            buffer.put(bytes);
+            return;
+        }
+
+        // too large to be buffered: write it with a channel write
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+        while (wrapped.hasRemaining())
+            flushedBytes += channel.write(wrapped);
+    }
+
+    /**
+     * appends an int to the file
+     *
+     * @param value the value to be written
+     * @throws IOException if an error occurs while writing
+     */
+    public void putInt(int value) throws IOException {
+        reserve(4).putInt(value);
+    }
+
+    /**
+     * appends a long to the file
+     *
+     * @param value the value to be written
+     * @throws IOException if an error occurs while writing
+     */
+    public void putLong(long value) throws IOException {
+        reserve(8).putLong(value);
+    }
+
+    /**
+     * writes to the file the content of the buffer
+     *
+     * @throws IOException if an error occurs while writing
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            flushedBytes += channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package it.unipi.dii.aide.mircv.common.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * read only mapping of a whole file, addressed by long offsets: the file is mapped once as a sequence of chunks,
+ * since a single mapped buffer can't be larger than 2 GB, and then the regions of the file are served from the
+ * chunks without opening the file again. A region crossing the end of a chunk is copied in a heap buffer.
+ * In resident mode the chunks are copies of the file read in off-heap memory instead of mappings, so the regions are
+ * served without depending on the page cache of the system
+ */
+public class MappedFile {
+
+    /**
+     * default size of the chunks in bytes
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * size of the chunks of the files mapped from now on
+     */
+    private static int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * true if the files are read in off-heap memory instead of being mapped
+     */
+    private static boolean residentMode = false;
+
+    /**
+     * files mapped in memory, with their path as key
+     */
+    private static final ConcurrentHashMap<String, MappedFile> mappedFiles = new ConcurrentHashMap<>();
+
+    /**
+     * number of invalidations of the mappings, used to discard the work planned on the mappings of an older generation
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * chunks of the file, each one holding chunkSize bytes apart from the last one
+     */
+    private final ByteBuffer[] chunks;
+
+    /**
+     * true if the chunks are copies of the file in off-heap memory
+     */
+    private final boolean resident;
+
+    /**
+     * size in bytes of the chunks of this file
+     */
+    private final int fileChunkSize;
+
+    /**
+     * size of the file
+     */
+    private final long size;
+
+    /**
+     * maps the whole file, or reads it in off-heap memory in resident mode
+     *
+     * @param path path of the file
+     * @throws IOException if the file cannot be mapped or read
+     */
+    private MappedFile(String path) throws IOException {
+        fileChunkSize = chunkSize;
+        resident = residentMode;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            size = channel.size();
+            chunks = new ByteBuffer[(int) ((size + fileChunkSize - 1) / fileChunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * fileChunkSize;
+                int length = (int) Math.min(fileChunkSize, size - start);
+                if (!resident) {
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    continue;
+                }
+
+                ByteBuffer chunk = ByteBuffer.allocateDirect(length);
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, start + chunk.position()) == -1)
+                        throw new EOFException("unexpected end of file while reading " + path);
+                }
+                chunks[i] = chunk.clear();
+            }
+        }
+    }
+
+    /**
+     * returns the mapping of a file, mapping it the first time it is used. The file is mapped atomically with its
+     * insertion in the cache, so a mapping can't be put back in the cache after the file is invalidated
+     *
+     * @param path path of the file
+     * @return the mapping of the file, null if it cannot be mapped
+     */
+    public static MappedFile get(String path) {
+        return mappedFiles.computeIfAbsent(path, MappedFile::map);
+    }
+
+    /**
+     * returns the mapping of a file only if it is already mapped, without mapping it
+     *
+     * @param path path of the file
+     * @return the mapping of the file, null if it isn't mapped
+     */
+    public static MappedFile getIfMapped(String path) {
+        return path == null ? null : mappedFiles.get(path);
+    }
+
+    /**
+     * maps a file
+     *
+     * @param path path of the file
+     * @return the mapping of the file, null if it cannot be mapped
+     */
+    private static MappedFile map(String path) {
+        try {
+            return new MappedFile(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * discards the mapping of a file, which must be mapped again at the next access. Used when the file is rewritten
+     *
+     * @param path path of the file
+     */
+    public static void invalidate(String path) {
+        if (path == null)
+            return;
+        generation.incrementAndGet();
+        mappedFiles.remove(path);
+    }
+
+    /**
+     * discards all the mappings
+     */
+    public static void clear() {
+        generation.incrementAndGet();
+        mappedFiles.clear();
+    }
+
+    /**
+     * @return the generation of the mappings, which changes every time a mapping is discarded
+     */
+    public static long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * sets how the files are held in memory from now on: the files already mapped or read are kept as they are
+     *
+     * @param resident true to read the files in off-heap memory, false to map them
+     */
+    public static void setResidentMode(boolean resident) {
+        residentMode = resident;
+    }
+
+    /**
+     * @return true if the files are read in off-heap memory instead of being mapped
+     */
+    public static boolean isResidentMode() {
+        return residentMode;
+    }
+
+    /**
+     * @return the number of bytes of the files read in off-heap memory
+     */
+    public static long getResidentBytes() {
+        long bytes = 0;
+        for (MappedFile file : mappedFiles.values())
+            if (file.resident)
+                bytes += file.size;
+        return bytes;
+    }
+
+    /**
+     * @return the size of the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * returns a region of the file, positioned at its first byte
+     *
+     * @param position starting byte of the region in the file
+     * @param length   byte size of the region
+     * @return the region of the file, null if it isn't contained in the file
+     */
+    public ByteBuffer slice(long position, int length) {
+        if (position < 0 || length < 0 || position + length > size)
+            return null;
+
+        int chunk = (int) (position / fileChunkSize);
+        int start = (int) (position % fileChunkSize);
+        if (start + length <= chunks[chunk].capacity())
+            return chunks[chunk].slice(start, length);
+
+        // the region crosses the end of the chunk
+        byte[] region = new byte[length];
+        for (int copied = 0; copied < length; chunk++, start = 0) {
+            int n = Math.min(length - copied, chunks[chunk].capacity() - start);
+            chunks[chunk].get(start, region, copied, n);
+            copied += n;
+        }
+        return ByteBuffer.wrap(region);
+    }
+
+    /**
+     * loads in physical memory the pages of a region of the file, so that reading the region doesn't wait for the disk.
+     * The files read in off-heap memory are already loaded
+     *
+     * @param position starting byte of the region in the file
+     * @param length   byte size of the region
+     * @return false if the region isn't contained in the file
+     */
+    public boolean load(long position, long length) {
+        if (position < 0 || length < 0 || position + length > size)
+            return false;
+        if (resident)
+            return true;
+
+        int chunk = (int) (position / fileChunkSize);
+        int start = (int) (position % fileChunkSize);
+        for (long loaded = 0; loaded < length; chunk++, start = 0) {
+            int n = (int) Math.min(length - loaded, chunks[chunk].capacity() - start);
+            ((MappedByteBuffer) chunks[chunk]).slice(start, n).load();
+            loaded += n;
+        }
+        return true;
+    }
+
+    /**
+     * needed for testing purposes
+     *
+     * @param size size in bytes of the chunks of the files mapped from now on
+     */
+    public static void setChunkSize(int size) {
+        chunkSize = size;
+    }
+
+    /**
+     * needed for testing purposes
+     */
+    public static void resetChunkSize() {
+        chunkSize = DEFAULT_CHUNK_SIZE;
+    }
+}
@@ -1,37 +1,119 @@
 package it.unipi.dii.aide.mircv.common.beans;
 
+import it.unipi.dii.aide.mircv.common.compression.UnaryCompressor;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class BlockDescriptorTest {
 
+    private static final String DESCRIPTORS_PATH = "src/test/data/blockDescriptorsTest";
+    private static final String DOCIDS_PATH = "src/test/data/blockDescriptorsDocids";
+    private static final String FREQS_PATH = "src/test/data/blockDescriptorsFreqs";
+
     @BeforeAll
     static void setTestPaths() {
-        VocabularyEntry.setBlockDescriptorsPath("src/test/data/blockDescriptorsTest");
+        VocabularyEntry.setBlockDescriptorsPath(DESCRIPTORS_PATH);
+        BlockDescriptor.setInvertedIndexDocs(DOCIDS_PATH);
+        BlockDescriptor.setInvertedIndexFreqs(FREQS_PATH);
+        Flags.setCompression(false);
+        Flags.setInterleavedLayout(false);
+    }
+
+    /**
+     * writes a posting list without compression in blocks of maxNumPostings postings, appending the descriptor of
+     * each block to the block descriptors file
+     * @return the descriptors of the blocks written
+     */
+    private static ArrayList<BlockDescriptor> writeBlocks(PostingList list, int maxNumPostings) throws IOException {
+        ArrayList<BlockDescriptor> blocks = new ArrayList<>();
+        ArrayList<Posting> postings = list.getPostings();
+        try (
+                BufferedChannelWriter docsWriter = new BufferedChannelWriter(DOCIDS_PATH);
+                BufferedChannelWriter freqsWriter = new BufferedChannelWriter(FREQS_PATH);
+                BufferedChannelWriter descriptorsWriter = new BufferedChannelWriter(DESCRIPTORS_PATH)
+        ) {
+            for (int start = 0; start < postings.size(); start += maxNumPostings) {
+                int numPostings = Math.min(maxNumPostings, postings.size() - start);
+
+                BlockDescriptor blockDescriptor = new BlockDescriptor();
+                blockDescriptor.setDocidOffset(docsWriter.position());
+                blockDescriptor.setDocidSize(numPostings * 4);
+                blockDescriptor.setFreqOffset(freqsWriter.position());
+                blockDescriptor.setFreqSize(numPostings * 4);
+                blockDescriptor.setMaxDocid(postings.get(start + numPostings - 1).getDocid());
+                blockDescriptor.setNumPostings(numPostings);
+
+                for (int i = start; i < start + numPostings; i++) {
+                    docsWriter.putInt(postings.get(i).getDocid());
+                    freqsWriter.putInt(postings.get(i).getFrequency());
+                }
+                assertTrue(blockDescriptor.saveDescriptorOnDisk(descriptorsWriter));
+                blocks.add(blockDescriptor);
+            }
+        }
+
+        // the files are read again at the next access
+        BlockDescriptorTable.invalidate(DESCRIPTORS_PATH);
+        MappedFile.invalidate(DOCIDS_PATH);
+        MappedFile.invalidate(FREQS_PATH);
+        return blocks;
+    }
+
+    /**
+     * reads the blocks of a posting list through the block descriptors held in memory, checking that they locate the
+     * postings written
+     */
+    private static void assertBlocksRead(VocabularyEntry voc, PostingList list, ArrayList<BlockDescriptor> written) {
+        BlockDescriptorTable table = BlockDescriptorTable.get(DESCRIPTORS_PATH);
+        assertNotNull(table);
+        assertEquals(written.size(), table.getNumBlocks());
+
+        ArrayList<VocabularyEntry> sources = new ArrayList<>();
+        assertTrue(voc.collectBlockSources(sources));
+        assertEquals(written.size(), voc.countBlocks());
+
+        int position = 0;
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).getMaxDocid(), voc.getBlockMaxDocid(i));
+            assertEquals(written.get(i).getNumPostings(), table.getNumPostings(i));
+
+            BlockPostings block = voc.readBlock(i);
+            assertNotNull(block);
+            assertEquals(written.get(i).getNumPostings(), block.size());
+            for (int j = 0; j < block.size(); j++, position++) {
+                assertEquals(list.getPostings().get(position).getDocid(), block.getDocid(j));
+                assertEquals(list.getPostings().get(position).getFrequency(), block.getFrequency(j));
+            }
+        }
+        assertEquals(list.getPostings().size(), position);
     }
 
     @Test
-    void oneDescriptorBlockTest() {
+    void oneDescriptorBlockTest() throws IOException {
         // create a posting list with 1023 elements
         PostingList list = new PostingList("test");
         for (int i = 0; i < 1023; i++) {
             Posting posting = new Posting(i, ThreadLocalRandom.current().nextInt(1, 101));
             list.getPostings().add(posting);
         }
-        // update block information
+        // update block information, the descriptors being written from the start of the file
+        BlockDescriptor.setMemoryOffset(0);
         VocabularyEntry voc = new VocabularyEntry("test");
         voc.updateStatistics(list);
         voc.computeBlocksInformation();
@@ -39,42 +121,21 @@ class BlockDescriptorTest {
         // check the number of blocks
         assertEquals(1, voc.getNumBlocks());
 
-        try (
-                FileChannel blockChannel = (FileChannel) Files.newByteChannel(
-                        Paths.get("src/test/data/blockDescriptorsTest"),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE)
-        ) {
-            BlockDescriptor blockDescriptor = new BlockDescriptor();
-            blockDescriptor.setDocidOffset(0);
-            blockDescriptor.setDocidSize(voc.getDf() * 4);
-            blockDescriptor.setMaxDocid(list.getPostings().get(voc.getDf() - 1).getDocid());
-            blockDescriptor.setFreqOffset(0);
-            blockDescriptor.setFreqSize(voc.getDf() * 4);
-            blockDescriptor.setNumPostings(list.getPostings().size());
-            assertTrue(blockDescriptor.saveDescriptorOnDisk(blockChannel));
-
-
-
-            ArrayList<BlockDescriptor> blocks = voc.readBlocks();
-            assertEquals(1, blocks.size());
-
-            assertEquals(blockDescriptor, blocks.get(0));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        ArrayList<BlockDescriptor> written = writeBlocks(list, voc.getMaxNumberOfPostingsInBlock());
+        assertEquals(1, written.size());
+        assertBlocksRead(voc, list, written);
     }
 
     @Test
-    void multipleDescriptorsTest() {
+    void multipleDescriptorsTest() throws IOException {
         // create a posting list with 1025 elements
         PostingList list = new PostingList("test");
         for (int i = 1; i <= 1025; i++) {
             Posting posting = new Posting(i, ThreadLocalRandom.current().nextInt(1, 101));
             list.getPostings().add(posting);
         }
-        // update block information
+        // update block information, the descriptors being written from the start of the file
+        BlockDescriptor.setMemoryOffset(0);
         VocabularyEntry voc = new VocabularyEntry("test");
         voc.updateStatistics(list);
         voc.computeBlocksInformation();
@@ -82,81 +143,133 @@ class BlockDescriptorTest {
         // check the number of blocks
         assertEquals(33, voc.getNumBlocks());
 
-        int numBlocks = voc.getNumBlocks();
-        int maxNumPostings = voc.getMaxNumberOfPostingsInBlock();
+        ArrayList<BlockDescriptor> written = writeBlocks(list, voc.getMaxNumberOfPostingsInBlock());
+        assertEquals(33, written.size());
+        assertBlocksRead(voc, list, written);
+    }
 
-        int docsMemOffset = 0;
-        int freqsMemOffset = 0;
+    @Test
+    void residentTableTest() throws IOException {
+        String path = "src/test/data/blockDescriptorsTableTest";
 
-        // create iterator over posting list
-        Iterator<Posting> plIterator = list.getPostings().iterator();
-        try (
-                FileChannel descriptorChan = (FileChannel) Files.newByteChannel(
-                        Paths.get("src/test/data/blockDescriptorsTest"),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE)
-        ) {
-            ArrayList<BlockDescriptor> blockList = new ArrayList<>();
-            // simulation of saving the posting lists
-            for (int i = 0; i < numBlocks; i++) {
-                // create a new block descriptor and update its information
+        // three posting lists of 1, 4 and 2 blocks, written one after the other
+        int[] listBlocks = {1, 4, 2};
+        ArrayList<BlockDescriptor> written = new ArrayList<>();
+        try (BufferedChannelWriter writer = new BufferedChannelWriter(path)) {
+            for (int i = 0; i < 7; i++) {
                 BlockDescriptor blockDescriptor = new BlockDescriptor();
-                blockDescriptor.setDocidOffset(docsMemOffset);
-                blockDescriptor.setFreqOffset(freqsMemOffset);
-
-                // number of postings written in the block
-                int postingsInBlock = 0;
-
-                int alreadyWrittenPostings = i * maxNumPostings;
+                blockDescriptor.setDocidOffset(100L * i);
+                blockDescriptor.setDocidSize(40);
+                blockDescriptor.setFreqOffset(200L * i);
+                blockDescriptor.setFreqSize(40);
+                blockDescriptor.setMaxDocid(1000 + i);
+                blockDescriptor.setNumPostings(10 + i);
+                assertTrue(blockDescriptor.saveDescriptorOnDisk(writer));
+                written.add(blockDescriptor);
+            }
+        }
 
-                // number of postings to be written in the current block
-                int nPostingsToBeWritten = (Math.min((list.getPostings().size() - alreadyWrittenPostings), maxNumPostings));
+        BlockDescriptorTable.invalidate(path);
+        BlockDescriptorTable table = BlockDescriptorTable.get(path);
+        assertNotNull(table);
+        assertEquals(7, table.getNumBlocks());
+        assertSame(table, BlockDescriptorTable.get(path));
 
-                // set docs and freqs num bytes as (number of postings)*4
-                blockDescriptor.setDocidSize(nPostingsToBeWritten * 4);
-                blockDescriptor.setFreqSize(nPostingsToBeWritten * 4);
-                while(true) {
-                    // get next posting to be written to disk
-                    Posting currPosting = plIterator.next();
+        VocabularyEntry.setBlockDescriptorsPath(path);
+        try {
+            int first = 0;
+            for (int blocks : listBlocks) {
+                VocabularyEntry voc = new VocabularyEntry("test");
+                voc.setNumBlocks(blocks);
+                voc.setBlockOffset((long) first * BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES);
 
-                    // increment counter of number of postings written in the block
-                    postingsInBlock++;
+                // the blocks read from the table are the ones written
+                ArrayList<VocabularyEntry> sources = new ArrayList<>();
+                assertTrue(voc.collectBlockSources(sources));
+                assertEquals(1, sources.size());
+                assertEquals(blocks, voc.countBlocks());
+                for (int i = 0; i < blocks; i++) {
+                    assertEquals(written.get(first + i).getMaxDocid(), voc.getBlockMaxDocid(i));
+                    assertEquals(written.get(first + i).getNumPostings(), table.getNumPostings(first + i));
+                }
+                first += blocks;
+            }
+        } finally {
+            VocabularyEntry.setBlockDescriptorsPath(DESCRIPTORS_PATH);
+            BlockDescriptorTable.invalidate(path);
+            FileUtils.removeFile(path);
+        }
+    }
 
-                    // check if currPosting is the last posting to be written in the current block
-                    if (postingsInBlock == nPostingsToBeWritten) {
-                        // update the max docid of the block
-                        blockDescriptor.setMaxDocid(currPosting.getDocid());
+    /*
+     * the frequencies of a block are decoded only when the frequency of one of its postings is requested, while the
+     * read of the block fails if its frequencies cannot be read
+     */
+    private void readLazyBlock(boolean compressed) throws IOException {
+        String docidsPath = "src/test/data/lazyBlockDocids";
+        String freqsPath = "src/test/data/lazyBlockFreqs";
+        int[] docids = {3, 7, 8, 150, 1000};
+        int[] freqs = {1, 4, 2, 9, 1};
 
-                        // update the number of postings in the block
-                        blockDescriptor.setNumPostings(postingsInBlock);
+        Flags.setCompression(compressed);
+        try {
+            byte[] docidBytes = compressed ? VariableByteCompressor.integerArrayCompression(docids) : toBytes(docids);
+            byte[] freqBytes = compressed ? UnaryCompressor.integerArrayCompression(freqs) : toBytes(freqs);
+            Files.write(Paths.get(docidsPath), docidBytes);
+            FileUtils.removeFile(freqsPath);
+            assertNull(BlockDescriptor.readBlock(docidsPath, 0, docidBytes.length, freqsPath, 0, freqBytes.length, docids.length));
 
-                        // write the block descriptor on disk
-                        blockDescriptor.saveDescriptorOnDisk(descriptorChan);
+            // a frequency file shorter than the block
+            Files.write(Paths.get(freqsPath), Arrays.copyOf(freqBytes, freqBytes.length - 1));
+            assertNull(BlockDescriptor.readBlock(docidsPath, 0, docidBytes.length, freqsPath, 0, freqBytes.length, docids.length));
+            MappedFile.invalidate(freqsPath);
 
-                        blockList.add(blockDescriptor);
+            Files.write(Paths.get(freqsPath), freqBytes);
+            BlockPostings block = BlockDescriptor.readBlock(docidsPath, 0, docidBytes.length, freqsPath, 0, freqBytes.length, docids.length);
+            assertNotNull(block);
+            assertEquals(docids.length, block.size());
+            for (int i = 0; i < docids.length; i++)
+                assertEquals(docids[i], block.getPosting(i).getDocid());
+            assertFalse(block.areFrequenciesDecoded());
 
-                        docsMemOffset += nPostingsToBeWritten * 4L;
-                        freqsMemOffset += nPostingsToBeWritten * 4L;
+            Posting posting = block.getPosting(3);
+            assertEquals("Posting{docid=150, frequency=9}", posting.toString());
+            assertTrue(block.areFrequenciesDecoded());
+            for (int i = 0; i < docids.length; i++)
+                assertEquals(freqs[i], block.getFrequency(i));
+        } finally {
+            Flags.setCompression(false);
+            MappedFile.invalidate(docidsPath);
+            MappedFile.invalidate(freqsPath);
+            FileUtils.removeFile(docidsPath);
+            FileUtils.removeFile(freqsPath);
+        }
+    }
 
-                        break;
-                    }
-                }
-            }
+    private static byte[] toBytes(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values)
+            buffer.putInt(value);
+        return buffer.array();
+    }
 
-            ArrayList<BlockDescriptor> blocks = voc.readBlocks();
-            assertEquals(33, blocks.size());
+    @Test
+    void lazyFrequenciesWithoutCompression() throws IOException {
+        readLazyBlock(false);
+    }
 
-            for (int i = 0; i < blocks.size(); i++) {
-                assertEquals(blockList.get(i), blocks.get(i));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    @Test
+    void lazyFrequenciesWithCompression() throws IOException {
+        readLazyBlock(true);
     }
 
     @AfterAll
     static void removeFile() {
-        FileUtils.removeFile("src/test/data/blockDescriptorsTest");
+        BlockDescriptorTable.invalidate(DESCRIPTORS_PATH);
+        MappedFile.invalidate(DOCIDS_PATH);
+        MappedFile.invalidate(FREQS_PATH);
+        FileUtils.removeFile(DESCRIPTORS_PATH);
+        FileUtils.removeFile(DOCIDS_PATH);
+        FileUtils.removeFile(FREQS_PATH);
     }
 }
@@ -0,0 +1,115 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeletedDocumentsTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/deletedDocuments";
+    private static final String TEST_PATH = TEST_DIRECTORY + "/testDeletedDocuments";
+
+    @BeforeAll
+    static void createDirectory() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+    }
+
+    @BeforeEach
+    void updatePath() {
+        DeletedDocuments.setDeletedDocumentsPath(TEST_PATH);
+        DeletedDocuments.clear();
+    }
+
+    @AfterEach
+    void clearDeletions() {
+        DeletedDocuments.clear();
+        Vocabulary.unsetInstance();
+    }
+
+    @Test
+    void deleteDocument() {
+        assertFalse(DeletedDocuments.isDeleted(10));
+
+        assertTrue(DeletedDocuments.delete(10));
+        assertTrue(DeletedDocuments.isDeleted(10));
+        assertFalse(DeletedDocuments.isDeleted(9));
+        assertFalse(DeletedDocuments.isDeleted(11));
+
+        // a document can be deleted only once
+        assertFalse(DeletedDocuments.delete(10));
+        assertEquals(1, DeletedDocuments.getNumDeleted());
+        assertEquals(1, DeletedDocuments.countDeleted(1, 10));
+        assertEquals(0, DeletedDocuments.countDeleted(11, 100));
+    }
+
+    @Test
+    void deletionsArePersisted() {
+        assertTrue(DeletedDocuments.delete(3));
+        assertTrue(DeletedDocuments.delete(100000));
+
+        // the bitset file is read again
+        DeletedDocuments.setDeletedDocumentsPath(TEST_PATH);
+        assertEquals(2, DeletedDocuments.getNumDeleted());
+        assertTrue(DeletedDocuments.isDeleted(3));
+        assertTrue(DeletedDocuments.isDeleted(100000));
+        assertFalse(DeletedDocuments.isDeleted(99999));
+
+        DeletedDocuments.clear();
+        DeletedDocuments.setDeletedDocumentsPath(TEST_PATH);
+        assertEquals(0, DeletedDocuments.getNumDeleted());
+        assertFalse(DeletedDocuments.isDeleted(3));
+    }
+
+    @Test
+    void postingListSkipsDeletedDocuments() {
+        // 2048 postings are split in blocks of 45 postings: 1-45, 46-90, ...
+        int numPostings = 2048;
+        int[] docids = new int[numPostings];
+        int[] frequencies = new int[numPostings];
+        for (int i = 0; i < numPostings; i++) {
+            docids[i] = i + 1;
+            frequencies[i] = 1;
+        }
+        VocabularyEntry entry = new VocabularyEntry("test");
+        entry.setDf(numPostings);
+        entry.setInMemoryPostings(docids, frequencies, numPostings);
+        Vocabulary.getInstance().put("test", entry);
+
+        assertTrue(DeletedDocuments.delete(1));
+        assertTrue(DeletedDocuments.delete(45));
+        assertTrue(DeletedDocuments.delete(90));
+        assertTrue(DeletedDocuments.delete(2048));
+
+        PostingList postingList = new PostingList("test");
+        postingList.openList();
+        assertEquals(2, postingList.next().getDocid());
+        // the last posting of the block is deleted: the first posting of the next block is returned
+        assertEquals(46, postingList.nextGEQ(45).getDocid());
+        assertEquals(89, postingList.nextGEQ(89).getDocid());
+        assertEquals(91, postingList.next().getDocid());
+        postingList.closeList();
+
+        // closing the list removes the term from the vocabulary
+        Vocabulary.getInstance().put("test", entry);
+        int count = 0;
+        postingList = new PostingList("test");
+        postingList.openList();
+        for (Posting posting = postingList.next(); posting != null; posting = postingList.next()) {
+            assertFalse(DeletedDocuments.isDeleted(posting.getDocid()));
+            count++;
+        }
+        assertEquals(numPostings - 4, count);
+        postingList.closeList();
+    }
+
+    @AfterAll
+    static void deleteTestFiles() {
+        DeletedDocuments.setDeletedDocumentsPath(null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}
@@ -2,54 +2,115 @@ package it.unipi.dii.aide.mircv.common.beans;
 
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class DocumentIndexEntryTest {
 
-    @BeforeEach
-    void updatePath() {
-        DocumentIndexEntry.setTestPath();
+    private static final String TEST_DIRECTORY = "src/test/data/documentIndex";
+    private static final String DOCINDEX_PATH = TEST_DIRECTORY + "/testDocIndex";
+
+    @BeforeAll
+    static void createDirectory() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+    }
+
+    @AfterEach
+    void removeFiles() {
+        DocumentIndexWriter.remove(DOCINDEX_PATH);
+    }
+
+    private static List<DocumentIndexEntry> buildEntries(int firstDocid, String... pids) {
+        List<DocumentIndexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < pids.length; i++)
+            entries.add(new DocumentIndexEntry(pids[i], firstDocid + i, 10 + i));
+        return entries;
+    }
+
+    private static void writeEntries(List<DocumentIndexEntry> entries) throws IOException {
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(DOCINDEX_PATH)) {
+            for (int i = 0; i < entries.size(); i++)
+                assertEquals((long) i * DocumentIndexEntry.ENTRY_SIZE, writer.write(entries.get(i)));
+        }
+    }
+
+    private static List<DocumentIndexEntry> readEntries(int firstDocid) throws IOException {
+        List<DocumentIndexEntry> entries = new ArrayList<>();
+        try (DocumentIndexReader reader = new DocumentIndexReader(DOCINDEX_PATH, firstDocid)) {
+            for (DocumentIndexEntry entry = reader.next(); entry != null; entry = reader.next())
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    void numericPidsAreStoredInTheEntries() throws IOException {
+        List<DocumentIndexEntry> entries = buildEntries(1, "0", "7", "2985786", "2147483647");
+        writeEntries(entries);
+
+        assertEquals(entries, readEntries(1));
+        assertEquals(entries.size() * 8L, Files.size(Paths.get(DOCINDEX_PATH)));
+        assertEquals(0, Files.size(Paths.get(DocumentIndexWriter.getPidsPath(DOCINDEX_PATH))));
     }
 
     @Test
-    void writeReadFromZero() {
-        DocumentIndexEntry entry1 = new DocumentIndexEntry("test1", 0, 10);
+    void otherPidsAreStoredInTheHeap() throws IOException {
+        // leading zeros, signs and values too large for an int can't be stored as numbers
+        List<DocumentIndexEntry> entries = buildEntries(5, "007", "-1", "2147483648", "", "doc_1", "città", "x".repeat(300));
+        writeEntries(entries);
 
-        long offset1 = entry1.writeToDisk();
-        assertEquals(0, offset1);
+        assertEquals(entries, readEntries(5));
+        assertEquals(entries.size() * 8L, Files.size(Paths.get(DOCINDEX_PATH)));
+    }
 
-        DocumentIndexEntry readEntry1 = new DocumentIndexEntry();
-        assertTrue(readEntry1.readFromDisk(offset1));
+    @Test
+    void mixedPids() throws IOException {
+        List<DocumentIndexEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 100000; i++)
+            entries.add(new DocumentIndexEntry(i % 3 == 0 ? "msmarco_" + i : Integer.toString(i), i + 1, i % 100));
+        writeEntries(entries);
 
-        assertEquals(entry1.toString(), readEntry1.toString());
+        assertEquals(entries, readEntries(1));
     }
 
     @Test
-    void writeReadSubsequent() {
-        DocumentIndexEntry entry1 = new DocumentIndexEntry("test1", 0, 10);
-        DocumentIndexEntry entry2 = new DocumentIndexEntry("test2", 1, 15);
+    void resumeKeepsTheFirstEntries() throws IOException {
+        List<DocumentIndexEntry> entries = buildEntries(1, "12", "doc_a", "34", "doc_b", "doc_c", "56");
+        writeEntries(entries);
 
-        long offset1 = entry1.writeToDisk();
-        assertEquals(0, offset1);
-        long offset2 = entry2.writeToDisk();
-        assertEquals(72, offset2);
+        // bytes written after the last checkpoint are discarded
+        Files.write(Paths.get(DOCINDEX_PATH), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        Files.write(Paths.get(DocumentIndexWriter.getPidsPath(DOCINDEX_PATH)), new byte[]{4, 5}, StandardOpenOption.APPEND);
 
-        DocumentIndexEntry readEntry1 = new DocumentIndexEntry();
-        assertTrue(readEntry1.readFromDisk(offset1));
-        DocumentIndexEntry readEntry2 = new DocumentIndexEntry();
-        assertTrue(readEntry2.readFromDisk(offset2));
+        try (DocumentIndexWriter writer = DocumentIndexWriter.resume(DOCINDEX_PATH, 4)) {
+            assertEquals(4, writer.getNumEntries());
+            writer.write(entries.get(4));
+            writer.write(entries.get(5));
+        }
+        assertEquals(entries, readEntries(1));
+        assertEquals(3 * (2 + 5), Files.size(Paths.get(DocumentIndexWriter.getPidsPath(DOCINDEX_PATH))));
 
-        assertEquals(entry1.toString(), readEntry1.toString());
-        assertEquals(entry2.toString(), readEntry2.toString());
+        // resuming before the first pid of the heap empties it
+        try (DocumentIndexWriter writer = DocumentIndexWriter.resume(DOCINDEX_PATH, 1)) {
+            assertEquals(1, writer.getNumEntries());
+        }
+        assertEquals(entries.subList(0, 1), readEntries(1));
+        assertEquals(0, Files.size(Paths.get(DocumentIndexWriter.getPidsPath(DOCINDEX_PATH))));
     }
 
     @AfterAll
-    static void deleteTestFile() {
-        FileUtils.removeFile("src/test/data/testDocIndex");
+    static void deleteDirectory() {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentIndexTest {
+
+    @AfterEach
+    void clearDocumentIndex() {
+        DocumentIndex.getInstance().clear();
+    }
+
+    @Test
+    void lookupByPid() {
+        DocumentIndex documentIndex = DocumentIndex.getInstance();
+        documentIndex.clear();
+        for (int docid = 1; docid <= 100; docid++)
+            documentIndex.put(docid, new DocumentIndexEntry("pid" + docid, docid, 10));
+
+        assertEquals(1, documentIndex.getDocid("pid1"));
+        assertEquals(100, documentIndex.getDocid("pid100"));
+        assertEquals(-1, documentIndex.getDocid("pid101"));
+
+        // the documents added or removed after the first lookup are found through the map as well
+        documentIndex.put(101, new DocumentIndexEntry("pid101", 101, 10));
+        assertEquals(101, documentIndex.getDocid("pid101"));
+        documentIndex.remove(50);
+        assertEquals(-1, documentIndex.getDocid("pid50"));
+        documentIndex.put(1, new DocumentIndexEntry("replaced", 1, 10));
+        assertEquals(-1, documentIndex.getDocid("pid1"));
+        assertEquals(1, documentIndex.getDocid("replaced"));
+
+        documentIndex.clear();
+        assertEquals(-1, documentIndex.getDocid("pid2"));
+        documentIndex.put(2, new DocumentIndexEntry("pid2", 2, 10));
+        assertEquals(2, documentIndex.getDocid("pid2"));
+    }
+}
@@ -0,0 +1,100 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+
+    @BeforeEach
+    void enablePrefetching() {
+        BlockPrefetcher.setEnabled(true);
+    }
+
+    @AfterEach
+    void disablePrefetching() {
+        BlockPrefetcher.setEnabled(false);
+    }
+
+    /**
+     * builds the entry of a term stored in two in-memory segments, with docids 1-2000 in the first one and
+     * 2001-4000 in the second one: each segment has 45 blocks, the block b holding the docids from 45b+1 to 45b+45
+     * of its segment
+     */
+    private static VocabularyEntry twoSegmentsEntry() {
+        VocabularyEntry entry = new VocabularyEntry("test");
+        for (int segment = 0; segment < 2; segment++) {
+            int[] docids = new int[2000];
+            int[] frequencies = new int[2000];
+            for (int i = 0; i < 2000; i++) {
+                docids[i] = segment * 2000 + i + 1;
+                frequencies[i] = 1;
+            }
+            VocabularyEntry segmentEntry = new VocabularyEntry("test");
+            segmentEntry.setInMemoryPostings(docids, frequencies, 2000);
+            entry.addSegmentEntry(segmentEntry);
+        }
+        return entry;
+    }
+
+    @Test
+    void prefetchPredictedBlock() {
+        PostingList list = new PostingList("test");
+        list.openList(twoSegmentsEntry());
+
+        // no previous target, no prediction
+        assertEquals(10, list.nextGEQ(10).getDocid());
+        assertEquals(-1, list.getPrefetchedSource());
+        assertEquals(-1, list.getPrefetchedBlock());
+
+        // the predicted docid 190 is in the block 4 of the first segment
+        assertEquals(100, list.nextGEQ(100).getDocid());
+        assertEquals(0, list.getPrefetchedSource());
+        assertEquals(4, list.getPrefetchedBlock());
+
+        // the predicted docid 3800 is in the block 39 of the second segment
+        assertEquals(1950, list.nextGEQ(1950).getDocid());
+        assertEquals(1, list.getPrefetchedSource());
+        assertEquals(39, list.getPrefetchedBlock());
+
+        // the predicted docid 2070 is in the block following the current one, which isn't requested
+        assertEquals(2010, list.nextGEQ(2010).getDocid());
+        assertEquals(1, list.getPrefetchedSource());
+        assertEquals(39, list.getPrefetchedBlock());
+
+        // the predicted docid 5790 is beyond the end of the list
+        assertEquals(3900, list.nextGEQ(3900).getDocid());
+        assertEquals(1, list.getPrefetchedSource());
+        assertEquals(39, list.getPrefetchedBlock());
+
+        assertNull(list.nextGEQ(4001));
+    }
+
+    @Test
+    void prefetchFirstBlockOfNextSegment() {
+        PostingList list = new PostingList("test");
+        list.openList(twoSegmentsEntry());
+
+        assertEquals(1970, list.nextGEQ(1970).getDocid());
+
+        // the predicted docid 2010 is in the first block of the second segment, which follows the current block
+        // but is stored in another segment
+        assertEquals(1990, list.nextGEQ(1990).getDocid());
+        assertEquals(1, list.getPrefetchedSource());
+        assertEquals(0, list.getPrefetchedBlock());
+    }
+
+    @Test
+    void noPrefetchingWhenDisabled() {
+        BlockPrefetcher.setEnabled(false);
+        PostingList list = new PostingList("test");
+        list.openList(twoSegmentsEntry());
+
+        assertEquals(10, list.nextGEQ(10).getDocid());
+        assertEquals(1950, list.nextGEQ(1950).getDocid());
+        assertEquals(-1, list.getPrefetchedSource());
+        assertEquals(-1, list.getPrefetchedBlock());
+    }
+}
@@ -0,0 +1,148 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermHashTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/termHash";
+    private static final String VOCABULARY_PATH = TEST_DIRECTORY + "/vocabulary";
+
+    /**
+     * sorted terms of the vocabulary
+     */
+    private static final ArrayList<String> TERMS = new ArrayList<>();
+
+    @BeforeAll
+    static void createDirectory() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+
+        for (int i = 0; i < 10000; i++)
+            TERMS.add("term" + i);
+        TERMS.add("città");
+        Collections.sort(TERMS);
+    }
+
+    @AfterEach
+    void removeFiles() {
+        VocabularyFile.remove(VOCABULARY_PATH);
+    }
+
+    private static void writeVocabulary(int numTerms) throws IOException {
+        try (VocabularyWriter writer = new VocabularyWriter(VOCABULARY_PATH)) {
+            for (int i = 0; i < numTerms; i++) {
+                VocabularyEntry entry = new VocabularyEntry(TERMS.get(i));
+                entry.setDf(i + 1);
+                entry.setMemoryOffset(100L * i);
+                writer.write(entry);
+            }
+        }
+    }
+
+    @Test
+    void everyTermIsMappedToItsOrdinal() throws IOException {
+        writeVocabulary(TERMS.size());
+        assertTrue(TermHash.build(VOCABULARY_PATH));
+
+        VocabularyFile vocabularyFile = VocabularyFile.get(VOCABULARY_PATH);
+        assertNotNull(vocabularyFile);
+        assertTrue(vocabularyFile.hasTermHash());
+
+        // about 8 bytes per term, plus the displacements of the buckets
+        assertTrue(Files.size(Paths.get(VocabularyFile.getHashPath(VOCABULARY_PATH))) < TERMS.size() * 10L);
+
+        for (int i = 0; i < TERMS.size(); i++) {
+            assertEquals(i, vocabularyFile.findOrdinal(TERMS.get(i)));
+            assertEquals(i, vocabularyFile.findOrdinalInBlocks(TERMS.get(i)));
+            assertEquals(i + 1, vocabularyFile.findEntry(TERMS.get(i)).getDf());
+        }
+    }
+
+    @Test
+    void unknownTermsAreRejected() throws IOException {
+        writeVocabulary(TERMS.size());
+        assertTrue(TermHash.build(VOCABULARY_PATH));
+
+        VocabularyFile vocabularyFile = VocabularyFile.get(VOCABULARY_PATH);
+        for (int i = 0; i < 10000; i++)
+            assertEquals(-1, vocabularyFile.findOrdinal("missing" + i));
+        for (String missing : new String[]{"", "term", "term10000", "citta"})
+            assertNull(vocabularyFile.findEntry(missing), missing);
+    }
+
+    @Test
+    void smallVocabularies() throws IOException {
+        for (int numTerms : new int[]{0, 1, 2, 5}) {
+            writeVocabulary(numTerms);
+            assertTrue(TermHash.build(VOCABULARY_PATH));
+
+            VocabularyFile vocabularyFile = VocabularyFile.get(VOCABULARY_PATH);
+            assertTrue(vocabularyFile.hasTermHash());
+            for (int i = 0; i < numTerms; i++)
+                assertEquals(i, vocabularyFile.findOrdinal(TERMS.get(i)));
+            assertEquals(-1, vocabularyFile.findOrdinal("missing"));
+        }
+    }
+
+    @Test
+    void rewrittenVocabularyDropsTheHash() throws IOException {
+        writeVocabulary(TERMS.size());
+        assertTrue(TermHash.build(VOCABULARY_PATH));
+
+        // the hash of the previous terms would map the new terms to wrong ordinals
+        writeVocabulary(10);
+        assertFalse(Files.exists(Paths.get(VocabularyFile.getHashPath(VOCABULARY_PATH))));
+
+        VocabularyFile vocabularyFile = VocabularyFile.get(VOCABULARY_PATH);
+        assertFalse(vocabularyFile.hasTermHash());
+        assertEquals(3, vocabularyFile.findOrdinal(TERMS.get(3)));
+    }
+
+    /**
+     * the displacements of the buckets are found with the first seed also for millions of terms, since the spare
+     * slots keep free slots available for the last buckets, and each term gets its own slot
+     */
+    @Test
+    void millionsOfTerms() {
+        int numTerms = 4_000_000;
+        SplittableRandom random = new SplittableRandom(42);
+        long[] hashes = new long[numTerms];
+        for (int i = 0; i < numTerms; i++)
+            hashes[i] = random.nextLong();
+
+        int numBuckets = numTerms / 4;
+        int[] displacements = new int[numBuckets];
+        int[] ordinals = new int[TermHash.numSlots(numTerms)];
+        assertTrue(numTerms < ordinals.length);
+        assertTrue(TermHash.assignSlots(hashes, numBuckets, displacements, ordinals));
+
+        boolean[] placed = new boolean[numTerms];
+        int emptySlots = 0;
+        for (int ordinal : ordinals) {
+            if (ordinal == -1) {
+                emptySlots++;
+                continue;
+            }
+            assertFalse(placed[ordinal]);
+            placed[ordinal] = true;
+        }
+        assertEquals(ordinals.length - numTerms, emptySlots);
+    }
+
+    @AfterAll
+    static void deleteDirectory() {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}
@@ -0,0 +1,140 @@
+package it.unipi.dii.aide.mircv.common.beans;
+
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VocabularyFileTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/vocabularyFile";
+    private static final String VOCABULARY_PATH = TEST_DIRECTORY + "/vocabulary";
+    private static final String RESUMED_VOCABULARY_PATH = TEST_DIRECTORY + "/resumedVocabulary";
+
+    /**
+     * sorted terms of the vocabulary, sharing long prefixes and with terms longer than 64 characters
+     */
+    private static final ArrayList<String> TERMS = new ArrayList<>();
+
+    @BeforeAll
+    static void createDirectory() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+
+        for (int i = 0; i < 50; i++) {
+            TERMS.add("term" + i);
+            TERMS.add("prefix" + "x".repeat(i));
+            TERMS.add("città" + i);
+        }
+        TERMS.add("a".repeat(200));
+        TERMS.add("a".repeat(201));
+        Collections.sort(TERMS);
+
+        VocabularyWriter.setBlockSize(4);
+    }
+
+    @AfterEach
+    void removeFiles() {
+        VocabularyFile.remove(VOCABULARY_PATH);
+        VocabularyFile.remove(RESUMED_VOCABULARY_PATH);
+    }
+
+    /**
+     * builds the entry of the i-th term, with statistics depending on i
+     */
+    private static VocabularyEntry buildEntry(int i) {
+        VocabularyEntry entry = new VocabularyEntry(TERMS.get(i));
+        entry.setDf(i + 1);
+        entry.setIdf(i / 10.0);
+        entry.setMaxTf(2 * i);
+        entry.setMemoryOffset(1000L * i);
+        entry.setFrequencyOffset(10L * i);
+        entry.setDocidSize(3 * i);
+        entry.setFrequencySize(i);
+        entry.setNumBlocks(i % 5 + 1);
+        entry.setBlockOffset(7L * i);
+        return entry;
+    }
+
+    private static void writeVocabulary(VocabularyWriter writer, int from, int to) throws IOException {
+        for (int i = from; i < to; i++)
+            writer.write(buildEntry(i));
+    }
+
+    @Test
+    void findEntry() throws IOException {
+        try (VocabularyWriter writer = new VocabularyWriter(VOCABULARY_PATH)) {
+            writeVocabulary(writer, 0, TERMS.size());
+        }
+
+        VocabularyFile vocabularyFile = VocabularyFile.get(VOCABULARY_PATH);
+        assertNotNull(vocabularyFile);
+        assertEquals(TERMS.size(), vocabularyFile.getNumTerms());
+        assertEquals((TERMS.size() + 3) / 4, vocabularyFile.getNumBlocks());
+
+        for (int i = 0; i < TERMS.size(); i++)
+            assertEquals(buildEntry(i).toString(), vocabularyFile.findEntry(TERMS.get(i)).toString());
+
+        // terms before the first one, between two blocks, inside a block and after the last one
+        for (String missing : new String[]{"", "0", "a", "città", "prefixx0", "term", "term10a", "zzz"})
+            assertNull(vocabularyFile.findEntry(missing), missing);
+
+        // the terms take a fraction of the padded entries of 64 bytes
+        assertTrue(Files.size(Paths.get(VOCABULARY_PATH)) < TERMS.size() * 64L / 4);
+        assertEquals(TERMS.size() * (long) VocabularyEntry.STATS_SIZE, Files.size(Paths.get(VocabularyFile.getStatsPath(VOCABULARY_PATH))));
+    }
+
+    @Test
+    void readSequentially() throws IOException {
+        try (VocabularyWriter writer = new VocabularyWriter(VOCABULARY_PATH)) {
+            writeVocabulary(writer, 0, TERMS.size());
+        }
+
+        try (VocabularyReader reader = new VocabularyReader(VOCABULARY_PATH)) {
+            for (int i = 0; i < TERMS.size(); i++)
+                assertEquals(buildEntry(i).toString(), reader.next().toString());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void resumedVocabularyIsEqualToTheUninterruptedOne() throws IOException {
+        try (VocabularyWriter writer = new VocabularyWriter(VOCABULARY_PATH)) {
+            writeVocabulary(writer, 0, TERMS.size());
+        }
+
+        // the interrupted writer stops in the middle of a block, after some bytes following the checkpoint
+        long termsPosition;
+        try (VocabularyWriter writer = new VocabularyWriter(RESUMED_VOCABULARY_PATH)) {
+            writeVocabulary(writer, 0, 42);
+            writer.flush();
+            termsPosition = writer.getTermsPosition();
+            writeVocabulary(writer, 42, 45);
+        }
+        Files.write(Paths.get(RESUMED_VOCABULARY_PATH), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (VocabularyWriter writer = VocabularyWriter.resume(RESUMED_VOCABULARY_PATH, 42, termsPosition)) {
+            writeVocabulary(writer, 42, TERMS.size());
+        }
+
+        assertEquals(-1, Files.mismatch(Paths.get(VOCABULARY_PATH), Paths.get(RESUMED_VOCABULARY_PATH)));
+        assertEquals(-1, Files.mismatch(Paths.get(VocabularyFile.getStatsPath(VOCABULARY_PATH)), Paths.get(VocabularyFile.getStatsPath(RESUMED_VOCABULARY_PATH))));
+        assertEquals(-1, Files.mismatch(Paths.get(VocabularyFile.getIndexPath(VOCABULARY_PATH)), Paths.get(VocabularyFile.getIndexPath(RESUMED_VOCABULARY_PATH))));
+    }
+
+    @AfterAll
+    static void deleteDirectory() {
+        VocabularyWriter.setBlockSize(ConfigurationParameters.getVocabularyBlockSize());
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}
@@ -2,6 +2,9 @@ package it.unipi.dii.aide.mircv.common.compression;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class VariableByteCompressorTest {
@@ -20,4 +23,24 @@ class VariableByteCompressorTest {
         assertArrayEquals(new int[]{824, 5}, VariableByteCompressor.integerArrayDecompression(new byte[]{(byte) 6, (byte) 184,(byte) 133}, 2));
     }
 
-}
\ No newline at end of file
+    @Test
+    void integerCompressionInBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(VariableByteCompressor.MAX_COMPRESSED_BYTES);
+        assertEquals(2, VariableByteCompressor.integerCompression(824, buffer));
+        assertArrayEquals(new byte[]{(byte) 6, (byte) 184}, Arrays.copyOf(buffer.array(), buffer.position()));
+
+        // 0 is written as a single termination byte
+        buffer.clear();
+        assertEquals(1, VariableByteCompressor.integerCompression(0, buffer));
+        assertEquals((byte) 128, buffer.get(0));
+
+        // powers of 128 and the largest int round trip through the array decompression
+        int[] values = {127, 128, 16384, 2097152, 268435456, Integer.MAX_VALUE};
+        ByteBuffer compressed = ByteBuffer.allocate(values.length * VariableByteCompressor.MAX_COMPRESSED_BYTES);
+        for (int value : values)
+            VariableByteCompressor.integerCompression(value, compressed);
+        byte[] bytes = Arrays.copyOf(compressed.array(), compressed.position());
+        assertArrayEquals(values, VariableByteCompressor.integerArrayDecompression(bytes, values.length));
+    }
+
+}
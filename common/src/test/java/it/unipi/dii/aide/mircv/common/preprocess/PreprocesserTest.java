@@ -4,11 +4,13 @@ import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
 import it.unipi.dii.aide.mircv.common.beans.TextDocument;
 import it.unipi.dii.aide.mircv.common.config.Flags;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -62,6 +64,43 @@ class PreprocesserTest {
 
     }
 
+    /**
+     * fragments of the random texts, covering urls, html tags, repeating letters, camel case, stopwords and non
+     * ASCII characters
+     */
+    private static final String[] FRAGMENTS = {"a", "b", "z", "A", "Z", "aaa", "BBBB", "bB", "is", "the", "This",
+            "IsIt", "0", "9", "_", " ", "  ", "\t", "\n", "\r", ".", "..", ",", "!", ":", "/", "//", "-", "@", "%", "+",
+            "~", "#", "=", "?", "&", "(", ")", "<", ">", "<p>", "</p>", "<>", "http", "https://", "www.", ".com", ".it",
+            ".abcdefg", ".ab", "é", "\u0301", "日本", "\uD83D\uDE00", "x".repeat(70), "Ab".repeat(40), "u".repeat(300)};
+
+    /**
+     * @param random generator of the text
+     * @return a text made of random fragments
+     */
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int numFragments = random.nextInt(30);
+        for (int i = 0; i < numFragments; i++)
+            text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        return text.toString();
+    }
+
+    @Test
+    void processDocument_ShouldReturnTokensOfTheRegexPipeline() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            String text = randomText(random);
+
+            Flags.setStemStopRemoval(false);
+            String[] expected = Preprocesser.tokenize(Preprocesser.cleanText(text));
+            assertEquals(List.of(expected), Preprocesser.processDocument(new TextDocument("_", text)).getTokens(), text);
+
+            Flags.setStemStopRemoval(true);
+            expected = Preprocesser.getStems(Preprocesser.removeStopwords(Preprocesser.tokenize(Preprocesser.cleanText(text))));
+            assertEquals(List.of(expected), Preprocesser.processDocument(new TextDocument("_", text)).getTokens(), text);
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("getRawTextAndTokens")
     void tokenizedText_ShouldReturnCorrectTokens(String rawText, String[] expectedTokens) {
@@ -0,0 +1,81 @@
+package it.unipi.dii.aide.mircv.common.preprocess;
+
+import ca.rmen.porterstemmer.PorterStemmer;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StemmingServiceTest {
+
+    private static final List<String> TOKENS = List.of("caresses", "ponies", "running", "generalization", "happily",
+            "relational", "conditional", "university", "universities", "a", "");
+
+    @BeforeEach
+    void clearCache() {
+        StemmingService.clearCache();
+    }
+
+    @AfterEach
+    void resetCacheSize() {
+        StemmingService.setCacheSize(ConfigurationParameters.getStemmingCacheSize());
+        StemmingService.clearCache();
+    }
+
+    @Test
+    void stemsAreMemoized() {
+        PorterStemmer stemmer = new PorterStemmer();
+        for (String token : TOKENS)
+            assertEquals(stemmer.stemWord(token), StemmingService.stem(token));
+        assertEquals(0, StemmingService.getHits());
+        assertEquals(TOKENS.size(), StemmingService.getMisses());
+
+        for (String token : TOKENS)
+            assertEquals(stemmer.stemWord(token), StemmingService.stem(token));
+        assertEquals(TOKENS.size(), StemmingService.getHits());
+        assertEquals(0.5, StemmingService.getHitRate());
+    }
+
+    @Test
+    void cacheIsBounded() {
+        StemmingService.setCacheSize(3);
+        for (String token : TOKENS)
+            StemmingService.stem(token);
+        assertEquals(3, StemmingService.getCachedStems());
+
+        // only the first tokens are kept in the cache
+        assertEquals("caress", StemmingService.stem("caresses"));
+        assertEquals("univers", StemmingService.stem("university"));
+        assertEquals(1, StemmingService.getHits());
+    }
+
+    @Test
+    void stemmingIsThreadSafe() throws Exception {
+        PorterStemmer stemmer = new PorterStemmer();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ArrayList<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++)
+                    for (String token : TOKENS)
+                        if (!stemmer.stemWord(token + j % 7).equals(StemmingService.stem(token + j % 7)))
+                            return false;
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results)
+            assertTrue(result.get());
+        executor.shutdown();
+
+        assertEquals(4 * 1000 * TOKENS.size(), StemmingService.getHits() + StemmingService.getMisses());
+        assertEquals(7 * TOKENS.size(), StemmingService.getCachedStems());
+    }
+}
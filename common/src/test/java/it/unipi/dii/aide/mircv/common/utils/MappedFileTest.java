@@ -0,0 +1,158 @@
+package it.unipi.dii.aide.mircv.common.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/mappedFile";
+    private static final String PATH = TEST_DIRECTORY + "/file";
+
+    @BeforeAll
+    static void createDirectory() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+    }
+
+    @AfterEach
+    void removeFile() {
+        MappedFile.resetChunkSize();
+        MappedFile.setResidentMode(false);
+        MappedFile.invalidate(PATH);
+        FileUtils.removeFile(PATH);
+    }
+
+    private static byte[] writeFile(int size) throws IOException {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+            content[i] = (byte) (i * 31);
+        Files.write(Paths.get(PATH), content);
+        return content;
+    }
+
+    private static void assertRegion(byte[] content, ByteBuffer region, int position, int length) {
+        assertNotNull(region);
+        assertEquals(0, region.position());
+        assertEquals(length, region.remaining());
+        for (int i = 0; i < length; i++)
+            assertEquals(content[position + i], region.get(i));
+    }
+
+    @Test
+    void regionsInsideAndAcrossChunks() throws IOException {
+        byte[] content = writeFile(100);
+        MappedFile.setChunkSize(16);
+        MappedFile file = MappedFile.get(PATH);
+        assertNotNull(file);
+        assertEquals(100, file.size());
+
+        // inside a chunk, ending at the end of a chunk, across two chunks, across many chunks up to the last byte
+        assertRegion(content, file.slice(2, 10), 2, 10);
+        assertRegion(content, file.slice(16, 16), 16, 16);
+        assertRegion(content, file.slice(30, 4), 30, 4);
+        assertRegion(content, file.slice(5, 95), 5, 95);
+        assertRegion(content, file.slice(99, 1), 99, 1);
+        assertRegion(content, file.slice(100, 0), 100, 0);
+
+        // the integers crossing the end of a chunk are read as the ones inside a chunk
+        assertEquals(ByteBuffer.wrap(content, 14, 4).getInt(), file.slice(14, 4).getInt());
+    }
+
+    @Test
+    void regionsOutsideTheFile() throws IOException {
+        writeFile(40);
+        MappedFile.setChunkSize(16);
+        MappedFile file = MappedFile.get(PATH);
+        assertNotNull(file);
+
+        assertNull(file.slice(38, 4));
+        assertNull(file.slice(41, 0));
+        assertNull(file.slice(-1, 2));
+    }
+
+    @Test
+    void loadRegions() throws IOException {
+        byte[] content = writeFile(100);
+        MappedFile.setChunkSize(16);
+        MappedFile file = MappedFile.get(PATH);
+        assertNotNull(file);
+
+        assertTrue(file.load(2, 10));
+        assertTrue(file.load(5, 95));
+        assertTrue(file.load(100, 0));
+        assertFalse(file.load(90, 11));
+        assertFalse(file.load(-1, 2));
+
+        // loading doesn't change the content of the regions
+        assertRegion(content, file.slice(5, 95), 5, 95);
+    }
+
+    @Test
+    void residentRegions() throws IOException {
+        byte[] content = writeFile(100);
+        MappedFile.setChunkSize(16);
+        MappedFile.setResidentMode(true);
+        MappedFile file = MappedFile.get(PATH);
+        assertNotNull(file);
+        assertEquals(100, MappedFile.getResidentBytes());
+
+        // the regions read in off-heap memory are the same of the mapped ones
+        assertRegion(content, file.slice(2, 10), 2, 10);
+        assertRegion(content, file.slice(30, 4), 30, 4);
+        assertRegion(content, file.slice(5, 95), 5, 95);
+        assertNull(file.slice(98, 4));
+        assertTrue(file.load(5, 95));
+        assertFalse(file.load(90, 11));
+
+        // the file read in off-heap memory doesn't see the changes until it is read again
+        byte[] rewritten = writeFile(60);
+        assertRegion(content, file.slice(0, 60), 0, 60);
+        MappedFile.invalidate(PATH);
+        assertRegion(rewritten, MappedFile.get(PATH).slice(0, 60), 0, 60);
+    }
+
+    @Test
+    void mappingIsKeptUntilInvalidated() throws IOException {
+        writeFile(40);
+        MappedFile file = MappedFile.get(PATH);
+        assertSame(file, MappedFile.get(PATH));
+
+        // the file is rewritten: the new content is read only after the mapping is discarded
+        byte[] content = writeFile(60);
+        MappedFile.invalidate(PATH);
+        MappedFile remapped = MappedFile.get(PATH);
+        assertNotSame(file, remapped);
+        assertEquals(60, remapped.size());
+        assertRegion(content, remapped.slice(0, 60), 0, 60);
+    }
+
+    @Test
+    void invalidationChangesTheGeneration() throws IOException {
+        writeFile(40);
+        assertNull(MappedFile.getIfMapped(PATH));
+        MappedFile file = MappedFile.get(PATH);
+        assertSame(file, MappedFile.getIfMapped(PATH));
+
+        // the work planned before the invalidation can tell that the mapping was discarded
+        long generation = MappedFile.getGeneration();
+        MappedFile.invalidate(PATH);
+        assertNotEquals(generation, MappedFile.getGeneration());
+        assertNull(MappedFile.getIfMapped(PATH));
+        generation = MappedFile.getGeneration();
+        MappedFile.clear();
+        assertNotEquals(generation, MappedFile.getGeneration());
+    }
+
+    @Test
+    void missingFileIsNotMapped() {
+        assertNull(MappedFile.get(TEST_DIRECTORY + "/missing"));
+        assertNull(MappedFile.getIfMapped(TEST_DIRECTORY + "/missing"));
+    }
+}
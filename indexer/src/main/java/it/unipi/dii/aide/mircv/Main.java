@@ -1,13 +1,25 @@
 package it.unipi.dii.aide.mircv;
 
+import it.unipi.dii.aide.mircv.algorithms.CollectionTokenizer;
+import it.unipi.dii.aide.mircv.algorithms.Compactor;
+import it.unipi.dii.aide.mircv.algorithms.IndexingCheckpoint;
 import it.unipi.dii.aide.mircv.algorithms.Merger;
+import it.unipi.dii.aide.mircv.algorithms.SegmentMerger;
 import it.unipi.dii.aide.mircv.algorithms.Spimi;
+import it.unipi.dii.aide.mircv.common.beans.DeletedDocuments;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import it.unipi.dii.aide.mircv.common.beans.SegmentRegistry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyFile;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
 
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -15,6 +27,7 @@ import java.util.Arrays;
 
 import static it.unipi.dii.aide.mircv.utils.Utility.cleanUpFiles;
 import static it.unipi.dii.aide.mircv.utils.Utility.initializeFiles;
+import static it.unipi.dii.aide.mircv.utils.Utility.initializePartialFiles;
 
 /**
  * main class for the indexing module
@@ -38,6 +51,18 @@ public class Main {
         boolean debugModeEnable = false;
         //if set to true, maxScore is used, If not, DAAT is used
         boolean maxScoreEnabled = false;
+        //if set to true, the collection is appended to the existing index as a new segment
+        boolean appendEnabled = false;
+        //if set to true, the postings of the deleted documents are removed from the existing index
+        boolean compactEnabled = false;
+        //if set to true, the interrupted indexing of the main index is resumed from its last checkpoint
+        boolean resumeEnabled = false;
+        //if set to true, the collection is written as a token stream instead of being indexed
+        boolean tokenizeEnabled = false;
+        //if set to true, the index is built from the token stream of the tokenized collection
+        boolean tokenizedReadingEnable = false;
+        //if set to true, each block of the inverted index stores its frequencies after its docids, in a single file
+        boolean interleavedLayoutEnable = false;
 
         //check input and initialize flags
         for (String flag : args) {
@@ -65,13 +90,62 @@ public class Main {
                 maxScoreEnabled = true;
                 continue;
             }
+            if (flag.equals("-append")) {
+                appendEnabled = true;
+                continue;
+            }
+            if (flag.equals("-compact")) {
+                compactEnabled = true;
+                continue;
+            }
+            if (flag.equals("-resume")) {
+                resumeEnabled = true;
+                continue;
+            }
+            if (flag.equals("-tokenize")) {
+                tokenizeEnabled = true;
+                continue;
+            }
+            if (flag.equals("-tokenized")) {
+                tokenizedReadingEnable = true;
+                continue;
+            }
+            if (flag.equals("-interleaved")) {
+                interleavedLayoutEnable = true;
+                continue;
+            }
 
             System.out.println("Flag " + flag + " not recognised!");
             return;
         }
 
+        if(compactEnabled){
+            compactIndex();
+            return;
+        }
+
+        if(resumeEnabled){
+            resumeIndexing(args, debugModeEnable);
+            return;
+        }
+
+        if(tokenizeEnabled){
+            tokenizeCollection(compressedReadingEnable);
+            return;
+        }
+
+        if(tokenizedReadingEnable && (appendEnabled || !CollectionTokenizer.isAvailable())){
+            System.out.println("No tokenized collection: run the indexer with -tokenize first (-tokenized can't be used with -append)");
+            return;
+        }
+
+        if(appendEnabled){
+            appendSegment(args, compressedReadingEnable, compressedWritingEnable, stemStopRemovalEnable, debugModeEnable, maxScoreEnabled, interleavedLayoutEnable);
+            return;
+        }
+
         //save to file flags that will be useful for query handling
-        if(!Flags.saveFlags(compressedWritingEnable,stemStopRemovalEnable,maxScoreEnabled)){
+        if(!Flags.saveFlags(compressedWritingEnable,stemStopRemovalEnable,maxScoreEnabled,interleavedLayoutEnable)){
             System.out.println("Error in saving configuration modes");
             return;
         }
@@ -80,17 +154,70 @@ public class Main {
         initializeFiles();
 
         System.out.println("Indexing started with parameters: " + Arrays.toString(args));
+        buildIndex(args, new IndexingCheckpoint(compressedReadingEnable, tokenizedReadingEnable), compressedWritingEnable, debugModeEnable);
+    }
+
+    /**
+     * writes the collection as a token stream, which can be indexed with the -tokenized flag without processing
+     * the text again, whatever the -s and -c flags used
+     *
+     * @param compressedReadingEnable flag enabling reading from compressed file
+     */
+    private static void tokenizeCollection(boolean compressedReadingEnable) {
+        System.out.println("Tokenization of the collection started");
+        Preprocesser.readStopwords();
         long start = System.currentTimeMillis();
-        int numIndexes = Spimi.executeSpimi(compressedReadingEnable, debugModeEnable);
-        if(numIndexes <= 0){
-            System.out.println("An error occurred: no partial indexes.");
+        if(CollectionTokenizer.tokenizeCollection(compressedReadingEnable) < 0){
+            System.out.println("An error occurred during the tokenization.");
             return;
         }
+        formatTime(start, System.currentTimeMillis(), "Tokenization of the collection");
+    }
+
+    /**
+     * resumes the interrupted indexing of the main index from its last checkpoint, with the flags it was started with
+     *
+     * @param args            the arguments of the indexer
+     * @param debugModeEnable flag enabling debug mode
+     */
+    private static void resumeIndexing(String[] args, boolean debugModeEnable) {
+        IndexingCheckpoint checkpoint = IndexingCheckpoint.read();
+        if(checkpoint == null || !Flags.initializeFlags()){
+            System.out.println("No interrupted indexing to resume");
+            return;
+        }
+        if(Flags.isStemStopRemovalEnabled())
+            Preprocesser.readStopwords();
+
+        System.out.println("Indexing resumed from the " + checkpoint);
+        buildIndex(args, checkpoint, Flags.isCompressionEnabled(), debugModeEnable);
+    }
+
+    /**
+     * builds the main index from a checkpoint: SPIMI indexes the documents not yet in the partial indexes of the
+     * checkpoint, then the partial indexes are merged. If the indexing is interrupted, the partial indexes and the
+     * checkpoint are kept so that it can be resumed
+     *
+     * @param args                    the arguments of the indexer
+     * @param checkpoint              the checkpoint of the indexing, empty to build the index from scratch
+     * @param compressedWritingEnable flag enabling the compression of the inverted index
+     * @param debugModeEnable         flag enabling debug mode
+     */
+    private static void buildIndex(String[] args, IndexingCheckpoint checkpoint, boolean compressedWritingEnable, boolean debugModeEnable) {
+        long start = System.currentTimeMillis();
+        if(!checkpoint.isSpimiCompleted()){
+            int numIndexes = Spimi.executeSpimi(checkpoint, debugModeEnable);
+            if(numIndexes <= 0){
+                System.out.println("An error occurred: no partial indexes.");
+                return;
+            }
+        }
         long spimiTime = System.currentTimeMillis();
         formatTime(start, spimiTime, "Spimi");
 
-        if(Merger.mergeIndexes(numIndexes,compressedWritingEnable,debugModeEnable)) {
+        if(Merger.mergeIndexes(compressedWritingEnable, debugModeEnable, checkpoint)) {
             cleanUpFiles();
+            IndexingCheckpoint.clear();
 
             // print to file the indexer statistics
             long stop = System.currentTimeMillis();
@@ -100,8 +227,8 @@ public class Main {
             try(BufferedWriter writer = new BufferedWriter(new FileWriter("data/indexerStatistics.tsv", true));) {
                 long docidSize = Files.size(Paths.get(ConfigurationParameters.getInvertedIndexDocs()));
                 long freqSize = Files.size(Paths.get(ConfigurationParameters.getInvertedIndexFreqs()));
-                long vocabularySize = Files.size(Paths.get(ConfigurationParameters.getVocabularyPath()));
-                long docIndexSize = Files.size(Paths.get(ConfigurationParameters.getDocumentIndexPath()));
+                long vocabularySize = VocabularyFile.size(ConfigurationParameters.getVocabularyPath());
+                long docIndexSize = DocumentIndexWriter.size(ConfigurationParameters.getDocumentIndexPath());
                 long fullTime = stop - start;
                 String stats = Arrays.toString(args) + '\t' + fullTime + '\t' + docidSize + '\t' + freqSize + '\t' + vocabularySize + '\t' + docIndexSize + '\n';
                 writer.write(stats);
@@ -113,8 +240,104 @@ public class Main {
 
             return;
         }
-        System.out.println("An error occurred during merging.");
+        // the partial indexes are kept to resume the merge from its last checkpoint
+        System.out.println("An error occurred during merging. Run the indexer with -resume to continue from the last checkpoint.");
+    }
+
+    /**
+     * indexes the collection in a new immutable segment appended to the existing index, with docids following
+     * the ones already indexed, then applies the segment merge policy
+     *
+     * @param args                    the arguments of the indexer
+     * @param compressedReadingEnable flag enabling reading from compressed file
+     * @param compressedWritingEnable flag enabling the compression of the inverted index
+     * @param stemStopRemovalEnable   flag enabling stopwords removal and stemming
+     * @param debugModeEnable         flag enabling debug mode
+     * @param maxScoreEnabled         flag enabling max score
+     * @param interleavedLayoutEnable flag enabling the interleaved layout of the blocks
+     */
+    private static void appendSegment(String[] args, boolean compressedReadingEnable, boolean compressedWritingEnable,
+                                      boolean stemStopRemovalEnable, boolean debugModeEnable, boolean maxScoreEnabled,
+                                      boolean interleavedLayoutEnable) {
+
+        // the segment must be built with the same compression, preprocessing and layout of the existing index
+        if(!new File(ConfigurationParameters.getVocabularyPath()).exists() || !Flags.initializeFlags()){
+            System.out.println("No index to append to: build the index without -append first");
+            return;
+        }
+        if(Flags.isCompressionEnabled() != compressedWritingEnable || Flags.isStemStopRemovalEnabled() != stemStopRemovalEnable
+                || Flags.isInterleavedLayoutEnabled() != interleavedLayoutEnable){
+            System.out.println("The flags -c, -s and -interleaved must be the same used to build the index");
+            return;
+        }
+        if(!Flags.saveFlags(compressedWritingEnable,stemStopRemovalEnable,maxScoreEnabled,interleavedLayoutEnable)){
+            System.out.println("Error in saving configuration modes");
+            return;
+        }
+
+        //initialize the directories of the partial indexes, keeping the existing index
+        initializePartialFiles();
+
+        long collectionSize = CollectionSize.getCollectionSize();
+        long totalDocLen = CollectionSize.getTotalDocLen();
+        Segment segment = SegmentRegistry.newSegment((int) collectionSize + 1);
+
+        System.out.println("Indexing of " + segment.getName() + " started with parameters: " + Arrays.toString(args));
+        long start = System.currentTimeMillis();
+        int numIndexes = Spimi.executeSpimi(compressedReadingEnable, debugModeEnable, segment);
+        if(numIndexes <= 0){
+            System.out.println("An error occurred: no partial indexes.");
+            SegmentRegistry.discard(segment);
+            return;
+        }
+        long spimiTime = System.currentTimeMillis();
+        formatTime(start, spimiTime, "Spimi");
+
+        boolean merged = Merger.mergeIndexes(numIndexes, compressedWritingEnable, debugModeEnable, segment);
         cleanUpFiles();
+
+        // the segment becomes searchable when it is added to the registry
+        if(!merged || !SegmentRegistry.addSegment(segment)){
+            System.out.println("An error occurred during merging.");
+            SegmentRegistry.discard(segment);
+            return;
+        }
+        if(!CollectionSize.updateCollectionSize(collectionSize + segment.getNumDocs()) || !CollectionSize.updateDocumentsLenght(totalDocLen + segment.getTotalDocLen())){
+            System.out.println("Couldn't update collection statistics.");
+            return;
+        }
+        formatTime(spimiTime, System.currentTimeMillis(), "Merging");
+        System.out.println("Added " + segment + ", the index has " + SegmentRegistry.getSegments().size() + " segments");
+        Merger.printPerformanceStatistics();
+
+        // keep the number of segments bounded
+        if(!SegmentMerger.mergeSegments(compressedWritingEnable))
+            System.out.println("An error occurred while merging the segments.");
+        formatTime(start, System.currentTimeMillis(), "Append of the segment");
+        System.out.println("The index has " + SegmentRegistry.getSegments().size() + " segments");
+    }
+
+    /**
+     * removes the postings of the deleted documents from the existing index, if the fraction of deleted documents
+     * reached the compaction threshold
+     */
+    private static void compactIndex() {
+        if(!new File(ConfigurationParameters.getVocabularyPath()).exists() || !Flags.initializeFlags()){
+            System.out.println("No index to compact: build the index first");
+            return;
+        }
+        if(!Compactor.isCompactionNeeded()){
+            System.out.println("Compaction not needed: " + String.format("%.2f", DeletedDocuments.getDeletedRatio() * 100)
+                    + "% of the documents deleted, threshold " + String.format("%.2f", ConfigurationParameters.getCompactionThreshold() * 100) + "%");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        if(!Compactor.compact(Flags.isCompressionEnabled())){
+            System.out.println("An error occurred during compaction.");
+            return;
+        }
+        formatTime(start, System.currentTimeMillis(), "Compaction of the index");
     }
 
     /**
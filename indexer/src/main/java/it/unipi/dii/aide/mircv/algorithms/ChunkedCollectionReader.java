@@ -0,0 +1,357 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel reader of the uncompressed collection: the file is memory mapped and split in chunks of fixed size which
+ * are parsed by worker threads, while the documents are returned in the order of the collection, chunk after chunk,
+ * so the docids assigned to them don't depend on the number of workers.
+ * The lines are parsed directly from the bytes: the pid is the text before the first tab, the text is the one
+ * between the first and the second tab, without the non ASCII bytes. Every byte of a multibyte UTF-8 character is
+ * non ASCII, so the text is the same obtained decoding the line and removing the non ASCII characters
+ */
+public class ChunkedCollectionReader implements TextCollectionReader {
+
+    /**
+     * default size in bytes of the chunks of the collection
+     */
+    static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * bytes mapped after the end of a chunk to read its last line, doubled if the line is longer
+     */
+    private static final int LINE_LOOKAHEAD = 64 * 1024;
+
+    /**
+     * size in bytes of the window used to skip the lines at the beginning of the collection
+     */
+    private static final int SKIP_WINDOW = 64 * 1024 * 1024;
+
+    /**
+     * documents of a chunk, with the number of lines of the chunk read up to each of them
+     */
+    private static class Chunk {
+        private final ArrayList<TextDocument> documents = new ArrayList<>();
+        private int[] readLines = new int[1024];
+        private int numLines = 0;
+
+        /**
+         * adds a document of the chunk
+         * @param document the document
+         */
+        private void add(TextDocument document) {
+            if (documents.size() == readLines.length)
+                readLines = Arrays.copyOf(readLines, readLines.length * 2);
+            readLines[documents.size()] = numLines;
+            documents.add(document);
+        }
+    }
+
+    /**
+     * channel of the collection file
+     */
+    private final FileChannel channel;
+
+    /**
+     * size of the collection file
+     */
+    private final long size;
+
+    /**
+     * offset of the first line to be read, after the skipped ones
+     */
+    private final long origin;
+
+    /**
+     * size in bytes of the chunks
+     */
+    private final int chunkSize;
+
+    /**
+     * threads parsing the chunks
+     */
+    private final ExecutorService workers;
+
+    /**
+     * maximum number of chunks parsed or waiting to be read at the same time
+     */
+    private final int maxPendingChunks;
+
+    /**
+     * chunks submitted to the workers, in the order of the collection
+     */
+    private final ArrayDeque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+
+    /**
+     * offset of the next chunk to be submitted
+     */
+    private long nextChunkOffset;
+
+    /**
+     * chunk whose documents are being returned
+     */
+    private Chunk currentChunk = null;
+
+    /**
+     * position in the current chunk of the next document to be returned
+     */
+    private int position = 0;
+
+    /**
+     * number of lines read before the current chunk, including the skipped ones
+     */
+    private long linesBeforeChunk;
+
+    /**
+     * opens the collection with a worker for each available processor
+     *
+     * @param path      path of the collection
+     * @param skipLines number of lines at the beginning of the collection to be skipped
+     * @throws IOException if the collection cannot be opened
+     */
+    public ChunkedCollectionReader(String path, long skipLines) throws IOException {
+        this(path, skipLines, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param path       path of the collection
+     * @param skipLines  number of lines at the beginning of the collection to be skipped
+     * @param numWorkers number of threads parsing the chunks
+     * @param chunkSize  size in bytes of the chunks
+     * @throws IOException if the collection cannot be opened
+     */
+    public ChunkedCollectionReader(String path, long skipLines, int numWorkers, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.chunkSize = chunkSize;
+        this.linesBeforeChunk = skipLines;
+        this.origin = skip(skipLines);
+        this.nextChunkOffset = origin;
+
+        this.maxPendingChunks = numWorkers + 1;
+        this.workers = Executors.newFixedThreadPool(numWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "collection-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (pendingChunks.size() < maxPendingChunks && submitNextChunk());
+    }
+
+    /**
+     * finds the offset of the line following the skipped ones
+     *
+     * @param skipLines number of lines to be skipped
+     * @return the offset of the first line to be read
+     * @throws IOException if an error occurs while reading the collection
+     */
+    private long skip(long skipLines) throws IOException {
+        long offset = 0;
+        long skipped = 0;
+        while (skipped < skipLines && offset < size) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SKIP_WINDOW, size - offset));
+            int i = 0;
+            while (skipped < skipLines && i < window.limit()) {
+                if (window.get(i++) == '\n')
+                    skipped++;
+            }
+            offset += i;
+        }
+        return offset;
+    }
+
+    /**
+     * submits the next chunk of the collection to the workers
+     *
+     * @return false if the whole collection has been submitted
+     */
+    private boolean submitNextChunk() {
+        if (nextChunkOffset >= size)
+            return false;
+
+        long chunkOffset = nextChunkOffset;
+        nextChunkOffset += chunkSize;
+        pendingChunks.add(workers.submit(() -> readChunk(chunkOffset)));
+        return true;
+    }
+
+    /**
+     * reads the lines starting in a chunk of the collection, mapping also the bytes following the chunk until its
+     * last line is complete
+     *
+     * @param chunkOffset offset of the chunk
+     * @return the documents of the chunk
+     * @throws IOException if an error occurs while reading the collection
+     */
+    private Chunk readChunk(long chunkOffset) throws IOException {
+        long chunkEnd = Math.min(size, chunkOffset + chunkSize);
+        // the byte before the chunk tells if a line starts at the beginning of the chunk
+        long mapOffset = chunkOffset == origin ? chunkOffset : chunkOffset - 1;
+
+        long lookahead = LINE_LOOKAHEAD;
+        for (;;) {
+            long mapEnd = Math.min(size, chunkEnd + lookahead);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapOffset, mapEnd - mapOffset);
+            Chunk chunk = parseChunk(buffer, (int) (chunkOffset - mapOffset), (int) (chunkEnd - mapOffset), mapEnd == size);
+            if (chunk != null)
+                return chunk;
+            lookahead *= 2;
+        }
+    }
+
+    /**
+     * parses the lines starting in a chunk
+     *
+     * @param buffer    the mapped bytes, from the byte before the chunk (or its first byte at the origin)
+     * @param start     position in the buffer of the first byte of the chunk
+     * @param end       position in the buffer of the end of the chunk
+     * @param endOfFile true if the buffer reaches the end of the collection
+     * @return the documents of the chunk, null if the last line of the chunk is not complete in the buffer
+     */
+    private static Chunk parseChunk(MappedByteBuffer buffer, int start, int end, boolean endOfFile) {
+        Chunk chunk = new Chunk();
+        int limit = buffer.limit();
+
+        // the first line of the chunk starts after the first newline found from the byte before the chunk
+        int lineStart = start;
+        if (start > 0) {
+            int i = start - 1;
+            while (i < limit && buffer.get(i) != '\n')
+                i++;
+            lineStart = i + 1;
+        }
+
+        byte[] text = new byte[256];
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+            if (lineEnd == limit && !endOfFile)
+                return null;
+
+            chunk.numLines++;
+            if (lineEnd - lineStart > text.length)
+                text = new byte[lineEnd - lineStart];
+            TextDocument document = parseLine(buffer, lineStart, lineEnd, text);
+            if (document != null)
+                chunk.add(document);
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * parses a line in the format pid \t text
+     *
+     * @param buffer    the mapped bytes
+     * @param lineStart position of the first byte of the line
+     * @param lineEnd   position of the newline ending the line, or of the end of the file
+     * @param text      array large enough to hold the text of the line
+     * @return the document, null if the line is blank or it has no tab
+     */
+    private static TextDocument parseLine(MappedByteBuffer buffer, int lineStart, int lineEnd, byte[] text) {
+        // a carriage return before the newline is not part of the line
+        if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+            lineEnd--;
+
+        if (isBlank(buffer, lineStart, lineEnd))
+            return null;
+
+        int tab = lineStart;
+        while (tab < lineEnd && buffer.get(tab) != '\t')
+            tab++;
+        if (tab == lineEnd)
+            return null;
+
+        // the text ends at the following tab, its non ASCII bytes are removed
+        int length = 0;
+        for (int i = tab + 1; i < lineEnd; i++) {
+            byte b = buffer.get(i);
+            if (b == '\t')
+                break;
+            if (b >= 0)
+                text[length++] = b;
+        }
+
+        byte[] pid = new byte[tab - lineStart];
+        buffer.get(lineStart, pid);
+        return new TextDocument(new String(pid, StandardCharsets.UTF_8), new String(text, 0, length, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * checks if a line is made only of whitespaces; the line is decoded only if it contains non ASCII bytes and no
+     * ASCII character other than whitespaces, since they may encode unicode whitespaces
+     *
+     * @param buffer    the mapped bytes
+     * @param lineStart position of the first byte of the line
+     * @param lineEnd   position after the last byte of the line
+     * @return true if the line is blank
+     */
+    private static boolean isBlank(MappedByteBuffer buffer, int lineStart, int lineEnd) {
+        boolean nonAscii = false;
+        for (int i = lineStart; i < lineEnd; i++) {
+            byte b = buffer.get(i);
+            if (b < 0)
+                nonAscii = true;
+            else if (!Character.isWhitespace(b))
+                return false;
+        }
+        if (!nonAscii)
+            return true;
+
+        byte[] line = new byte[lineEnd - lineStart];
+        buffer.get(lineStart, line);
+        return new String(line, StandardCharsets.UTF_8).isBlank();
+    }
+
+    @Override
+    public TextDocument nextDocument() throws IOException {
+        while (currentChunk == null || position == currentChunk.documents.size()) {
+            if (currentChunk != null) {
+                linesBeforeChunk += currentChunk.numLines;
+                currentChunk = null;
+            }
+            if (pendingChunks.isEmpty())
+                return null;
+
+            try {
+                currentChunk = pendingChunks.poll().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            position = 0;
+            // keep the workers busy while the documents of the chunk are returned
+            submitNextChunk();
+        }
+        return currentChunk.documents.get(position++);
+    }
+
+    @Override
+    public long getReadLines() {
+        if (currentChunk == null || position == 0)
+            return linesBeforeChunk;
+        return linesBeforeChunk + currentChunk.readLines[position - 1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        channel.close();
+    }
+}
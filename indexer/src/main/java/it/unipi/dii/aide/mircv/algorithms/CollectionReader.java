@@ -0,0 +1,33 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+
+import java.io.IOException;
+
+/**
+ * Reader of the documents of the collection indexed by SPIMI: the documents are returned already processed, in the
+ * order of the collection
+ */
+public interface CollectionReader extends AutoCloseable {
+
+    /**
+     * reads the next document of the collection and preprocesses it
+     *
+     * @return the next processed document, null if all the documents have been read
+     * @throws IOException if an error occurs while reading the collection
+     */
+    ProcessedDocument nextProcessedDocument() throws IOException;
+
+    /**
+     * @return the number of lines of the collection read up to the last document returned, including the skipped ones
+     */
+    long getReadLines();
+
+    /**
+     * closes the collection
+     *
+     * @throws IOException if an error occurs while closing the collection
+     */
+    @Override
+    void close() throws IOException;
+}
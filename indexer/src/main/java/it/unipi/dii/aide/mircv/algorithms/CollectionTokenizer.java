@@ -0,0 +1,144 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.common.preprocess.StemmingService;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * One-time pass writing the collection as a binary stream of tokens, which SPIMI can index without processing the
+ * text again. Each document of the stream is made of its pid, its number of tokens and the ids of its tokens,
+ * compressed with Variable Byte; the id of a term is its position in the term table plus one. The tokens are the ones
+ * obtained without stopwords removal and stemming.
+ * The term table maps each id to its term, the stem of the term and a flag telling if it is a stopword, so the same
+ * stream can be indexed both with and without the -s flag
+ */
+public class CollectionTokenizer {
+
+    /**
+     * path to the stream of the tokenized documents
+     */
+    private static String TOKENIZED_COLLECTION_PATH = ConfigurationParameters.getTokenizedCollectionPath();
+
+    /**
+     * path to the term table of the tokenized collection
+     */
+    private static String TOKENIZED_TERMS_PATH = ConfigurationParameters.getTokenizedTermsPath();
+
+    /**
+     * tokenizes the collection, replacing the previous token stream; the stopwords must be loaded to mark them in
+     * the term table
+     *
+     * @param compressedReading flag for reading the collection from the compressed file
+     * @return the number of documents written, -1 if an error occurs
+     */
+    public static long tokenizeCollection(boolean compressedReading) {
+        try {
+            return tokenizeCollection(Spimi.openTextCollection(compressedReading, 0));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * tokenizes the documents of a collection reader, which is closed at the end
+     *
+     * @param reader the reader of the collection
+     * @return the number of documents written, -1 if an error occurs
+     */
+    static long tokenizeCollection(TextCollectionReader reader) {
+        FileUtils.removeFile(TOKENIZED_COLLECTION_PATH);
+        FileUtils.removeFile(TOKENIZED_TERMS_PATH);
+
+        HashMap<String, Integer> termIds = new HashMap<>();
+        ArrayList<String> terms = new ArrayList<>();
+        long numDocuments = 0;
+
+        try (
+                TextCollectionReader collection = reader;
+                DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(TOKENIZED_COLLECTION_PATH), 1024 * 1024))
+        ) {
+            for (TextDocument text = collection.nextDocument(); text != null; text = collection.nextDocument()) {
+                // the documents are processed without stopwords removal and stemming, which are applied through the
+                // term table
+                ProcessedDocument document = Preprocesser.processDocument(text, false);
+                ArrayList<String> tokens = document.getTokens();
+                int[] ids = new int[tokens.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    Integer id = termIds.get(tokens.get(i));
+                    if (id == null) {
+                        id = terms.size() + 1;
+                        termIds.put(tokens.get(i), id);
+                        terms.add(tokens.get(i));
+                    }
+                    ids[i] = id;
+                }
+
+                byte[] compressedTokens = VariableByteCompressor.integerArrayCompression(ids);
+                stream.writeUTF(document.getPid());
+                stream.writeInt(ids.length);
+                stream.writeInt(compressedTokens.length);
+                stream.write(compressedTokens);
+
+                numDocuments++;
+                if (numDocuments % 1000000 == 0)
+                    System.out.println("tokenized documents: " + numDocuments);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileUtils.removeFile(TOKENIZED_COLLECTION_PATH);
+            return -1;
+        }
+
+        // the term table is written last: the stream is complete only if the table exists
+        try (DataOutputStream table = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(TOKENIZED_TERMS_PATH)))) {
+            table.writeInt(terms.size());
+            for (String term : terms) {
+                table.writeUTF(term);
+                table.writeUTF(StemmingService.stem(term));
+                table.writeBoolean(Preprocesser.isStopword(term));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            FileUtils.removeFile(TOKENIZED_COLLECTION_PATH);
+            FileUtils.removeFile(TOKENIZED_TERMS_PATH);
+            return -1;
+        }
+
+        System.out.println("tokenized collection: " + numDocuments + " documents, " + terms.size() + " terms");
+        return numDocuments;
+    }
+
+    /**
+     * @return true if the tokenized collection exists
+     */
+    public static boolean isAvailable() {
+        return TOKENIZED_COLLECTION_PATH != null && TOKENIZED_TERMS_PATH != null
+                && new File(TOKENIZED_COLLECTION_PATH).exists() && new File(TOKENIZED_TERMS_PATH).exists();
+    }
+
+    /** needed for testing purposes
+     * @param collectionPath: path to the stream of the tokenized documents
+     * @param termsPath: path to the term table
+     */
+    public static void setTokenizedCollectionPaths(String collectionPath, String termsPath) {
+        TOKENIZED_COLLECTION_PATH = collectionPath;
+        TOKENIZED_TERMS_PATH = termsPath;
+    }
+
+    static String getTokenizedCollectionPath() {
+        return TOKENIZED_COLLECTION_PATH;
+    }
+
+    static String getTokenizedTermsPath() {
+        return TOKENIZED_TERMS_PATH;
+    }
+}
@@ -0,0 +1,132 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.DeletedDocuments;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndex;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+
+import java.io.IOException;
+
+/**
+ * Reader of an inverted index which drops the postings of the deleted documents: the posting list of each term is
+ * read and filtered before the term is returned, so that its vocabulary entry has the statistics of the remaining
+ * postings. The terms whose postings are all deleted are skipped
+ */
+class CompactingReader implements InvertedIndexReader {
+
+    /**
+     * reader of the index being compacted
+     */
+    private final InvertedIndexReader reader;
+
+    /**
+     * vocabulary entry of the current term, with the statistics of the remaining postings
+     */
+    private VocabularyEntry entry = null;
+
+    /**
+     * docids of the remaining postings of the current term
+     */
+    private int[] docids = new int[16];
+
+    /**
+     * frequencies of the remaining postings of the current term
+     */
+    private int[] frequencies = new int[16];
+
+    /**
+     * number of remaining postings of the current term
+     */
+    private int numPostings = 0;
+
+    /**
+     * position of the next posting to be read
+     */
+    private int position = 0;
+
+    /**
+     * number of postings dropped from the index
+     */
+    private long droppedPostings = 0;
+
+    /**
+     * @param reader reader of the index being compacted
+     */
+    CompactingReader(InvertedIndexReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean nextTerm() throws IOException {
+        while (reader.nextTerm()) {
+            int df = reader.getEntry().getDf();
+            if (docids.length < df) {
+                docids = new int[df];
+                frequencies = new int[df];
+            }
+
+            VocabularyEntry filtered = new VocabularyEntry(reader.getTerm());
+            numPostings = 0;
+            position = 0;
+            while (reader.hasNextPosting()) {
+                reader.readPosting(docids, frequencies, numPostings);
+                int docid = docids[numPostings];
+                if (DeletedDocuments.isDeleted(docid)) {
+                    droppedPostings++;
+                    continue;
+                }
+
+                // the statistics are computed on the remaining postings
+                filtered.setMaxTf(Math.max(filtered.getMaxTf(), frequencies[numPostings]));
+                filtered.updateBM25Statistics(frequencies[numPostings], DocumentIndex.getInstance().getLength(docid));
+                numPostings++;
+            }
+
+            if (numPostings > 0) {
+                filtered.setDf(numPostings);
+                entry = filtered;
+                return true;
+            }
+        }
+        entry = null;
+        return false;
+    }
+
+    @Override
+    public boolean hasNextPosting() {
+        return position < numPostings;
+    }
+
+    @Override
+    public void readPosting(int[] docids, int[] frequencies, int position) {
+        docids[position] = this.docids[this.position];
+        frequencies[position] = this.frequencies[this.position];
+        this.position++;
+    }
+
+    @Override
+    public String getTerm() {
+        return entry.getTerm();
+    }
+
+    @Override
+    public VocabularyEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public int getIndex() {
+        return reader.getIndex();
+    }
+
+    /**
+     * @return number of postings dropped from the index
+     */
+    long getDroppedPostings() {
+        return droppedPostings;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
@@ -0,0 +1,194 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.BlockDescriptorTable;
+import it.unipi.dii.aide.mircv.common.beans.DeletedDocuments;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndex;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import it.unipi.dii.aide.mircv.common.beans.SegmentRegistry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyFile;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * compaction of the index: the main index and each segment containing deleted documents are rewritten without the
+ * postings of the deleted documents, then the deletions are cleared. The docids are not changed, so the document
+ * index and the collection statistics are kept as they are
+ */
+public class Compactor {
+
+    /**
+     * suffix of the files of the main index while they are rewritten
+     */
+    private static final String COMPACTED_SUFFIX = ".compacted";
+
+    /**
+     * Path to the inverted index docs file of the main index
+     */
+    private static String PATH_TO_INVERTED_INDEX_DOCS = ConfigurationParameters.getInvertedIndexDocs();
+
+    /**
+     * Path to the inverted index freqs file of the main index
+     */
+    private static String PATH_TO_INVERTED_INDEX_FREQS = ConfigurationParameters.getInvertedIndexFreqs();
+
+    /**
+     * Path to the vocabulary of the main index
+     */
+    private static String PATH_TO_VOCABULARY = ConfigurationParameters.getVocabularyPath();
+
+    /**
+     * path to block descriptors file of the main index
+     */
+    private static String PATH_TO_BLOCK_DESCRIPTORS = ConfigurationParameters.getBlockDescriptorsPath();
+
+    /**
+     * @return true if the fraction of deleted documents reached the compaction threshold
+     */
+    public static boolean isCompactionNeeded() {
+        return DeletedDocuments.getNumDeleted() > 0 && DeletedDocuments.getDeletedRatio() >= ConfigurationParameters.getCompactionThreshold();
+    }
+
+    /**
+     * rewrites the main index without the postings of the deleted documents, replacing its files when it is
+     * completely written
+     *
+     * @param compressionMode true if the posting lists are compressed
+     * @return true if the main index is compacted
+     */
+    private static boolean compactMainIndex(boolean compressionMode) {
+        String vocabularyPath = PATH_TO_VOCABULARY;
+        String docidsPath = PATH_TO_INVERTED_INDEX_DOCS;
+        String frequenciesPath = PATH_TO_INVERTED_INDEX_FREQS;
+        String descriptorsPath = PATH_TO_BLOCK_DESCRIPTORS;
+
+        try {
+            CompactingReader reader = new CompactingReader(new SegmentReader(0, vocabularyPath, descriptorsPath, docidsPath, frequenciesPath, compressionMode));
+            long vocSize = Merger.compact(reader, vocabularyPath + COMPACTED_SUFFIX, docidsPath + COMPACTED_SUFFIX,
+                    frequenciesPath + COMPACTED_SUFFIX, descriptorsPath + COMPACTED_SUFFIX, compressionMode);
+            if (vocSize == -1) {
+                VocabularyFile.remove(vocabularyPath + COMPACTED_SUFFIX);
+                for (String path : new String[]{docidsPath, frequenciesPath, descriptorsPath})
+                    FileUtils.removeFile(path + COMPACTED_SUFFIX);
+                return false;
+            }
+
+            VocabularyFile.move(vocabularyPath + COMPACTED_SUFFIX, vocabularyPath);
+            for (String path : new String[]{docidsPath, frequenciesPath, descriptorsPath})
+                Files.move(Paths.get(path + COMPACTED_SUFFIX), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+            BlockDescriptorTable.invalidate(descriptorsPath);
+            MappedFile.invalidate(docidsPath);
+            MappedFile.invalidate(frequenciesPath);
+            CollectionSize.updateVocabularySize(vocSize);
+
+            System.out.println("main index compacted: " + reader.getDroppedPostings() + " postings dropped");
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * rewrites a segment without the postings of the deleted documents in a new segment which replaces it
+     *
+     * @param segment         the segment to be compacted
+     * @param compressionMode true if the posting lists are compressed
+     * @return true if the segment is compacted
+     */
+    private static boolean compactSegment(Segment segment, boolean compressionMode) {
+        Segment target = SegmentRegistry.newSegment(segment.getFirstDocid());
+        target.setNumDocs(segment.getNumDocs());
+        target.setTotalDocLen(segment.getTotalDocLen());
+
+        try {
+            CompactingReader reader = new CompactingReader(new SegmentReader(0, segment, compressionMode));
+            long vocSize = Merger.compact(reader, target.getVocabularyPath(), target.getInvertedIndexDocsPath(),
+                    target.getInvertedIndexFreqsPath(), target.getBlockDescriptorsPath(), compressionMode);
+            if (vocSize != -1) {
+                target.setVocabularySize(vocSize);
+                // the docids are not changed, so the document index is kept
+                DocumentIndexWriter.copy(segment.getDocumentIndexPath(), target.getDocumentIndexPath());
+
+                if (SegmentRegistry.replaceSegments(List.of(segment), target)) {
+                    System.out.println(segment + " compacted in " + target + ": " + reader.getDroppedPostings() + " postings dropped");
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        SegmentRegistry.discard(target);
+        return false;
+    }
+
+    /**
+     * compacts the main index and the segments containing deleted documents, then clears the deletions
+     *
+     * @param compressionMode true if the posting lists are compressed
+     * @return true if the whole index is compacted
+     */
+    public static boolean compact(boolean compressionMode) {
+        long start = System.currentTimeMillis();
+        System.out.println("compacting the index: " + DeletedDocuments.getNumDeleted() + " deleted documents ("
+                + String.format("%.2f", DeletedDocuments.getDeletedRatio() * 100) + "%)");
+
+        // the document lengths are needed to compute the statistics of the remaining postings
+        DocumentIndex documentIndex = DocumentIndex.getInstance();
+        if (documentIndex.isEmpty() && !documentIndex.loadFromDisk()) {
+            System.out.println("Couldn't load the document index.");
+            return false;
+        }
+
+        int mainIndexSize = (int) SegmentRegistry.getMainIndexSize(CollectionSize.getCollectionSize());
+        if (DeletedDocuments.countDeleted(1, mainIndexSize) > 0 && !compactMainIndex(compressionMode))
+            return false;
+
+        for (Segment segment : SegmentRegistry.getSegments()) {
+            if (DeletedDocuments.countDeleted(segment.getFirstDocid(), segment.getLastDocid()) > 0 && !compactSegment(segment, compressionMode))
+                return false;
+        }
+
+        // the postings of the deleted documents are no longer in the index
+        DeletedDocuments.clear();
+        System.out.println("index compacted in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * needed for testing purposes
+     * @param pathToVocabulary: path to be set as vocabulary path
+     */
+    public static void setPathToVocabulary(String pathToVocabulary) {
+        PATH_TO_VOCABULARY = pathToVocabulary;
+    }
+
+    /**
+     * needed for testing purposes
+     * @param pathToInvertedIndexDocs: path to be set as inverted index's docs path
+     */
+    public static void setPathToInvertedIndexDocs(String pathToInvertedIndexDocs) {
+        PATH_TO_INVERTED_INDEX_DOCS = pathToInvertedIndexDocs;
+    }
+
+    /**
+     * needed for testing purposes
+     * @param invertedIndexFreqs: path to be set as inverted index's freqs path
+     */
+    public static void setPathToInvertedIndexFreqs(String invertedIndexFreqs) { PATH_TO_INVERTED_INDEX_FREQS = invertedIndexFreqs;}
+
+    /**
+     * needed for testing purposes
+     * @param blockDescriptorsPath: path to be set as block descriptors' path
+     */
+    public static void setPathToBlockDescriptors(String blockDescriptorsPath) { PATH_TO_BLOCK_DESCRIPTORS = blockDescriptorsPath;}
+}
@@ -0,0 +1,300 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * checkpoint of the indexing of the main index, saved after each partial index written by SPIMI and periodically
+ * during the merge, so that an interrupted indexing can be resumed from the last checkpoint instead of from scratch.
+ * During SPIMI it stores the position reached in the collection, while during the merge it stores the last term
+ * written and the sizes of the output files
+ */
+public class IndexingCheckpoint {
+
+    /**
+     * path to the checkpoint file
+     */
+    private static String CHECKPOINT_PATH = ConfigurationParameters.getCheckpointPath();
+
+    /**
+     * flag telling if the collection is read from the compressed file
+     */
+    private boolean compressedReading;
+
+    /**
+     * flag telling if the collection is read from the token stream of the tokenized collection
+     */
+    private boolean tokenizedReading = false;
+
+    /**
+     * number of lines of the collection already indexed in the written partial indexes
+     */
+    private long processedLines = 0;
+
+    /**
+     * docid of the next document to be indexed
+     */
+    private int nextDocid = 1;
+
+    /**
+     * number of entries written in the document index
+     */
+    private long documentIndexEntries = 0;
+
+    /**
+     * sum of the lengths of the indexed documents
+     */
+    private long totalDocLen = 0;
+
+    /**
+     * number of partial indexes written
+     */
+    private int numRuns = 0;
+
+    /**
+     * flag telling if all the collection has been indexed, so the indexing is in the merge phase
+     */
+    private boolean spimiCompleted = false;
+
+    /**
+     * last term written by the merge, null if the merge has not written a checkpoint yet
+     */
+    private String lastMergedTerm = null;
+
+    /**
+     * number of terms written in the vocabulary by the merge
+     */
+    private long vocabularySize = 0;
+
+    /**
+     * bytes written in the terms file of the vocabulary by the merge; its statistics take a fixed size per term
+     */
+    private long vocabularyBytes = 0;
+
+    /**
+     * bytes written in the inverted index docids by the merge
+     */
+    private long docidsBytes = 0;
+
+    /**
+     * bytes written in the inverted index frequencies by the merge
+     */
+    private long frequenciesBytes = 0;
+
+    /**
+     * bytes written in the block descriptors by the merge
+     */
+    private long blockDescriptorsBytes = 0;
+
+    /**
+     * @param compressedReading flag telling if the collection is read from the compressed file
+     */
+    public IndexingCheckpoint(boolean compressedReading) {
+        this.compressedReading = compressedReading;
+    }
+
+    /**
+     * @param compressedReading flag telling if the collection is read from the compressed file
+     * @param tokenizedReading flag telling if the collection is read from the token stream
+     */
+    public IndexingCheckpoint(boolean compressedReading, boolean tokenizedReading) {
+        this.compressedReading = compressedReading;
+        this.tokenizedReading = tokenizedReading;
+    }
+
+    /**
+     * reads the checkpoint of the last indexing
+     * @return the checkpoint, null if there is no checkpoint or it cannot be read
+     */
+    public static IndexingCheckpoint read() {
+        if (CHECKPOINT_PATH == null || !new File(CHECKPOINT_PATH).exists())
+            return null;
+
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(CHECKPOINT_PATH)))) {
+            IndexingCheckpoint checkpoint = new IndexingCheckpoint(dis.readBoolean(), dis.readBoolean());
+            checkpoint.processedLines = dis.readLong();
+            checkpoint.nextDocid = dis.readInt();
+            checkpoint.documentIndexEntries = dis.readLong();
+            checkpoint.totalDocLen = dis.readLong();
+            checkpoint.numRuns = dis.readInt();
+            checkpoint.spimiCompleted = dis.readBoolean();
+            if (dis.readBoolean())
+                checkpoint.lastMergedTerm = dis.readUTF();
+            checkpoint.vocabularySize = dis.readLong();
+            checkpoint.vocabularyBytes = dis.readLong();
+            checkpoint.docidsBytes = dis.readLong();
+            checkpoint.frequenciesBytes = dis.readLong();
+            checkpoint.blockDescriptorsBytes = dis.readLong();
+            return checkpoint;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * saves the checkpoint on disk; the checkpoint is written in a temporary file which then replaces the previous
+     * checkpoint, so an interruption while writing leaves the previous checkpoint valid
+     * @return true if the checkpoint is saved
+     */
+    public boolean write() {
+        if (CHECKPOINT_PATH == null)
+            return false;
+
+        String tmpPath = CHECKPOINT_PATH + ".tmp";
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPath)))) {
+            dos.writeBoolean(compressedReading);
+            dos.writeBoolean(tokenizedReading);
+            dos.writeLong(processedLines);
+            dos.writeInt(nextDocid);
+            dos.writeLong(documentIndexEntries);
+            dos.writeLong(totalDocLen);
+            dos.writeInt(numRuns);
+            dos.writeBoolean(spimiCompleted);
+            dos.writeBoolean(lastMergedTerm != null);
+            if (lastMergedTerm != null)
+                dos.writeUTF(lastMergedTerm);
+            dos.writeLong(vocabularySize);
+            dos.writeLong(vocabularyBytes);
+            dos.writeLong(docidsBytes);
+            dos.writeLong(frequenciesBytes);
+            dos.writeLong(blockDescriptorsBytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        try {
+            Files.move(Paths.get(tmpPath), Paths.get(CHECKPOINT_PATH), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * removes the checkpoint, used when the indexing is completed or started from scratch
+     */
+    public static void clear() {
+        if (CHECKPOINT_PATH == null)
+            return;
+        FileUtils.removeFile(CHECKPOINT_PATH);
+        FileUtils.removeFile(CHECKPOINT_PATH + ".tmp");
+    }
+
+    /**
+     * updates the state of SPIMI after a partial index has been written
+     * @param processedLines number of lines of the collection indexed in the written partial indexes
+     * @param nextDocid docid of the next document to be indexed
+     * @param documentIndexEntries number of entries of the document index
+     * @param totalDocLen sum of the lengths of the indexed documents
+     * @param numRuns number of partial indexes written
+     */
+    void setSpimiState(long processedLines, int nextDocid, long documentIndexEntries, long totalDocLen, int numRuns) {
+        this.processedLines = processedLines;
+        this.nextDocid = nextDocid;
+        this.documentIndexEntries = documentIndexEntries;
+        this.totalDocLen = totalDocLen;
+        this.numRuns = numRuns;
+    }
+
+    /**
+     * updates the state of the merge after the output files have been flushed
+     * @param lastMergedTerm last term written
+     * @param vocabularySize number of terms written
+     * @param vocabularyBytes bytes written in the terms file of the vocabulary
+     * @param docidsBytes bytes written in the inverted index docids
+     * @param frequenciesBytes bytes written in the inverted index frequencies
+     * @param blockDescriptorsBytes bytes written in the block descriptors
+     */
+    void setMergeState(String lastMergedTerm, long vocabularySize, long vocabularyBytes, long docidsBytes, long frequenciesBytes, long blockDescriptorsBytes) {
+        this.lastMergedTerm = lastMergedTerm;
+        this.vocabularySize = vocabularySize;
+        this.vocabularyBytes = vocabularyBytes;
+        this.docidsBytes = docidsBytes;
+        this.frequenciesBytes = frequenciesBytes;
+        this.blockDescriptorsBytes = blockDescriptorsBytes;
+    }
+
+    void setSpimiCompleted(boolean spimiCompleted) {
+        this.spimiCompleted = spimiCompleted;
+    }
+
+    public boolean isCompressedReading() {
+        return compressedReading;
+    }
+
+    public boolean isTokenizedReading() {
+        return tokenizedReading;
+    }
+
+    public long getProcessedLines() {
+        return processedLines;
+    }
+
+    public int getNextDocid() {
+        return nextDocid;
+    }
+
+    public long getDocumentIndexEntries() {
+        return documentIndexEntries;
+    }
+
+    public long getTotalDocLen() {
+        return totalDocLen;
+    }
+
+    public int getNumRuns() {
+        return numRuns;
+    }
+
+    public boolean isSpimiCompleted() {
+        return spimiCompleted;
+    }
+
+    public String getLastMergedTerm() {
+        return lastMergedTerm;
+    }
+
+    public long getVocabularySize() {
+        return vocabularySize;
+    }
+
+    public long getVocabularyBytes() {
+        return vocabularyBytes;
+    }
+
+    public long getDocidsBytes() {
+        return docidsBytes;
+    }
+
+    public long getFrequenciesBytes() {
+        return frequenciesBytes;
+    }
+
+    public long getBlockDescriptorsBytes() {
+        return blockDescriptorsBytes;
+    }
+
+    @Override
+    public String toString() {
+        if (!spimiCompleted)
+            return "SPIMI checkpoint: " + numRuns + " partial indexes, " + processedLines + " lines of the collection, next docid " + nextDocid;
+        if (lastMergedTerm == null)
+            return "merge checkpoint: " + numRuns + " partial indexes to be merged from the beginning";
+        return "merge checkpoint: " + numRuns + " partial indexes merged up to the term '" + lastMergedTerm + "' (" + vocabularySize + " terms)";
+    }
+
+    /** needed for testing purposes
+     * @param checkpointPath: path to be set
+     */
+    public static void setCheckpointPath(String checkpointPath) {
+        CHECKPOINT_PATH = checkpointPath;
+    }
+}
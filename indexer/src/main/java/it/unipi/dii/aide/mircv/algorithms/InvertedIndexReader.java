@@ -0,0 +1,56 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+
+import java.io.IOException;
+
+/**
+ * Streaming reader of an index to be merged, either an intermediate index produced by the SPIMI algorithm or a
+ * segment of the inverted index: the terms are read in lexicographic order and the postings of each term in
+ * increasing docid order
+ */
+interface InvertedIndexReader {
+
+    /**
+     * moves the reader to the next term of the vocabulary
+     *
+     * @return false if there are no more terms to be read
+     * @throws IOException if an error occurs while reading the vocabulary
+     */
+    boolean nextTerm() throws IOException;
+
+    /**
+     * @return true if there are postings of the current term still to be read
+     */
+    boolean hasNextPosting();
+
+    /**
+     * reads the next posting of the current term
+     *
+     * @param docids      array where the docid is stored
+     * @param frequencies array where the frequency is stored
+     * @param position    position of the arrays where the posting is stored
+     * @throws IOException if an error occurs while reading the posting
+     */
+    void readPosting(int[] docids, int[] frequencies, int position) throws IOException;
+
+    /**
+     * @return the term currently pointed by the reader
+     */
+    String getTerm();
+
+    /**
+     * @return the vocabulary entry of the current term in the index being read
+     */
+    VocabularyEntry getEntry();
+
+    /**
+     * @return the number of the index, used to keep the order of the posting lists of a term
+     */
+    int getIndex();
+
+    /**
+     * closes the files of the index
+     */
+    void close();
+}
@@ -0,0 +1,66 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reader of the collection line by line through a buffered reader, used for the compressed collection which cannot
+ * be memory mapped
+ */
+class LineCollectionReader implements TextCollectionReader {
+
+    /**
+     * reader of the collection
+     */
+    private final BufferedReader reader;
+
+    /**
+     * number of lines read
+     */
+    private long readLines = 0;
+
+    /**
+     * @param reader    reader of the collection
+     * @param skipLines number of lines at the beginning of the collection to be skipped
+     * @throws IOException if an error occurs while skipping the lines
+     */
+    LineCollectionReader(BufferedReader reader, long skipLines) throws IOException {
+        this.reader = reader;
+        while (readLines < skipLines && reader.readLine() != null)
+            readLines++;
+    }
+
+    @Override
+    public TextDocument nextDocument() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            readLines++;
+            // if the line is empty we process the next line
+            if (line.isBlank())
+                continue;
+
+            // split of the line in the format <pid>\t<text>
+            int tab = line.indexOf('\t');
+            if (tab == -1)
+                continue;
+            int end = line.indexOf('\t', tab + 1);
+            if (end == -1)
+                end = line.length();
+
+            return new TextDocument(line.substring(0, tab), line.substring(tab + 1, end).replaceAll("[^\\x00-\\x7F]", ""));
+        }
+        return null;
+    }
+
+    @Override
+    public long getReadLines() {
+        return readLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
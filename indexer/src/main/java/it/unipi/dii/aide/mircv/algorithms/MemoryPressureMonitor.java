@@ -0,0 +1,96 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * safety valve of the SPIMI memory budget: it asks the JVM to be notified when, after a garbage collection,
+ * a heap pool is still above a given fraction of its maximum size, meaning that the partial index must be flushed
+ * even if its estimated footprint is below the budget
+ */
+class MemoryPressureMonitor implements NotificationListener {
+
+    /**
+     * fraction of the maximum size of a heap pool above which, after a collection, the memory is considered under pressure
+     */
+    private static final double PRESSURE_THRESHOLD = 0.85;
+
+    /**
+     * set by the notification thread when a collection threshold is exceeded
+     */
+    private volatile boolean underPressure = false;
+
+    /**
+     * true if the listener is registered to the memory bean
+     */
+    private boolean installed = false;
+
+    /**
+     * sets the collection usage threshold on the heap pools supporting it and registers the listener
+     */
+    void install() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported())
+                continue;
+
+            long max = pool.getUsage().getMax();
+            // pools without a maximum size cannot fill up
+            if (max <= 0)
+                continue;
+
+            pool.setCollectionUsageThreshold((long) (max * PRESSURE_THRESHOLD));
+        }
+
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+        installed = true;
+    }
+
+    /**
+     * unregisters the listener
+     */
+    void uninstall() {
+        if (!installed)
+            return;
+
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            e.printStackTrace();
+        }
+        installed = false;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()))
+            underPressure = true;
+    }
+
+    /**
+     * @return true if a collection threshold has been exceeded since the last reset
+     */
+    boolean isUnderPressure() {
+        return underPressure;
+    }
+
+    /**
+     * clears the pressure signal, called after the partial index has been flushed
+     */
+    void reset() {
+        underPressure = false;
+    }
+
+    /**
+     * @return the current usage of the heap, used for logging
+     */
+    static MemoryUsage getHeapUsage() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    }
+}
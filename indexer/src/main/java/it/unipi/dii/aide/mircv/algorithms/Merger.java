@@ -1,23 +1,31 @@
 package it.unipi.dii.aide.mircv.algorithms;
 
 import it.unipi.dii.aide.mircv.common.beans.BlockDescriptor;
+import it.unipi.dii.aide.mircv.common.beans.BlockDescriptorTable;
 import it.unipi.dii.aide.mircv.common.beans.Posting;
 import it.unipi.dii.aide.mircv.common.beans.PostingList;
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import it.unipi.dii.aide.mircv.common.beans.TermHash;
 import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyWriter;
 import it.unipi.dii.aide.mircv.common.compression.UnaryCompressor;
 import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
 import it.unipi.dii.aide.mircv.common.config.CollectionSize;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
 
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
- * Class that implements the merge of the intermediate posting lists during the SPIMI-Indexing algorithm
+ * Class that implements the merge of the intermediate posting lists during the SPIMI-Indexing algorithm.
+ * The state of a merge is kept in static fields, so the merges are serialized: a segment written by the
+ * real-time index waits for the segment merge running in background, if any
  */
 public class Merger {
 
@@ -31,6 +39,16 @@ public class Merger {
      */
     private static long freqsMemOffset;
 
+    /**
+     * number of bytes written in the inverted index, vocabulary and block descriptors files by the last merge
+     */
+    private static long writtenBytes = 0;
+
+    /**
+     * duration in nanoseconds of the last merge
+     */
+    private static long mergeTime = 0;
+
     /**
      * number of intermediate indexes produced by SPIMI algorithm
      */
@@ -72,62 +90,53 @@ public class Merger {
     private static String PATH_TO_BLOCK_DESCRIPTORS = ConfigurationParameters.getBlockDescriptorsPath();
 
     /**
-     * Array used to point to the next vocabulary entry to process for each partial index
+     * number of terms merged between two checkpoints of the merge of the main index
      */
-    private static VocabularyEntry[] nextTerms = null;
+    private static int CHECKPOINT_INTERVAL = ConfigurationParameters.getMergeCheckpointInterval();
 
     /**
-     * memory offsets of last read vocabulary entry
+     * flag telling whether the perfect hash of the terms is built with the merged vocabulary
      */
-    private static long[] vocEntryMemOffset = null;
+    private static boolean TERM_HASH_ENABLED = ConfigurationParameters.isTermHashEnabled();
 
-    private static FileChannel[] docidChannels = null;
-
-    private static FileChannel[] frequencyChannels = null;
     /**
-     * Method that initializes all the data structures:
-     * - setting openIndexes to the total number of indexes produced by SPIMI
-     * - initializing all the intermediate inverted index structures
+     * flag telling whether the shortest posting lists are stored in the vocabulary entries of their terms
      */
-    private static boolean initialize() {
+    private static boolean INLINE_POSTINGS_ENABLED = ConfigurationParameters.isInlinePostingsEnabled();
 
-        // initialization of array of next vocabulary entries tp be processed
-        nextTerms = new VocabularyEntry[numIndexes];
+    /**
+     * readers of the indexes being merged, ordered by the term they point to and then by index number
+     */
+    private static PriorityQueue<InvertedIndexReader> readers = null;
 
-        // initialization of next memory offset to be read for each partial vocabulary
-        vocEntryMemOffset = new long[numIndexes];
+    /**
+     * readers of the term being merged, polled from the queue until they are moved to their next term
+     */
+    private static ArrayList<InvertedIndexReader> termReaders = null;
 
-        // initialize the array of the file channels
-        docidChannels = new FileChannel[numIndexes];
-        frequencyChannels = new FileChannel[numIndexes];
+    /**
+     * Method that initializes all the data structures:
+     * - opening a streaming reader for each intermediate index
+     * - inserting in the priority queue the readers pointing to their first term
+     */
+    private static boolean initialize() {
 
-        freqsMemOffset = 0;
-        docsMemOffset = 0;
+        initializeQueue(numIndexes);
 
         try {
             for (int i = 0; i < numIndexes; i++) {
-                nextTerms[i] = new VocabularyEntry();
-                vocEntryMemOffset[i] = 0;
-
-                // read first entry of the vocabulary
-                long ret = nextTerms[i].readFromDisk(vocEntryMemOffset[i], PATH_TO_PARTIAL_VOCABULARIES + "_" + i);
-
-                if (ret == -1 || ret == 0) {
-                    // error encountered during vocabulary entry reading operation
-                    // or read ended
-                    nextTerms[i] = null;
-                }
-                docidChannels[i] = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_INDEXES_DOCS+ "_" + i),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE
+                PartialIndexReader reader = new PartialIndexReader(
+                        i,
+                        PATH_TO_PARTIAL_VOCABULARIES + "_" + i,
+                        PATH_TO_PARTIAL_INDEXES_DOCS + "_" + i,
+                        PATH_TO_PARTIAL_INDEXES_FREQS + "_" + i
                 );
 
-                frequencyChannels[i] = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_INDEXES_FREQS+ "_" + i),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE
-                );
+                // read first entry of the vocabulary, empty indexes are closed immediately
+                if (reader.nextTerm())
+                    readers.add(reader);
+                else
+                    reader.close();
             }
             return true;
         }catch(Exception e){
@@ -138,126 +147,187 @@ public class Merger {
     }
 
     /**
-     * Return the minimum term of the terms to be processed in the intermediate indexes
-     * @return the next term to process
+     * creates the priority queue of the readers and resets the offsets of the output files
+     *
+     * @param capacity number of indexes to be merged
      */
-    private static String getMinTerm() {
-        String term = null;
+    private static void initializeQueue(int capacity) {
+        // the queue returns first the reader with the lowest term, ties are broken by the number of the index
+        // so that the partial posting lists of a term are appended in increasing docid order
+        readers = new PriorityQueue<>(Math.max(1, capacity),
+                Comparator.comparing(InvertedIndexReader::getTerm).thenComparingInt(InvertedIndexReader::getIndex));
+        termReaders = new ArrayList<>(Math.max(1, capacity));
+
+        freqsMemOffset = 0;
+        docsMemOffset = 0;
+        BlockDescriptor.setMemoryOffset(0);
+    }
 
-        for (int i = 0; i < numIndexes; i++) {
+    /**
+     * opens a streaming reader for each segment to be merged and inserts the readers in the priority queue
+     *
+     * @param segments        the segments to be merged, in increasing docid order
+     * @param compressionMode true if the posting lists of the segments are compressed
+     * @return true if all the segments are opened
+     */
+    private static boolean initialize(List<Segment> segments, boolean compressionMode) {
 
-            // check if there are still posting lists to be processed at intermediate index 'i'
-            if (nextTerms[i] == null)
-                continue;
+        initializeQueue(segments.size());
 
-            // next term to be processed at the intermediate index 'i'
-            String nextTerm = nextTerms[i].getTerm();
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                SegmentReader reader = new SegmentReader(i, segments.get(i), compressionMode);
 
-            if (term == null) {
-                term = nextTerm;
-                continue;
+                if (reader.nextTerm())
+                    readers.add(reader);
+                else
+                    reader.close();
             }
-
-            if (nextTerm.compareTo(term) < 0)
-                term = nextTerm;
+            return true;
+        }catch(Exception e){
+            cleanUp();
+            e.printStackTrace();
+            return false;
         }
-        return term;
     }
 
     /**
-     * method to process a term in a parallelized way across all the intermediate indexes:
-     * - create the final posting list
-     * - create the vocabulary entry for the term
-     * - update term statistics in the vocabulary entry (side effect)
+     * removes from the queue all the readers pointing to the minimum term, moving them to the readers of the term in
+     * increasing index order
      *
-     * @param termToProcess: term to be processed
-     * @param vocabularyEntry: vocabulary entry for new term
-     * @return posting list of the processed term
+     * @return the next term to process
      */
-    private static PostingList processTerm(String termToProcess, VocabularyEntry vocabularyEntry) {
-        // new posting list for the term
-        PostingList finalList = new PostingList();
-        finalList.setTerm(termToProcess);
+    private static String pollMinTerm() {
+        termReaders.clear();
 
-        // processing the term
-        for (int i = 0; i < numIndexes; i++) {
+        String term = readers.peek().getTerm();
+        while (!readers.isEmpty() && readers.peek().getTerm().equals(term))
+            termReaders.add(readers.poll());
 
-            // Found the matching term
-            if (nextTerms[i] != null && nextTerms[i].getTerm().equals(termToProcess)) {
+        return term;
+    }
 
-                // retrieve posting list from partial inverted index file
-                PostingList intermediatePostingList = loadList(nextTerms[i], i);
-                if(intermediatePostingList == null)
-                    return null;
+    /**
+     * moves the readers past the terms already merged before the checkpoint of an interrupted merge
+     *
+     * @param lastMergedTerm the last term written before the checkpoint
+     */
+    private static void skipMergedTerms(String lastMergedTerm) throws IOException {
+        ArrayList<InvertedIndexReader> toSkip = new ArrayList<>(readers);
+        readers.clear();
+
+        for (InvertedIndexReader reader : toSkip) {
+            boolean hasTerm = true;
+            while (hasTerm && reader.getTerm().compareTo(lastMergedTerm) <= 0)
+                hasTerm = reader.nextTerm();
+
+            if (hasTerm)
+                readers.add(reader);
+            else
+                reader.close();
+        }
+    }
 
-                // update max docLen
-                vocabularyEntry.updateBM25Statistics(nextTerms[i].getBM25Tf(), nextTerms[i].getBM25Dl());
+    /**
+     * moves the readers of the last processed term to their next term and puts them back in the queue
+     */
+    private static void advanceReaders() throws IOException {
+        for (InvertedIndexReader reader : termReaders) {
+            if (reader.nextTerm())
+                readers.add(reader);
+            else
+                reader.close();
+        }
+        termReaders.clear();
+    }
 
-                //update vocabulary statistics
-                vocabularyEntry.updateStatistics(intermediatePostingList);
+    /**
+     * fills the arrays with the next postings of the term, reading them from the intermediate indexes in order
+     *
+     * @param docids      array where the docids are stored
+     * @param frequencies array where the frequencies are stored
+     * @param numPostings number of postings to read
+     * @param debugList   posting list filled with the postings in debug mode, null otherwise
+     */
+    private static void readPostings(int[] docids, int[] frequencies, int numPostings, PostingList debugList) throws IOException {
+        int readerIndex = 0;
 
-                // Append the posting list to the final posting list of the term
-                finalList.appendPostings(intermediatePostingList.getPostings());
+        for (int i = 0; i < numPostings; i++) {
+            // move to the next intermediate index when the current one has no more postings for the term
+            while (!termReaders.get(readerIndex).hasNextPosting())
+                readerIndex++;
 
+            termReaders.get(readerIndex).readPosting(docids, frequencies, i);
 
-            }
+            if (debugList != null)
+                debugList.getPostings().add(new Posting(docids[i], frequencies[i]));
         }
+    }
 
-        // Update the nextList array with the next term to process
-        moveVocabulariesToNextTerm(termToProcess);
+    /**
+     * merges the intermediate indexes produced by the SPIMI algorithm in the inverted index
+     * @param compressionMode flag deciding whether to compress posting lists or not
+     * @param numIndexes number of partial vocabularies and partial indexes created
+     * @return true if the merging is complete, false otherwise
+     */
+    public static synchronized boolean mergeIndexes(int numIndexes, boolean compressionMode, boolean debugMode) {
+
+        long start = System.nanoTime();
 
-        // writing to vocabulary the space occupancy and memory offset of the posting list into
-        vocabularyEntry.setMemoryOffset(docsMemOffset);
-        vocabularyEntry.setFrequencyOffset(freqsMemOffset);
+        Merger.numIndexes = numIndexes;
 
+        // initialization operations
+        if(!initialize())
+            return false;
+
+        long vocSize = merge(PATH_TO_VOCABULARY, PATH_TO_INVERTED_INDEX_DOCS, PATH_TO_INVERTED_INDEX_FREQS, PATH_TO_BLOCK_DESCRIPTORS, compressionMode, debugMode, null);
+        if(vocSize == -1)
+            return false;
 
-        // compute the final idf
-        vocabularyEntry.computeIDF();
-        // compute the term upper bounds
-        vocabularyEntry.computeUpperBounds();
+        CollectionSize.updateVocabularySize(vocSize);
 
-        return finalList;
+        mergeTime = System.nanoTime() - start;
+        return true;
     }
 
     /**
-     * Method to read the next term in these vocabularies in which we had the last processed term
-     * @param processedTerm: last processed term, it is used to find which vocabularies must be read
+     * merges the intermediate indexes produced by the SPIMI algorithm in the inverted index, saving a checkpoint
+     * every mergeCheckpointInterval terms. If the checkpoint was saved by an interrupted merge, the output files are
+     * truncated to their size at the checkpoint and the merge continues from the term following the last one saved
+     * @param compressionMode flag deciding whether to compress posting lists or not
+     * @param checkpoint the checkpoint of the indexing, with the number of partial indexes created
+     * @return true if the merging is complete, false otherwise
      */
-    private static void moveVocabulariesToNextTerm(String processedTerm) {
+    public static synchronized boolean mergeIndexes(boolean compressionMode, boolean debugMode, IndexingCheckpoint checkpoint) {
 
-        // for each intermediate vocabulary
-        for(int i=0; i<numIndexes; i++){
-            // check if the last processed term was present in the i-th vocabulary
-            if(nextTerms[i] != null && nextTerms[i].getTerm().equals(processedTerm)) {
-                // last processed term was present
+        long start = System.nanoTime();
 
-                // update next memory offset to be read from the i-th vocabulary
-                vocEntryMemOffset[i] += VocabularyEntry.ENTRY_SIZE;
+        Merger.numIndexes = checkpoint.getNumRuns();
 
-                // read next vocabulary entry from the i-th vocabulary
-                long ret = nextTerms[i].readFromDisk(vocEntryMemOffset[i], PATH_TO_PARTIAL_VOCABULARIES+ "_" +i);
+        // initialization operations
+        if(!initialize())
+            return false;
 
-                // check if errors occurred while reading the vocabulary entry
-                if(ret == -1 || ret == 0){
-                    // read ended or an error occurred
-                    nextTerms[i] = null;
-                }
-            }
-        }
-    }
+        long vocSize = merge(PATH_TO_VOCABULARY, PATH_TO_INVERTED_INDEX_DOCS, PATH_TO_INVERTED_INDEX_FREQS, PATH_TO_BLOCK_DESCRIPTORS, compressionMode, debugMode, checkpoint);
+        if(vocSize == -1)
+            return false;
 
+        CollectionSize.updateVocabularySize(vocSize);
 
+        mergeTime = System.nanoTime() - start;
+        return true;
+    }
 
     /**
-     * The effective merging pipeline:
-     * - finds the minimum term between the indexes
-     * - creates the whole posting list and the vocabulary entry for that term
-     * - stores them in memory
+     * merges the intermediate indexes produced by the SPIMI algorithm in a new segment of the inverted index
      * @param compressionMode flag deciding whether to compress posting lists or not
      * @param numIndexes number of partial vocabularies and partial indexes created
+     * @param segment the segment where the inverted index is written
      * @return true if the merging is complete, false otherwise
      */
-    public static boolean mergeIndexes(int numIndexes, boolean compressionMode, boolean debugMode) {
+    public static synchronized boolean mergeIndexes(int numIndexes, boolean compressionMode, boolean debugMode, Segment segment) {
+
+        long start = System.nanoTime();
 
         Merger.numIndexes = numIndexes;
 
@@ -265,131 +335,186 @@ public class Merger {
         if(!initialize())
             return false;
 
+        long vocSize = merge(segment.getVocabularyPath(), segment.getInvertedIndexDocsPath(), segment.getInvertedIndexFreqsPath(), segment.getBlockDescriptorsPath(), compressionMode, debugMode, null);
+        if(vocSize == -1)
+            return false;
+
+        segment.setVocabularySize(vocSize);
+
+        mergeTime = System.nanoTime() - start;
+        return true;
+    }
+
+    /**
+     * merges consecutive segments of the inverted index in a new segment; the document index is not merged
+     * @param segments the segments to be merged, in increasing docid order
+     * @param target the segment where the merged inverted index is written
+     * @param compressionMode flag telling whether the posting lists are compressed
+     * @return true if the merging is complete, false otherwise
+     */
+    public static synchronized boolean mergeSegments(List<Segment> segments, Segment target, boolean compressionMode) {
+
+        long start = System.nanoTime();
+
+        if(!initialize(segments, compressionMode))
+            return false;
+
+        long vocSize = merge(target.getVocabularyPath(), target.getInvertedIndexDocsPath(), target.getInvertedIndexFreqsPath(), target.getBlockDescriptorsPath(), compressionMode, false, null);
+        if(vocSize == -1)
+            return false;
+
+        target.setVocabularySize(vocSize);
+
+        mergeTime = System.nanoTime() - start;
+        return true;
+    }
+
+    /**
+     * rewrites an inverted index reading it through a reader which drops the postings of the deleted documents
+     * @param reader the compacting reader of the index
+     * @param vocabularyPath path of the vocabulary to be written
+     * @param docidsPath path of the docids of the inverted index to be written
+     * @param frequenciesPath path of the frequencies of the inverted index to be written
+     * @param blockDescriptorsPath path of the block descriptors to be written
+     * @param compressionMode flag telling whether the posting lists are compressed
+     * @return the size of the vocabulary written, -1 if an error occurred
+     */
+    static synchronized long compact(CompactingReader reader, String vocabularyPath, String docidsPath, String frequenciesPath, String blockDescriptorsPath, boolean compressionMode) {
+
+        long start = System.nanoTime();
+
+        initializeQueue(1);
+        try {
+            if (reader.nextTerm())
+                readers.add(reader);
+            else
+                reader.close();
+        } catch (IOException e) {
+            reader.close();
+            e.printStackTrace();
+            return -1;
+        }
+
+        long vocSize = merge(vocabularyPath, docidsPath, frequenciesPath, blockDescriptorsPath, compressionMode, false, null);
+
+        mergeTime = System.nanoTime() - start;
+        return vocSize;
+    }
+
+    /**
+     * The effective merging pipeline:
+     * - extracts from the queue the indexes pointing to the minimum term
+     * - creates the vocabulary entry for that term from the partial ones
+     * - streams the partial posting lists of the term block by block to the inverted index
+     * @param vocabularyPath path of the vocabulary to be written
+     * @param docidsPath path of the docids of the inverted index to be written
+     * @param frequenciesPath path of the frequencies of the inverted index to be written
+     * @param blockDescriptorsPath path of the block descriptors to be written
+     * @param compressionMode flag deciding whether to compress posting lists or not
+     * @param checkpoint checkpoint updated during the merge and from which an interrupted merge is resumed,
+     *                   null if no checkpoint is saved
+     * @return the size of the vocabulary written, -1 if an error occurred
+     */
+    private static long merge(String vocabularyPath, String docidsPath, String frequenciesPath, String blockDescriptorsPath, boolean compressionMode, boolean debugMode, IndexingCheckpoint checkpoint) {
+
+        // true if the merge continues an interrupted one
+        boolean resumed = checkpoint != null && checkpoint.getLastMergedTerm() != null;
+
         //size of the vocabulary
-        long vocSize = 0;
+        long vocSize = resumed ? checkpoint.getVocabularySize() : 0;
 
-        // next memory offset where to write the next vocabulary entry
+        // bytes written in the terms and statistics of the vocabulary
         long vocMemOffset = 0;
 
-        // open file channels for vocabulary writes, docid and frequency writes, and block descriptor writes
-        try(FileChannel vocabularyChan = (FileChannel) Files.newByteChannel(
-                Paths.get(PATH_TO_VOCABULARY),
-                StandardOpenOption.WRITE,
-                StandardOpenOption.READ,
-                StandardOpenOption.CREATE);
-            FileChannel docidChan = (FileChannel) Files.newByteChannel(
-                    Paths.get(PATH_TO_INVERTED_INDEX_DOCS),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.CREATE);
-            FileChannel frequencyChan = (FileChannel) Files.newByteChannel(
-                    Paths.get(PATH_TO_INVERTED_INDEX_FREQS),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.CREATE);
-            FileChannel descriptorChan = (FileChannel) Files.newByteChannel(
-                    Paths.get(PATH_TO_BLOCK_DESCRIPTORS),
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.READ,
-                    StandardOpenOption.CREATE)
+        // open the sequential writers of vocabulary, docids, frequencies and block descriptors,
+        // keeping what was written up to the checkpoint if the merge is resumed
+        try(VocabularyWriter vocabularyWriter = resumed ? VocabularyWriter.resume(vocabularyPath, vocSize, checkpoint.getVocabularyBytes()) : new VocabularyWriter(vocabularyPath);
+            BufferedChannelWriter docidWriter = resumed ? BufferedChannelWriter.resume(docidsPath, checkpoint.getDocidsBytes()) : new BufferedChannelWriter(docidsPath);
+            BufferedChannelWriter frequencyWriter = resumed ? BufferedChannelWriter.resume(frequenciesPath, checkpoint.getFrequenciesBytes()) : new BufferedChannelWriter(frequenciesPath);
+            BufferedChannelWriter descriptorWriter = resumed ? BufferedChannelWriter.resume(blockDescriptorsPath, checkpoint.getBlockDescriptorsBytes()) : new BufferedChannelWriter(blockDescriptorsPath)
         ) {
-            // open all the indexes in parallel and start merging their posting lists
-            while (true) {
-                // find next term to be processed (the minimum in lexicographical order)
-                String termToProcess = getMinTerm();
+            if (resumed) {
+                System.out.println("resuming the merge after the term '" + checkpoint.getLastMergedTerm() + "' (" + vocSize + " terms already merged)");
+                docsMemOffset = docidWriter.position();
+                freqsMemOffset = frequencyWriter.position();
+                BlockDescriptor.setMemoryOffset(descriptorWriter.position());
+                skipMergedTerms(checkpoint.getLastMergedTerm());
+            }
 
-                if (termToProcess == null)
-                    break;
+            // with the interleaved layout the frequencies of each block follow its docids in the docids file
+            BufferedChannelWriter blockFrequencyWriter = Flags.isInterleavedLayoutEnabled() ? docidWriter : frequencyWriter;
 
-                // new vocabulary entry for the processed term
+            while (!readers.isEmpty()) {
+                // find next term to be processed (the minimum in lexicographical order)
+                String termToProcess = pollMinTerm();
+
+                // new vocabulary entry for the processed term, built from the partial entries
                 VocabularyEntry vocabularyEntry = new VocabularyEntry(termToProcess);
+                for (InvertedIndexReader reader : termReaders)
+                    vocabularyEntry.updateStatistics(reader.getEntry());
 
-                // merge the posting lists for the term to be processed
-                PostingList mergedPostingList = processTerm(termToProcess, vocabularyEntry);
+                // writing to vocabulary the memory offset of the posting list
+                vocabularyEntry.setMemoryOffset(docsMemOffset);
+                vocabularyEntry.setFrequencyOffset(Flags.isInterleavedLayoutEnabled() ? docsMemOffset : freqsMemOffset);
 
-                if(mergedPostingList == null){
-                    throw new Exception("ERROR: the merged posting list for the term " + termToProcess + " is null");
-                }
+                // compute the final idf
+                vocabularyEntry.computeIDF();
+                // compute the term upper bounds
+                vocabularyEntry.computeUpperBounds();
 
                 // compute information about block descriptors for the posting list to be written
-
                 vocabularyEntry.computeBlocksInformation();
 
                 // compute maximal number of postings that can be stored in a block
                 int maxNumPostings = vocabularyEntry.getMaxNumberOfPostingsInBlock();
 
-                // create iterator over posting list to be written
-                Iterator<Posting> plIterator = mergedPostingList.getPostings().iterator();
+                // a short posting list is stored in the vocabulary entry, without block descriptors
+                boolean inlined = INLINE_POSTINGS_ENABLED && vocabularyEntry.getDf() > 0 && vocabularyEntry.getDf() <= VocabularyEntry.MAX_INLINED_POSTINGS;
+
+                int numBlocks = inlined ? 0 : vocabularyEntry.getNumBlocks();
+
+                // the whole posting list is materialized only when it must be dumped for debugging
+                PostingList debugList = null;
+                if(debugMode)
+                    debugList = new PostingList(termToProcess);
 
-                int numBlocks = vocabularyEntry.getNumBlocks();
+                if(inlined){
+                    int[] docids = new int[vocabularyEntry.getDf()];
+                    int[] freqs = new int[vocabularyEntry.getDf()];
+                    readPostings(docids, freqs, docids.length, debugList);
+                    vocabularyEntry.setInlinedPostings(docids, freqs);
+                }
 
                 // save posting list on disk writing each block
                 for(int i=0; i< numBlocks; i++){
                     // create a new block descriptor and update its information
                     BlockDescriptor blockDescriptor = new BlockDescriptor();
                     blockDescriptor.setDocidOffset(docsMemOffset);
-                    blockDescriptor.setFreqOffset(freqsMemOffset);
-
-                    // number of postings written in the block
-                    int postingsInBlock = 0;
 
                     int alreadyWrittenPostings = i*maxNumPostings;
 
                     // number of postings to be written in the current block
-                    int nPostingsToBeWritten = (Math.min((mergedPostingList.getPostings().size() - alreadyWrittenPostings), maxNumPostings));
+                    int nPostingsToBeWritten = (Math.min((vocabularyEntry.getDf() - alreadyWrittenPostings), maxNumPostings));
 
-                    if(compressionMode){
-                        // arrays where to store docids and frequencies to be written in current block
-                        int[] docids = new int[nPostingsToBeWritten];
-                        int[] freqs = new int[nPostingsToBeWritten];
+                    // arrays where to store docids and frequencies to be written in current block
+                    int[] docids = new int[nPostingsToBeWritten];
+                    int[] freqs = new int[nPostingsToBeWritten];
 
-                        // initialize docids and freqs arrays
-                        while(true){
-                            // get next posting to be written to disk
-                            Posting currPosting = plIterator.next();
-                            docids[postingsInBlock] = currPosting.getDocid();
-                            freqs[postingsInBlock] = currPosting.getFrequency();
+                    // read the postings of the block from the intermediate indexes
+                    readPostings(docids, freqs, nPostingsToBeWritten, debugList);
 
-                            postingsInBlock++;
-
-                            if (postingsInBlock == nPostingsToBeWritten){
-
-                                byte[] compressedDocs = VariableByteCompressor.integerArrayCompression(docids);
-                                byte[] compressedFreqs = UnaryCompressor.integerArrayCompression(freqs);
-
-                                try{
-                                    // instantiation of MappedByteBuffer for integer list of docids and for integer list of freqs
-                                    MappedByteBuffer docsBuffer = docidChan.map(FileChannel.MapMode.READ_WRITE, docsMemOffset, compressedDocs.length);
-                                    MappedByteBuffer freqsBuffer = frequencyChan.map(FileChannel.MapMode.READ_WRITE, freqsMemOffset, compressedFreqs.length);
-
-                                    // write compressed posting lists to disk
-                                    docsBuffer.put(compressedDocs);
-                                    freqsBuffer.put(compressedFreqs);
-
-                                    // update the size of the block
-                                    blockDescriptor.setDocidSize(compressedDocs.length);
-                                    blockDescriptor.setFreqSize(compressedFreqs.length);
-
-                                    // update the max docid of the block
-                                    blockDescriptor.setMaxDocid(currPosting.getDocid());
-
-                                    // update the number of postings in the block
-                                    blockDescriptor.setNumPostings(postingsInBlock);
-
-                                    // write the block descriptor on disk
-                                    blockDescriptor.saveDescriptorOnDisk(descriptorChan);
+                    if(compressionMode){
+                        byte[] compressedDocs = VariableByteCompressor.integerArrayCompression(docids);
+                        byte[] compressedFreqs = UnaryCompressor.integerArrayCompression(freqs);
 
-                                    docsMemOffset+=compressedDocs.length;
-                                    freqsMemOffset+=compressedFreqs.length;
-                                    break;
+                        // write compressed posting lists to disk
+                        docidWriter.put(compressedDocs);
+                        blockDescriptor.setFreqOffset(blockFrequencyWriter.position());
+                        blockFrequencyWriter.put(compressedFreqs);
 
-                                } catch (Exception e) {
-                                    cleanUp();
-                                    e.printStackTrace();
-                                    return false;
-                                }
-                            }
-                        }
+                        // update the size of the block
+                        blockDescriptor.setDocidSize(compressedDocs.length);
+                        blockDescriptor.setFreqSize(compressedFreqs.length);
                     } else {
                         // posting list must not be compressed
 
@@ -398,124 +523,104 @@ public class Merger {
                         blockDescriptor.setFreqSize(nPostingsToBeWritten*4);
 
                         // write postings to block
-                        try {
-                            // instantiation of MappedByteBuffer for integer list of docids and for integer list of freqs
-                            MappedByteBuffer docsBuffer = docidChan.map(FileChannel.MapMode.READ_WRITE, docsMemOffset, nPostingsToBeWritten* 4L);
-                            MappedByteBuffer freqsBuffer = frequencyChan.map(FileChannel.MapMode.READ_WRITE, freqsMemOffset, nPostingsToBeWritten* 4L);
-
-                            if (docsBuffer != null && freqsBuffer != null) {
-                                while (true) {
-                                    // get next posting to be written to disk
-                                    Posting currPosting = plIterator.next();
-
-                                    // encode docid and freq
-                                    docsBuffer.putInt(currPosting.getDocid());
-                                    freqsBuffer.putInt(currPosting.getFrequency());
-
-                                    // increment counter of number of postings written in the block
-                                    postingsInBlock++;
-
-                                    // check if currPosting is the last posting to be written in the current block
-                                    if (postingsInBlock == nPostingsToBeWritten) {
-                                        // update the max docid of the block
-                                        blockDescriptor.setMaxDocid(currPosting.getDocid());
-
-                                        // update the number of postings in the block
-                                        blockDescriptor.setNumPostings(postingsInBlock);
-
-                                        // write the block descriptor on disk
-                                        blockDescriptor.saveDescriptorOnDisk(descriptorChan);
-                                        docsMemOffset+=nPostingsToBeWritten*4L;
-                                        freqsMemOffset+=nPostingsToBeWritten*4L;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        catch (Exception e){
-                            cleanUp();
-                            e.printStackTrace();
-                        }
+                        for(int j = 0; j < nPostingsToBeWritten; j++)
+                            docidWriter.putInt(docids[j]);
+                        blockDescriptor.setFreqOffset(blockFrequencyWriter.position());
+                        for(int j = 0; j < nPostingsToBeWritten; j++)
+                            blockFrequencyWriter.putInt(freqs[j]);
                     }
+
+                    docsMemOffset = docidWriter.position();
+                    freqsMemOffset = frequencyWriter.position();
+
+                    // update the max docid of the block
+                    blockDescriptor.setMaxDocid(docids[nPostingsToBeWritten - 1]);
+
+                    // update the number of postings in the block
+                    blockDescriptor.setNumPostings(nPostingsToBeWritten);
+
+                    // write the block descriptor on disk
+                    if(!blockDescriptor.saveDescriptorOnDisk(descriptorWriter))
+                        throw new Exception("ERROR: the block descriptor for the term " + termToProcess + " cannot be written");
                 }
+
+                // move the intermediate indexes of the term to their next term
+                advanceReaders();
+
                 // save vocabulary entry on disk
-                vocMemOffset = vocabularyEntry.writeEntryToDisk(vocMemOffset, vocabularyChan);
+                vocMemOffset = vocabularyEntry.writeEntryToDisk(vocabularyWriter);
+                if(vocMemOffset == -1)
+                    throw new Exception("ERROR: the vocabulary entry for the term " + termToProcess + " cannot be written");
                 vocSize++;
 
+                // save the checkpoint once the output files contain all the terms merged so far
+                if (checkpoint != null && CHECKPOINT_INTERVAL > 0 && vocSize % CHECKPOINT_INTERVAL == 0) {
+                    vocabularyWriter.flush();
+                    docidWriter.flush();
+                    frequencyWriter.flush();
+                    descriptorWriter.flush();
+                    checkpoint.setMergeState(termToProcess, vocSize, vocabularyWriter.getTermsPosition(), docidWriter.position(), frequencyWriter.position(), descriptorWriter.position());
+                    if (!checkpoint.write())
+                        System.out.println("Couldn't save the checkpoint of the merge.");
+                }
+
                 if(debugMode){
-                    mergedPostingList.debugSaveToDisk("debugDOCIDS.txt", "debugFREQS.txt", maxNumPostings);
+                    debugList.debugSaveToDisk("debugDOCIDS.txt", "debugFREQS.txt", maxNumPostings);
                     vocabularyEntry.debugSaveToDisk("debugVOCABULARY.txt");
                 }
             }
 
             cleanUp();
-            CollectionSize.updateVocabularySize(vocSize);
-            return true;
+
+            // bytes written in all the output files
+            vocMemOffset = vocabularyWriter.position();
+            writtenBytes = vocMemOffset + docsMemOffset + freqsMemOffset + descriptorWriter.position();
         }catch(Exception e){
+            cleanUp();
             e.printStackTrace();
-            return false;
+            invalidateLoadedIndex(docidsPath, frequenciesPath, blockDescriptorsPath);
+            return -1;
         }
+
+        // the block descriptors loaded and the inverted index mapped before the merge are no longer valid
+        invalidateLoadedIndex(docidsPath, frequenciesPath, blockDescriptorsPath);
+
+        // the writers are closed, so all the buffered bytes have reached the files and the vocabulary is final:
+        // if the hash of its terms can't be built the lookups use the block index of the vocabulary
+        if(TERM_HASH_ENABLED && !TermHash.build(vocabularyPath))
+            System.out.println("The hash of the terms couldn't be built: the terms are looked up in the block index of the vocabulary.");
+
+        return vocSize;
     }
 
     /**
-     * method to clean up the files:
-     * - remove partial indexes
-     * - remove partial vocabularies
+     * discards the block descriptors loaded and the mappings of the inverted index written by a merge
+     * @param docidsPath path of the docids of the inverted index
+     * @param frequenciesPath path of the frequencies of the inverted index
+     * @param blockDescriptorsPath path of the block descriptors of the inverted index
      */
-    private static void cleanUp() {
-        try{
-            for(int i = 0; i < numIndexes; i++){
-                if(docidChannels[i] != null){
-                    docidChannels[i].close();
-                }
-                if (frequencyChannels[i] != null) {
-                    frequencyChannels[i].close();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    private static void invalidateLoadedIndex(String docidsPath, String frequenciesPath, String blockDescriptorsPath) {
+        BlockDescriptorTable.invalidate(blockDescriptorsPath);
+        MappedFile.invalidate(docidsPath);
+        MappedFile.invalidate(frequenciesPath);
     }
 
-
     /**
-     * loads a partial posting list
-     *
-     * @param term  the term of the partial posting list
-     * @param index the partial index from which the list is read
-     * @return the partial posting list
+     * method to clean up the files:
+     * - close the readers of the intermediate indexes still open, both the ones in the queue and the ones of the term
+     * being merged
      */
-    private static PostingList loadList(VocabularyEntry term, int index) {
-        PostingList newList;
+    private static void cleanUp() {
+        if (readers == null)
+            return;
 
-        try {
-            // instantiation of MappedByteBuffer for integer list of docids
-            MappedByteBuffer docBuffer = docidChannels[index].map(
-                    FileChannel.MapMode.READ_ONLY,
-                    term.getDocidOffset(),
-                    term.getDocidSize()
-            );
-
-            // instantiation of MappedByteBuffer for integer list of frequencies
-            MappedByteBuffer freqBuffer = frequencyChannels[index].map(
-                    FileChannel.MapMode.READ_ONLY,
-                    term.getFrequencyOffset(),
-                    term.getFrequencySize()
-            );
-
-            // create the posting list for the term
-            newList = new PostingList(term.getTerm());
-
-            for (int i = 0; i < term.getDf(); i++) {
-                Posting posting = new Posting(docBuffer.getInt(), freqBuffer.getInt());
-                newList.getPostings().add(posting);
-            }
-            return newList;
-        } catch (Exception e) {
-            cleanUp();
-            e.printStackTrace();
-            return null;
-        }
+        for (InvertedIndexReader reader : readers)
+            reader.close();
+        for (InvertedIndexReader reader : termReaders)
+            reader.close();
+
+        readers.clear();
+        termReaders.clear();
     }
 
     /**
@@ -526,6 +631,16 @@ public class Merger {
         System.out.println("Inverted index's memory occupancy:");
         System.out.println("\t> docids: "+docsMemOffset+ "bytes");
         System.out.println("\t> freqs: "+freqsMemOffset+ "bytes");
+        System.out.println("Merge output: "+writtenBytes+ "bytes written at "+String.format("%.2f", getMergeThroughput())+ " MB/s");
+    }
+
+    /**
+     * @return the throughput of the last merge in MB/s, computed on all the bytes written in the output files
+     */
+    public static double getMergeThroughput(){
+        if(mergeTime == 0)
+            return 0;
+        return (writtenBytes / (1024.0 * 1024.0)) / (mergeTime / 1e9);
     }
 
     /**
@@ -573,4 +688,22 @@ public class Merger {
      * @param pathToPartialVocabularies: path to be set
      */
     public static void setPathToPartialVocabularies(String pathToPartialVocabularies) { PATH_TO_PARTIAL_VOCABULARIES = pathToPartialVocabularies;}
-}
\ No newline at end of file
+
+    /**
+     * needed for testing purposes
+     * @param checkpointInterval: number of terms merged between two checkpoints
+     */
+    public static void setCheckpointInterval(int checkpointInterval) { CHECKPOINT_INTERVAL = checkpointInterval;}
+
+    /**
+     * needed for testing purposes
+     * @param termHashEnabled: true if the hash of the terms is built with the merged vocabularies
+     */
+    public static void setTermHashEnabled(boolean termHashEnabled) { TERM_HASH_ENABLED = termHashEnabled;}
+
+    /**
+     * needed for testing purposes
+     * @param inlinePostingsEnabled: true if the shortest posting lists are stored in the vocabulary
+     */
+    public static void setInlinePostingsEnabled(boolean inlinePostingsEnabled) { INLINE_POSTINGS_ENABLED = inlinePostingsEnabled;}
+}
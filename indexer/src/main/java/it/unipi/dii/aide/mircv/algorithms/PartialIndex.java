@@ -0,0 +1,356 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.Posting;
+import it.unipi.dii.aide.mircv.common.beans.PostingList;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * in-memory partial index built by the SPIMI algorithm, which keeps an estimate of its own heap footprint
+ * so that it can be flushed when a fixed memory budget is reached.
+ * The terms are interned to int ids through an open addressing hash table and the postings of each term are
+ * appended to growable int arrays, so that no object is allocated for each posting
+ */
+class PartialIndex {
+
+    /**
+     * estimated fixed bytes of a new term: the String object and its byte array, the headers of its docid and
+     * frequency arrays, the slots in the per-term arrays and in the hash table
+     */
+    private static final long TERM_OVERHEAD_BYTES = (24 + 16) + 2 * 16 + (8 + 8 + 8 + 4 * 4) + 2 * 4;
+
+    /**
+     * initial number of postings that can be stored for a new term
+     */
+    private static final int INITIAL_POSTINGS_CAPACITY = 2;
+
+    /**
+     * initial number of terms that can be stored before resizing the per-term arrays
+     */
+    private static final int INITIAL_TERMS_CAPACITY = 1024;
+
+    /**
+     * marker of an empty slot of the hash table
+     */
+    private static final int EMPTY = -1;
+
+    /**
+     * open addressing hash table (linear probing) mapping the hash of a term to its id
+     */
+    private int[] table;
+
+    /**
+     * terms of the index, indexed by id
+     */
+    private String[] terms;
+
+    /**
+     * docids of the postings of each term, indexed by id
+     */
+    private int[][] docids;
+
+    /**
+     * frequencies of the postings of each term, indexed by id
+     */
+    private int[][] frequencies;
+
+    /**
+     * number of postings of each term, indexed by id
+     */
+    private int[] postingsCount;
+
+    /**
+     * document length used to compute the BM25 term upper bound, indexed by id
+     */
+    private int[] bm25Dl;
+
+    /**
+     * term frequency used to compute the BM25 term upper bound, indexed by id
+     */
+    private int[] bm25Tf;
+
+    /**
+     * number of terms in the index
+     */
+    private int numTerms = 0;
+
+    /**
+     * estimated number of bytes occupied by the partial index in the heap
+     */
+    private long footprint = 0;
+
+    /**
+     * number of postings in the partial index
+     */
+    private long numPostings = 0;
+
+    /**
+     * maximum number of bytes the partial index can occupy before being flushed
+     */
+    private final long memoryBudget;
+
+    /**
+     * @param memoryBudget maximum number of bytes the partial index can occupy before being flushed
+     */
+    PartialIndex(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        allocate(INITIAL_TERMS_CAPACITY);
+    }
+
+    /**
+     * allocates the per-term arrays and the hash table for the given number of terms
+     *
+     * @param termsCapacity number of terms that can be stored
+     */
+    private void allocate(int termsCapacity) {
+        terms = new String[termsCapacity];
+        docids = new int[termsCapacity][];
+        frequencies = new int[termsCapacity][];
+        postingsCount = new int[termsCapacity];
+        bm25Dl = new int[termsCapacity];
+        bm25Tf = new int[termsCapacity];
+
+        // the table is kept at most half full
+        table = new int[termsCapacity * 2];
+        Arrays.fill(table, EMPTY);
+    }
+
+    /**
+     * doubles the number of terms that can be stored, rehashing the terms already in the index
+     */
+    private void grow() {
+        int newCapacity = terms.length * 2;
+
+        terms = Arrays.copyOf(terms, newCapacity);
+        docids = Arrays.copyOf(docids, newCapacity);
+        frequencies = Arrays.copyOf(frequencies, newCapacity);
+        postingsCount = Arrays.copyOf(postingsCount, newCapacity);
+        bm25Dl = Arrays.copyOf(bm25Dl, newCapacity);
+        bm25Tf = Arrays.copyOf(bm25Tf, newCapacity);
+
+        table = new int[newCapacity * 2];
+        Arrays.fill(table, EMPTY);
+        for (int id = 0; id < numTerms; id++)
+            table[findSlot(terms[id])] = id;
+    }
+
+    /**
+     * @param term the term to look for
+     * @return the slot of the hash table containing the id of the term or the empty slot where it must be inserted
+     */
+    private int findSlot(String term) {
+        int mask = table.length - 1;
+        int hash = term.hashCode();
+        // spread the high bits of the hash, since the table size is a power of two
+        int slot = (hash ^ (hash >>> 16)) & mask;
+
+        while (table[slot] != EMPTY && !terms[table[slot]].equals(term))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * @param term the term to look for
+     * @return the id of the term, created if the term is not in the index
+     */
+    private int getOrAddTerm(String term) {
+        int slot = findSlot(term);
+        if (table[slot] != EMPTY)
+            return table[slot];
+
+        if (numTerms == terms.length) {
+            grow();
+            slot = findSlot(term);
+        }
+
+        int id = numTerms++;
+        table[slot] = id;
+        terms[id] = term;
+        docids[id] = new int[INITIAL_POSTINGS_CAPACITY];
+        frequencies[id] = new int[INITIAL_POSTINGS_CAPACITY];
+        bm25Dl[id] = 1;
+        bm25Tf[id] = 0;
+
+        footprint += TERM_OVERHEAD_BYTES + term.length() + 2L * INITIAL_POSTINGS_CAPACITY * 4;
+        return id;
+    }
+
+    /**
+     * adds an occurrence of the term in the document, updating the footprint of the index
+     *
+     * @param term           the term found in the document
+     * @param docid          the docid of the document
+     * @param documentLength the length of the document, used for the BM25 statistics
+     */
+    void addOccurrence(String term, int docid, int documentLength) {
+        int id = getOrAddTerm(term);
+        int count = postingsCount[id];
+
+        if (count > 0 && docids[id][count - 1] == docid) {
+            // the document is the last one inserted: update the frequency
+            frequencies[id][count - 1]++;
+        } else {
+            // the document has not been processed (docIds are incremental): append a new posting
+            if (count == docids[id].length) {
+                int newCapacity = count * 2;
+                docids[id] = Arrays.copyOf(docids[id], newCapacity);
+                frequencies[id] = Arrays.copyOf(frequencies[id], newCapacity);
+                footprint += 2L * (newCapacity - count) * 4;
+            }
+            docids[id][count] = docid;
+            frequencies[id][count] = 1;
+            postingsCount[id] = ++count;
+            numPostings++;
+        }
+
+        // update the parameters of the BM25 term upper bound
+        double currentRatio = (double) bm25Tf[id] / (double) (bm25Dl[id] + bm25Tf[id]);
+        double newRatio = (double) count / (double) (documentLength + count);
+        if (newRatio > currentRatio) {
+            bm25Tf[id] = count;
+            bm25Dl[id] = documentLength;
+        }
+    }
+
+    /**
+     * @param term the term to look for
+     * @return the id of the term, -1 if the term is not in the index
+     */
+    int getTermId(String term) {
+        return table[findSlot(term)];
+    }
+
+    /**
+     * @return the ids of the terms sorted in lexicographic order of the terms
+     */
+    int[] sortedTermIds() {
+        Integer[] ids = new Integer[numTerms];
+        for (int id = 0; id < numTerms; id++)
+            ids[id] = id;
+
+        Arrays.sort(ids, Comparator.comparing(id -> terms[id]));
+
+        return Arrays.stream(ids).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the term
+     */
+    String getTerm(int id) {
+        return terms[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the array of the docids of the term, valid up to its number of postings
+     */
+    int[] getDocids(int id) {
+        return docids[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the array of the frequencies of the term, valid up to its number of postings
+     */
+    int[] getFrequencies(int id) {
+        return frequencies[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the number of postings of the term
+     */
+    int getPostingsCount(int id) {
+        return postingsCount[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the document length used to compute the BM25 term upper bound
+     */
+    int getBM25Dl(int id) {
+        return bm25Dl[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the term frequency used to compute the BM25 term upper bound
+     */
+    int getBM25Tf(int id) {
+        return bm25Tf[id];
+    }
+
+    /**
+     * @param id the id of a term
+     * @return the maximum frequency of the term in a document
+     */
+    int getMaxTf(int id) {
+        int maxTf = 0;
+        for (int i = 0; i < postingsCount[id]; i++)
+            maxTf = Math.max(maxTf, frequencies[id][i]);
+        return maxTf;
+    }
+
+    /**
+     * builds the posting list of a term, used only to dump the partial index in debug mode
+     *
+     * @param id the id of a term
+     * @return the posting list of the term
+     */
+    PostingList toPostingList(int id) {
+        PostingList list = new PostingList(terms[id]);
+        for (int i = 0; i < postingsCount[id]; i++)
+            list.getPostings().add(new Posting(docids[id][i], frequencies[id][i]));
+        list.setBM25Dl(bm25Dl[id]);
+        list.setBM25Tf(bm25Tf[id]);
+        return list;
+    }
+
+    /**
+     * @return true if the estimated footprint of the index reached the memory budget
+     */
+    boolean isFull() {
+        return footprint >= memoryBudget;
+    }
+
+    /**
+     * @return true if the index contains no term
+     */
+    boolean isEmpty() {
+        return numTerms == 0;
+    }
+
+    /**
+     * @return number of terms in the index
+     */
+    int size() {
+        return numTerms;
+    }
+
+    /**
+     * @return estimated number of bytes occupied by the index in the heap
+     */
+    long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * @return number of postings in the index
+     */
+    long getNumPostings() {
+        return numPostings;
+    }
+
+    /**
+     * empties the index after it has been flushed
+     */
+    void clear() {
+        allocate(INITIAL_TERMS_CAPACITY);
+        numTerms = 0;
+        footprint = 0;
+        numPostings = 0;
+    }
+}
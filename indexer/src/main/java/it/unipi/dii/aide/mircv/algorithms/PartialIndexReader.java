@@ -0,0 +1,167 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyReader;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+
+import java.io.IOException;
+
+/**
+ * Streaming reader of an intermediate index produced by the SPIMI algorithm: the partial vocabulary and the
+ * partial posting lists are scanned sequentially through buffered readers, one term at a time.
+ * The partial posting lists store the docids as gaps and both docids and frequencies with variable byte encoding,
+ * so they are decoded while being read
+ */
+class PartialIndexReader implements InvertedIndexReader {
+
+    /**
+     * number of the intermediate index, used to keep the order of the partial posting lists of a term
+     */
+    private final int index;
+
+    /**
+     * reader of the partial vocabulary
+     */
+    private final VocabularyReader vocabularyReader;
+
+    /**
+     * reader of the partial docids
+     */
+    private final BufferedChannelReader docidsReader;
+
+    /**
+     * reader of the partial frequencies
+     */
+    private final BufferedChannelReader frequenciesReader;
+
+    /**
+     * vocabulary entry of the term currently pointed by the reader
+     */
+    private VocabularyEntry entry = null;
+
+    /**
+     * number of postings of the current term still to be read
+     */
+    private int remainingPostings = 0;
+
+    /**
+     * last docid read for the current term, used to decode the gaps
+     */
+    private int lastDocid = 0;
+
+    /**
+     * opens the files of an intermediate index
+     *
+     * @param index           number of the intermediate index
+     * @param vocabularyPath  path of the partial vocabulary
+     * @param docidsPath      path of the partial docids
+     * @param frequenciesPath path of the partial frequencies
+     * @throws IOException if one of the files cannot be opened
+     */
+    PartialIndexReader(int index, String vocabularyPath, String docidsPath, String frequenciesPath) throws IOException {
+        this.index = index;
+        this.vocabularyReader = new VocabularyReader(vocabularyPath);
+        this.docidsReader = new BufferedChannelReader(docidsPath);
+        this.frequenciesReader = new BufferedChannelReader(frequenciesPath);
+    }
+
+    /**
+     * moves the reader to the next term of the partial vocabulary
+     *
+     * @return false if there are no more terms to be read
+     * @throws IOException if an error occurs while reading the vocabulary
+     */
+    @Override
+    public boolean nextTerm() throws IOException {
+        entry = vocabularyReader.next();
+        if (entry == null)
+            return false;
+
+        // position the posting readers at the beginning of the partial posting list of the term
+        docidsReader.seek(entry.getDocidOffset());
+        frequenciesReader.seek(entry.getFrequencyOffset());
+        remainingPostings = entry.getDf();
+        lastDocid = 0;
+        return true;
+    }
+
+    /**
+     * @return true if there are postings of the current term still to be read
+     */
+    @Override
+    public boolean hasNextPosting() {
+        return remainingPostings > 0;
+    }
+
+    /**
+     * reads the next posting of the current term
+     *
+     * @param docids      array where the docid is stored
+     * @param frequencies array where the frequency is stored
+     * @param position    position of the arrays where the posting is stored
+     * @throws IOException if an error occurs while reading the posting
+     */
+    @Override
+    public void readPosting(int[] docids, int[] frequencies, int position) throws IOException {
+        lastDocid += readVariableByte(docidsReader);
+        docids[position] = lastDocid;
+        frequencies[position] = readVariableByte(frequenciesReader);
+        remainingPostings--;
+    }
+
+    /**
+     * decodes the next integer encoded with variable byte compression
+     *
+     * @param reader the reader of the file
+     * @return the decoded integer
+     * @throws IOException if the end of file is reached
+     */
+    private static int readVariableByte(BufferedChannelReader reader) throws IOException {
+        int value = 0;
+        byte elem;
+        do {
+            elem = reader.get();
+            // append the 7 bits of payload of the byte
+            value = (value << 7) | (elem & 127);
+        } while ((elem & 128) == 0);
+        return value;
+    }
+
+    /**
+     * @return the term currently pointed by the reader
+     */
+    @Override
+    public String getTerm() {
+        return entry.getTerm();
+    }
+
+    /**
+     * @return the partial vocabulary entry of the current term
+     */
+    @Override
+    public VocabularyEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return the number of the intermediate index
+     */
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * closes the files of the intermediate index
+     */
+    @Override
+    public void close() {
+        try {
+            vocabularyReader.close();
+            docidsReader.close();
+            frequenciesReader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.utils.Utility;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * in-memory segment of the documents added while the index is serving queries: the documents are inverted in a
+ * partial index which is searched together with the index on disk, so they are searchable as soon as they are added.
+ * When the memory budget is reached the partial index is written on disk as a new segment, as done by the -append
+ * flag of the indexer, and the in-memory segment is emptied; the segments are then merged in background
+ */
+public class RealTimeIndex implements InMemorySegment {
+
+    /**
+     * partial index of the documents not yet written on disk
+     */
+    private final PartialIndex index;
+
+    /**
+     * document index entries of the documents not yet written on disk
+     */
+    private final ArrayList<DocumentIndexEntry> documents = new ArrayList<>();
+
+    /**
+     * docid of the first document of the in-memory segment
+     */
+    private int firstDocid;
+
+    /**
+     * sum of the lengths of the documents not yet written on disk
+     */
+    private long totalDocLen = 0;
+
+    /**
+     * number of changes of the in-memory segment, used to invalidate the cached vocabulary entries
+     */
+    private long version = 0;
+
+    /**
+     * result of the last merge of the segments started in background, null if no merge was started
+     */
+    private volatile Future<Boolean> pendingMerge = null;
+
+    /**
+     * @param memoryBudget maximum number of bytes the in-memory segment can occupy before being written on disk
+     */
+    public RealTimeIndex(long memoryBudget) {
+        this.index = new PartialIndex(memoryBudget);
+        this.firstDocid = (int) CollectionSize.getCollectionSize() + 1;
+
+        // the documents are preprocessed as the ones on disk
+        if (Flags.isStemStopRemovalEnabled())
+            Preprocesser.readStopwords();
+    }
+
+    /**
+     * creates an in-memory segment with the memory budget of the configuration
+     */
+    public RealTimeIndex() {
+        this(ConfigurationParameters.getRealTimeBufferSize());
+    }
+
+    /**
+     * preprocesses a document and adds it to the in-memory segment, writing the segment on disk if it is full
+     *
+     * @param pid  the pid of the document
+     * @param text the text of the document
+     * @return true if the document is added
+     */
+    public synchronized boolean addDocument(String pid, String text) {
+        TextDocument document = new TextDocument(pid, text.replaceAll("[^\\x00-\\x7F]", ""));
+        return addDocument(Preprocesser.processDocument(document));
+    }
+
+    /**
+     * adds a preprocessed document to the in-memory segment, writing the segment on disk if it is full.
+     * The document gets the docid following the last one of the index and the collection statistics are updated
+     * in memory, so the document is immediately scored as the ones on disk
+     *
+     * @param document the preprocessed document
+     * @return true if the document is added
+     */
+    synchronized boolean addDocument(ProcessedDocument document) {
+        if (document.getTokens().isEmpty())
+            return false;
+
+        int docid = firstDocid + documents.size();
+        int documentLength = document.getTokens().size();
+
+        for (String term : document.getTokens()) {
+            if (term.isBlank())
+                continue;
+            index.addOccurrence(term, docid, documentLength);
+        }
+
+        DocumentIndexEntry entry = new DocumentIndexEntry(document.getPid(), docid, documentLength);
+        documents.add(entry);
+        totalDocLen += documentLength;
+        DocumentIndex.getInstance().put(docid, entry);
+
+        // the statistics are saved on disk when the segment is written
+        CollectionSize.setCollectionSize(docid);
+        CollectionSize.setTotalDocLen(CollectionSize.getTotalDocLen() + documentLength);
+        version++;
+
+        if (index.isFull())
+            return flush();
+        return true;
+    }
+
+    @Override
+    public synchronized VocabularyEntry getEntry(String term) {
+        int id = index.getTermId(term);
+        if (id == -1)
+            return null;
+
+        // the postings already in the arrays never change, so the entry can refer to them without copying
+        VocabularyEntry entry = new VocabularyEntry(term);
+        entry.setDf(index.getPostingsCount(id));
+        entry.setMaxTf(index.getMaxTf(id));
+        entry.setBM25Dl(index.getBM25Dl(id));
+        entry.setBM25Tf(index.getBM25Tf(id));
+        entry.setInMemoryPostings(index.getDocids(id), index.getFrequencies(id), index.getPostingsCount(id));
+        return entry;
+    }
+
+    @Override
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return number of documents not yet written on disk
+     */
+    public synchronized int getNumDocuments() {
+        return documents.size();
+    }
+
+    /**
+     * writes the in-memory segment on disk as a new segment of the index, then merges the segments in background,
+     * so that the queries on the in-memory segment wait only for the segment to be written
+     *
+     * @return true if the segment is written or there is nothing to write
+     */
+    public boolean flush() {
+        if (!writeSegment())
+            return false;
+
+        // keep the number of segments bounded
+        pendingMerge = SegmentMerger.mergeInBackground(Flags.isCompressionEnabled());
+        return true;
+    }
+
+    /**
+     * waits for the merge of the segments started in background by the last flush
+     *
+     * @return true if there was no merge or the merge is successful
+     */
+    public boolean waitMerge() {
+        Future<Boolean> merge = pendingMerge;
+        if (merge == null)
+            return true;
+        try {
+            return merge.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * writes the in-memory segment on disk as a new segment of the index, which is published in the registry,
+     * then empties it
+     *
+     * @return true if the segment is written or there is nothing to write
+     */
+    private synchronized boolean writeSegment() {
+        if (documents.isEmpty())
+            return true;
+
+        long start = System.currentTimeMillis();
+        boolean compressionMode = Flags.isCompressionEnabled();
+
+        Segment segment = SegmentRegistry.newSegment(firstDocid);
+        segment.setNumDocs(documents.size());
+        segment.setTotalDocLen(totalDocLen);
+
+        // the partial index is written as the only partial index of the segment, then merged as a SPIMI output
+        Utility.initializePartialFiles();
+        boolean written = Spimi.saveIndexToDisk(index, 0, false)
+                && Merger.mergeIndexes(1, compressionMode, false, segment)
+                && writeDocumentIndex(segment);
+        Utility.cleanUpFiles();
+
+        // the segment becomes searchable on disk when it is added to the registry
+        if (!written || !SegmentRegistry.addSegment(segment)) {
+            System.out.println("Couldn't write the in-memory segment on disk.");
+            SegmentRegistry.discard(segment);
+            return false;
+        }
+        if (!CollectionSize.updateCollectionSize(CollectionSize.getCollectionSize()) || !CollectionSize.updateDocumentsLenght(CollectionSize.getTotalDocLen()))
+            System.out.println("Couldn't update collection statistics.");
+
+        firstDocid += documents.size();
+        documents.clear();
+        totalDocLen = 0;
+        index.clear();
+        version++;
+        Vocabulary.clearCache();
+        System.out.println("in-memory segment written in " + segment + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * writes the document index of the segment
+     *
+     * @param segment the segment being written
+     * @return true if the document index is written
+     */
+    private boolean writeDocumentIndex(Segment segment) {
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(segment.getDocumentIndexPath())) {
+            for (DocumentIndexEntry entry : documents)
+                writer.write(entry);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
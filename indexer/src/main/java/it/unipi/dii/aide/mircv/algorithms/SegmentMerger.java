@@ -0,0 +1,175 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexEntry;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexReader;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import it.unipi.dii.aide.mircv.common.beans.SegmentRegistry;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * logarithmic merge policy of the segments appended to the index: each segment belongs to the size tier given by
+ * the logarithm of its number of documents in base MERGE_FACTOR, and MERGE_FACTOR consecutive segments of the
+ * same tier are merged in a segment of the next tier, so there are at most MERGE_FACTOR - 1 segments for each tier.
+ * Only consecutive segments are merged, so that the docids of a merged segment are contiguous; the main index
+ * is never merged
+ */
+public class SegmentMerger {
+
+    /**
+     * number of segments of the same tier merged together
+     */
+    private static final int MERGE_FACTOR = ConfigurationParameters.getSegmentMergeFactor();
+
+    /**
+     * thread running the merges in background, one at a time
+     */
+    private static final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param segment a segment
+     * @param mergeFactor number of segments of the same tier merged together
+     * @return the size tier of the segment
+     */
+    static int tier(Segment segment, int mergeFactor) {
+        return (int) (Math.log(Math.max(1, segment.getNumDocs())) / Math.log(mergeFactor));
+    }
+
+    /**
+     * chooses the segments to be merged: the most recent run of mergeFactor consecutive segments of the same tier.
+     * When segments of different tiers are interleaved there can be no such run, so if there are more than
+     * 2 * mergeFactor segments the run of mergeFactor consecutive segments with the fewest documents is merged
+     *
+     * @param segments the segments of the index, in increasing docid order
+     * @param mergeFactor number of segments of the same tier merged together
+     * @return the segments to be merged, null if no merge is needed
+     */
+    static List<Segment> selectMerge(List<Segment> segments, int mergeFactor) {
+        if (segments.size() < mergeFactor)
+            return null;
+
+        for (int end = segments.size(); end >= mergeFactor; end--) {
+            int tier = tier(segments.get(end - 1), mergeFactor);
+            boolean sameTier = true;
+            for (int i = end - mergeFactor; i < end - 1 && sameTier; i++)
+                sameTier = tier(segments.get(i), mergeFactor) == tier;
+
+            if (sameTier)
+                return segments.subList(end - mergeFactor, end);
+        }
+
+        if (segments.size() <= 2 * mergeFactor)
+            return null;
+
+        int bestStart = 0;
+        long bestDocs = Long.MAX_VALUE;
+        for (int start = 0; start + mergeFactor <= segments.size(); start++) {
+            long docs = 0;
+            for (int i = start; i < start + mergeFactor; i++)
+                docs += segments.get(i).getNumDocs();
+            if (docs < bestDocs) {
+                bestDocs = docs;
+                bestStart = start;
+            }
+        }
+        return segments.subList(bestStart, bestStart + mergeFactor);
+    }
+
+    /**
+     * merges the segments in a new segment, which replaces them in the registry
+     *
+     * @param segments        the consecutive segments to be merged
+     * @param compressionMode true if the posting lists are compressed
+     * @return true if the merge is successful
+     */
+    private static boolean mergeSegments(List<Segment> segments, boolean compressionMode) {
+        long start = System.currentTimeMillis();
+
+        Segment target = SegmentRegistry.newSegment(segments.get(0).getFirstDocid());
+        for (Segment segment : segments) {
+            target.setNumDocs(target.getNumDocs() + segment.getNumDocs());
+            target.setTotalDocLen(target.getTotalDocLen() + segment.getTotalDocLen());
+        }
+
+        if (!Merger.mergeSegments(segments, target, compressionMode) || !concatenateDocumentIndexes(segments, target)
+                || !SegmentRegistry.replaceSegments(segments, target)) {
+            System.out.println("Couldn't merge the segments " + segments);
+            SegmentRegistry.discard(target);
+            return false;
+        }
+
+        System.out.println("merged " + segments.size() + " segments in " + target + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    /**
+     * writes the document index of the merged segment, appending the entries of the segments, which already
+     * have the final docids. The entries are written again, so that the references to the heap of the pids of each
+     * segment are moved to the heap of the merged segment
+     *
+     * @param segments the merged segments
+     * @param target   the merged segment
+     * @return true if the document index is written
+     */
+    private static boolean concatenateDocumentIndexes(List<Segment> segments, Segment target) {
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(target.getDocumentIndexPath())) {
+            for (Segment segment : segments) {
+                try (DocumentIndexReader reader = new DocumentIndexReader(segment.getDocumentIndexPath(), segment.getFirstDocid())) {
+                    for (long i = 0; i < segment.getNumDocs(); i++) {
+                        DocumentIndexEntry entry = reader.next();
+                        if (entry == null)
+                            return false;
+                        writer.write(entry);
+                    }
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * applies the merge policy until no more merges are needed. The segments stay searchable by a running query
+     * processing while they are merged, since a merged segment replaces them in the registry only when it is
+     * completely written
+     *
+     * @param compressionMode true if the posting lists are compressed
+     * @return true if all the merges are successful
+     */
+    public static boolean mergeSegments(boolean compressionMode) {
+        List<Segment> toMerge;
+        while ((toMerge = selectMerge(SegmentRegistry.getSegments(), MERGE_FACTOR)) != null) {
+            if (!mergeSegments(toMerge, compressionMode))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * applies the merge policy on a background thread: the segments stay searchable while they are merged, since
+     * a merged segment replaces them in the registry only when it is completely written and no query is reading them
+     *
+     * @param compressionMode true if the posting lists are compressed
+     * @return the result of the merges
+     */
+    public static Future<Boolean> mergeInBackground(boolean compressionMode) {
+        return merger.submit(() -> {
+            boolean merged = mergeSegments(compressionMode);
+            if (!merged)
+                System.out.println("An error occurred while merging the segments.");
+            return merged;
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.BlockDescriptor;
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyReader;
+import it.unipi.dii.aide.mircv.common.compression.UnaryCompressor;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming reader of a segment of the inverted index, used to merge segments: since the posting lists and the
+ * block descriptors are written in the same order of the vocabulary, all the files are scanned sequentially
+ * and the postings are decoded one block at a time
+ */
+class SegmentReader implements InvertedIndexReader {
+
+    /**
+     * number of the segment in the list of the merged segments
+     */
+    private final int index;
+
+    /**
+     * true if the posting lists of the segment are compressed
+     */
+    private final boolean compressed;
+
+    /**
+     * true if the frequencies of each block follow its docids in the docids file
+     */
+    private final boolean interleaved;
+
+    /**
+     * reader of the vocabulary
+     */
+    private final VocabularyReader vocabularyReader;
+
+    /**
+     * reader of the block descriptors
+     */
+    private final BufferedChannelReader descriptorsReader;
+
+    /**
+     * reader of the docids
+     */
+    private final BufferedChannelReader docidsReader;
+
+    /**
+     * reader of the frequencies
+     */
+    private final BufferedChannelReader frequenciesReader;
+
+    /**
+     * vocabulary entry of the term currently pointed by the reader
+     */
+    private VocabularyEntry entry = null;
+
+    /**
+     * number of blocks of the current term still to be read
+     */
+    private int remainingBlocks = 0;
+
+    /**
+     * docids of the block being read
+     */
+    private int[] blockDocids = new int[0];
+
+    /**
+     * frequencies of the block being read
+     */
+    private int[] blockFrequencies = new int[0];
+
+    /**
+     * number of postings of the block being read
+     */
+    private int blockSize = 0;
+
+    /**
+     * position of the next posting to be read in the block
+     */
+    private int blockPosition = 0;
+
+    /**
+     * opens the files of a segment
+     *
+     * @param index      number of the segment in the list of the merged segments
+     * @param segment    the segment to be read
+     * @param compressed true if the posting lists of the segment are compressed
+     * @throws IOException if one of the files cannot be opened
+     */
+    SegmentReader(int index, Segment segment, boolean compressed) throws IOException {
+        this(index, segment.getVocabularyPath(), segment.getBlockDescriptorsPath(), segment.getInvertedIndexDocsPath(),
+                segment.getInvertedIndexFreqsPath(), compressed);
+    }
+
+    /**
+     * opens the files of an inverted index, used to read the main index
+     *
+     * @param index            number of the index in the list of the read indexes
+     * @param vocabularyPath   path of the vocabulary
+     * @param descriptorsPath  path of the block descriptors
+     * @param docidsPath       path of the docids of the inverted index
+     * @param frequenciesPath  path of the frequencies of the inverted index
+     * @param compressed       true if the posting lists are compressed
+     * @throws IOException if one of the files cannot be opened
+     */
+    SegmentReader(int index, String vocabularyPath, String descriptorsPath, String docidsPath, String frequenciesPath, boolean compressed) throws IOException {
+        this.index = index;
+        this.compressed = compressed;
+        this.interleaved = Flags.isInterleavedLayoutEnabled();
+        this.vocabularyReader = new VocabularyReader(vocabularyPath);
+        this.descriptorsReader = new BufferedChannelReader(descriptorsPath);
+        this.docidsReader = new BufferedChannelReader(docidsPath);
+        this.frequenciesReader = new BufferedChannelReader(frequenciesPath);
+    }
+
+    @Override
+    public boolean nextTerm() throws IOException {
+        entry = vocabularyReader.next();
+        if (entry == null)
+            return false;
+
+        // the postings stored in the vocabulary entry are read as a single block
+        if (entry.isInlined()) {
+            blockDocids = entry.getInlinedDocids();
+            blockFrequencies = entry.getInlinedFrequencies();
+            blockSize = blockDocids.length;
+            blockPosition = 0;
+            remainingBlocks = 0;
+            return true;
+        }
+
+        // position the readers at the beginning of the posting list of the term
+        docidsReader.seek(entry.getDocidOffset());
+        if (!interleaved)
+            frequenciesReader.seek(entry.getFrequencyOffset());
+        remainingBlocks = entry.getNumBlocks();
+        blockSize = 0;
+        blockPosition = 0;
+        return true;
+    }
+
+    @Override
+    public boolean hasNextPosting() {
+        return blockPosition < blockSize || remainingBlocks > 0;
+    }
+
+    @Override
+    public void readPosting(int[] docids, int[] frequencies, int position) throws IOException {
+        if (blockPosition == blockSize)
+            readNextBlock();
+
+        docids[position] = blockDocids[blockPosition];
+        frequencies[position] = blockFrequencies[blockPosition];
+        blockPosition++;
+    }
+
+    /**
+     * reads the next block descriptor of the current term and decodes the postings of its block
+     *
+     * @throws IOException if an error occurs while reading
+     */
+    private void readNextBlock() throws IOException {
+        ByteBuffer descriptor = descriptorsReader.require(BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES);
+        descriptor.getLong();
+        int docidSize = descriptor.getInt();
+        descriptor.getLong();
+        int freqSize = descriptor.getInt();
+        descriptor.getInt();
+        int numPostings = descriptor.getInt();
+
+        byte[] docidBytes = readBytes(docidsReader, docidSize);
+        byte[] freqBytes = readBytes(interleaved ? docidsReader : frequenciesReader, freqSize);
+
+        if (compressed) {
+            blockDocids = VariableByteCompressor.integerArrayDecompression(docidBytes, numPostings);
+            blockFrequencies = UnaryCompressor.integerArrayDecompression(freqBytes, numPostings);
+        } else {
+            ByteBuffer docidBuffer = ByteBuffer.wrap(docidBytes);
+            ByteBuffer freqBuffer = ByteBuffer.wrap(freqBytes);
+            blockDocids = new int[numPostings];
+            blockFrequencies = new int[numPostings];
+            for (int i = 0; i < numPostings; i++) {
+                blockDocids[i] = docidBuffer.getInt();
+                blockFrequencies[i] = freqBuffer.getInt();
+            }
+        }
+
+        blockSize = numPostings;
+        blockPosition = 0;
+        remainingBlocks--;
+    }
+
+    /**
+     * reads an array of bytes, in chunks if it is larger than the buffer of the reader
+     *
+     * @param reader   the reader of the file
+     * @param numBytes number of bytes to be read
+     * @return the bytes read
+     * @throws IOException if the end of file is reached
+     */
+    private static byte[] readBytes(BufferedChannelReader reader, int numBytes) throws IOException {
+        byte[] bytes = new byte[numBytes];
+        int read = 0;
+        while (read < numBytes) {
+            int chunk = Math.min(numBytes - read, BufferedChannelReader.DEFAULT_BUFFER_SIZE);
+            reader.require(chunk).get(bytes, read, chunk);
+            read += chunk;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String getTerm() {
+        return entry.getTerm();
+    }
+
+    @Override
+    public VocabularyEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void close() {
+        try {
+            vocabularyReader.close();
+            descriptorsReader.close();
+            docidsReader.close();
+            frequenciesReader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package it.unipi.dii.aide.mircv.algorithms;
 
 import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
 import it.unipi.dii.aide.mircv.common.config.CollectionSize;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
-import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.preprocess.StemmingService;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
@@ -11,15 +14,17 @@ import java.io.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
+import java.lang.management.MemoryUsage;
+
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * class that implements the spimi algorithm
@@ -29,7 +34,7 @@ public class Spimi {
     /**
      * path to the file on the disk storing the processed collection
      */
-    private static final String PATH_TO_COLLECTION = ConfigurationParameters.getRawCollectionPath();
+    private static String PATH_TO_COLLECTION = ConfigurationParameters.getRawCollectionPath();
 
     /**
      * path to the file on the disk storing the compressed collection
@@ -39,18 +44,23 @@ public class Spimi {
     /*
     path to the file on the disk storing the partial vocabulary
     */
-    private static final String PATH_TO_PARTIAL_VOCABULARY = ConfigurationParameters.getPartialVocabularyDir() + ConfigurationParameters.getVocabularyFileName();
+    private static String PATH_TO_PARTIAL_VOCABULARY = ConfigurationParameters.getPartialVocabularyDir() + ConfigurationParameters.getVocabularyFileName();
 
     /*
     path to the file on the disk storing the partial frequencies of the posting list
     */
-    private static final String PATH_TO_PARTIAL_FREQUENCIES = ConfigurationParameters.getFrequencyDir() + ConfigurationParameters.getFrequencyFileName();
+    private static String PATH_TO_PARTIAL_FREQUENCIES = ConfigurationParameters.getFrequencyDir() + ConfigurationParameters.getFrequencyFileName();
 
     /*
     path to the file on the disk storing the partial docids of the posting list
     */
 
-    private static final String PATH_TO_PARTIAL_DOCID = ConfigurationParameters.getDocidsDir() + ConfigurationParameters.getDocidsFileName();
+    private static String PATH_TO_PARTIAL_DOCID = ConfigurationParameters.getDocidsDir() + ConfigurationParameters.getDocidsFileName();
+
+    /**
+     * maximum number of bytes the two partial indexes can occupy before being flushed
+     */
+    private static long MEMORY_BUDGET = ConfigurationParameters.getSpimiMemoryBudget();
 
 
     /*
@@ -58,10 +68,25 @@ public class Spimi {
      */
     private static int numIndex = 0;
 
-    /*
-    counts the number of partial indexes to write
+    /**
+     * single thread writing the sealed partial indexes while the documents are being inverted
+     */
+    private static ExecutorService flusher = null;
+
+    /**
+     * time in milliseconds spent by the flusher thread writing partial indexes
+     */
+    private static long flushTime = 0;
+
+    /**
+     * time in milliseconds the inversion was blocked waiting for the flusher thread
      */
-    private static long numPostings = 0;
+    private static long stallTime = 0;
+
+    /**
+     * monitor of the heap, used to flush the partial index early when the memory is running out
+     */
+    private static final MemoryPressureMonitor memoryMonitor = new MemoryPressureMonitor();
 
     /**
      * @param compressed  flag for compressed reading
@@ -80,98 +105,114 @@ public class Spimi {
 
     }
 
+    /**
+     * opens the reader of the documents of the collection: the uncompressed collection is memory mapped and parsed
+     * in chunks by parallel workers, the compressed one is read line by line, and the tokenized one is read already
+     * processed from the token stream
+     *
+     * @param compressed flag for compressed reading
+     * @param tokenized flag for reading the tokenized collection
+     * @param skipLines number of lines at the beginning of the collection already indexed
+     * @return the reader of the collection
+     */
+    static CollectionReader openCollection(boolean compressed, boolean tokenized, long skipLines) throws IOException {
+        if(tokenized)
+            return new TokenStreamReader(CollectionTokenizer.getTokenizedCollectionPath(), CollectionTokenizer.getTokenizedTermsPath(), skipLines);
+        return openTextCollection(compressed, skipLines);
+    }
 
     /**
-     * deletes directories containing partial data structures and document Index file
+     * opens the reader of the text of the documents of the collection
+     *
+     * @param compressed flag for compressed reading
+     * @param skipLines number of lines at the beginning of the collection already indexed
+     * @return the reader of the collection
      */
-    private static void rollback(){
+    static TextCollectionReader openTextCollection(boolean compressed, long skipLines) throws IOException {
+        if(compressed)
+            return new LineCollectionReader(initBuffer(true), skipLines);
+        return new ChunkedCollectionReader(PATH_TO_COLLECTION, skipLines);
+    }
+
+
+    /**
+     * deletes directories containing partial data structures and document Index file, unless a checkpoint is saved:
+     * in that case the files written up to the last checkpoint are kept so that the indexing can be resumed
+     *
+     * @param segment: the segment being indexed, null if the main index is being built
+     * @param checkpoint: the checkpoint of the main index, null if no checkpoint is saved
+     */
+    private static void rollback(Segment segment, IndexingCheckpoint checkpoint){
+        if(checkpoint != null){
+            System.out.println("Run the indexer with -resume to continue from the last checkpoint.");
+            return;
+        }
 
         FileUtils.deleteDirectory(ConfigurationParameters.getDocidsDir());
         FileUtils.deleteDirectory(ConfigurationParameters.getFrequencyDir());
         FileUtils.deleteDirectory(ConfigurationParameters.getPartialVocabularyDir());
-        FileUtils.removeFile(ConfigurationParameters.getDocumentIndexPath());
+        if(segment == null)
+            DocumentIndexWriter.remove(ConfigurationParameters.getDocumentIndexPath());
+        else
+            DocumentIndexWriter.remove(segment.getDocumentIndexPath());
     }
 
     /**
-     * writes the partial index on file
+     * writes the partial index on file, it is executed by the flusher thread
+     * or when the in-memory segment of the real time index is written on disk
      *
-     * @param index: partial index that must be saved onto file
+     * @param partialIndex: partial index that must be saved onto file
+     * @param indexNumber: number of the partial index, used in the names of its files
      */
-    private static boolean saveIndexToDisk(HashMap<String, PostingList> index, boolean debugMode) {
-        System.out.println("saving index: "+numIndex+" of size: "+index.size());
-
-        if (index.isEmpty()){
-            //if the index is empty there is nothing to write on disk
-            System.out.println("empty index");
-            return true;
-        }
-
+    static boolean saveIndexToDisk(PartialIndex partialIndex, int indexNumber, boolean debugMode) {
+        long start = System.currentTimeMillis();
 
-        //sort index in lexicographic order
-        index = index.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByKey())
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1, LinkedHashMap::new));
-
-        // try to open a file channel to the file of the inverted index
+        // open the sequential writers of the partial inverted index and vocabulary
         try (
-                FileChannel docsFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_DOCID + "_" + numIndex),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE
-                );
-                FileChannel freqsFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_FREQUENCIES + "_" + numIndex),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE);
-                FileChannel vocabularyFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_VOCABULARY + "_" + numIndex),
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.READ,
-                        StandardOpenOption.CREATE)
+                BufferedChannelWriter docsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_DOCID + "_" + indexNumber);
+                BufferedChannelWriter freqsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_FREQUENCIES + "_" + indexNumber);
+                VocabularyWriter vocabularyWriter = new VocabularyWriter(PATH_TO_PARTIAL_VOCABULARY + "_" + indexNumber)
         ) {
-
-            // instantiation of MappedByteBuffer for integer list of docids
-            MappedByteBuffer docsBuffer = docsFchan.map(FileChannel.MapMode.READ_WRITE, 0, numPostings * 4L);
-
-            // instantiation of MappedByteBuffer for integer list of freqs
-            MappedByteBuffer freqsBuffer = freqsFchan.map(FileChannel.MapMode.READ_WRITE, 0, numPostings * 4L);
-
-            long vocOffset = 0;
-            // check if MappedByteBuffers are correctly instantiated
-            if (docsBuffer != null && freqsBuffer != null) {
-                for (PostingList list : index.values()) {
-                    //create vocabulary entry
-                    VocabularyEntry vocEntry = new VocabularyEntry(list.getTerm());
-                    vocEntry.setMemoryOffset(docsBuffer.position());
-                    vocEntry.setFrequencyOffset(docsBuffer.position());
-
-                    // write postings to file
-                    for (Posting posting : list.getPostings()) {
-                        // encode docid
-                        docsBuffer.putInt(posting.getDocid());
-                        // encode freq
-                        freqsBuffer.putInt(posting.getFrequency());
-                    }
-                    vocEntry.updateStatistics(list);
-                    vocEntry.setBM25Dl(list.getBM25Dl());
-                    vocEntry.setBM25Tf(list.getBM25Tf());
-                    vocEntry.setDocidSize((int) (numPostings*4));
-                    vocEntry.setFrequencySize((int) (numPostings*4));
-
-                    vocOffset = vocEntry.writeEntryToDisk(vocOffset, vocabularyFchan);
-                    if(debugMode){
-                        list.debugSaveToDisk("partialDOCIDS_"+numIndex+".txt", "partialFREQS_"+numIndex+".txt", (int) numPostings);
-                        vocEntry.debugSaveToDisk("partialVOC_"+numIndex+".txt");
-                    }
+            //write the terms in lexicographic order
+            for (int id : partialIndex.sortedTermIds()) {
+                //create vocabulary entry
+                VocabularyEntry vocEntry = new VocabularyEntry(partialIndex.getTerm(id));
+                vocEntry.setMemoryOffset(docsWriter.position());
+                vocEntry.setFrequencyOffset(freqsWriter.position());
+
+                // write postings to file: docids as gaps, both docids and frequencies with variable byte encoding
+                int[] docids = partialIndex.getDocids(id);
+                int[] frequencies = partialIndex.getFrequencies(id);
+                int count = partialIndex.getPostingsCount(id);
+                int docidSize = 0;
+                int frequencySize = 0;
+                int lastDocid = 0;
+                for (int i = 0; i < count; i++) {
+                    // encode docid
+                    docidSize += VariableByteCompressor.integerCompression(docids[i] - lastDocid, docsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                    lastDocid = docids[i];
+                    // encode freq
+                    frequencySize += VariableByteCompressor.integerCompression(frequencies[i], freqsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                }
+                vocEntry.setDf(count);
+                vocEntry.setMaxTf(partialIndex.getMaxTf(id));
+                vocEntry.setBM25Dl(partialIndex.getBM25Dl(id));
+                vocEntry.setBM25Tf(partialIndex.getBM25Tf(id));
+                vocEntry.setDocidSize(docidSize);
+                vocEntry.setFrequencySize(frequencySize);
+
+                if(vocEntry.writeEntryToDisk(vocabularyWriter) == -1)
+                    return false;
+                if(debugMode){
+                    partialIndex.toPostingList(id).debugSaveToDisk("partialDOCIDS_"+indexNumber+".txt", "partialFREQS_"+indexNumber+".txt", (int) partialIndex.getNumPostings());
+                    vocEntry.debugSaveToDisk("partialVOC_"+indexNumber+".txt");
                 }
             }
 
-            //update number of partial inverted indexes and vocabularies
-            numIndex++;
-            numPostings = 0;
+            long time = System.currentTimeMillis() - start;
+            flushTime += time;
+            long writtenBytes = docsWriter.position() + freqsWriter.position() + vocabularyWriter.position();
+            System.out.println("index "+indexNumber+" saved in "+time+" ms ("+writtenBytes+" bytes)");
             return true;
         } catch (InvalidPathException e) {
             System.out.println("Path Error " + e);
@@ -184,78 +225,188 @@ public class Spimi {
 
 
     /**
-     * Function that searched for a given docid in a posting list.
-     * If the document is already present it updates the term frequency for that
-     * specific document, if that's not the case creates a new pair (docid,freq)
-     * in which frequency is set to 1 and adds this pair to the posting list
+     * hands a sealed partial index to the flusher thread, which writes it and then empties it
      *
-     * @param docid:       docid of a certain document
-     * @param postingList: posting list of a given term
-     **/
-    protected static void updateOrAddPosting(int docid, PostingList postingList) {
-        if (postingList.getPostings().size() > 0) {
-            // last document inserted:
-            Posting posting = postingList.getPostings().get(postingList.getPostings().size() - 1);
-            //If the docId is the same I update the posting
-            if (docid == posting.getDocid()) {
-                posting.setFrequency(posting.getFrequency() + 1);
-                return;
-            }
+     * @param partialIndex: the partial index to be written
+     * @param debugMode: flag enabling debug mode
+     * @return the result of the flush, or null if the index is empty and nothing has to be written
+     */
+    private static Future<Boolean> submitFlush(PartialIndex partialIndex, boolean debugMode) {
+        MemoryUsage heap = MemoryPressureMonitor.getHeapUsage();
+        System.out.println("saving index: "+numIndex+" of size: "+partialIndex.size()+
+                " terms, "+partialIndex.getNumPostings()+" postings, estimated "+partialIndex.getFootprint()+
+                " bytes (heap used: "+heap.getUsed()+" of "+heap.getMax()+" bytes)");
+
+        if (partialIndex.isEmpty()){
+            //if the index is empty there is nothing to write on disk
+            System.out.println("empty index");
+            return null;
         }
-        // the document has not been processed (docIds are incremental):
-        // create new pair and add it to the posting list
-        postingList.getPostings().add(new Posting(docid, 1));
 
-        //increment the number of postings
-        numPostings++;
+        //update number of partial inverted indexes and vocabularies
+        int indexNumber = numIndex++;
 
+        return flusher.submit(() -> {
+            boolean success = saveIndexToDisk(partialIndex, indexNumber, debugMode);
+            partialIndex.clear();
+            return success;
+        });
     }
 
     /**
-     * Performs spimi algorithm
+     * waits for the end of a flush submitted to the flusher thread
+     *
+     * @param flush: the result of the flush, null if nothing was submitted
+     * @return true if the partial index was written successfully
+     */
+    private static boolean waitFlush(Future<Boolean> flush) {
+        if (flush == null)
+            return true;
+
+        long start = System.currentTimeMillis();
+        try {
+            return flush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            e.printStackTrace();
+            return false;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            stallTime += System.currentTimeMillis() - start;
+        }
+    }
+
+    /**
+     * opens the document index being written: the one of the segment, or the one of the main index keeping the
+     * entries of the documents indexed before the checkpoint
+     *
+     * @param segment the segment being indexed, null if the main index is being built
+     * @param checkpoint the checkpoint of the main index, null if no checkpoint is saved
+     * @return the writer of the document index
+     */
+    private static DocumentIndexWriter openDocumentIndex(Segment segment, IndexingCheckpoint checkpoint) throws IOException {
+        if (segment != null)
+            return new DocumentIndexWriter(segment.getDocumentIndexPath());
+        if (checkpoint != null)
+            return DocumentIndexWriter.resume(checkpoint.getDocumentIndexEntries());
+        return new DocumentIndexWriter();
+    }
+
+    /**
+     * saves the checkpoint, after writing on disk the document index entries it refers to.
+     * The indexing goes on if the checkpoint cannot be saved, it just can't be resumed from it
+     *
+     * @param checkpoint the checkpoint to be saved, null if no checkpoint is saved
+     * @param documentIndexWriter the writer of the document index
+     */
+    private static void saveCheckpoint(IndexingCheckpoint checkpoint, DocumentIndexWriter documentIndexWriter) {
+        if (checkpoint == null)
+            return;
+        try {
+            documentIndexWriter.flush();
+            if (!checkpoint.write())
+                System.out.println("Couldn't save the checkpoint.");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Performs spimi algorithm, saving a checkpoint after each partial index written
      *
      * @return the number of partial indexes created
      * @param compressedReadingEnable flag enabling reading from compressed file and stemming if true
      * @param debug flag enabling debug mode
      */
     public static int executeSpimi(boolean compressedReadingEnable,boolean debug) {
-        numIndex = 0;
-        DocumentIndexEntry.resetOffset();
+        return executeSpimi(compressedReadingEnable, debug, null, new IndexingCheckpoint(compressedReadingEnable));
+    }
+
+    /**
+     * Performs spimi algorithm starting from a checkpoint, which is updated after each partial index written:
+     * the documents already indexed in the partial indexes of the checkpoint are skipped and the new partial
+     * indexes follow them, so an interrupted indexing is resumed instead of restarted
+     *
+     * @return the number of partial indexes created, including the ones of the checkpoint
+     * @param checkpoint the checkpoint of the indexing, empty to index the collection from the beginning
+     * @param debug flag enabling debug mode
+     */
+    public static int executeSpimi(IndexingCheckpoint checkpoint, boolean debug) {
+        return executeSpimi(checkpoint.isCompressedReading(), debug, null, checkpoint);
+    }
+
+    /**
+     * Performs spimi algorithm on the documents of a new segment, whose docids start from the first docid of the segment.
+     * The collection statistics are not updated, the ones of the segment are set instead
+     *
+     * @return the number of partial indexes created
+     * @param compressedReadingEnable flag enabling reading from compressed file and stemming if true
+     * @param debug flag enabling debug mode
+     * @param segment the segment being indexed, null to build the main index
+     */
+    public static int executeSpimi(boolean compressedReadingEnable, boolean debug, Segment segment) {
+        return executeSpimi(compressedReadingEnable, debug, segment, null);
+    }
+
+    /**
+     * Performs spimi algorithm on the main index or on a new segment
+     *
+     * @return the number of partial indexes created
+     * @param compressedReadingEnable flag enabling reading from compressed file and stemming if true
+     * @param debug flag enabling debug mode
+     * @param segment the segment being indexed, null to build the main index
+     * @param checkpoint the checkpoint from which the main index is built and which is updated after each partial
+     *                   index written, null if no checkpoint is saved
+     */
+    private static int executeSpimi(boolean compressedReadingEnable, boolean debug, Segment segment, IndexingCheckpoint checkpoint) {
+        numIndex = checkpoint == null ? 0 : checkpoint.getNumRuns();
+        flushTime = 0;
+        stallTime = 0;
+        flusher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spimi-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // flush of the partial index being written by the flusher thread, if any
+        Future<Boolean> pendingFlush = null;
         try (
-                BufferedReader br = initBuffer(compressedReadingEnable)
+                CollectionReader collection = checkpoint == null ? openCollection(compressedReadingEnable, false, 0)
+                        : openCollection(compressedReadingEnable, checkpoint.isTokenizedReading(), checkpoint.getProcessedLines());
+                DocumentIndexWriter documentIndexWriter = openDocumentIndex(segment, checkpoint)
         ) {
             boolean allDocumentsProcessed = false; //is set to true when all documents are read
 
-            int docid = 1; //assign docid in a incremental manner
-            int docsLen = 0; // total sum of lengths of documents
+            int firstDocid = segment != null ? segment.getFirstDocid() : checkpoint != null ? checkpoint.getNextDocid() : 1;
+            int docid = firstDocid; //assign docid in a incremental manner
+            long docsLen = checkpoint == null ? 0 : checkpoint.getTotalDocLen(); // total sum of lengths of documents
             boolean writeSuccess; //checks whether the writing of the partial data structures was successful or not
 
-            long MEMORY_THRESHOLD = Runtime.getRuntime().totalMemory() * 20 / 100; // leave 20% of memory free
-            String[] split;
+            // the lines already indexed in the partial indexes of the checkpoint are skipped by the reader
+            if (collection.getReadLines() > 0)
+                System.out.println("resuming from partial index " + numIndex + ": skipping " + collection.getReadLines() + " lines, next docid " + docid);
+
+            System.out.println("memory budget for partial indexes: " + MEMORY_BUDGET + " bytes");
+
+            // flush the partial index before the budget is reached if the heap is filling up anyway
+            memoryMonitor.install();
+
+            // two partial indexes sharing the budget: one is filled while the other one is written by the flusher
+            PartialIndex[] partialIndexes = {new PartialIndex(MEMORY_BUDGET / 2), new PartialIndex(MEMORY_BUDGET / 2)};
+            PartialIndex index = partialIndexes[0]; //partial index being filled
             while (!allDocumentsProcessed ) {
-                HashMap<String, PostingList> index = new HashMap<>(); //hashmap containing partial index
-                while (Runtime.getRuntime().freeMemory() > MEMORY_THRESHOLD ) { //build index until 80% of total memory is used
+                while (!index.isFull() && !memoryMonitor.isUnderPressure()) { //build index until the budget is reached
 
-                    String line;
-                    // if we reach the end of file (br.readline() -> null)
-                    if ((line = br.readLine()) == null) {
+                    // document of the next line, parsed by the reader and preprocessed
+                    ProcessedDocument processedDocument = collection.nextProcessedDocument();
+                    // if we reach the end of file
+                    if (processedDocument == null) {
                         // we've processed all the documents
                         System.out.println("all documents processed");
                         allDocumentsProcessed = true;
                         break;
                     }
-                    // if the line is empty we process the next line
-                    if (line.isBlank())
-                        continue;
-
-                    // split of the line in the format <pid>\t<text>
-                    split = line.split("\t");
-
-                    // Creation of the text document for the line
-                    TextDocument document = new TextDocument(split[0], split[1].replaceAll("[^\\x00-\\x7F]", ""));
-                    // Perform text preprocessing on the document
-
-                    ProcessedDocument processedDocument = Preprocesser.processDocument(document);
 
                     if (processedDocument.getTokens().isEmpty())
                         continue;
@@ -273,7 +424,7 @@ public class Spimi {
                     docsLen += docIndexEntry.getDocLen();
 
                     // write the docIndex entry to disk
-                    docIndexEntry.writeToDisk();
+                    documentIndexWriter.write(docIndexEntry);
 
                     if(debug){
                         docIndexEntry.debugWriteToDisk("debugDOCINDEX.txt");
@@ -284,19 +435,8 @@ public class Spimi {
                         if(term.isBlank())
                             continue;
 
-                        PostingList posting; //posting list of a given term
-                        if (!index.containsKey(term)) {
-                            // create new posting list if term wasn't present yet
-                            posting = new PostingList(term);
-                            index.put(term, posting); //add new entry (term, posting list) to entry
-                        } else {
-                            //term is present, we can get its posting list
-                            posting = index.get(term);
-                        }
-
                         //insert or update new posting
-                        updateOrAddPosting(docid, posting);
-                        posting.updateBM25Parameters(documentLength, posting.getPostings().size());
+                        index.addOccurrence(term, docid, documentLength);
 
                     }
                     docid++;
@@ -305,29 +445,76 @@ public class Spimi {
                     }
                 }
 
-                //either if there is no  memory available or all documents were read, flush partial index onto disk
-                writeSuccess = saveIndexToDisk(index, debug);
+                //either if the memory budget is reached or all documents were read, flush partial index onto disk
+                if (memoryMonitor.isUnderPressure() && !index.isFull())
+                    System.out.println("flushing partial index before reaching the budget: heap under pressure");
+
+                //the other partial index must be completely written before being filled again
+                writeSuccess = waitFlush(pendingFlush);
 
                 //error during data structures creation. Rollback previous operations and end algorithm
                 if(!writeSuccess){
                     System.out.println("Couldn't write index to disk.");
-                    rollback();
+                    memoryMonitor.uninstall();
+                    flusher.shutdownNow();
+                    rollback(segment, checkpoint);
                     return -1;
                 }
-                index.clear();
 
+                //the partial index handed to the flusher thread is on disk: the indexing can be resumed after it
+                saveCheckpoint(checkpoint, documentIndexWriter);
+
+                //hand the sealed index to the flusher thread and keep inverting on the other one
+                pendingFlush = submitFlush(index, debug);
+                if (checkpoint != null)
+                    checkpoint.setSpimiState(collection.getReadLines(), docid, documentIndexWriter.getNumEntries(), docsLen, numIndex);
+                index = (index == partialIndexes[0]) ? partialIndexes[1] : partialIndexes[0];
+                memoryMonitor.reset();
             }
+
+            //wait for the last partial index to be written
+            writeSuccess = waitFlush(pendingFlush);
+            flusher.shutdown();
+            if(!writeSuccess){
+                System.out.println("Couldn't write index to disk.");
+                memoryMonitor.uninstall();
+                rollback(segment, checkpoint);
+                return -1;
+            }
+            System.out.println("partial indexes written in "+flushTime+" ms by the flusher thread, inversion stalled for "+stallTime+" ms");
+            if(Flags.isStemStopRemovalEnabled())
+                System.out.println(StemmingService.getStatistics());
+
+            memoryMonitor.uninstall();
+
+            if(segment != null){
+                // the statistics of the collection are updated when the segment is added to the index
+                segment.setNumDocs(docid - firstDocid);
+                segment.setTotalDocLen(docsLen);
+                return numIndex;
+            }
+
             // update the size of the document index and save it to disk
             if(!CollectionSize.updateCollectionSize(docid-1) || !CollectionSize.updateDocumentsLenght(docsLen)){
                 System.out.println("Couldn't update collection statistics.");
                 return 0;
             }
 
+            // all the partial indexes are on disk: the indexing can be resumed from the merge
+            if (checkpoint != null) {
+                checkpoint.setSpimiCompleted(true);
+                saveCheckpoint(checkpoint, documentIndexWriter);
+            }
+
 
             return numIndex;
 
         } catch (Exception e) {
+            memoryMonitor.uninstall();
+            flusher.shutdownNow();
             e.printStackTrace();
+            if (checkpoint != null)
+                System.out.println("Run the indexer with -resume to continue from the last checkpoint.");
             return 0;
         }
 
@@ -335,4 +522,34 @@ public class Spimi {
     }
 
 
+
+    /**
+     * needed for testing purposes
+     * @param pathToCollection: path to be set
+     */
+    public static void setPathToCollection(String pathToCollection) { PATH_TO_COLLECTION = pathToCollection;}
+
+    /**
+     * needed for testing purposes
+     * @param pathToPartialVocabulary: path to be set
+     */
+    public static void setPathToPartialVocabulary(String pathToPartialVocabulary) { PATH_TO_PARTIAL_VOCABULARY = pathToPartialVocabulary;}
+
+    /**
+     * needed for testing purposes
+     * @param pathToPartialFrequencies: path to be set
+     */
+    public static void setPathToPartialFrequencies(String pathToPartialFrequencies) { PATH_TO_PARTIAL_FREQUENCIES = pathToPartialFrequencies;}
+
+    /**
+     * needed for testing purposes
+     * @param pathToPartialDocid: path to be set
+     */
+    public static void setPathToPartialDocid(String pathToPartialDocid) { PATH_TO_PARTIAL_DOCID = pathToPartialDocid;}
+
+    /**
+     * needed for testing purposes
+     * @param memoryBudget: maximum number of bytes the partial indexes can occupy before being flushed
+     */
+    public static void setMemoryBudget(long memoryBudget) { MEMORY_BUDGET = memoryBudget;}
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+
+import java.io.IOException;
+
+/**
+ * Reader of the text of the documents of the collection, one per line in the format pid \t text: the documents are
+ * returned in the order of the collection, with the non ASCII characters removed from their text. Blank lines and
+ * lines without a tab are skipped
+ */
+public interface TextCollectionReader extends CollectionReader {
+
+    /**
+     * reads the next document of the collection
+     *
+     * @return the next document, null if all the documents have been read
+     * @throws IOException if an error occurs while reading the collection
+     */
+    TextDocument nextDocument() throws IOException;
+
+    /**
+     * reads the next document of the collection and preprocesses it with the flags of the indexing
+     *
+     * @return the next processed document, null if all the documents have been read
+     * @throws IOException if an error occurs while reading the collection
+     */
+    @Override
+    default ProcessedDocument nextProcessedDocument() throws IOException {
+        TextDocument document = nextDocument();
+        return document == null ? null : Preprocesser.processDocument(document);
+    }
+}
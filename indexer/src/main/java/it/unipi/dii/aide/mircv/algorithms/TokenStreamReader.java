@@ -0,0 +1,108 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * Reader of the collection tokenized by the CollectionTokenizer: the documents are returned already processed, with
+ * their tokens taken from the term table, so no text processing is done. If stopwords removal and stemming are
+ * enabled, the tokens marked as stopwords are removed and the others are replaced by their stem.
+ * The lines of the collection are the documents of the token stream
+ */
+class TokenStreamReader implements CollectionReader {
+
+    /**
+     * stream of the documents
+     */
+    private final DataInputStream stream;
+
+    /**
+     * terms of the term table, the term of id i is in position i - 1
+     */
+    private final String[] terms;
+
+    /**
+     * number of documents read
+     */
+    private long readLines = 0;
+
+    /**
+     * @param streamPath path of the stream of the documents
+     * @param termsPath  path of the term table
+     * @param skipLines  number of documents at the beginning of the stream to be skipped
+     * @throws IOException if the token stream cannot be read
+     */
+    TokenStreamReader(String streamPath, String termsPath, long skipLines) throws IOException {
+        boolean stemStopRemoval = Flags.isStemStopRemovalEnabled();
+
+        // each term is replaced by its stem, or by null if it is a stopword, when stemming is enabled
+        try (DataInputStream table = new DataInputStream(new BufferedInputStream(new FileInputStream(termsPath)))) {
+            terms = new String[table.readInt()];
+            for (int i = 0; i < terms.length; i++) {
+                String term = table.readUTF();
+                String stem = table.readUTF();
+                boolean stopword = table.readBoolean();
+                terms[i] = !stemStopRemoval ? term : stopword ? null : stem;
+            }
+        }
+
+        this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(streamPath), 1024 * 1024));
+        while (readLines < skipLines && readPid() != null) {
+            stream.readInt();
+            stream.skipNBytes(stream.readInt());
+            readLines++;
+        }
+    }
+
+    /**
+     * reads the pid of the next document of the stream
+     *
+     * @return the pid, null at the end of the stream
+     * @throws IOException if an error occurs while reading the stream
+     */
+    private String readPid() throws IOException {
+        try {
+            return stream.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public ProcessedDocument nextProcessedDocument() throws IOException {
+        String pid = readPid();
+        if (pid == null)
+            return null;
+
+        int numTokens = stream.readInt();
+        byte[] compressedTokens = new byte[stream.readInt()];
+        stream.readFully(compressedTokens);
+        readLines++;
+
+        int[] ids = VariableByteCompressor.integerArrayDecompression(compressedTokens, numTokens);
+        ArrayList<String> tokens = new ArrayList<>(numTokens);
+        for (int id : ids) {
+            if (terms[id - 1] != null)
+                tokens.add(terms[id - 1]);
+        }
+
+        ProcessedDocument document = new ProcessedDocument();
+        document.setPid(pid);
+        document.setTokens(tokens);
+        return document;
+    }
+
+    @Override
+    public long getReadLines() {
+        return readLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
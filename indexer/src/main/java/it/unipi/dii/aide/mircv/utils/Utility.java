@@ -1,5 +1,10 @@
 package it.unipi.dii.aide.mircv.utils;
 
+import it.unipi.dii.aide.mircv.algorithms.IndexingCheckpoint;
+import it.unipi.dii.aide.mircv.common.beans.DeletedDocuments;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.beans.SegmentRegistry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyFile;
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import it.unipi.dii.aide.mircv.common.config.Flags;
 import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
@@ -26,12 +31,25 @@ public class Utility {
      */
     public static void initializeFiles() {
 
-        removeFile(DOC_INDEX_PATH);
-        removeFile(VOCABULARY_PATH);
+        DocumentIndexWriter.remove(DOC_INDEX_PATH);
+        VocabularyFile.remove(VOCABULARY_PATH);
         removeFile(INVERTED_INDEX_DOCIDS);
         removeFile(INVERTED_INDEX_FREQS);
         removeFile(BLOCK_DESCRIPTORS_PATH);
 
+        // the segments appended to the previous index, the deletions and the checkpoint are removed too
+        SegmentRegistry.clear();
+        DeletedDocuments.clear();
+        IndexingCheckpoint.clear();
+
+        initializePartialFiles();
+    }
+
+    /**
+     * deletes possible intermediate indexes and creates new folders for the partial indexes,
+     * keeping the inverted index to which a new segment is appended
+     */
+    public static void initializePartialFiles() {
         deleteDirectory(PARTIAL_INDEX_DOCIDS);
         deleteDirectory(PARTIAL_INDEX_FREQS);
         deleteDirectory(PARTIAL_VOCABULARY_PATH);
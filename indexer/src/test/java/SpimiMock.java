@@ -19,6 +19,30 @@ import java.util.stream.Collectors;
 
 public class SpimiMock extends Spimi {
 
+    /**
+     * Function that searched for a given docid in a posting list.
+     * If the document is already present it updates the term frequency for that
+     * specific document, if that's not the case creates a new pair (docid,freq)
+     * in which frequency is set to 1 and adds this pair to the posting list
+     *
+     * @param docid:       docid of a certain document
+     * @param postingList: posting list of a given term
+     **/
+    private static void updateOrAddPosting(int docid, PostingList postingList) {
+        if (postingList.getPostings().size() > 0) {
+            // last document inserted:
+            Posting posting = postingList.getPostings().get(postingList.getPostings().size() - 1);
+            //If the docId is the same I update the posting
+            if (docid == posting.getDocid()) {
+                posting.setFrequency(posting.getFrequency() + 1);
+                return;
+            }
+        }
+        // the document has not been processed (docIds are incremental):
+        // create new pair and add it to the posting list
+        postingList.getPostings().add(new Posting(docid, 1));
+    }
+
     public static HashMap<String, PostingList> executeSpimiMock(ArrayList<ProcessedDocument> testDocuments){
 
         HashMap<String, PostingList> index = new HashMap<>();
@@ -0,0 +1,91 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedCollectionReaderTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/collectionReader";
+    private static final String COLLECTION_PATH = TEST_DIRECTORY + "/collection.tsv";
+
+    /**
+     * collection with non ASCII characters, blank lines, carriage returns, extra tabs, a line without a tab and no
+     * newline at the end of the file
+     */
+    private static final String COLLECTION =
+            "0\tThe presence of communication amid scientific minds\n" +
+            "1\tcaffè, naïve façade — “quoted” text 日本語\n" +
+            "\n" +
+            "   \n" +
+            "  \n" +
+            "2\tcarriage return\r\n" +
+            "3\tfirst\tsecond\tthird\n" +
+            "line without a tab\n" +
+            "4\t\n" +
+            "5\t \n" +
+            "é\tè accented pid\n" +
+            "6\tthe last line has no newline";
+
+    @BeforeAll
+    static void writeCollection() throws IOException {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+        Files.writeString(Paths.get(COLLECTION_PATH), COLLECTION, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reads all the documents of a collection, with the number of lines read after each of them
+     */
+    private static ArrayList<String> readAll(TextCollectionReader reader) throws IOException {
+        ArrayList<String> documents = new ArrayList<>();
+        for (TextDocument document = reader.nextDocument(); document != null; document = reader.nextDocument())
+            documents.add(document.getPid() + "|" + document.getText() + "|" + reader.getReadLines());
+        reader.close();
+        return documents;
+    }
+
+    private static ArrayList<String> readLines(long skipLines) throws IOException {
+        return readAll(new LineCollectionReader(Files.newBufferedReader(Paths.get(COLLECTION_PATH), StandardCharsets.UTF_8), skipLines));
+    }
+
+    @Test
+    void lineReaderParsesDocuments() throws IOException {
+        ArrayList<String> documents = readLines(0);
+        assertEquals(8, documents.size());
+        assertEquals("0|The presence of communication amid scientific minds|1", documents.get(0));
+        assertEquals("1|caff, nave faade  quoted text |2", documents.get(1));
+        assertEquals("2|carriage return|6", documents.get(2));
+        assertEquals("3|first|7", documents.get(3));
+        assertEquals("4||9", documents.get(4));
+        assertEquals("é| accented pid|11", documents.get(6));
+        assertEquals("6|the last line has no newline|12", documents.get(7));
+    }
+
+    @Test
+    void chunkedReaderMatchesLineReader() throws IOException {
+        for (int skipLines : new int[]{0, 1, 3, 7, 11, 12, 20}) {
+            ArrayList<String> expected = readLines(skipLines);
+            for (int chunkSize : new int[]{1, 7, 16, 64, ChunkedCollectionReader.DEFAULT_CHUNK_SIZE}) {
+                for (int numWorkers : new int[]{1, 3}) {
+                    ArrayList<String> documents = readAll(new ChunkedCollectionReader(COLLECTION_PATH, skipLines, numWorkers, chunkSize));
+                    assertEquals(expected, documents, "skip " + skipLines + ", chunk size " + chunkSize + ", workers " + numWorkers);
+                }
+            }
+        }
+    }
+
+    @AfterAll
+    static void deleteTestFiles() {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}
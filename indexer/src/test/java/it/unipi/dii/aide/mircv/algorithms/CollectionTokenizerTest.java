@@ -0,0 +1,102 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollectionTokenizerTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/collectionTokenizer";
+    private static final String COLLECTION_PATH = TEST_DIRECTORY + "/collection.tsv";
+    private static final String TOKENIZED_COLLECTION_PATH = TEST_DIRECTORY + "/tokenized_collection";
+    private static final String TOKENIZED_TERMS_PATH = TEST_DIRECTORY + "/tokenized_terms";
+
+    private static final String COLLECTION =
+            "0\tThe presence of communication amid scientific minds was equally important to the success\n" +
+            "1\tThe Manhattan Project and its atomic bomb helped bring an end to World War II\n" +
+            "\n" +
+            "2\t!!! ???\n" +
+            "3\thttps://www.unipi.it <p>Running runners RAN quickly</p> soooo CamelCase\n" +
+            "4\tcommunication communications communicating";
+
+    @BeforeAll
+    static void tokenizeCollection() throws IOException {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+        Files.writeString(Paths.get(COLLECTION_PATH), COLLECTION, StandardCharsets.UTF_8);
+        CollectionTokenizer.setTokenizedCollectionPaths(TOKENIZED_COLLECTION_PATH, TOKENIZED_TERMS_PATH);
+
+        Flags.setStemStopRemoval(false);
+        assertEquals(5, CollectionTokenizer.tokenizeCollection(new ChunkedCollectionReader(COLLECTION_PATH, 0)));
+        assertTrue(CollectionTokenizer.isAvailable());
+    }
+
+    @AfterEach
+    void resetFlags() {
+        Flags.setStemStopRemoval(false);
+    }
+
+    /**
+     * reads all the processed documents of a collection reader
+     */
+    private static ArrayList<String> readAll(CollectionReader reader) throws IOException {
+        ArrayList<String> documents = new ArrayList<>();
+        for (ProcessedDocument document = reader.nextProcessedDocument(); document != null; document = reader.nextProcessedDocument())
+            documents.add(document.getPid() + " " + document.getTokens() + " " + reader.getReadLines());
+        reader.close();
+        return documents;
+    }
+
+    private static ArrayList<String> readTokenized(long skipLines) throws IOException {
+        return readAll(new TokenStreamReader(TOKENIZED_COLLECTION_PATH, TOKENIZED_TERMS_PATH, skipLines));
+    }
+
+    @Test
+    void tokenStreamMatchesTextProcessing() throws IOException {
+        for (boolean stemStopRemoval : new boolean[]{false, true}) {
+            Flags.setStemStopRemoval(stemStopRemoval);
+            ArrayList<String> expected = new ArrayList<>();
+            // the lines of the token stream are its documents
+            int line = 0;
+            for (String document : readAll(new ChunkedCollectionReader(COLLECTION_PATH, 0)))
+                expected.add(document.substring(0, document.lastIndexOf(' ')) + " " + ++line);
+
+            assertEquals(expected, readTokenized(0));
+        }
+    }
+
+    @Test
+    void tokenStreamSkipsDocuments() throws IOException {
+        ArrayList<String> documents = readTokenized(0);
+        assertEquals(documents.subList(3, documents.size()), readTokenized(3));
+        assertEquals(0, readTokenized(10).size());
+    }
+
+    @Test
+    void tokenizingKeepsTheFlags() throws IOException {
+        // the stream is written without stopwords removal and stemming, whatever the flags of the indexing are
+        ArrayList<String> documents = readTokenized(0);
+        Flags.setStemStopRemoval(true);
+        assertEquals(5, CollectionTokenizer.tokenizeCollection(new ChunkedCollectionReader(COLLECTION_PATH, 0)));
+        assertTrue(Flags.isStemStopRemovalEnabled());
+        Flags.setStemStopRemoval(false);
+        assertEquals(documents, readTokenized(0));
+    }
+
+    @AfterAll
+    static void deleteTestFiles() {
+        CollectionTokenizer.setTokenizedCollectionPaths(null, null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}
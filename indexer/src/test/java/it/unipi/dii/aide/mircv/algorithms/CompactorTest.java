@@ -0,0 +1,250 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactorTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/compactor";
+    private static final String PATH_TO_PARTIAL_VOCABULARY = TEST_DIRECTORY + "/partial_vocabulary";
+    private static final String PATH_TO_PARTIAL_FREQUENCIES = TEST_DIRECTORY + "/partial_freqs";
+    private static final String PATH_TO_PARTIAL_INDEXES_DOCS = TEST_DIRECTORY + "/partial_docids";
+    private static final String DOCINDEX_PATH = TEST_DIRECTORY + "/docIndex";
+    private static final String VOCABULARY_PATH = TEST_DIRECTORY + "/vocabulary";
+    private static final String INVERTED_INDEX_DOCIDS = TEST_DIRECTORY + "/docids";
+    private static final String INVERTED_INDEX_FREQS = TEST_DIRECTORY + "/freqs";
+    private static final String BLOCK_DESCRIPTOR_PATH = TEST_DIRECTORY + "/block_descriptors";
+    private static final String COLLECTION_STATISTICS_PATH = TEST_DIRECTORY + "/collection_statistics";
+    private static final String DELETED_DOCUMENTS_PATH = TEST_DIRECTORY + "/deleted_documents";
+    private static final String SEGMENTS_DIR = TEST_DIRECTORY + "/segments";
+
+    @BeforeEach
+    void setUp() {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+        FileUtils.createDirectory(TEST_DIRECTORY);
+        Merger.setPathToVocabulary(VOCABULARY_PATH);
+        Merger.setPathToInvertedIndexDocs(INVERTED_INDEX_DOCIDS);
+        Merger.setPathToInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        Merger.setPathToBlockDescriptors(BLOCK_DESCRIPTOR_PATH);
+        Merger.setPathToPartialIndexesDocs(PATH_TO_PARTIAL_INDEXES_DOCS);
+        Merger.setPathToPartialIndexesFreqs(PATH_TO_PARTIAL_FREQUENCIES);
+        Merger.setPathToPartialVocabularies(PATH_TO_PARTIAL_VOCABULARY);
+        Compactor.setPathToVocabulary(VOCABULARY_PATH);
+        Compactor.setPathToInvertedIndexDocs(INVERTED_INDEX_DOCIDS);
+        Compactor.setPathToInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        Compactor.setPathToBlockDescriptors(BLOCK_DESCRIPTOR_PATH);
+        VocabularyEntry.setBlockDescriptorsPath(BLOCK_DESCRIPTOR_PATH);
+        BlockDescriptor.setInvertedIndexDocs(INVERTED_INDEX_DOCIDS);
+        BlockDescriptor.setInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        Vocabulary.setVocabularyPath(VOCABULARY_PATH);
+        DocumentIndexEntry.setDocindexPath(DOCINDEX_PATH);
+        CollectionSize.setCollectionStatisticsPath(COLLECTION_STATISTICS_PATH);
+        DeletedDocuments.setDeletedDocumentsPath(DELETED_DOCUMENTS_PATH);
+        DeletedDocuments.clear();
+        SegmentRegistry.setSegmentsDir(SEGMENTS_DIR);
+        FileUtils.createDirectory(SEGMENTS_DIR);
+        DocumentIndex.getInstance().clear();
+        Vocabulary.clearCache();
+        Vocabulary.unsetInstance();
+    }
+
+    @AfterEach
+    void tearDown() {
+        DeletedDocuments.clear();
+        DocumentIndex.getInstance().clear();
+        Vocabulary.clearCache();
+        Vocabulary.unsetInstance();
+        SegmentRegistry.clear();
+        SegmentRegistry.setSegmentsDir(null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+
+    /**
+     * writes the posting lists as the intermediate index produced by spimi, then merges it
+     *
+     * @param index   the posting lists, in lexicographic order of the terms
+     * @param segment the segment where the index is merged, null to merge it in the main index
+     */
+    private static void mergeIndex(List<PostingList> index, Segment segment, boolean compressionMode) {
+        try (
+                BufferedChannelWriter docsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_INDEXES_DOCS + "_0");
+                BufferedChannelWriter freqsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_FREQUENCIES + "_0");
+                VocabularyWriter vocabularyWriter = new VocabularyWriter(PATH_TO_PARTIAL_VOCABULARY + "_0")
+        ) {
+            for (PostingList postingList : index) {
+                VocabularyEntry vocEntry = new VocabularyEntry(postingList.getTerm());
+                vocEntry.setMemoryOffset(docsWriter.position());
+                vocEntry.setFrequencyOffset(freqsWriter.position());
+
+                // write postings to file, docids as gaps, with variable byte encoding
+                int docidSize = 0;
+                int frequencySize = 0;
+                int lastDocid = 0;
+                for (Posting posting : postingList.getPostings()) {
+                    docidSize += VariableByteCompressor.integerCompression(posting.getDocid() - lastDocid, docsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                    frequencySize += VariableByteCompressor.integerCompression(posting.getFrequency(), freqsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                    lastDocid = posting.getDocid();
+                }
+                vocEntry.updateStatistics(postingList);
+                vocEntry.setBM25Dl(postingList.getBM25Dl());
+                vocEntry.setBM25Tf(postingList.getBM25Tf());
+                vocEntry.setDocidSize(docidSize);
+                vocEntry.setFrequencySize(frequencySize);
+
+                assertNotEquals(-1, vocEntry.writeEntryToDisk(vocabularyWriter), "Error while writing the intermediate index");
+            }
+        } catch (Exception e) {
+            fail("Error while writing the intermediate index", e);
+        }
+
+        BlockDescriptor.setMemoryOffset(0);
+        if (segment == null)
+            assertTrue(Merger.mergeIndexes(1, compressionMode, false), "Error: merging failed");
+        else
+            assertTrue(Merger.mergeIndexes(1, compressionMode, false, segment), "Error: merging in segment failed");
+    }
+
+    /**
+     * writes the document index of the documents in a range, each one having length 10
+     */
+    private static void writeDocumentIndex(String path, int firstDocid, int lastDocid) {
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(path)) {
+            for (int docid = firstDocid; docid <= lastDocid; docid++)
+                writer.write(new DocumentIndexEntry("doc" + docid, docid, 10));
+        } catch (Exception e) {
+            fail("Error while writing the document index", e);
+        }
+    }
+
+    /**
+     * reads the whole posting list of a term from the main index and the segments
+     */
+    private static String readPostingList(String term) {
+        VocabularyEntry entry = Vocabulary.getInstance().getEntry(term);
+        if (entry == null)
+            return null;
+        Vocabulary.getInstance().put(term, entry);
+
+        PostingList postingList = new PostingList(term);
+        postingList.openList();
+        StringBuilder postings = new StringBuilder();
+        for (Posting posting = postingList.next(); posting != null; posting = postingList.next())
+            postings.append(posting.getDocid()).append(':').append(posting.getFrequency()).append(' ');
+        postingList.closeList();
+        return postings.toString().trim();
+    }
+
+    /*
+     * compacts an index made of a main index with documents 1-6 and a segment with documents 7-9,
+     * after the deletion of the documents 3 and 8:
+     *      main index:
+     *          - "amburgo" = {(1,3), (2,2), (4,1)}
+     *          - "pisa" = {(2,1), (3,2), (5,4), (6,1)}
+     *          - "roma" = {(3,1)}
+     *      segment:
+     *          - "pisa" = {(7,2), (9,1)}
+     *          - "torino" = {(8,3)}
+     * "roma" and "torino" must disappear, the other terms must keep the postings of the remaining documents
+     */
+    private void compactIndex(boolean compressionMode) throws Exception {
+        Flags.setCompression(compressionMode);
+
+        ArrayList<PostingList> mainIndex = new ArrayList<>();
+        mainIndex.add(new PostingList("amburgo\t1:3 2:2 4:1"));
+        mainIndex.add(new PostingList("pisa\t2:1 3:2 5:4 6:1"));
+        mainIndex.add(new PostingList("roma\t3:1"));
+        for (PostingList postingList : mainIndex)
+            for (Posting posting : postingList.getPostings())
+                postingList.updateBM25Parameters(10, posting.getFrequency());
+        CollectionSize.setCollectionSize(6);
+        CollectionSize.setTotalDocLen(60);
+        mergeIndex(mainIndex, null, compressionMode);
+        writeDocumentIndex(DOCINDEX_PATH, 1, 6);
+
+        ArrayList<PostingList> segmentIndex = new ArrayList<>();
+        segmentIndex.add(new PostingList("pisa\t7:2 9:1"));
+        segmentIndex.add(new PostingList("torino\t8:3"));
+        for (PostingList postingList : segmentIndex)
+            for (Posting posting : postingList.getPostings())
+                postingList.updateBM25Parameters(10, posting.getFrequency());
+        Segment segment = SegmentRegistry.newSegment(7);
+        mergeIndex(segmentIndex, segment, compressionMode);
+        writeDocumentIndex(segment.getDocumentIndexPath(), 7, 9);
+        segment.setNumDocs(3);
+        segment.setTotalDocLen(30);
+        assertTrue(SegmentRegistry.addSegment(segment));
+        assertTrue(CollectionSize.updateCollectionSize(9));
+        assertTrue(CollectionSize.updateDocumentsLenght(90));
+
+        assertTrue(DeletedDocuments.delete(3));
+        assertTrue(DeletedDocuments.delete(8));
+
+        assertTrue(Compactor.compact(compressionMode), "Error: compaction failed");
+        assertEquals(0, DeletedDocuments.getNumDeleted());
+
+        // the vocabulary of the main index is rewritten without "roma", with the df of the remaining postings
+        // and the idf computed on the whole collection, whose size is not changed
+        ArrayList<VocabularyEntry> mainVocabulary = new ArrayList<>();
+        try (VocabularyReader reader = new VocabularyReader(VOCABULARY_PATH)) {
+            for (VocabularyEntry entry = reader.next(); entry != null; entry = reader.next())
+                mainVocabulary.add(entry);
+        }
+        assertEquals(2, mainVocabulary.size());
+        assertEquals(2, CollectionSize.getVocabularySize());
+        assertEquals("amburgo", mainVocabulary.get(0).getTerm());
+        assertEquals(3, mainVocabulary.get(0).getDf());
+        assertEquals(Math.log10(9.0 / 3), mainVocabulary.get(0).getIdf(), 1e-9);
+        assertEquals(3, mainVocabulary.get(0).getMaxTf());
+        assertEquals("pisa", mainVocabulary.get(1).getTerm());
+        assertEquals(3, mainVocabulary.get(1).getDf());
+        assertEquals(Math.log10(9.0 / 3), mainVocabulary.get(1).getIdf(), 1e-9);
+        assertEquals(4, mainVocabulary.get(1).getMaxTf());
+
+        // the segment is replaced by its compacted copy, without "torino"
+        List<Segment> segments = SegmentRegistry.getSegments();
+        assertEquals(1, segments.size());
+        assertNotEquals(segment.getName(), segments.get(0).getName());
+        assertEquals(7, segments.get(0).getFirstDocid());
+        assertEquals(3, segments.get(0).getNumDocs());
+        assertEquals(1, segments.get(0).getVocabularySize());
+        assertFalse(new java.io.File(segment.getDirectory()).exists());
+
+        // the postings of the deleted documents are dropped, the other ones are kept
+        assertEquals("1:3 2:2 4:1", readPostingList("amburgo"));
+        assertEquals("2:1 5:4 6:1 7:2 9:1", readPostingList("pisa"));
+        assertNull(readPostingList("roma"));
+        assertNull(readPostingList("torino"));
+        VocabularyEntry pisa = Vocabulary.getInstance().getEntry("pisa");
+        assertEquals(5, pisa.getDf());
+        assertEquals(Math.log10(9.0 / 5), pisa.getIdf(), 1e-9);
+
+        // the docids are not changed, so the document index is kept
+        DocumentIndex.getInstance().clear();
+        assertTrue(DocumentIndex.getInstance().loadFromDisk());
+        assertEquals(9, DocumentIndex.getInstance().size());
+        assertEquals("doc3", DocumentIndex.getInstance().getPid(3));
+        assertEquals("doc9", DocumentIndex.getInstance().getPid(9));
+    }
+
+    @Test
+    void compactionWithoutCompression() throws Exception {
+        compactIndex(false);
+    }
+
+    @Test
+    void compactionWithCompression() throws Exception {
+        compactIndex(true);
+    }
+}
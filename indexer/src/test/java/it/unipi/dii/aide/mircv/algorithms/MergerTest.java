@@ -1,16 +1,15 @@
 package it.unipi.dii.aide.mircv.algorithms;
 
 import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
 import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 import it.unipi.dii.aide.mircv.common.config.Flags;
 import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
 import it.unipi.dii.aide.mircv.common.utils.FileUtils;
 import org.junit.jupiter.api.*;
 
-import java.nio.CharBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -78,61 +77,33 @@ class MergerTest {
             int i = intermediateIndexes.indexOf(intermediateIndex);
 
             try (
-                    FileChannel docsFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_INDEXES_DOCS + "_"+i),
-                            StandardOpenOption.WRITE,
-                            StandardOpenOption.READ,
-                            StandardOpenOption.CREATE
-                    );
-                    FileChannel freqsFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_FREQUENCIES +"_"+ i),
-                            StandardOpenOption.WRITE,
-                            StandardOpenOption.READ,
-                            StandardOpenOption.CREATE);
-                    FileChannel vocabularyFchan = (FileChannel) Files.newByteChannel(Paths.get(PATH_TO_PARTIAL_VOCABULARY +"_"+ i),
-                            StandardOpenOption.WRITE,
-                            StandardOpenOption.READ,
-                            StandardOpenOption.CREATE)
+                    BufferedChannelWriter docsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_INDEXES_DOCS + "_"+i);
+                    BufferedChannelWriter freqsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_FREQUENCIES +"_"+ i);
+                    VocabularyWriter vocabularyWriter = new VocabularyWriter(PATH_TO_PARTIAL_VOCABULARY +"_"+ i)
             ) {
-                long vocOffset = 0;
-                long docidOffset = 0;
-                long freqOffset = 0;
                 for (PostingList postingList : intermediateIndex) {
+                    //create vocabulary entry
+                    VocabularyEntry vocEntry = new VocabularyEntry(postingList.getTerm());
+                    vocEntry.setMemoryOffset(docsWriter.position());
+                    vocEntry.setFrequencyOffset(freqsWriter.position());
+
+                    // write postings to file, docids as gaps, with variable byte encoding
+                    int docidSize = 0;
+                    int frequencySize = 0;
+                    int lastDocid = 0;
+                    for (Posting posting : postingList.getPostings()) {
+                        docidSize += VariableByteCompressor.integerCompression(posting.getDocid() - lastDocid, docsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                        frequencySize += VariableByteCompressor.integerCompression(posting.getFrequency(), freqsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                        lastDocid = posting.getDocid();
+                    }
+                    vocEntry.updateStatistics(postingList);
+                    vocEntry.setBM25Dl(postingList.getBM25Dl());
+                    vocEntry.setBM25Tf(postingList.getBM25Tf());
+                    vocEntry.setDocidSize(docidSize);
+                    vocEntry.setFrequencySize(frequencySize);
 
-                    int numPostings = intermediateIndex.size();
-                    // instantiation of MappedByteBuffer for integer list of docids and for integer list of freqs
-                    MappedByteBuffer docsBuffer = docsFchan.map(FileChannel.MapMode.READ_WRITE, docidOffset, numPostings * 4L);
-                    MappedByteBuffer freqsBuffer = freqsFchan.map(FileChannel.MapMode.READ_WRITE, freqOffset, numPostings * 4L);
-
-                    // check if MappedByteBuffers are correctly instantiated
-                    if (docsBuffer != null && freqsBuffer != null) {
-                        //create vocabulary entry
-                        VocabularyEntry vocEntry = new VocabularyEntry(postingList.getTerm());
-                        vocEntry.setMemoryOffset(docsBuffer.position());
-                        vocEntry.setFrequencyOffset(docsBuffer.position());
-
-                        // write postings to file
-                        for (Posting posting : postingList.getPostings()) {
-                            // encode docid and freq
-                            docsBuffer.putInt(posting.getDocid());
-                            freqsBuffer.putInt(posting.getFrequency());
-
-                        }
-                        vocEntry.updateStatistics(postingList);
-                        vocEntry.setBM25Dl(postingList.getBM25Dl());
-                        vocEntry.setBM25Tf(postingList.getBM25Tf());
-                        vocEntry.setDocidSize(numPostings*4);
-                        vocEntry.setFrequencySize(numPostings*4);
-
-                        vocEntry.setMemoryOffset(docidOffset);
-                        vocEntry.setFrequencyOffset(freqOffset);
-
-                        vocOffset = vocEntry.writeEntryToDisk(vocOffset, vocabularyFchan);
-
-                        docidOffset += numPostings * 4L;
-                        freqOffset += numPostings * 4L;
-
-                    } else {
+                    if (vocEntry.writeEntryToDisk(vocabularyWriter) == -1)
                         return false;
-                    }
                 }
             } catch (Exception e) {
                 return false;
@@ -194,39 +165,9 @@ class MergerTest {
 
     public static boolean writeDocumentIndexToDisk(LinkedHashMap<Integer, DocumentIndexEntry> docIndex) {
 
-        // try to open a file channel to the file of the inverted index
-        try (FileChannel fChan = (FileChannel) Files.newByteChannel(
-                Paths.get(DOCINDEX_PATH),
-                StandardOpenOption.WRITE,
-                StandardOpenOption.READ,
-                StandardOpenOption.CREATE))
-        {
-            int memOffset = 0;
-            for(DocumentIndexEntry documentIndexEntry: docIndex.values()){
-                // instantiation of MappedByteBuffer for the entry
-                MappedByteBuffer buffer = fChan.map(FileChannel.MapMode.READ_WRITE, memOffset, DocumentIndexEntry.ENTRY_SIZE);
-
-                // Buffer not created
-                if(buffer == null)
-                    return false;
-
-                // Create the CharBuffer with size = PID_SIZE
-                CharBuffer charBuffer = CharBuffer.allocate(DocumentIndexEntry.PID_SIZE);
-                for(int i = 0; i < documentIndexEntry.getPid().length(); i++)
-                    charBuffer.put(i, documentIndexEntry.getPid().charAt(i));
-
-                // Write the PID into file
-                buffer.put(StandardCharsets.UTF_8.encode(charBuffer));
-
-                // Write the docid into file
-                buffer.putInt(documentIndexEntry.getDocid());
-                // Write the doclen into file
-                buffer.putInt(documentIndexEntry.getDocLen());
-
-                // update memory offset
-                memOffset += DocumentIndexEntry.ENTRY_SIZE;
-            }
-
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(DOCINDEX_PATH)) {
+            for(DocumentIndexEntry documentIndexEntry: docIndex.values())
+                writer.write(documentIndexEntry);
         } catch(Exception e){
             e.printStackTrace();
             return false;
@@ -582,5 +523,291 @@ class MergerTest {
         FileUtils.deleteDirectory(TEST_DIRECTORY + "/partial_vocabulary");
     }
 
+    /**
+     * merges the intermediate indexes in a new segment
+     */
+    private static Segment mergeInSegment(ArrayList<PostingList> intermediateIndex, String name, int firstDocid, boolean compressionMode) {
+        ArrayList<ArrayList<PostingList>> intermediateIndexes = new ArrayList<>();
+        intermediateIndexes.add(intermediateIndex);
+        assertTrue(writeIntermediateIndexesToDisk(intermediateIndexes), "Error while writing intermediate indexes to disk");
+
+        Segment segment = new Segment(name, TEST_DIRECTORY + "/" + name, firstDocid);
+        createDirectory(segment.getDirectory());
+        assertTrue(Merger.mergeIndexes(1, compressionMode, false, segment), "Error: merging in segment failed");
+        return segment;
+    }
+
+    /*
+     * the merge of two consecutive segments must produce the same files of the merge of all their intermediate
+     * indexes in a single index
+     *      segment 1:
+     *          - "amburgo" = {(1,3), (2,2), (3,5)}
+     *          - "pisa" = {(2,1), (3,2)}
+     *      segment 2:
+     *          - "alberobello" = {(4,3), (5,1)}
+     *          - "pisa" = {(5,2)}
+     */
+    private void mergeTwoSegments(boolean compressionMode) throws Exception {
+        ArrayList<PostingList> index1 = new ArrayList<>();
+        PostingList pl = new PostingList("amburgo\t1:3 2:2: 3:5");
+        pl.updateBM25Parameters(1,3);
+        index1.add(pl);
+        pl = new PostingList("pisa\t2:1 3:2");
+        pl.updateBM25Parameters(4,1);
+        index1.add(pl);
+
+        ArrayList<PostingList> index2 = new ArrayList<>();
+        pl = new PostingList("alberobello\t4:3 5:1");
+        pl.updateBM25Parameters(1,3);
+        index2.add(pl);
+        pl = new PostingList("pisa\t5:2");
+        pl.updateBM25Parameters(3, 2);
+        index2.add(pl);
+
+        ArrayList<ArrayList<PostingList>> intermediateIndexes = new ArrayList<>();
+        intermediateIndexes.add(index1);
+        intermediateIndexes.add(index2);
+        assertTrue(writeDocumentIndexToDisk(buildDocIndex(intermediateIndexes)), "Error while writing document index to disk");
+
+        Segment segment1 = mergeInSegment(index1, "segment_1", 1, compressionMode);
+        Segment segment2 = mergeInSegment(index2, "segment_2", 4, compressionMode);
 
-}
\ No newline at end of file
+        Segment merged = new Segment("segment_3", TEST_DIRECTORY + "/segment_3", 1);
+        createDirectory(merged.getDirectory());
+        assertTrue(Merger.mergeSegments(List.of(segment1, segment2), merged, compressionMode), "Error: merging of the segments failed");
+        assertEquals(3, merged.getVocabularySize());
+
+        // merge the same postings in the main index
+        assertTrue(writeIntermediateIndexesToDisk(intermediateIndexes), "Error while writing intermediate indexes to disk");
+        assertTrue(Merger.mergeIndexes(intermediateIndexes.size(), compressionMode, false), "Error: merging failed");
+
+        assertEquals(-1, Files.mismatch(Paths.get(VOCABULARY_PATH), Paths.get(merged.getVocabularyPath())), "Vocabulary of the merged segment is different from the expected one");
+        assertEquals(-1, Files.mismatch(Paths.get(VocabularyFile.getStatsPath(VOCABULARY_PATH)), Paths.get(VocabularyFile.getStatsPath(merged.getVocabularyPath()))), "Vocabulary statistics of the merged segment are different from the expected ones");
+        assertEquals(-1, Files.mismatch(Paths.get(VocabularyFile.getIndexPath(VOCABULARY_PATH)), Paths.get(VocabularyFile.getIndexPath(merged.getVocabularyPath()))), "Vocabulary block index of the merged segment is different from the expected one");
+        assertEquals(-1, Files.mismatch(Paths.get(INVERTED_INDEX_DOCIDS), Paths.get(merged.getInvertedIndexDocsPath())), "Docids of the merged segment are different from the expected ones");
+        assertEquals(-1, Files.mismatch(Paths.get(INVERTED_INDEX_FREQS), Paths.get(merged.getInvertedIndexFreqsPath())), "Frequencies of the merged segment are different from the expected ones");
+        assertEquals(-1, Files.mismatch(Paths.get(BLOCK_DESCRIPTOR_PATH), Paths.get(merged.getBlockDescriptorsPath())), "Block descriptors of the merged segment are different from the expected ones");
+
+        for (Segment segment : List.of(segment1, segment2, merged))
+            FileUtils.deleteDirectory(segment.getDirectory());
+    }
+
+    @Test
+    void twoSegmentsMergeWithoutCompression() throws Exception {
+        Flags.setCompression(false);
+        mergeTwoSegments(false);
+    }
+
+    @Test
+    void twoSegmentsMergeWithCompression() throws Exception {
+        Flags.setCompression(true);
+        mergeTwoSegments(true);
+    }
+
+    /*
+     * with the inlining of the postings enabled, the posting lists of at most 3 postings are stored in the
+     * vocabulary and read without the block descriptors and the inverted index
+     *      index 1:
+     *          - "amburgo" = {(1,3), (2,2), (3,5), (6,1)}
+     *          - "pisa" = {(2,1), (3,2)}
+     *      index 2:
+     *          - "alberobello" = {(4,3), (5,1)}
+     *          - "pisa" = {(5,2)}
+     */
+    private void mergeInlinedPostings(boolean compressionMode) {
+        ArrayList<PostingList> index1 = new ArrayList<>();
+        PostingList pl = new PostingList("amburgo\t1:3 2:2 3:5 6:1");
+        pl.updateBM25Parameters(1,3);
+        index1.add(pl);
+        pl = new PostingList("pisa\t2:1 3:2");
+        pl.updateBM25Parameters(4,1);
+        index1.add(pl);
+
+        ArrayList<PostingList> index2 = new ArrayList<>();
+        pl = new PostingList("alberobello\t4:3 5:1");
+        pl.updateBM25Parameters(1,3);
+        index2.add(pl);
+        pl = new PostingList("pisa\t5:2");
+        pl.updateBM25Parameters(3, 2);
+        index2.add(pl);
+
+        ArrayList<ArrayList<PostingList>> intermediateIndexes = new ArrayList<>();
+        intermediateIndexes.add(index1);
+        intermediateIndexes.add(index2);
+        assertTrue(writeDocumentIndexToDisk(buildDocIndex(intermediateIndexes)), "Error while writing document index to disk");
+        assertTrue(writeIntermediateIndexesToDisk(intermediateIndexes), "Error while writing intermediate indexes to disk");
+
+        Merger.setInlinePostingsEnabled(true);
+        assertTrue(Merger.mergeIndexes(intermediateIndexes.size(), compressionMode, false), "Error: merging failed");
+        Merger.setInlinePostingsEnabled(ConfigurationParameters.isInlinePostingsEnabled());
+
+        ArrayList<ArrayList<Posting>> mergedLists = retrieveIndexFromDisk();
+        ArrayList<ArrayList<Posting>> expectedResults = new ArrayList<>();
+        expectedResults.add(new ArrayList<>(List.of(new Posting(4, 3), new Posting(5, 1))));
+        expectedResults.add(new ArrayList<>(List.of(new Posting(1, 3), new Posting(2, 2), new Posting(3, 5), new Posting(6, 1))));
+        expectedResults.add(new ArrayList<>(List.of(new Posting(2, 1), new Posting(3, 2), new Posting(5, 2))));
+        assertEquals(expectedResults.toString(), mergedLists.toString(), "Error, expected results are different from actual results.");
+
+        Vocabulary vocabulary = Vocabulary.getInstance();
+        vocabulary.readFromDisk();
+        assertTrue(vocabulary.get("alberobello").isInlined());
+        assertTrue(vocabulary.get("pisa").isInlined());
+        assertFalse(vocabulary.get("amburgo").isInlined());
+        assertEquals(3, vocabulary.get("pisa").getDf());
+
+        // only the posting list of "amburgo" is stored in the inverted index
+        try {
+            assertEquals(BlockDescriptor.BLOCK_DESCRIPTOR_ENTRY_BYTES, Files.size(Paths.get(BLOCK_DESCRIPTOR_PATH)));
+            assertEquals(compressionMode ? 4 : 16, Files.size(Paths.get(INVERTED_INDEX_DOCIDS)));
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    void inlinedPostingsMergeWithoutCompression() {
+        Flags.setCompression(false);
+        mergeInlinedPostings(false);
+    }
+
+    @Test
+    void inlinedPostingsMergeWithCompression() {
+        Flags.setCompression(true);
+        mergeInlinedPostings(true);
+    }
+
+    @Test
+    void twoSegmentsMergeWithInlinedPostings() throws Exception {
+        Flags.setCompression(true);
+        Merger.setInlinePostingsEnabled(true);
+        mergeTwoSegments(true);
+        Merger.setInlinePostingsEnabled(ConfigurationParameters.isInlinePostingsEnabled());
+    }
+
+    /*
+     * with the interleaved layout the frequencies of each block follow its docids in the docids file, the frequencies
+     * file stays empty and the postings read back are the same of the layout with two files
+     */
+    private void mergeInterleavedLayout(boolean compressionMode) throws Exception {
+        Flags.setInterleavedLayout(true);
+        mergeTwoIndexes(compressionMode, false);
+        Flags.setInterleavedLayout(false);
+
+        assertEquals(0, Files.size(Paths.get(INVERTED_INDEX_FREQS)));
+        // the 10 postings take 10 bytes of docids and 5 bytes of frequencies if compressed, 80 bytes otherwise
+        assertEquals(compressionMode ? 15 : 80, Files.size(Paths.get(INVERTED_INDEX_DOCIDS)));
+    }
+
+    @Test
+    void twoIndexesMergeWithInterleavedLayoutWithoutCompression() throws Exception {
+        Flags.setCompression(false);
+        mergeInterleavedLayout(false);
+    }
+
+    @Test
+    void twoIndexesMergeWithInterleavedLayoutWithCompression() throws Exception {
+        Flags.setCompression(true);
+        mergeInterleavedLayout(true);
+    }
+
+    @Test
+    void twoSegmentsMergeWithInterleavedLayout() throws Exception {
+        Flags.setCompression(true);
+        Flags.setInterleavedLayout(true);
+        mergeTwoSegments(true);
+        Flags.setInterleavedLayout(false);
+    }
+
+    /*
+     * a merge resumed from its last checkpoint must produce the same files of an uninterrupted merge, even if the
+     * interrupted merge wrote some bytes after the checkpoint
+     *      index 1:
+     *          - "amburgo" = {(1,3), (2,2), (3,5)}
+     *          - "pisa" = {(2,1), (3,2)}
+     *          - "zurigo" = {(2,1), (3,2)}
+     *      index 2:
+     *          - "alberobello" = {(4,3), (5,1)}
+     *          - "pisa" = {(5,2)}
+     *          - "roma" = {(4,1)}
+     */
+    private void resumeMerge(boolean compressionMode) throws Exception {
+        ArrayList<PostingList> index1 = new ArrayList<>();
+        PostingList pl = new PostingList("amburgo\t1:3 2:2: 3:5");
+        pl.updateBM25Parameters(1,3);
+        index1.add(pl);
+        pl = new PostingList("pisa\t2:1 3:2");
+        pl.updateBM25Parameters(4,1);
+        index1.add(pl);
+        pl = new PostingList("zurigo\t2:1 3:2");
+        pl.updateBM25Parameters(4,1);
+        index1.add(pl);
+
+        ArrayList<PostingList> index2 = new ArrayList<>();
+        pl = new PostingList("alberobello\t4:3 5:1");
+        pl.updateBM25Parameters(1,3);
+        index2.add(pl);
+        pl = new PostingList("pisa\t5:2");
+        pl.updateBM25Parameters(3, 2);
+        index2.add(pl);
+        pl = new PostingList("roma\t4:1");
+        pl.updateBM25Parameters(3, 1);
+        index2.add(pl);
+
+        ArrayList<ArrayList<PostingList>> intermediateIndexes = new ArrayList<>();
+        intermediateIndexes.add(index1);
+        intermediateIndexes.add(index2);
+        assertTrue(writeDocumentIndexToDisk(buildDocIndex(intermediateIndexes)), "Error while writing document index to disk");
+        assertTrue(writeIntermediateIndexesToDisk(intermediateIndexes), "Error while writing intermediate indexes to disk");
+
+        // uninterrupted merge, with blocks of 3 terms in the vocabulary
+        VocabularyWriter.setBlockSize(3);
+        assertTrue(Merger.mergeIndexes(intermediateIndexes.size(), compressionMode, false), "Error: merging failed");
+        String[] outputs = {VOCABULARY_PATH, VocabularyFile.getStatsPath(VOCABULARY_PATH), VocabularyFile.getIndexPath(VOCABULARY_PATH), INVERTED_INDEX_DOCIDS, INVERTED_INDEX_FREQS, BLOCK_DESCRIPTOR_PATH};
+        for (String output : outputs)
+            Files.copy(Paths.get(output), Paths.get(output + "_expected"));
+
+        // merge saving a checkpoint every 2 terms: the last one is saved after "roma", in the middle of the second
+        // block of the vocabulary
+        IndexingCheckpoint.setCheckpointPath(TEST_DIRECTORY + "/checkpoint");
+        Merger.setCheckpointInterval(2);
+        IndexingCheckpoint checkpoint = new IndexingCheckpoint(false);
+        checkpoint.setSpimiState(0, 6, 5, 0, intermediateIndexes.size());
+        checkpoint.setSpimiCompleted(true);
+        BlockDescriptor.setMemoryOffset(0);
+        assertTrue(Merger.mergeIndexes(compressionMode, false, checkpoint), "Error: merging with checkpoints failed");
+
+        // the interrupted merge wrote part of the following term
+        for (String output : outputs)
+            Files.write(Paths.get(output), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        IndexingCheckpoint savedCheckpoint = IndexingCheckpoint.read();
+        assertNotNull(savedCheckpoint);
+        assertTrue(savedCheckpoint.isSpimiCompleted());
+        assertEquals("roma", savedCheckpoint.getLastMergedTerm());
+        assertEquals(4, savedCheckpoint.getVocabularySize());
+
+        BlockDescriptor.setMemoryOffset(0);
+        assertTrue(Merger.mergeIndexes(compressionMode, false, savedCheckpoint), "Error: resumed merging failed");
+        assertEquals(5, CollectionSize.getVocabularySize());
+
+        for (String output : outputs)
+            assertEquals(-1, Files.mismatch(Paths.get(output), Paths.get(output + "_expected")), output + " of the resumed merge is different from the expected one");
+
+        IndexingCheckpoint.clear();
+        IndexingCheckpoint.setCheckpointPath(null);
+        Merger.setCheckpointInterval(100000);
+        VocabularyWriter.setBlockSize(ConfigurationParameters.getVocabularyBlockSize());
+    }
+
+    @Test
+    void resumedMergeWithoutCompression() throws Exception {
+        Flags.setCompression(false);
+        resumeMerge(false);
+    }
+
+    @Test
+    void resumedMergeWithCompression() throws Exception {
+        Flags.setCompression(true);
+        resumeMerge(true);
+    }
+}
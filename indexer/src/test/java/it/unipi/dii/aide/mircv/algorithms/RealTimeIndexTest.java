@@ -0,0 +1,132 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RealTimeIndexTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/realTimeIndex";
+    private static final String COLLECTION_STATISTICS_PATH = TEST_DIRECTORY + "/collection_statistics";
+
+    /**
+     * number of documents of the index on disk
+     */
+    private static final int COLLECTION_SIZE = 100;
+
+    private RealTimeIndex realTimeIndex;
+
+    @BeforeEach
+    void setUp() {
+        FileUtils.createDirectory(TEST_DIRECTORY);
+        // the vocabulary on disk is empty, so the entries come only from the in-memory segment
+        CollectionSize.setCollectionStatisticsPath(COLLECTION_STATISTICS_PATH);
+        CollectionSize.updateVocabularySize(0);
+        CollectionSize.setCollectionSize(COLLECTION_SIZE);
+        CollectionSize.setTotalDocLen(COLLECTION_SIZE * 10);
+        Vocabulary.clearCache();
+        Vocabulary.unsetInstance();
+
+        // the budget is never reached, so nothing is written on disk
+        realTimeIndex = new RealTimeIndex(Long.MAX_VALUE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Vocabulary.setInMemorySegment(null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+
+    /**
+     * opens the posting list of a vocabulary entry
+     */
+    private static PostingList openList(VocabularyEntry entry) {
+        Vocabulary.getInstance().put(entry.getTerm(), entry);
+        PostingList list = new PostingList(entry.getTerm());
+        list.openList();
+        return list;
+    }
+
+    /**
+     * reads all the postings of a vocabulary entry
+     */
+    private static ArrayList<Posting> readPostings(VocabularyEntry entry) {
+        PostingList list = openList(entry);
+        ArrayList<Posting> postings = new ArrayList<>();
+        Posting posting;
+        while ((posting = list.next()) != null)
+            postings.add(posting);
+        return postings;
+    }
+
+    @Test
+    void documentsAreSearchableWhenAdded() {
+        assertTrue(realTimeIndex.addDocument(new ProcessedDocument("doc1", new String[]{"fresh", "news", "fresh"})));
+        assertTrue(realTimeIndex.addDocument(new ProcessedDocument("doc2", new String[]{"old", "news"})));
+        assertFalse(realTimeIndex.addDocument(new ProcessedDocument("doc3", new String[]{})));
+
+        VocabularyEntry news = realTimeIndex.getEntry("news");
+        assertEquals(2, news.getDf());
+        ArrayList<Posting> postings = readPostings(news);
+        assertEquals(2, postings.size());
+        assertEquals(COLLECTION_SIZE + 1, postings.get(0).getDocid());
+        assertEquals(COLLECTION_SIZE + 2, postings.get(1).getDocid());
+
+        VocabularyEntry fresh = realTimeIndex.getEntry("fresh");
+        assertEquals(1, fresh.getDf());
+        assertEquals(2, fresh.getMaxTf());
+        assertEquals(2, readPostings(fresh).get(0).getFrequency());
+
+        assertNull(realTimeIndex.getEntry("missing"));
+
+        // the documents are scored as the ones on disk
+        assertEquals(COLLECTION_SIZE + 2, CollectionSize.getCollectionSize());
+        assertEquals("doc2", DocumentIndex.getInstance().getPid(COLLECTION_SIZE + 2));
+        assertEquals(2, DocumentIndex.getInstance().getLength(COLLECTION_SIZE + 2));
+    }
+
+    @Test
+    void longPostingListsAreSplitInBlocks() {
+        int numDocuments = 2000;
+        for (int i = 0; i < numDocuments; i++)
+            realTimeIndex.addDocument(new ProcessedDocument("doc" + i, new String[]{"common"}));
+
+        VocabularyEntry entry = realTimeIndex.getEntry("common");
+        assertEquals((int) Math.ceil(Math.sqrt(numDocuments)), entry.getNumBlocks());
+
+        int previousDocid = COLLECTION_SIZE;
+        for (Posting posting : readPostings(entry))
+            assertEquals(++previousDocid, posting.getDocid());
+        assertEquals(COLLECTION_SIZE + numDocuments, previousDocid);
+
+        // the blocks are skipped through their max docids
+        PostingList list = openList(entry);
+        for (int docid = COLLECTION_SIZE + 1; docid <= COLLECTION_SIZE + numDocuments; docid += 97)
+            assertEquals(docid, list.nextGEQ(docid).getDocid());
+        assertNull(list.nextGEQ(COLLECTION_SIZE + numDocuments + 1));
+    }
+
+    @Test
+    void vocabularyFollowsTheInMemorySegment() {
+        Vocabulary.setInMemorySegment(realTimeIndex);
+        assertNull(Vocabulary.getInstance().getEntry("fresh"));
+
+        realTimeIndex.addDocument(new ProcessedDocument("doc1", new String[]{"fresh"}));
+        VocabularyEntry entry = Vocabulary.getInstance().getEntry("fresh");
+        assertEquals(1, entry.getDf());
+        assertEquals(Math.log10((COLLECTION_SIZE + 1) / 1.0), entry.getIdf());
+
+        // the cached entry is replaced when a document is added
+        realTimeIndex.addDocument(new ProcessedDocument("doc2", new String[]{"fresh"}));
+        entry = Vocabulary.getInstance().getEntry("fresh");
+        assertEquals(2, entry.getDf());
+        assertEquals(2, readPostings(entry).size());
+    }
+}
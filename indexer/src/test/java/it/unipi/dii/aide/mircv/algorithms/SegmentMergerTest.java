@@ -0,0 +1,59 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.Segment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentMergerTest {
+
+    /**
+     * builds a list of consecutive segments with the given number of documents
+     */
+    private static List<Segment> buildSegments(long... sizes) {
+        ArrayList<Segment> segments = new ArrayList<>();
+        int firstDocid = 1;
+        for (int i = 0; i < sizes.length; i++) {
+            Segment segment = new Segment("segment_" + i, "segment_" + i, firstDocid);
+            segment.setNumDocs(sizes[i]);
+            segments.add(segment);
+            firstDocid += (int) sizes[i];
+        }
+        return segments;
+    }
+
+    @Test
+    void noMergeBelowMergeFactor() {
+        assertNull(SegmentMerger.selectMerge(buildSegments(1000, 100, 10), 4));
+    }
+
+    @Test
+    void mergeSegmentsOfTheSameTier() {
+        // tiers: 6, 4, 4, 4, 4
+        List<Segment> segments = buildSegments(10000, 300, 400, 500, 600);
+        assertEquals(segments.subList(1, 5), SegmentMerger.selectMerge(segments, 4));
+    }
+
+    @Test
+    void mergeMostRecentRun() {
+        // tiers: 6, 6, 3, 3
+        List<Segment> segments = buildSegments(100, 120, 10, 12);
+        assertEquals(segments.subList(2, 4), SegmentMerger.selectMerge(segments, 2));
+    }
+
+    @Test
+    void noMergeOfDifferentTiers() {
+        // tiers: 9, 6, 9, 6
+        assertNull(SegmentMerger.selectMerge(buildSegments(1000, 100, 1000, 100), 2));
+    }
+
+    @Test
+    void boundedNumberOfSegments() {
+        // tiers alternate, so there is no run of the same tier: the smallest run is merged
+        List<Segment> segments = buildSegments(1000, 100, 1000, 100, 2000, 10);
+        assertEquals(segments.subList(0, 2), SegmentMerger.selectMerge(segments, 2));
+    }
+}
@@ -0,0 +1,167 @@
+package it.unipi.dii.aide.mircv.algorithms;
+
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexEntry;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyFile;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpimiTest {
+
+    private static final String TEST_DIRECTORY = "src/test/data/spimi";
+    private static final String EXPECTED_DIRECTORY = "src/test/data/spimiExpected";
+    private static final String COLLECTION_PATH = "src/test/data/spimiCollection.tsv";
+    private static final String PARTIAL_VOCABULARY = "/partial_vocabulary";
+    private static final String PARTIAL_FREQUENCIES = "/partial_freqs";
+    private static final String PARTIAL_DOCIDS = "/partial_docids";
+    private static final String DOCINDEX = "/docIndex";
+    private static final String COLLECTION_STATISTICS = "/collection_statistics";
+    private static final String CHECKPOINT = "/checkpoint";
+
+    /**
+     * number of the partial index whose flush fails, interrupting the indexing
+     */
+    private static final int INTERRUPTED_RUN = 3;
+
+    /**
+     * collection of 600 lines of random words, with a blank line every 50 lines, whose partial indexes are flushed
+     * about every 35 documents
+     */
+    @BeforeAll
+    static void writeCollection() throws IOException {
+        FileUtils.createDirectory("src/test/data");
+        Random random = new Random(17);
+        StringBuilder collection = new StringBuilder();
+        for (int pid = 0; pid < 600; pid++) {
+            if (pid % 50 != 7) {
+                collection.append(pid).append('\t');
+                int numWords = 3 + random.nextInt(20);
+                for (int i = 0; i < numWords; i++) {
+                    int word = random.nextInt(300);
+                    collection.append(' ').append((char) ('a' + word / 26)).append((char) ('a' + word % 26)).append("word");
+                }
+            }
+            collection.append('\n');
+        }
+        Files.write(Paths.get(COLLECTION_PATH), collection.toString().getBytes(StandardCharsets.UTF_8));
+        Spimi.setPathToCollection(COLLECTION_PATH);
+        Spimi.setMemoryBudget(64 * 1024);
+    }
+
+    @BeforeEach
+    void setUp() {
+        useDirectory(TEST_DIRECTORY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        IndexingCheckpoint.setCheckpointPath(null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+        FileUtils.deleteDirectory(EXPECTED_DIRECTORY);
+    }
+
+    @AfterAll
+    static void teardown() {
+        FileUtils.removeFile(COLLECTION_PATH);
+        Spimi.setMemoryBudget(ConfigurationParameters.getSpimiMemoryBudget());
+    }
+
+    /**
+     * writes the partial indexes, the document index, the collection statistics and the checkpoint in a directory
+     *
+     * @param directory the directory storing the files
+     */
+    private static void useDirectory(String directory) {
+        FileUtils.createDirectory(directory);
+        Spimi.setPathToPartialVocabulary(directory + PARTIAL_VOCABULARY);
+        Spimi.setPathToPartialFrequencies(directory + PARTIAL_FREQUENCIES);
+        Spimi.setPathToPartialDocid(directory + PARTIAL_DOCIDS);
+        DocumentIndexEntry.setDocindexPath(directory + DOCINDEX);
+        CollectionSize.setCollectionStatisticsPath(directory + COLLECTION_STATISTICS);
+        IndexingCheckpoint.setCheckpointPath(directory + CHECKPOINT);
+    }
+
+    /**
+     * @param directory the directory storing the files of the indexing
+     * @param numRuns   the number of partial indexes written
+     * @return the files written by the indexing, except the checkpoint
+     */
+    private static ArrayList<String> indexFiles(String directory, int numRuns) {
+        ArrayList<String> files = new ArrayList<>();
+        for (int i = 0; i < numRuns; i++) {
+            files.add(directory + PARTIAL_VOCABULARY + "_" + i);
+            files.add(VocabularyFile.getStatsPath(directory + PARTIAL_VOCABULARY + "_" + i));
+            files.add(VocabularyFile.getIndexPath(directory + PARTIAL_VOCABULARY + "_" + i));
+            files.add(directory + PARTIAL_FREQUENCIES + "_" + i);
+            files.add(directory + PARTIAL_DOCIDS + "_" + i);
+        }
+        files.add(directory + DOCINDEX);
+        files.add(DocumentIndexWriter.getPidsPath(directory + DOCINDEX));
+        files.add(directory + COLLECTION_STATISTICS);
+        return files;
+    }
+
+    /**
+     * an indexing interrupted by a failed flush and resumed from its last checkpoint must skip the lines already
+     * indexed, append to the document index kept up to the checkpoint, and produce the same files of an
+     * uninterrupted indexing
+     */
+    @Test
+    void resumedIndexing() throws IOException {
+        // uninterrupted indexing
+        useDirectory(EXPECTED_DIRECTORY);
+        int numRuns = Spimi.executeSpimi(new IndexingCheckpoint(false), false);
+        assertTrue(numRuns > INTERRUPTED_RUN + 1, "the collection must be indexed in more partial indexes");
+        long collectionSize = CollectionSize.getCollectionSize();
+        long totalDocLen = CollectionSize.getTotalDocLen();
+        assertEquals(588, collectionSize);
+
+        // the flush of a partial index fails because a directory is in the place of one of its files
+        useDirectory(TEST_DIRECTORY);
+        String failingPath = TEST_DIRECTORY + PARTIAL_DOCIDS + "_" + INTERRUPTED_RUN;
+        FileUtils.createDirectory(failingPath);
+        assertEquals(-1, Spimi.executeSpimi(new IndexingCheckpoint(false), false));
+
+        // the checkpoint is saved after the last partial index written, while the document index holds the
+        // documents read after it as well
+        IndexingCheckpoint checkpoint = IndexingCheckpoint.read();
+        assertNotNull(checkpoint);
+        assertFalse(checkpoint.isSpimiCompleted());
+        assertEquals(INTERRUPTED_RUN, checkpoint.getNumRuns());
+        assertTrue(checkpoint.getProcessedLines() > 0);
+        assertEquals(checkpoint.getDocumentIndexEntries() + 1, checkpoint.getNextDocid());
+        assertTrue(Files.size(Paths.get(TEST_DIRECTORY + DOCINDEX)) > checkpoint.getDocumentIndexEntries() * DocumentIndexEntry.ENTRY_SIZE);
+        assertFalse(Files.exists(Paths.get(TEST_DIRECTORY + PARTIAL_VOCABULARY + "_" + INTERRUPTED_RUN)));
+
+        // resume once the cause of the failure is removed
+        FileUtils.deleteDirectory(failingPath);
+        assertEquals(numRuns, Spimi.executeSpimi(checkpoint, false));
+        assertEquals(collectionSize, CollectionSize.getCollectionSize());
+        assertEquals(totalDocLen, CollectionSize.getTotalDocLen());
+
+        IndexingCheckpoint savedCheckpoint = IndexingCheckpoint.read();
+        assertNotNull(savedCheckpoint);
+        assertTrue(savedCheckpoint.isSpimiCompleted());
+        assertEquals(numRuns, savedCheckpoint.getNumRuns());
+
+        ArrayList<String> expected = indexFiles(EXPECTED_DIRECTORY, numRuns);
+        ArrayList<String> resumed = indexFiles(TEST_DIRECTORY, numRuns);
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(-1, Files.mismatch(Paths.get(resumed.get(i)), Paths.get(expected.get(i))), resumed.get(i) + " of the resumed indexing is different from the expected one");
+    }
+}
@@ -0,0 +1,108 @@
+package indexingPerformances;
+
+import it.unipi.dii.aide.mircv.algorithms.ChunkedCollectionReader;
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * compares the throughput of the reading and parsing of the uncompressed collection done line by line through a
+ * buffered reader, as the indexer did before, with the one of the chunked parallel reader. Both readers must return
+ * the same documents
+ */
+public class CollectionReaderBenchmark {
+
+    /**
+     * hash of the documents read, used to check that the two readers return the same documents
+     * @param hash the hash of the previous documents
+     * @param document the document read
+     * @return the updated hash
+     */
+    private static long hash(long hash, TextDocument document) {
+        return (hash * 31 + document.getPid().hashCode()) * 31 + document.getText().hashCode();
+    }
+
+    /**
+     * reads the collection line by line, splitting the lines and removing the non ASCII characters with a regex
+     * @param path path of the collection
+     * @return the number of documents read and their hash
+     */
+    private static long[] readLegacy(String path) throws IOException {
+        long numDocuments = 0;
+        long hash = 0;
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                String[] split = line.split("\t");
+                TextDocument document = new TextDocument(split[0], split[1].replaceAll("[^\\x00-\\x7F]", ""));
+                hash = hash(hash, document);
+                numDocuments++;
+            }
+        }
+        return new long[]{numDocuments, hash};
+    }
+
+    /**
+     * reads the collection with the chunked reader
+     * @param path path of the collection
+     * @param numWorkers number of threads parsing the chunks
+     * @return the number of documents read and their hash
+     */
+    private static long[] readChunked(String path, int numWorkers) throws IOException {
+        long numDocuments = 0;
+        long hash = 0;
+        try (ChunkedCollectionReader reader = new ChunkedCollectionReader(path, 0, numWorkers, 8 * 1024 * 1024)) {
+            for (TextDocument document = reader.nextDocument(); document != null; document = reader.nextDocument()) {
+                hash = hash(hash, document);
+                numDocuments++;
+            }
+        }
+        return new long[]{numDocuments, hash};
+    }
+
+    /**
+     * prints the throughput of a reader
+     * @param name name of the reader
+     * @param numDocuments number of documents read
+     * @param bytes size of the collection
+     * @param time elapsed time in milliseconds
+     */
+    private static void printThroughput(String name, long numDocuments, long bytes, long time) {
+        double seconds = Math.max(time, 1) / 1000.0;
+        System.out.println("\t> " + name + ": " + time + " ms, " + String.format("%.0f", numDocuments / seconds) + " docs/s, "
+                + String.format("%.1f", bytes / seconds / (1024 * 1024)) + " MB/s");
+    }
+
+    /**
+     * @param args args[0] -> number of workers of the chunked reader (optional, default number of processors)
+     */
+    public static void main(String[] args) throws IOException {
+        int numWorkers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        String path = ConfigurationParameters.getRawCollectionPath();
+        if (path == null || !new File(path).exists()) {
+            System.out.println("Raw collection not found");
+            return;
+        }
+        long bytes = new File(path).length();
+
+        System.out.println("Reading the collection " + path + " (" + bytes / (1024 * 1024) + " MB)");
+
+        long start = System.currentTimeMillis();
+        long[] legacy = readLegacy(path);
+        printThroughput("line by line", legacy[0], bytes, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        long[] chunked = readChunked(path, numWorkers);
+        printThroughput("chunked reader with " + numWorkers + " workers", chunked[0], bytes, System.currentTimeMillis() - start);
+
+        System.out.println("Documents identical: " + (legacy[0] == chunked[0] && legacy[1] == chunked[1]));
+    }
+}
@@ -0,0 +1,174 @@
+package indexingPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexEntry;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexReader;
+import it.unipi.dii.aide.mircv.common.beans.DocumentIndexWriter;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelReader;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * compares the document index with fixed size entries, storing the pid padded to 64 bytes, the docid and the document
+ * length, with the compact document index written by the indexer, storing the document length and the numeric pid or
+ * the reference to the pid in the heap of the pids. The size of the files, the time needed to write them and the time
+ * needed to load them sequentially are measured
+ */
+public class DocumentIndexWriterBenchmark {
+
+    /**
+     * default number of documents to be written
+     */
+    private static final int DEFAULT_NUM_DOCUMENTS = 200000;
+
+    /**
+     * size of the pid in the entries with fixed size
+     */
+    private static final int PADDED_PID_SIZE = 64;
+
+    /**
+     * size of the entries with fixed size: the padded pid, the docid and the document length
+     */
+    private static final int PADDED_ENTRY_SIZE = PADDED_PID_SIZE + 4 + 4;
+
+    private static final String BENCHMARK_DIR = "data/benchmark";
+    private static final String PADDED_PATH = BENCHMARK_DIR + "/documentIndexPadded";
+    private static final String COMPACT_PATH = BENCHMARK_DIR + "/documentIndexCompact";
+
+    /**
+     * builds the entry of a synthetic document
+     * @param docid the docid of the document
+     * @param textPids true to use pids which aren't numeric
+     * @return the document index entry
+     */
+    private static DocumentIndexEntry buildEntry(int docid, boolean textPids) {
+        String pid = textPids ? "doc_" + (docid - 1) : String.valueOf(docid - 1);
+        return new DocumentIndexEntry(pid, docid, 20 + docid % 50);
+    }
+
+    /**
+     * writes the entries with fixed size
+     * @param numDocuments number of entries to write
+     * @param textPids true to use pids which aren't numeric
+     * @return elapsed time in milliseconds
+     */
+    private static long writePadded(int numDocuments, boolean textPids) throws IOException {
+        long start = System.currentTimeMillis();
+        try (BufferedChannelWriter writer = new BufferedChannelWriter(PADDED_PATH)) {
+            for (int docid = 1; docid <= numDocuments; docid++) {
+                DocumentIndexEntry entry = buildEntry(docid, textPids);
+                byte[] pid = Arrays.copyOf(entry.getPid().getBytes(StandardCharsets.UTF_8), PADDED_PID_SIZE);
+                writer.put(pid);
+                writer.putInt(entry.getDocid());
+                writer.putInt(entry.getDocLen());
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * writes the entries with the document index writer
+     * @param numDocuments number of entries to write
+     * @param textPids true to use pids which aren't numeric
+     * @return elapsed time in milliseconds
+     */
+    private static long writeCompact(int numDocuments, boolean textPids) throws IOException {
+        long start = System.currentTimeMillis();
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(COMPACT_PATH)) {
+            for (int docid = 1; docid <= numDocuments; docid++)
+                writer.write(buildEntry(docid, textPids));
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * reads sequentially the entries with fixed size
+     * @param entries array filled with the entries read
+     * @return elapsed time in milliseconds
+     */
+    private static long loadPadded(DocumentIndexEntry[] entries) throws IOException {
+        long start = System.currentTimeMillis();
+        try (BufferedChannelReader reader = new BufferedChannelReader(PADDED_PATH)) {
+            byte[] pid = new byte[PADDED_PID_SIZE];
+            for (int i = 0; i < entries.length; i++) {
+                ByteBuffer buffer = reader.require(PADDED_ENTRY_SIZE);
+                buffer.get(pid);
+                int length = 0;
+                while (length < PADDED_PID_SIZE && pid[length] != 0)
+                    length++;
+                entries[i] = new DocumentIndexEntry(new String(pid, 0, length, StandardCharsets.UTF_8), buffer.getInt(), buffer.getInt());
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * reads sequentially the entries of the compact document index
+     * @param entries array filled with the entries read
+     * @return elapsed time in milliseconds
+     */
+    private static long loadCompact(DocumentIndexEntry[] entries) throws IOException {
+        long start = System.currentTimeMillis();
+        try (DocumentIndexReader reader = new DocumentIndexReader(COMPACT_PATH, 1)) {
+            for (int i = 0; i < entries.length; i++)
+                entries[i] = reader.next();
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @param numDocuments number of documents written
+     * @param time elapsed time in milliseconds
+     * @return the throughput in documents per second
+     */
+    private static double throughput(int numDocuments, long time) {
+        return numDocuments / (Math.max(time, 1) / 1000.0);
+    }
+
+    /**
+     * prints the measures of a document index
+     */
+    private static void printMeasures(String name, int numDocuments, long size, long writeTime, long loadTime) {
+        System.out.println("\t> " + name + ": " + size + " bytes (" + String.format("%.1f", size / (double) numDocuments) + " bytes/doc), written in "
+                + writeTime + " ms (" + String.format("%.0f", throughput(numDocuments, writeTime)) + " docs/s), loaded in "
+                + loadTime + " ms (" + String.format("%.0f", throughput(numDocuments, loadTime)) + " docs/s)");
+    }
+
+    /**
+     * @param args args[0] -> number of documents to write (optional)
+     *             args[1] -> "text" to use pids which aren't numeric (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_DOCUMENTS;
+        boolean textPids = args.length > 1 && args[1].equals("text");
+
+        FileUtils.deleteDirectory(BENCHMARK_DIR);
+        FileUtils.createDirectory(BENCHMARK_DIR);
+
+        System.out.println("Writing " + numDocuments + " document index entries with " + (textPids ? "text" : "numeric") + " pids");
+
+        DocumentIndexEntry[] padded = new DocumentIndexEntry[numDocuments];
+        long paddedWriteTime = writePadded(numDocuments, textPids);
+        long paddedLoadTime = loadPadded(padded);
+        printMeasures("fixed size entries", numDocuments, Files.size(Paths.get(PADDED_PATH)), paddedWriteTime, paddedLoadTime);
+
+        DocumentIndexEntry[] compact = new DocumentIndexEntry[numDocuments];
+        long compactWriteTime = writeCompact(numDocuments, textPids);
+        long compactLoadTime = loadCompact(compact);
+        printMeasures("compact entries", numDocuments, DocumentIndexWriter.size(COMPACT_PATH), compactWriteTime, compactLoadTime);
+
+        // both document indexes must contain the same entries
+        boolean sameContent = true;
+        for (int i = 0; i < numDocuments && sameContent; i++)
+            sameContent = padded[i].equals(compact[i]);
+        System.out.println("Same entries: " + sameContent);
+
+        FileUtils.deleteDirectory(BENCHMARK_DIR);
+    }
+}
@@ -0,0 +1,113 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.PostingList;
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import queryProcessing.DAAT;
+import queryProcessing.QueryProcesser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * measures the cold cache latency of the queries on the index in the data directory, to compare the layout with the
+ * docids and the frequencies in two files with the interleaved layout (indexer flag -interleaved): the page cache of
+ * the system is dropped before each query, so every block is read from the disk, and the major page faults of the
+ * process are counted. The structures held in memory by the query handler are kept. The same queries are then
+ * processed with a warm cache. Dropping the page cache needs root privileges on Linux, otherwise only the warm
+ * latency is meaningful
+ */
+public class BlockLayoutBenchmark {
+
+    /**
+     * default number of queries processed
+     */
+    private static final int DEFAULT_NUM_QUERIES = 200;
+
+    private static final int k = 10;
+    private static final String SCORING_FUNCTION = "bm25";
+    private static final String DROP_CACHES_PATH = "/proc/sys/vm/drop_caches";
+    private static final String PROCESS_STAT_PATH = "/proc/self/stat";
+
+    /**
+     * drops the clean pages of the page cache of the system
+     * @return true if the page cache has been dropped
+     */
+    private static boolean dropPageCache() {
+        try {
+            Files.writeString(Paths.get(DROP_CACHES_PATH), "1");
+            return true;
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of major page faults of the process, -1 if it can't be read
+     */
+    private static long majorFaults() {
+        try {
+            // the fields following the name of the command, which may contain spaces, start from the state (field 3)
+            String stat = Files.readString(Paths.get(PROCESS_STAT_PATH));
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[9]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * processes the queries in disjunctive mode, measuring the opening of the posting lists and the scoring
+     * @param queries the processed queries
+     * @param cold true to drop the page cache before each query
+     * @return the mean response time in microseconds and the mean number of major page faults per query
+     */
+    private static double[] processQueries(ArrayList<ProcessedDocument> queries, boolean cold) {
+        long time = 0;
+        long faults = 0;
+        for (ProcessedDocument query : queries) {
+            if (cold)
+                dropPageCache();
+
+            long startFaults = majorFaults();
+            long start = System.nanoTime();
+            ArrayList<PostingList> queryPostings = QueryProcesser.getQueryPostings(query, false);
+            if (queryPostings != null && !queryPostings.isEmpty())
+                DAAT.scoreQuery(queryPostings, false, k, SCORING_FUNCTION);
+            time += System.nanoTime() - start;
+            faults += majorFaults() - startFaults;
+        }
+        return new double[]{time / 1000.0 / queries.size(), faults / (double) queries.size()};
+    }
+
+    /**
+     * @param args args[0] -> number of queries processed (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numQueries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_QUERIES;
+
+        if (!QueryProcesser.setupProcesser()) {
+            System.out.println("Error in setup of this service.");
+            return;
+        }
+
+        ArrayList<ProcessedDocument> queries = QueryLog.readProcessedQueries(numQueries);
+        System.out.println("Processing " + queries.size() + " queries on the index with the "
+                + (Flags.isInterleavedLayoutEnabled() ? "interleaved layout" : "docids and frequencies in two files"));
+
+        if (!dropPageCache())
+            System.out.println("The page cache can't be dropped: run the benchmark as root to measure the cold cache latency");
+
+        double[] cold = processQueries(queries, true);
+        System.out.println("\t> cold cache: " + String.format("%.1f", cold[0]) + " us/query, "
+                + String.format("%.1f", cold[1]) + " major page faults/query");
+
+        // first run to load the pages of the index in the page cache
+        processQueries(queries, false);
+        double[] warm = processQueries(queries, false);
+        System.out.println("\t> warm cache: " + String.format("%.1f", warm[0]) + " us/query, "
+                + String.format("%.1f", warm[1]) + " major page faults/query");
+    }
+}
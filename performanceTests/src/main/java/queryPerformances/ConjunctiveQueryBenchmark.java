@@ -0,0 +1,119 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.PostingList;
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyReader;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import queryProcessing.DAAT;
+import queryProcessing.QueryProcesser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * measures the latency of conjunctive queries made of a rare term and of a frequent term of the index in the data
+ * directory: most of the blocks of the frequent term are skipped, and in the blocks which are read only the postings
+ * of the documents containing both terms are scored
+ */
+public class ConjunctiveQueryBenchmark {
+
+    /**
+     * default number of term pairs queried
+     */
+    private static final int DEFAULT_NUM_PAIRS = 1000;
+
+    /**
+     * number of most frequent terms from which the frequent term of the pairs is drawn
+     */
+    private static final int FREQUENT_TERMS = 50;
+
+    /**
+     * min document frequency of the rare term of the pairs, so that it has some documents in common with the frequent one
+     */
+    private static final int MIN_RARE_DF = 10;
+
+    /**
+     * number of timed runs of the queries
+     */
+    private static final int RUNS = 5;
+
+    private static final int k = 10;
+    private static final String SCORING_FUNCTION = "bm25";
+
+    /**
+     * builds the pairs of a rare and a frequent term, where the rare term has a document frequency at least 100 times
+     * smaller than the frequent one
+     * @param numPairs number of pairs
+     * @return the queries made of the pairs of terms
+     */
+    private static ArrayList<ProcessedDocument> buildPairs(int numPairs) throws IOException {
+        ArrayList<VocabularyEntry> entries = new ArrayList<>();
+        try (VocabularyReader reader = new VocabularyReader(ConfigurationParameters.getVocabularyPath())) {
+            for (VocabularyEntry entry = reader.next(); entry != null; entry = reader.next())
+                entries.add(entry);
+        }
+        entries.sort(Comparator.comparingInt(VocabularyEntry::getDf).reversed());
+
+        int numFrequent = Math.min(FREQUENT_TERMS, entries.size());
+        int maxRareDf = entries.get(numFrequent - 1).getDf() / 100;
+        ArrayList<VocabularyEntry> rareTerms = new ArrayList<>();
+        for (VocabularyEntry entry : entries.subList(numFrequent, entries.size()))
+            if (entry.getDf() >= MIN_RARE_DF && entry.getDf() <= maxRareDf)
+                rareTerms.add(entry);
+
+        ArrayList<ProcessedDocument> queries = new ArrayList<>();
+        if (rareTerms.isEmpty())
+            return queries;
+
+        // same pairs at each run of the benchmark
+        Random random = new Random(42);
+        for (int i = 0; i < numPairs; i++) {
+            String rare = rareTerms.get(random.nextInt(rareTerms.size())).getTerm();
+            String frequent = entries.get(random.nextInt(numFrequent)).getTerm();
+            queries.add(new ProcessedDocument("pair" + i, new String[]{rare, frequent}));
+        }
+        return queries;
+    }
+
+    /**
+     * processes the queries in conjunctive mode, after a first run used to warm up the caches
+     * @param queries the queries
+     * @return the mean response time in microseconds
+     */
+    private static double processQueries(ArrayList<ProcessedDocument> queries) {
+        long start = 0;
+        for (int run = 0; run <= RUNS; run++) {
+            if (run == 1)
+                start = System.nanoTime();
+            for (ProcessedDocument query : queries) {
+                ArrayList<PostingList> queryPostings = QueryProcesser.getQueryPostings(query, true);
+                if (queryPostings != null && !queryPostings.isEmpty())
+                    DAAT.scoreQuery(queryPostings, true, k, SCORING_FUNCTION);
+            }
+        }
+        return (System.nanoTime() - start) / 1000.0 / RUNS / queries.size();
+    }
+
+    /**
+     * @param args args[0] -> number of term pairs queried (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numPairs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_PAIRS;
+
+        if (!QueryProcesser.setupProcesser()) {
+            System.out.println("Error in setup of this service.");
+            return;
+        }
+
+        ArrayList<ProcessedDocument> queries = buildPairs(numPairs);
+        if (queries.isEmpty()) {
+            System.out.println("The vocabulary has no rare terms to pair with the frequent ones");
+            return;
+        }
+        System.out.println("Processing " + queries.size() + " conjunctive queries of a rare and a frequent term");
+        System.out.println("\t> " + String.format("%.1f", processQueries(queries)) + " us/query");
+    }
+}
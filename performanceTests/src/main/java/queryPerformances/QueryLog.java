@@ -0,0 +1,51 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * reads the query log used by the benchmarks
+ */
+class QueryLog {
+
+    private static final String QUERIES_PATH = "data/queries/queries.txt";
+
+    /**
+     * reads the text of the queries
+     * @param numQueries maximum number of queries to read
+     * @return the text of the queries
+     */
+    static ArrayList<String> readQueries(int numQueries) throws IOException {
+        ArrayList<String> queries = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(QUERIES_PATH), StandardCharsets.UTF_8)) {
+            String line;
+            while (queries.size() < numQueries && (line = br.readLine()) != null) {
+                // split of the line in the format <qid>\t<text>
+                String[] split = line.split("\t");
+                if (split.length == 2)
+                    queries.add(split[1]);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * reads and pre-processes the queries as the query handler does
+     * @param numQueries maximum number of queries to read
+     * @return the processed queries
+     */
+    static ArrayList<ProcessedDocument> readProcessedQueries(int numQueries) throws IOException {
+        ArrayList<ProcessedDocument> queries = new ArrayList<>();
+        for (String query : readQueries(numQueries))
+            queries.add(Preprocesser.processDocument(new TextDocument("query", query)));
+        return queries;
+    }
+}
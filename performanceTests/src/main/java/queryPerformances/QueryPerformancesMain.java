@@ -4,7 +4,9 @@ import it.unipi.dii.aide.mircv.common.beans.DocumentIndex;
 import it.unipi.dii.aide.mircv.common.beans.PostingList;
 import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
 import it.unipi.dii.aide.mircv.common.beans.TextDocument;
+import it.unipi.dii.aide.mircv.common.config.Flags;
 import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.common.preprocess.StemmingService;
 import queryProcessing.DAAT;
 import queryProcessing.MaxScore;
 import queryProcessing.QueryProcesser;
@@ -134,6 +136,8 @@ public class QueryPerformancesMain {
             }
             standardDeviation = Math.sqrt(standardDeviation / nQueries);
             System.out.println("mean query response time is: " + sumResponseTime / nQueries + " milliseconds, with a std dev of " + standardDeviation);
+            if(Flags.isStemStopRemovalEnabled())
+                System.out.println(StemmingService.getStatistics());
 
         } catch (IOException e) {
             System.out.println("tests failed");
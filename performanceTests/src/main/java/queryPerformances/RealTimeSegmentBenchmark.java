@@ -0,0 +1,141 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.algorithms.RealTimeIndex;
+import it.unipi.dii.aide.mircv.common.beans.Vocabulary;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import queryProcessing.QueryProcesser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * measures the query latency overhead of the in-memory segment of the documents added while serving queries:
+ * the queries are processed on the index on disk alone and then with the in-memory segment holding a copy of the
+ * first documents of the collection. Nothing is written on disk, unless the in-memory segment is flushed to measure
+ * how long the queries are blocked while it is written and the segments are merged
+ */
+public class RealTimeSegmentBenchmark {
+
+    /**
+     * default number of documents added to the in-memory segment
+     */
+    private static final int DEFAULT_NUM_DOCUMENTS = 10000;
+
+    /**
+     * default number of queries processed
+     */
+    private static final int DEFAULT_NUM_QUERIES = 1000;
+
+    private static final int k = 10;
+    private static final String SCORING_FUNCTION = "bm25";
+
+    /**
+     * adds to the in-memory segment a copy of the first documents of the collection
+     * @param realTimeIndex the in-memory segment
+     * @param numDocuments number of documents to add
+     * @return number of documents added
+     */
+    private static int addDocuments(RealTimeIndex realTimeIndex, int numDocuments) throws IOException {
+        int added = 0;
+        try (BufferedReader br = Files.newBufferedReader(Paths.get(ConfigurationParameters.getRawCollectionPath()), StandardCharsets.UTF_8)) {
+            String line;
+            while (added < numDocuments && (line = br.readLine()) != null) {
+                // split of the line in the format <pid>\t<text>
+                String[] split = line.split("\t");
+                if (split.length == 2 && realTimeIndex.addDocument("rt-" + split[0], split[1]))
+                    added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * processes the queries in disjunctive mode, after a first run used to warm up the caches
+     * @param queries the text of the queries
+     * @return the mean response time in microseconds
+     */
+    private static double processQueries(ArrayList<String> queries) {
+        for (String query : queries)
+            QueryProcesser.processQuery(query, k, false, SCORING_FUNCTION);
+
+        long start = System.nanoTime();
+        for (String query : queries)
+            QueryProcesser.processQuery(query, k, false, SCORING_FUNCTION);
+        return (System.nanoTime() - start) / 1000.0 / queries.size();
+    }
+
+    /**
+     * writes the in-memory segment on disk as a new segment, then processes the queries while the segments are
+     * merged in background. The queries on the in-memory segment are blocked only until flush returns
+     * @param realTimeIndex the in-memory segment
+     * @param queries the text of the queries
+     */
+    private static void measureFlush(RealTimeIndex realTimeIndex, ArrayList<String> queries) {
+        long start = System.nanoTime();
+        if (!realTimeIndex.flush()) {
+            System.out.println("Couldn't write the in-memory segment on disk.");
+            return;
+        }
+        long flushTime = System.nanoTime() - start;
+        System.out.println("\t> queries blocked by the flush for " + String.format("%.1f", flushTime / 1000000.0) + " ms");
+
+        long maxTime = 0;
+        long totalTime = 0;
+        for (String query : queries) {
+            long queryStart = System.nanoTime();
+            QueryProcesser.processQuery(query, k, false, SCORING_FUNCTION);
+            long queryTime = System.nanoTime() - queryStart;
+            maxTime = Math.max(maxTime, queryTime);
+            totalTime += queryTime;
+        }
+        System.out.println("\t> queries during the merge of the segments: " + String.format("%.1f", totalTime / 1000.0 / queries.size())
+                + " us/query, slowest " + String.format("%.1f", maxTime / 1000.0) + " us");
+
+        if (!realTimeIndex.waitMerge())
+            System.out.println("An error occurred while merging the segments.");
+        System.out.println("\t> segments merged " + String.format("%.1f", (System.nanoTime() - start - flushTime) / 1000000.0) + " ms after the flush");
+    }
+
+    /**
+     * @param args args[0] -> number of documents added to the in-memory segment (optional),
+     *             args[1] -> number of queries processed (optional),
+     *             args[2] -> "flush" to write the in-memory segment on disk, appending its documents to the index (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numDocuments = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_DOCUMENTS;
+        int numQueries = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_QUERIES;
+        boolean flush = args.length > 2 && args[2].equals("flush");
+
+        if (!QueryProcesser.setupProcesser()) {
+            System.out.println("Error in setup of this service.");
+            return;
+        }
+
+        ArrayList<String> queries = QueryLog.readQueries(numQueries);
+        System.out.println("Processing " + queries.size() + " queries");
+
+        double diskTime = processQueries(queries);
+        System.out.println("\t> index on disk: " + String.format("%.1f", diskTime) + " us/query");
+
+        // the budget is never reached, so the in-memory segment is never written on disk
+        RealTimeIndex realTimeIndex = new RealTimeIndex(Long.MAX_VALUE);
+        Vocabulary.setInMemorySegment(realTimeIndex);
+        Vocabulary.clearCache();
+
+        long start = System.currentTimeMillis();
+        int added = addDocuments(realTimeIndex, numDocuments);
+        System.out.println("Added " + added + " documents to the in-memory segment in " + (System.currentTimeMillis() - start) + " ms");
+
+        double memoryTime = processQueries(queries);
+        System.out.println("\t> index on disk and in-memory segment: " + String.format("%.1f", memoryTime) + " us/query");
+        System.out.println("Overhead of the in-memory segment: " + String.format("%.1f", memoryTime - diskTime) + " us/query ("
+                + String.format("%.1f", (memoryTime / diskTime - 1) * 100) + "%)");
+
+        if (flush)
+            measureFlush(realTimeIndex, queries);
+    }
+}
@@ -0,0 +1,161 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.PostingList;
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import queryProcessing.DAAT;
+import queryProcessing.QueryProcesser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * compares the latency of each query on the index in the data directory when the index is memory mapped and when it
+ * is resident in off-heap memory (CLI flag -resident). Each mode is measured with a warm cache and with the page cache
+ * of the system dropped before each query, which needs root privileges on Linux: the resident index doesn't read
+ * the disk in both cases. The queries are processed in disjunctive mode, or in conjunctive mode with -c
+ */
+public class ResidentIndexBenchmark {
+
+    /**
+     * default number of queries processed
+     */
+    private static final int DEFAULT_NUM_QUERIES = 200;
+
+    /**
+     * number of timed runs of the queries with a warm cache
+     */
+    private static final int RUNS = 5;
+
+    private static final int k = 10;
+    private static final String SCORING_FUNCTION = "bm25";
+    private static final String DROP_CACHES_PATH = "/proc/sys/vm/drop_caches";
+
+    /**
+     * true to process the queries in conjunctive mode
+     */
+    private static boolean conjunctive = false;
+
+    /**
+     * drops the clean pages of the page cache of the system
+     * @return true if the page cache has been dropped
+     */
+    private static boolean dropPageCache() {
+        try {
+            Files.writeString(Paths.get(DROP_CACHES_PATH), "1");
+            return true;
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * processes a query
+     * @param query the processed query
+     * @return the response time in nanoseconds
+     */
+    private static long processQuery(ProcessedDocument query) {
+        long start = System.nanoTime();
+        ArrayList<PostingList> queryPostings = QueryProcesser.getQueryPostings(query, conjunctive);
+        if (queryPostings != null && !queryPostings.isEmpty())
+            DAAT.scoreQuery(queryPostings, conjunctive, k, SCORING_FUNCTION);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * measures the response time of each query
+     * @param queries the processed queries
+     * @param cold true to drop the page cache before each query
+     * @return the response time of each query in microseconds, the mean of the timed runs with a warm cache
+     */
+    private static double[] measureQueries(ArrayList<ProcessedDocument> queries, boolean cold) {
+        double[] times = new double[queries.size()];
+        int runs = cold ? 1 : RUNS;
+        // first run to warm up the caches
+        if (!cold)
+            for (ProcessedDocument query : queries)
+                processQuery(query);
+
+        for (int run = 0; run < runs; run++) {
+            for (int i = 0; i < queries.size(); i++) {
+                if (cold)
+                    dropPageCache();
+                times[i] += processQuery(queries.get(i)) / 1000.0 / runs;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @param times the response times of the queries
+     * @return the mean, the median and the 99th percentile of the response times
+     */
+    private static String summary(double[] times) {
+        double[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return String.format("mean %.1f us, p50 %.1f us, p99 %.1f us", Arrays.stream(times).average().orElse(0),
+                sorted[sorted.length / 2], sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)]);
+    }
+
+    /**
+     * @param args args[0] -> number of queries processed (optional), args[1] -> -c to process the queries in
+     *             conjunctive mode (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numQueries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_QUERIES;
+        conjunctive = args.length > 1 && args[1].equals("-c");
+
+        ArrayList<ProcessedDocument> queries = QueryLog.readProcessedQueries(numQueries);
+        if (queries.isEmpty()) {
+            System.out.println("No queries to process");
+            return;
+        }
+        boolean dropCaches = dropPageCache();
+        if (!dropCaches)
+            System.out.println("The page cache can't be dropped: run the benchmark as root to measure the cold cache latency");
+
+        // the two modes are measured twice in turn, and only the second round is reported, so that both of them run
+        // with the code already compiled by the JIT
+        double[][] results = new double[4][];
+        for (int round = 0; round < 2; round++) {
+            for (int mode = 0; mode < 2; mode++) {
+                boolean resident = mode == 1;
+                if (!QueryProcesser.setupProcesser(resident)) {
+                    System.out.println("Error in setup of the " + (resident ? "resident" : "memory mapped") + " index.");
+                    return;
+                }
+                results[2 * mode] = measureQueries(queries, false);
+                results[2 * mode + 1] = dropCaches ? measureQueries(queries, true) : null;
+            }
+        }
+        double[] mappedWarm = results[0];
+        double[] mappedCold = results[1];
+        double[] residentWarm = results[2];
+        double[] residentCold = results[3];
+
+        System.out.println("Processing " + queries.size() + " queries on the memory mapped index");
+        System.out.println("\t> warm cache: " + summary(mappedWarm));
+        if (mappedCold != null)
+            System.out.println("\t> cold cache: " + summary(mappedCold));
+        System.out.println("Processing " + queries.size() + " queries on the resident index");
+        System.out.println("\t> warm cache: " + summary(residentWarm));
+        if (residentCold != null)
+            System.out.println("\t> cold cache: " + summary(residentCold));
+
+        // per query comparison of the two modes
+        int faster = 0;
+        for (int i = 0; i < queries.size(); i++)
+            if (residentWarm[i] < mappedWarm[i])
+                faster++;
+        System.out.println("The resident index is faster on " + faster + " of " + queries.size() + " queries with a warm cache");
+        if (mappedCold != null) {
+            faster = 0;
+            for (int i = 0; i < queries.size(); i++)
+                if (residentCold[i] < mappedCold[i])
+                    faster++;
+            System.out.println("The resident index is faster on " + faster + " of " + queries.size() + " queries with a cold cache");
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package queryPerformances;
+
+import it.unipi.dii.aide.mircv.common.beans.ProcessedDocument;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyEntry;
+import it.unipi.dii.aide.mircv.common.beans.VocabularyFile;
+import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
+import queryProcessing.QueryProcesser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * compares the lookups of the terms of a query log in the vocabulary of the index on disk through the block index,
+ * with a binary search of the blocks followed by the scan of a block, and through the perfect hash of the
+ * terms built by the merger. The lookup of the ordinal of the terms and the lookup of their whole entries are measured
+ */
+public class TermLookupBenchmark {
+
+    /**
+     * default number of queries whose terms are looked up
+     */
+    private static final int DEFAULT_NUM_QUERIES = 10000;
+
+    /**
+     * number of timed runs of the lookups
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * reads the queries and pre-processes them as the query handler does
+     * @param numQueries maximum number of queries to read
+     * @return the terms of the queries, in order and with repetitions
+     */
+    private static ArrayList<String> readQueryTerms(int numQueries) throws IOException {
+        ArrayList<String> terms = new ArrayList<>();
+        for (ProcessedDocument query : QueryLog.readProcessedQueries(numQueries))
+            terms.addAll(query.getTokens());
+        return terms;
+    }
+
+    /**
+     * looks up the ordinals of the terms, after a first run used to warm up the caches
+     * @param vocabulary the vocabulary
+     * @param terms the terms to look up
+     * @param useHash true to use the hash of the terms, false to use the block index
+     * @return the number of lookups per second
+     */
+    private static double lookupOrdinals(VocabularyFile vocabulary, ArrayList<String> terms, boolean useHash) {
+        long found = 0;
+        long start = 0;
+        for (int run = 0; run <= RUNS; run++) {
+            if (run == 1)
+                start = System.nanoTime();
+            for (String term : terms) {
+                if ((useHash ? vocabulary.findOrdinal(term) : vocabulary.findOrdinalInBlocks(term)) != -1)
+                    found++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println("\t\t" + found / (RUNS + 1) + " of " + terms.size() + " terms found");
+        return terms.size() * (double) RUNS / seconds;
+    }
+
+    /**
+     * looks up the vocabulary entries of the terms, after a first run used to warm up the caches
+     * @param vocabulary the vocabulary
+     * @param terms the terms to look up
+     * @param useHash true to use the hash of the terms, false to use the block index
+     * @return the number of lookups per second
+     */
+    private static double lookupEntries(VocabularyFile vocabulary, ArrayList<String> terms, boolean useHash) {
+        long start = 0;
+        for (int run = 0; run <= RUNS; run++) {
+            if (run == 1)
+                start = System.nanoTime();
+            for (String term : terms)
+                vocabulary.readEntry(term, useHash ? vocabulary.findOrdinal(term) : vocabulary.findOrdinalInBlocks(term));
+        }
+        return terms.size() * (double) RUNS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * checks that the two lookups find the same entries
+     * @return the number of terms whose entries differ
+     */
+    private static int compareLookups(VocabularyFile vocabulary, ArrayList<String> terms) {
+        int mismatches = 0;
+        for (String term : terms) {
+            VocabularyEntry fromBlocks = vocabulary.readEntry(term, vocabulary.findOrdinalInBlocks(term));
+            VocabularyEntry fromHash = vocabulary.readEntry(term, vocabulary.findOrdinal(term));
+            if (fromBlocks == null ? fromHash != null : fromHash == null || !fromBlocks.toString().equals(fromHash.toString()))
+                mismatches++;
+        }
+        return mismatches;
+    }
+
+    /**
+     * @param args args[0] -> number of queries whose terms are looked up (optional)
+     */
+    public static void main(String[] args) throws IOException {
+        int numQueries = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_QUERIES;
+
+        // loads the flags of the index, deciding the pre-processing of the queries
+        if (!QueryProcesser.setupProcesser()) {
+            System.out.println("Error in setup of this service.");
+            return;
+        }
+
+        VocabularyFile vocabulary = VocabularyFile.get(ConfigurationParameters.getVocabularyPath());
+        if (vocabulary == null)
+            return;
+        if (!vocabulary.hasTermHash()) {
+            System.out.println("The hash of the terms wasn't built: enable termHashEnabled in config.xml and build the index again");
+            return;
+        }
+
+        ArrayList<String> terms = readQueryTerms(numQueries);
+        System.out.println("Looking up " + terms.size() + " terms of " + numQueries + " queries in a vocabulary of " + vocabulary.getNumTerms() + " terms");
+
+        int mismatches = compareLookups(vocabulary, terms);
+        if (mismatches != 0)
+            System.out.println("The two lookups differ on " + mismatches + " terms");
+
+        System.out.println("Ordinal lookups:");
+        double blocks = lookupOrdinals(vocabulary, terms, false);
+        System.out.println("\t> block index: " + String.format("%.1f", blocks) + " lookups/s");
+        double hash = lookupOrdinals(vocabulary, terms, true);
+        System.out.println("\t> perfect hash: " + String.format("%.1f", hash) + " lookups/s (" + String.format("%.1f", hash / blocks) + "x)");
+
+        System.out.println("Entry lookups:");
+        blocks = lookupEntries(vocabulary, terms, false);
+        System.out.println("\t> block index: " + String.format("%.1f", blocks) + " lookups/s");
+        hash = lookupEntries(vocabulary, terms, true);
+        System.out.println("\t> perfect hash: " + String.format("%.1f", hash) + " lookups/s (" + String.format("%.1f", hash / blocks) + "x)");
+    }
+}
@@ -69,6 +69,8 @@ public class MaxScore {
 
                 if (firstEssentialPLIndex == -1)
                     break;
+
+                currThresholdHasBeenUpdated = false;
             }
 
             // search for minimum docid to be scored among essential posting lists
@@ -116,15 +118,14 @@ public class MaxScore {
                     // insert the document and its score in the MinHeap
                     topKDocuments.add(new AbstractMap.SimpleEntry<>(documentUpperBound, docToProcess));
 
-                    // update currentThreshold value if the MinHeap is full, else leave it with a value of -1
-                    if(topKDocuments.size()==k)
-                        currThreshold = documentUpperBound;
+                    // update currentThreshold to the lowest score in the MinHeap if it is full, else leave it with a value of -1
+                    if(topKDocuments.size()==k && topKDocuments.peek().getKey() != currThreshold) {
+                        currThreshold = topKDocuments.peek().getKey();
+                        currThresholdHasBeenUpdated = true;
+                    }
                 }
             }
 
-            // check if current threshold has been updated or not
-            currThresholdHasBeenUpdated = (currThreshold == documentUpperBound);
-
         }
 
         cleanUp(queryPostings);
@@ -145,13 +146,13 @@ public class MaxScore {
         for(int i=0; i<firstEssentialPLIndex; i++){
             Map.Entry<PostingList, Double> postingList = sortedLists.get(i);
 
-            if(postingList.getKey().getCurrentPosting()!= null && postingList.getKey().getCurrentPosting().getDocid()==docToProcess){
-                nonEssentialScore += Scorer.scoreDocument(postingList.getKey().getCurrentPosting(), Vocabulary.getInstance().get(postingList.getKey().getTerm()).getIdf(), scoringFunction);
-                postingList.getKey().next();
+            Posting posting = postingList.getKey().getCurrentPosting();
+            if(posting == null)
                 continue;
-            }
 
-            Posting posting = postingList.getKey().nextGEQ(docToProcess);
+            // move the list only if it points to a lower docid: nextGEQ searches after the current posting
+            if(posting.getDocid() < docToProcess)
+                posting = postingList.getKey().nextGEQ(docToProcess);
             if(posting != null && posting.getDocid() == docToProcess) {
                 nonEssentialScore += Scorer.scoreDocument(posting, Vocabulary.getInstance().get(postingList.getKey().getTerm()).getIdf(), scoringFunction);
                 postingList.getKey().next();
@@ -307,7 +308,7 @@ public class MaxScore {
      * @return arraylist of entries of the following format: <POSTING LIST><TERM UPPER BOUND>. The arraylist is sorted by increasing TUB
      */
     private static ArrayList<Map.Entry<PostingList, Double>> sortPostingListsByTermUpperBound(ArrayList<PostingList> queryPostings, String scoringFunction){
-        PriorityQueue<Map.Entry<PostingList, Double>> sortedPostingLists = new PriorityQueue<>(queryPostings.size(), Map.Entry.comparingByValue());
+        ArrayList<Map.Entry<PostingList, Double>> sortedPostingLists = new ArrayList<>(queryPostings.size());
 
         for (PostingList postingList : queryPostings) {
             // retrieve document upper bound
@@ -318,6 +319,8 @@ public class MaxScore {
             sortedPostingLists.add(new AbstractMap.SimpleEntry<>(postingList, termUpperBound));
         }
 
-        return new ArrayList<>(sortedPostingLists.stream().toList());
+        // the iteration order of a priority queue is not sorted, so the lists are sorted explicitly
+        sortedPostingLists.sort(Map.Entry.comparingByValue());
+        return sortedPostingLists;
     }
 }
@@ -1,11 +1,13 @@
 package queryProcessing;
 
+import it.unipi.dii.aide.mircv.algorithms.RealTimeIndex;
 import it.unipi.dii.aide.mircv.common.beans.*;
 
 import it.unipi.dii.aide.mircv.common.config.ConfigurationParameters;
 
 import it.unipi.dii.aide.mircv.common.config.Flags;
 import it.unipi.dii.aide.mircv.common.preprocess.Preprocesser;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
 
 import java.io.File;
 import java.util.*;
@@ -30,12 +32,27 @@ public class QueryProcesser {
     /**
      * path to file storing inverted index docids
      */
-    private static final String INVERTED_INDEX_DOCIDS_PATH = ConfigurationParameters.getInvertedIndexDocs();
+    private static String INVERTED_INDEX_DOCIDS_PATH = ConfigurationParameters.getInvertedIndexDocs();
 
     /**
      * path to file storing inverted index frequencies
      */
-    private static final String INVERTED_INDEX_FREQS_PATH = ConfigurationParameters.getInvertedIndexFreqs();
+    private static String INVERTED_INDEX_FREQS_PATH = ConfigurationParameters.getInvertedIndexFreqs();
+
+    /**
+     * path to file storing the vocabulary
+     */
+    private static String VOCABULARY_PATH = ConfigurationParameters.getVocabularyPath();
+
+    /**
+     * path to file storing the block descriptors
+     */
+    private static String BLOCK_DESCRIPTORS_PATH = ConfigurationParameters.getBlockDescriptorsPath();
+
+    /**
+     * in-memory segment of the documents added while serving queries, created when the first document is added
+     */
+    private static RealTimeIndex realTimeIndex = null;
 
 
     /**
@@ -102,26 +119,83 @@ public class QueryProcesser {
     public static String[] processQuery(String query, int k, boolean isConjunctive, String scoringFunction){
 
         ProcessedDocument processedQuery = Preprocesser.processDocument(new TextDocument("query", query));
-        // load the posting lists of the tokens
-        ArrayList<PostingList> queryPostings = getQueryPostings(processedQuery,isConjunctive);
-        if(queryPostings == null || queryPostings.isEmpty()){
-            return null;
+
+        // the segments merged in background are not replaced while the query reads them
+        SegmentRegistry.lockSegments();
+        try {
+            // load the posting lists of the tokens
+            ArrayList<PostingList> queryPostings = getQueryPostings(processedQuery,isConjunctive);
+            if(queryPostings == null || queryPostings.isEmpty()){
+                return null;
+            }
+            PriorityQueue<Map.Entry<Double, Integer>> priorityQueue;
+            if(!Flags.isMaxScoreEnabled())
+                 priorityQueue = DAAT.scoreQuery(queryPostings, isConjunctive, k,scoringFunction);
+            else
+                priorityQueue = MaxScore.scoreQuery(queryPostings,k,scoringFunction,isConjunctive);
+
+            return lookupPid(priorityQueue, k);
+        } finally {
+            SegmentRegistry.unlockSegments();
+        }
+    }
+
+    /**
+     * adds a document to the index: the document is searchable as soon as it is added, and it is written on disk
+     * with the other added documents when the in-memory segment is full
+     * @param pid the pid of the document
+     * @param text the text of the document
+     * @return true if the document is added
+     */
+    public static boolean addDocument(String pid, String text){
+        if(realTimeIndex == null){
+            realTimeIndex = new RealTimeIndex();
+            Vocabulary.setInMemorySegment(realTimeIndex);
         }
-        PriorityQueue<Map.Entry<Double, Integer>> priorityQueue;
-        if(!Flags.isMaxScoreEnabled())
-             priorityQueue = DAAT.scoreQuery(queryPostings, isConjunctive, k,scoringFunction);
-        else
-            priorityQueue = MaxScore.scoreQuery(queryPostings,k,scoringFunction,isConjunctive);
+        return realTimeIndex.addDocument(pid, text);
+    }
 
-        return lookupPid(priorityQueue, k);
+    /**
+     * deletes a document from the index: its postings are skipped while scoring, and they are removed from the
+     * index files when the index is compacted
+     * @param pid the pid of the document
+     * @return true if the document is deleted
+     */
+    public static boolean deleteDocument(String pid){
+        int docid = documentIndex.getDocid(pid);
+        if(docid == -1)
+            return false;
+        return DeletedDocuments.delete(docid);
     }
 
     /**
-     * checks if the data structures needed for query processing were correctly created
+     * writes on disk the added documents still kept in memory, waiting for the merge of the segments that follows
+     * @return true if the documents are written and the segments merged
+     */
+    public static boolean flushDocuments(){
+        if(realTimeIndex == null)
+            return true;
+        return realTimeIndex.flush() && realTimeIndex.waitMerge();
+    }
+
+    /**
+     * checks if the data structures needed for query processing were correctly created, mapping the inverted index
      *
      * @return boolean
      */
     public static boolean setupProcesser() {
+        return setupProcesser(false);
+    }
+
+    /**
+     * checks if the data structures needed for query processing were correctly created. In resident mode the inverted
+     * index and the vocabularies of the main index and of the segments are read in off-heap memory, in the same
+     * encoding of the files, so the queries are served without reading the disk, otherwise they are mapped
+     *
+     * @param resident true to hold the index in off-heap memory
+     * @return boolean
+     */
+    public static boolean setupProcesser(boolean resident) {
 
         //initialize flags
         if (!Flags.initializeFlags())
@@ -135,10 +209,95 @@ public class QueryProcesser {
         if (!documentIndex.loadFromDisk())
             return false;
 
+        // load the block descriptors of the main index and of the segments, held in memory while serving queries
+        if (BlockDescriptorTable.get(BLOCK_DESCRIPTORS_PATH) == null)
+            return false;
+        for (Segment segment : SegmentRegistry.getSegments())
+            if (BlockDescriptorTable.get(segment.getBlockDescriptorsPath()) == null)
+                return false;
+
+        if (!setIndexMode(resident))
+            return false;
 
         //check if document index contains entries. If not the setup failed
         return !documentIndex.isEmpty();
 
 
     }
+
+    /**
+     * switches between the mapped and the resident index: the files held in the other mode, and the hashes of the
+     * terms of the vocabularies, are read again. In resident mode the whole index is read in memory
+     *
+     * @param resident true to hold the index in off-heap memory
+     * @return true if the index is ready to be read in the requested mode
+     */
+    static boolean setIndexMode(boolean resident) {
+        if (resident != MappedFile.isResidentMode()) {
+            MappedFile.clear();
+            MappedFile.setResidentMode(resident);
+            VocabularyFile.invalidate(VOCABULARY_PATH);
+            for (Segment segment : SegmentRegistry.getSegments())
+                VocabularyFile.invalidate(segment.getVocabularyPath());
+        }
+
+        return !resident || loadResidentIndex();
+    }
+
+    /**
+     * reads in off-heap memory the inverted index and the vocabulary of the main index and of the segments, printing
+     * the time taken and the bytes held in memory. The segments written while serving queries are read at their
+     * first access
+     *
+     * @return true if all the files are read
+     */
+    private static boolean loadResidentIndex() {
+        long start = System.currentTimeMillis();
+
+        ArrayList<String> indexPaths = new ArrayList<>(List.of(INVERTED_INDEX_DOCIDS_PATH, INVERTED_INDEX_FREQS_PATH));
+        ArrayList<String> vocabularyPaths = new ArrayList<>(List.of(VOCABULARY_PATH));
+        long descriptorsBytes = BlockDescriptorTable.get(BLOCK_DESCRIPTORS_PATH).getMemorySize();
+        for (Segment segment : SegmentRegistry.getSegments()) {
+            indexPaths.add(segment.getInvertedIndexDocsPath());
+            indexPaths.add(segment.getInvertedIndexFreqsPath());
+            vocabularyPaths.add(segment.getVocabularyPath());
+            descriptorsBytes += BlockDescriptorTable.get(segment.getBlockDescriptorsPath()).getMemorySize();
+        }
+
+        for (String vocabularyPath : vocabularyPaths) {
+            indexPaths.add(vocabularyPath);
+            indexPaths.add(VocabularyFile.getStatsPath(vocabularyPath));
+        }
+        for (String path : indexPaths)
+            if (MappedFile.get(path) == null)
+                return false;
+        for (String vocabularyPath : vocabularyPaths)
+            if (VocabularyFile.get(vocabularyPath) == null)
+                return false;
+
+        System.out.println("Index loaded in memory in " + (System.currentTimeMillis() - start) + " ms: "
+                + MappedFile.getResidentBytes() + " bytes of inverted index and vocabulary, "
+                + descriptorsBytes + " bytes of block descriptors");
+        return true;
+    }
+
+    /** needed for testing purposes
+     * @param path: path to be set
+     */
+    public static void setVocabularyPath(String path) { VOCABULARY_PATH = path; }
+
+    /** needed for testing purposes
+     * @param path: path to be set
+     */
+    public static void setBlockDescriptorsPath(String path) { BLOCK_DESCRIPTORS_PATH = path; }
+
+    /** needed for testing purposes
+     * @param path: path to be set
+     */
+    public static void setInvertedIndexDocs(String path) { INVERTED_INDEX_DOCIDS_PATH = path; }
+
+    /** needed for testing purposes
+     * @param path: path to be set
+     */
+    public static void setInvertedIndexFreqs(String path) { INVERTED_INDEX_FREQS_PATH = path; }
 }
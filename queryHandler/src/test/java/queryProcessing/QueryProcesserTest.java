@@ -202,7 +202,7 @@ class QueryProcesserTest {
 
     @AfterAll
     static void teardown() {
-        FileUtils.removeFile(VOCABULARY_PATH);
+        VocabularyFile.remove(VOCABULARY_PATH);
         FileUtils.removeFile(DOCINDEX_PATH);
         FileUtils.removeFile(INVERTED_INDEX_DOCS);
         FileUtils.removeFile(INVERTED_INDEX_FREQS);
@@ -0,0 +1,335 @@
+package queryProcessing;
+
+import it.unipi.dii.aide.mircv.algorithms.Merger;
+import it.unipi.dii.aide.mircv.algorithms.SegmentMerger;
+import it.unipi.dii.aide.mircv.common.beans.*;
+import it.unipi.dii.aide.mircv.common.compression.VariableByteCompressor;
+import it.unipi.dii.aide.mircv.common.config.CollectionSize;
+import it.unipi.dii.aide.mircv.common.config.Flags;
+import it.unipi.dii.aide.mircv.common.utils.BufferedChannelWriter;
+import it.unipi.dii.aide.mircv.common.utils.FileUtils;
+import it.unipi.dii.aide.mircv.common.utils.MappedFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Query processing on an index made of a main index and four appended segments, whose posting lists are divided in
+ * several blocks
+ */
+class SegmentedIndexTest {
+    private static final String TEST_DIRECTORY = "src/test/data/segmentedIndex";
+    private static final String VOCABULARY_PATH = TEST_DIRECTORY + "/vocabulary";
+    private static final String INVERTED_INDEX_DOCS = TEST_DIRECTORY + "/invertedIndexDocs";
+    private static final String INVERTED_INDEX_FREQS = TEST_DIRECTORY + "/invertedIndexFreqs";
+    private static final String BLOCK_DESCRIPTORS_PATH = TEST_DIRECTORY + "/blockDescriptors";
+    private static final String DOCINDEX_PATH = TEST_DIRECTORY + "/documentIndex";
+    private static final String COLLECTION_STATISTICS_PATH = TEST_DIRECTORY + "/collectionStatistics";
+    private static final String PATH_TO_PARTIAL_VOCABULARY = TEST_DIRECTORY + "/partial_vocabulary";
+    private static final String PATH_TO_PARTIAL_DOCIDS = TEST_DIRECTORY + "/partial_docids";
+    private static final String PATH_TO_PARTIAL_FREQUENCIES = TEST_DIRECTORY + "/partial_freqs";
+    private static final String SEGMENTS_DIR = TEST_DIRECTORY + "/segments";
+
+    /**
+     * number of documents of the main index, the following ones are in the segments
+     */
+    private static final int MAIN_INDEX_DOCS = 3000;
+    private static final int SEGMENT_DOCS = 500;
+    private static final int NUM_DOCS = 5000;
+    private static final int NUM_TERMS = 30;
+
+    /**
+     * queries mixing terms contained in almost every document, whose lists have many blocks, with rare terms,
+     * so that the cursors of the long lists skip several blocks
+     */
+    private static final String[][] QUERIES = {
+            {"t00", "t29"},
+            {"t00", "t01", "t24"},
+            {"t01", "t12"},
+            {"t00", "t03", "t17"},
+            {"t02", "t05", "t09"},
+            {"t00", "t01"},
+            {"t27"}
+    };
+
+    @BeforeAll
+    static void buildIndex() {
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+        FileUtils.createDirectory(TEST_DIRECTORY);
+        Merger.setPathToVocabulary(VOCABULARY_PATH);
+        Merger.setPathToInvertedIndexDocs(INVERTED_INDEX_DOCS);
+        Merger.setPathToInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        Merger.setPathToBlockDescriptors(BLOCK_DESCRIPTORS_PATH);
+        Merger.setPathToPartialIndexesDocs(PATH_TO_PARTIAL_DOCIDS);
+        Merger.setPathToPartialIndexesFreqs(PATH_TO_PARTIAL_FREQUENCIES);
+        Merger.setPathToPartialVocabularies(PATH_TO_PARTIAL_VOCABULARY);
+        Vocabulary.setVocabularyPath(VOCABULARY_PATH);
+        VocabularyEntry.setBlockDescriptorsPath(BLOCK_DESCRIPTORS_PATH);
+        BlockDescriptor.setInvertedIndexDocs(INVERTED_INDEX_DOCS);
+        BlockDescriptor.setInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        DocumentIndexEntry.setDocindexPath(DOCINDEX_PATH);
+        QueryProcesser.setVocabularyPath(VOCABULARY_PATH);
+        QueryProcesser.setBlockDescriptorsPath(BLOCK_DESCRIPTORS_PATH);
+        QueryProcesser.setInvertedIndexDocs(INVERTED_INDEX_DOCS);
+        QueryProcesser.setInvertedIndexFreqs(INVERTED_INDEX_FREQS);
+        CollectionSize.setCollectionStatisticsPath(COLLECTION_STATISTICS_PATH);
+        SegmentRegistry.setSegmentsDir(SEGMENTS_DIR);
+        FileUtils.createDirectory(SEGMENTS_DIR);
+        Flags.setCompression(true);
+        Flags.setInterleavedLayout(false);
+        Flags.setStemStopRemoval(false);
+        Vocabulary.clearCache();
+
+        // generate the documents: the term i is contained in a document with probability 0.9/(i+1)^1.5
+        Random random = new Random(42);
+        int[][] frequencies = new int[NUM_DOCS + 1][NUM_TERMS];
+        int[] lengths = new int[NUM_DOCS + 1];
+        for (int docid = 1; docid <= NUM_DOCS; docid++) {
+            lengths[docid] = 1 + random.nextInt(20);
+            for (int term = 0; term < NUM_TERMS; term++) {
+                if (random.nextDouble() < 0.9 / Math.pow(term + 1, 1.5)) {
+                    frequencies[docid][term] = 1 + random.nextInt(term == 0 ? 5 : 3);
+                    lengths[docid] += frequencies[docid][term];
+                }
+            }
+        }
+
+        // build the main index
+        long mainDocLen = 0;
+        for (int docid = 1; docid <= MAIN_INDEX_DOCS; docid++)
+            mainDocLen += lengths[docid];
+        CollectionSize.setCollectionSize(MAIN_INDEX_DOCS);
+        CollectionSize.setTotalDocLen(mainDocLen);
+        assertTrue(writeIntermediateIndex(frequencies, lengths, 1, MAIN_INDEX_DOCS), "Error while writing the intermediate index of the main index");
+        BlockDescriptor.setMemoryOffset(0);
+        assertTrue(Merger.mergeIndexes(1, true, false), "Error: merging of the main index failed");
+        assertTrue(writeDocumentIndex(DOCINDEX_PATH, lengths, 1, MAIN_INDEX_DOCS), "Error while writing the document index");
+
+        // append the segments
+        long segmentsDocLen = 0;
+        for (int firstDocid = MAIN_INDEX_DOCS + 1; firstDocid <= NUM_DOCS; firstDocid += SEGMENT_DOCS) {
+            int lastDocid = firstDocid + SEGMENT_DOCS - 1;
+            Segment segment = SegmentRegistry.newSegment(firstDocid);
+            assertTrue(writeIntermediateIndex(frequencies, lengths, firstDocid, lastDocid), "Error while writing the intermediate index of the segment");
+            BlockDescriptor.setMemoryOffset(0);
+            assertTrue(Merger.mergeIndexes(1, true, false, segment), "Error: merging of the segment failed");
+            assertTrue(writeDocumentIndex(segment.getDocumentIndexPath(), lengths, firstDocid, lastDocid), "Error while writing the document index of the segment");
+            long segmentDocLen = 0;
+            for (int docid = firstDocid; docid <= lastDocid; docid++)
+                segmentDocLen += lengths[docid];
+            segment.setNumDocs(SEGMENT_DOCS);
+            segment.setTotalDocLen(segmentDocLen);
+            assertTrue(SegmentRegistry.addSegment(segment), "Error while adding the segment");
+            segmentsDocLen += segmentDocLen;
+        }
+        assertTrue(CollectionSize.updateCollectionSize(NUM_DOCS));
+        assertTrue(CollectionSize.updateDocumentsLenght(mainDocLen + segmentsDocLen));
+
+        DocumentIndex.getInstance().clear();
+        assertTrue(DocumentIndex.getInstance().loadFromDisk(), "Error while loading the document index");
+        assertEquals(NUM_DOCS, DocumentIndex.getInstance().size());
+    }
+
+    /**
+     * writes the postings of the documents in a range as the intermediate index produced by spimi
+     */
+    private static boolean writeIntermediateIndex(int[][] frequencies, int[] lengths, int firstDocid, int lastDocid) {
+        try (
+                BufferedChannelWriter docsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_DOCIDS + "_0");
+                BufferedChannelWriter freqsWriter = new BufferedChannelWriter(PATH_TO_PARTIAL_FREQUENCIES + "_0");
+                VocabularyWriter vocabularyWriter = new VocabularyWriter(PATH_TO_PARTIAL_VOCABULARY + "_0")
+        ) {
+            for (int term = 0; term < NUM_TERMS; term++) {
+                PostingList postingList = new PostingList(String.format("t%02d", term));
+                for (int docid = firstDocid; docid <= lastDocid; docid++) {
+                    if (frequencies[docid][term] > 0) {
+                        postingList.getPostings().add(new Posting(docid, frequencies[docid][term]));
+                        postingList.updateBM25Parameters(lengths[docid], frequencies[docid][term]);
+                    }
+                }
+                if (postingList.getPostings().isEmpty())
+                    continue;
+
+                VocabularyEntry vocEntry = new VocabularyEntry(postingList.getTerm());
+                vocEntry.setMemoryOffset(docsWriter.position());
+                vocEntry.setFrequencyOffset(freqsWriter.position());
+
+                // write postings to file, docids as gaps, with variable byte encoding
+                int docidSize = 0;
+                int frequencySize = 0;
+                int lastWritten = 0;
+                for (Posting posting : postingList.getPostings()) {
+                    docidSize += VariableByteCompressor.integerCompression(posting.getDocid() - lastWritten, docsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                    frequencySize += VariableByteCompressor.integerCompression(posting.getFrequency(), freqsWriter.reserve(VariableByteCompressor.MAX_COMPRESSED_BYTES));
+                    lastWritten = posting.getDocid();
+                }
+                vocEntry.updateStatistics(postingList);
+                vocEntry.setBM25Dl(postingList.getBM25Dl());
+                vocEntry.setBM25Tf(postingList.getBM25Tf());
+                vocEntry.setDocidSize(docidSize);
+                vocEntry.setFrequencySize(frequencySize);
+
+                if (vocEntry.writeEntryToDisk(vocabularyWriter) == -1)
+                    return false;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * writes the document index of the documents in a range
+     */
+    private static boolean writeDocumentIndex(String path, int[] lengths, int firstDocid, int lastDocid) {
+        try (DocumentIndexWriter writer = new DocumentIndexWriter(path)) {
+            for (int docid = firstDocid; docid <= lastDocid; docid++)
+                writer.write(new DocumentIndexEntry("doc" + docid, docid, lengths[docid]));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * processes a query, returning the top-k documents as "docid:score" in decreasing score order
+     */
+    private static List<String> runQuery(String[] terms, boolean maxScore, boolean isConjunctive, String scoringFunction) {
+        ArrayList<PostingList> queryPostings = new ArrayList<>();
+        for (String term : terms) {
+            VocabularyEntry entry = Vocabulary.getInstance().getEntry(term);
+            assertNotNull(entry, "Term " + term + " not found");
+            Vocabulary.getInstance().put(term, entry);
+            queryPostings.add(new PostingList(term));
+        }
+
+        PriorityQueue<Map.Entry<Double, Integer>> results = maxScore ?
+                MaxScore.scoreQuery(queryPostings, 10, scoringFunction, isConjunctive) :
+                DAAT.scoreQuery(queryPostings, isConjunctive, 10, scoringFunction);
+
+        LinkedList<String> ranking = new LinkedList<>();
+        while (!results.isEmpty()) {
+            Map.Entry<Double, Integer> result = results.poll();
+            ranking.addFirst(result.getValue() + ":" + result.getKey());
+        }
+        return ranking;
+    }
+
+    /**
+     * processes all the queries with both the algorithms, in conjunctive and disjunctive mode, with both the scoring
+     * functions
+     */
+    private static List<List<String>> runAllQueries() {
+        List<List<String>> rankings = new ArrayList<>();
+        for (String[] query : QUERIES)
+            for (boolean maxScore : new boolean[]{false, true})
+                for (boolean isConjunctive : new boolean[]{false, true})
+                    for (String scoringFunction : new String[]{"bm25", "tfidf"})
+                        rankings.add(runQuery(query, maxScore, isConjunctive, scoringFunction));
+        return rankings;
+    }
+
+    /**
+     * @return the scores of a ranking produced by runQuery
+     */
+    private static double[] getScores(List<String> ranking) {
+        return ranking.stream().mapToDouble(result -> Double.parseDouble(result.split(":")[1])).toArray();
+    }
+
+    /**
+     * MaxScore must return the same top-k documents of DAAT, the upper bounds of the terms being computed on the
+     * whole collection. The scores are compared since documents with the same score may be returned in a different
+     * order, and since they are summed in a different order by the two algorithms
+     */
+    @Test
+    void maxScoreMatchesDAAT() {
+        for (String[] query : QUERIES)
+            for (boolean isConjunctive : new boolean[]{false, true})
+                for (String scoringFunction : new String[]{"bm25", "tfidf"}) {
+                    String description = String.join(" ", query) + (isConjunctive ? " conjunctive " : " disjunctive ") + scoringFunction;
+                    assertArrayEquals(getScores(runQuery(query, false, isConjunctive, scoringFunction)),
+                            getScores(runQuery(query, true, isConjunctive, scoringFunction)), 1e-9, description);
+                }
+    }
+
+    /**
+     * the queries must return the same results when the index is mapped, then read in memory, then mapped again
+     */
+    @Test
+    void sameResultsMappedAndResident() {
+        assertTrue(QueryProcesser.setIndexMode(false));
+        List<List<String>> expected = runAllQueries();
+
+        for (boolean resident : new boolean[]{true, false}) {
+            Vocabulary.clearCache();
+            assertTrue(QueryProcesser.setIndexMode(resident), "Error while switching the index mode");
+            assertEquals(resident, MappedFile.isResidentMode());
+            if (resident)
+                assertTrue(MappedFile.getResidentBytes() > 0, "The index is not held in memory");
+            assertEquals(expected, runAllQueries(), resident ? "Different results with the resident index" : "Different results with the index mapped again");
+        }
+    }
+
+    @AfterEach
+    void disablePrefetching() {
+        BlockPrefetcher.setEnabled(false);
+    }
+
+    @Test
+    void sameResultsWithPrefetching() {
+        BlockPrefetcher.setEnabled(false);
+        List<List<String>> expected = runAllQueries();
+
+        BlockPrefetcher.setEnabled(true);
+        long requests = BlockPrefetcher.getRequests();
+        assertEquals(expected, runAllQueries());
+        assertTrue(BlockPrefetcher.getRequests() > requests, "No block was prefetched");
+    }
+
+    /**
+     * the segments merged in background must not be replaced while a query reads them, and the queries must return
+     * the same results once the merged segment replaces them
+     */
+    @Test
+    void segmentsMergedInBackground() throws Exception {
+        List<List<String>> expected = runAllQueries();
+        long generation = SegmentRegistry.getGeneration();
+
+        Future<Boolean> merge;
+        SegmentRegistry.lockSegments();
+        try {
+            merge = SegmentMerger.mergeInBackground(true);
+            assertThrows(TimeoutException.class, () -> merge.get(1, TimeUnit.SECONDS), "The segments were replaced during a query");
+            assertEquals(4, SegmentRegistry.getSegments().size());
+            assertEquals(expected, runAllQueries());
+        } finally {
+            SegmentRegistry.unlockSegments();
+        }
+
+        assertTrue(merge.get(), "Error: merging of the segments failed");
+        assertEquals(1, SegmentRegistry.getSegments().size());
+        assertEquals(generation + 1, SegmentRegistry.getGeneration());
+        assertEquals(expected, runAllQueries(), "Different results with the merged segment");
+    }
+
+    @AfterAll
+    static void teardown() {
+        QueryProcesser.setIndexMode(false);
+        DocumentIndex.getInstance().clear();
+        Vocabulary.clearCache();
+        Vocabulary.unsetInstance();
+        SegmentRegistry.clear();
+        SegmentRegistry.setSegmentsDir(null);
+        FileUtils.deleteDirectory(TEST_DIRECTORY);
+    }
+}